@@ -43,6 +43,16 @@ public class AndroidBitmap implements org.oscim.backend.canvas.Bitmap {
         mBitmap = bitmap;
     }
 
+    public AndroidBitmap(byte[] data, int offset, int length) {
+        Bitmap bitmap = BitmapFactory.decodeByteArray(data, offset, length);
+        try {
+            GLUtils.getType(bitmap);
+        } catch (IllegalArgumentException e) {
+            bitmap = bitmap.copy(ARGB_8888, false);
+        }
+        mBitmap = bitmap;
+    }
+
     @Override
     public boolean isValid() {
         return mBitmap != null;
@@ -55,6 +55,11 @@ public final class AndroidGraphics extends CanvasAdapter {
         return new AndroidBitmap(inputStream);
     }
 
+    @Override
+    public Bitmap decodeBitmapImpl(byte[] data, int offset, int length) {
+        return new AndroidBitmap(data, offset, length);
+    }
+
     @Override
     public Bitmap decodeSvgBitmapImpl(InputStream inputStream) {
         try {
@@ -0,0 +1,62 @@
+package org.osmdroid.location;
+
+import org.oscim.core.BoundingBox;
+import org.oscim.core.GeoPoint;
+import org.oscim.tiling.source.mapfile.PoiIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * POI provider searching a {@link PoiIndex} file built from map files
+ * by PoiIndexWriter, works without network connection.
+ */
+public class OfflinePOIProvider implements POIProvider {
+
+    final static Logger log = LoggerFactory.getLogger(OfflinePOIProvider.class);
+
+    private final PoiIndex mIndex;
+
+    public OfflinePOIProvider(File indexFile) throws IOException {
+        mIndex = new PoiIndex(indexFile);
+    }
+
+    @Override
+    public List<POI> getPOIInside(BoundingBox boundingBox, String query, int maxResults) {
+        return toPOIs(mIndex.search(query, boundingBox, maxResults));
+    }
+
+    /**
+     * @return up to 'maxResults' POIs matching 'query' ordered by
+     * distance to 'position'.
+     */
+    public List<POI> getPOICloseTo(GeoPoint position, String query, int maxResults) {
+        return toPOIs(mIndex.search(query, position.getLatitude(),
+                position.getLongitude(), maxResults));
+    }
+
+    public void close() {
+        try {
+            mIndex.close();
+        } catch (IOException e) {
+            log.debug(e.getMessage());
+        }
+    }
+
+    private static List<POI> toPOIs(List<PoiIndex.Entry> entries) {
+        ArrayList<POI> pois = new ArrayList<POI>(entries.size());
+        for (PoiIndex.Entry e : entries) {
+            POI p = new POI(POI.POI_SERVICE_OFFLINE);
+            p.location = e.getGeoPoint();
+            p.category = e.key;
+            p.type = e.value;
+            p.description = e.name;
+            pois.add(p);
+        }
+        return pois;
+    }
+}
@@ -27,6 +27,7 @@ public class POI {
     public static int POI_SERVICE_FLICKR = 300;
     public static int POI_SERVICE_PICASA = 400;
     public static int POI_SERVICE_4SQUARE = 500;
+    public static int POI_SERVICE_OFFLINE = 600;
 
     /**
      * Identifies the service provider of this POI.
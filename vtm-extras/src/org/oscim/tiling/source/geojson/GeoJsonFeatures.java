@@ -0,0 +1,272 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.geojson;
+
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tag;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.QueryResult;
+import org.oscim.utils.PackedRTree;
+
+/**
+ * Columnar in-memory store of all features of a GeoJSON file.
+ * <p/>
+ * Coordinates are kept as projected fixed-point integers in the range
+ * [0, {@link #WORLD_SIZE}], geometry indices in one int array and tags as
+ * references into one Tag array. Feature bounding boxes are indexed by a
+ * {@link PackedRTree}. The store is filled once as ITileDataSink of
+ * {@link GeoJsonTileDecoder} with features decoded for tile 0/0/0 and is
+ * read-only afterwards.
+ */
+class GeoJsonFeatures implements ITileDataSink {
+
+    /**
+     * Fixed-point scale of projected coordinates, ~4cm at the equator
+     */
+    static final int WORLD_SHIFT = 30;
+    static final int WORLD_SIZE = 1 << WORLD_SHIFT;
+
+    private final static int TYPE = 0;
+    private final static int LAYER = 1;
+    private final static int POINT_OFFSET = 2;
+    private final static int POINT_COUNT = 3;
+    private final static int INDEX_OFFSET = 4;
+    private final static int INDEX_COUNT = 5;
+    private final static int TAG_OFFSET = 6;
+    private final static int TAG_COUNT = 7;
+    private final static int STRIDE = 8;
+
+    private final static GeometryType[] TYPES = GeometryType.values();
+
+    private int[] mFeatures = new int[1024 * STRIDE];
+    private int[] mBoxes = new int[1024 * 4];
+    private int[] mPoints = new int[64 * 1024];
+    private int[] mIndex = new int[4 * 1024];
+    private Tag[] mTags = new Tag[4 * 1024];
+
+    private int mNumFeatures;
+    private int mPointPos;
+    private int mIndexPos;
+    private int mTagPos;
+
+    private PackedRTree mTree;
+
+    /**
+     * Scale from coordinates of tile 0/0/0 to fixed-point
+     */
+    private final double mScale;
+
+    GeoJsonFeatures() {
+        mScale = (double) WORLD_SIZE / Tile.SIZE;
+    }
+
+    @Override
+    public void process(MapElement element) {
+        int numPoints = element.pointPos;
+        if (numPoints == 0)
+            return;
+
+        int numIndices = 0;
+        if (element.type == GeometryType.POINT) {
+            numIndices = 1;
+        } else {
+            int[] index = element.index;
+            for (int sum = 0, n = index.length; numIndices < n; numIndices++) {
+                int len = index[numIndices];
+                if (len < 0 || (sum >= numPoints && len != 0))
+                    break;
+                sum += len;
+            }
+        }
+        int numTags = element.tags.numTags;
+
+        ensureCapacity(numPoints, numIndices, numTags);
+
+        int f = mNumFeatures * STRIDE;
+        mFeatures[f + TYPE] = element.type.ordinal();
+        mFeatures[f + LAYER] = element.layer;
+        mFeatures[f + POINT_OFFSET] = mPointPos;
+        mFeatures[f + POINT_COUNT] = numPoints;
+        mFeatures[f + INDEX_OFFSET] = mIndexPos;
+        mFeatures[f + INDEX_COUNT] = numIndices;
+        mFeatures[f + TAG_OFFSET] = mTagPos;
+        mFeatures[f + TAG_COUNT] = numTags;
+
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+
+        double[] points = element.points;
+        for (int i = 0; i < numPoints; i += 2) {
+            int x = (int) (points[i] * mScale);
+            int y = (int) (points[i + 1] * mScale);
+            mPoints[mPointPos++] = x;
+            mPoints[mPointPos++] = y;
+
+            if (x < minX)
+                minX = x;
+            if (x > maxX)
+                maxX = x;
+            if (y < minY)
+                minY = y;
+            if (y > maxY)
+                maxY = y;
+        }
+        int b = mNumFeatures * 4;
+        mBoxes[b++] = minX;
+        mBoxes[b++] = minY;
+        mBoxes[b++] = maxX;
+        mBoxes[b] = maxY;
+
+        if (element.type == GeometryType.POINT)
+            mIndex[mIndexPos] = numPoints;
+        else
+            System.arraycopy(element.index, 0, mIndex, mIndexPos, numIndices);
+        mIndexPos += numIndices;
+
+        System.arraycopy(element.tags.tags, 0, mTags, mTagPos, numTags);
+        mTagPos += numTags;
+
+        mNumFeatures++;
+    }
+
+    @Override
+    public void setTileImage(Bitmap bitmap) {
+    }
+
+    @Override
+    public void completed(QueryResult result) {
+    }
+
+    /**
+     * Build spatial index and trim arrays. Must be called once
+     * after all features were added.
+     */
+    void finish() {
+        if (mNumFeatures == 0)
+            return;
+
+        mTree = new PackedRTree(mNumFeatures);
+        for (int i = 0, b = 0; i < mNumFeatures; i++, b += 4)
+            mTree.add(mBoxes[b], mBoxes[b + 1], mBoxes[b + 2], mBoxes[b + 3]);
+        mTree.finish();
+        mBoxes = null;
+
+        int[] features = new int[mNumFeatures * STRIDE];
+        System.arraycopy(mFeatures, 0, features, 0, features.length);
+        mFeatures = features;
+
+        int[] points = new int[mPointPos];
+        System.arraycopy(mPoints, 0, points, 0, mPointPos);
+        mPoints = points;
+
+        int[] index = new int[mIndexPos];
+        System.arraycopy(mIndex, 0, index, 0, mIndexPos);
+        mIndex = index;
+
+        Tag[] tags = new Tag[mTagPos];
+        System.arraycopy(mTags, 0, tags, 0, mTagPos);
+        mTags = tags;
+    }
+
+    /**
+     * Visit ids of features intersecting the fixed-point box.
+     */
+    boolean search(int minX, int minY, int maxX, int maxY, PackedRTree.Visitor visitor) {
+        if (mTree == null)
+            return true;
+
+        return mTree.search(minX, minY, maxX, maxY, visitor);
+    }
+
+    /**
+     * Restore feature 'id' into 'out' with coordinates relative to the
+     * fixed-point position x, y, multiplied by scale.
+     */
+    MapElement get(int id, MapElement out, int x, int y, double scale) {
+        int f = id * STRIDE;
+        int pointOffset = mFeatures[f + POINT_OFFSET];
+        int numPoints = mFeatures[f + POINT_COUNT];
+        int indexOffset = mFeatures[f + INDEX_OFFSET];
+        int numIndices = mFeatures[f + INDEX_COUNT];
+        int tagOffset = mFeatures[f + TAG_OFFSET];
+        int numTags = mFeatures[f + TAG_COUNT];
+
+        out.clear();
+        out.type = TYPES[mFeatures[f + TYPE]];
+        out.layer = mFeatures[f + LAYER];
+
+        double[] points = out.ensurePointSize(numPoints >> 1, false);
+        for (int p = 0; p < numPoints; p += 2) {
+            points[p] = (mPoints[pointOffset + p] - x) * scale;
+            points[p + 1] = (mPoints[pointOffset + p + 1] - y) * scale;
+        }
+        out.pointPos = numPoints;
+
+        int[] index = out.ensureIndexSize(numIndices + 1, false);
+        System.arraycopy(mIndex, indexOffset, index, 0, numIndices);
+        index[numIndices] = -1;
+        out.indexPos = numIndices > 0 ? numIndices - 1 : 0;
+
+        out.tags.clear();
+        for (int t = 0; t < numTags; t++)
+            out.tags.add(mTags[tagOffset + t]);
+
+        return out;
+    }
+
+    int size() {
+        return mNumFeatures;
+    }
+
+    /**
+     * @return approximate number of bytes held by this store.
+     */
+    int getMemoryUsage() {
+        int size = (mFeatures.length + mPoints.length + mIndex.length + mTags.length) * 4;
+        if (mTree != null)
+            size += mTree.getMemoryUsage();
+        return size;
+    }
+
+    private void ensureCapacity(int numPoints, int numIndices, int numTags) {
+        if ((mNumFeatures + 1) * STRIDE > mFeatures.length) {
+            int[] tmp = new int[mFeatures.length * 2];
+            System.arraycopy(mFeatures, 0, tmp, 0, mNumFeatures * STRIDE);
+            mFeatures = tmp;
+
+            tmp = new int[mBoxes.length * 2];
+            System.arraycopy(mBoxes, 0, tmp, 0, mNumFeatures * 4);
+            mBoxes = tmp;
+        }
+        if (mPointPos + numPoints > mPoints.length) {
+            int[] tmp = new int[Math.max(mPoints.length * 2, mPointPos + numPoints)];
+            System.arraycopy(mPoints, 0, tmp, 0, mPointPos);
+            mPoints = tmp;
+        }
+        if (mIndexPos + numIndices > mIndex.length) {
+            int[] tmp = new int[Math.max(mIndex.length * 2, mIndexPos + numIndices)];
+            System.arraycopy(mIndex, 0, tmp, 0, mIndexPos);
+            mIndex = tmp;
+        }
+        if (mTagPos + numTags > mTags.length) {
+            Tag[] tmp = new Tag[Math.max(mTags.length * 2, mTagPos + numTags)];
+            System.arraycopy(mTags, 0, tmp, 0, mTagPos);
+            mTags = tmp;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.geojson;
+
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.layers.tile.vector.TileFeatures;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.QueryResult;
+import org.oscim.utils.PackedRTree;
+import org.oscim.utils.geom.SimplifyDP;
+import org.oscim.utils.geom.TileClipper;
+
+import java.util.Map;
+
+import static org.oscim.tiling.source.geojson.GeoJsonFeatures.WORLD_SHIFT;
+
+/**
+ * Generates tiles from {@link GeoJsonFeatures}: features intersecting
+ * a tile are looked up in the spatial index, clipped to the tile bounds
+ * and simplified for the tile zoom-level. One instance per
+ * TileLoader thread.
+ */
+class GeoJsonFileTileDataSource implements ITileDataSource, PackedRTree.Visitor {
+
+    /**
+     * Clip buffer around tiles in pixel
+     */
+    private static final int CLIP_BUFFER = 16;
+
+    /**
+     * Squared simplification tolerance in pixel
+     */
+    private static final float SIMPLIFY_TOLERANCE = 0.25f;
+
+    private final GeoJsonFeatures mFeatures;
+    private final Map<Tile, TileFeatures> mTileCache;
+
+    private final MapElement mElement = new MapElement();
+    private final TileClipper mClipper;
+    private final SimplifyDP mSimplify = new SimplifyDP();
+
+    /* state of the current query */
+    private ITileDataSink mSink;
+    private TileFeatures mTileFeatures;
+    private int mTileX, mTileY;
+    private double mScale;
+
+    GeoJsonFileTileDataSource(GeoJsonFeatures features, Map<Tile, TileFeatures> tileCache) {
+        mFeatures = features;
+        mTileCache = tileCache;
+
+        mClipper = new TileClipper(-CLIP_BUFFER, -CLIP_BUFFER,
+                Tile.SIZE + CLIP_BUFFER, Tile.SIZE + CLIP_BUFFER);
+    }
+
+    @Override
+    public void query(MapTile tile, ITileDataSink sink) {
+        if (mFeatures == null) {
+            sink.completed(QueryResult.FAILED);
+            return;
+        }
+
+        Tile key = new Tile(tile.tileX, tile.tileY, tile.zoomLevel);
+        TileFeatures cached = mTileCache.get(key);
+        if (cached != null) {
+            for (int i = 0, n = cached.size(); i < n; i++)
+                sink.process(cached.get(i, mElement));
+
+            sink.completed(QueryResult.SUCCESS);
+            return;
+        }
+
+        int shift = WORLD_SHIFT - tile.zoomLevel;
+        mTileX = tile.tileX << shift;
+        mTileY = tile.tileY << shift;
+        mScale = (double) Tile.SIZE / (1 << shift);
+
+        /* clip buffer in fixed-point coordinates */
+        int buffer = (int) (CLIP_BUFFER / mScale);
+
+        mSink = sink;
+        mTileFeatures = new TileFeatures();
+
+        mFeatures.search(mTileX - buffer, mTileY - buffer,
+                mTileX + (1 << shift) + buffer,
+                mTileY + (1 << shift) + buffer, this);
+
+        mSink = null;
+
+        mTileFeatures.compact();
+        mTileCache.put(key, mTileFeatures);
+        mTileFeatures = null;
+
+        sink.completed(QueryResult.SUCCESS);
+    }
+
+    @Override
+    public boolean visit(int item) {
+        MapElement e = mFeatures.get(item, mElement, mTileX, mTileY, mScale);
+
+        if (e.type == GeometryType.POINT) {
+            double x = e.getPointX(0);
+            double y = e.getPointY(0);
+            if (x < 0 || x > Tile.SIZE || y < 0 || y > Tile.SIZE)
+                return true;
+        } else {
+            /* clip first to simplify only the part within the tile */
+            if (!mClipper.clip(e))
+                return true;
+
+            if (!mSimplify.simplify(e, SIMPLIFY_TOLERANCE))
+                return true;
+        }
+
+        mTileFeatures.add(e);
+        mSink.process(e);
+        return true;
+    }
+
+    @Override
+    public void dispose() {
+    }
+
+    @Override
+    public void cancel() {
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.geojson;
+
+import org.oscim.core.MapElement;
+import org.oscim.core.Tag;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.vector.TileFeatures;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.TileSource;
+import org.oscim.utils.IOUtils;
+import org.oscim.utils.LRUCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * TileSource for a local GeoJSON file. The file is parsed once on
+ * {@link #open()} into a compact in-memory store with a packed spatial
+ * index. Tiles are generated on the fly by clipping and simplifying the
+ * features that intersect a tile, and recently generated tiles are cached.
+ */
+public class GeoJsonFileTileSource extends TileSource implements GeoJsonTileDecoder.Callback {
+    static final Logger log = LoggerFactory.getLogger(GeoJsonFileTileSource.class);
+
+    private static final int DEFAULT_CACHE_SIZE = 64;
+
+    private GeoJsonFeatures mFeatures;
+    private Map<Tile, TileFeatures> mTileCache;
+
+    private int mCacheSize = DEFAULT_CACHE_SIZE;
+
+    public GeoJsonFileTileSource() {
+        super(0, 20);
+    }
+
+    public GeoJsonFileTileSource(String filename) {
+        this();
+        setGeoJsonFile(filename);
+    }
+
+    public boolean setGeoJsonFile(String filename) {
+        setOption("file", filename);
+
+        File file = new File(filename);
+        return file.isFile() && file.canRead();
+    }
+
+    /**
+     * Number of generated tiles to keep. Must be set before open().
+     */
+    public void setTileCacheSize(int numTiles) {
+        mCacheSize = numTiles;
+    }
+
+    @Override
+    public OpenResult open() {
+        if (!options.containsKey("file"))
+            return new OpenResult("no file set");
+
+        File file = new File(options.get("file"));
+        if (!file.exists())
+            return new OpenResult("file does not exist: " + file);
+        else if (!file.isFile())
+            return new OpenResult("not a file: " + file);
+        else if (!file.canRead())
+            return new OpenResult("cannot read file: " + file);
+
+        InputStream is = null;
+        try {
+            long start = System.currentTimeMillis();
+
+            GeoJsonFeatures features = new GeoJsonFeatures();
+            is = new BufferedInputStream(new FileInputStream(file), 64 * 1024);
+
+            /* decode into projected coordinates of tile 0/0/0 */
+            new GeoJsonTileDecoder(this).decode(new Tile(0, 0, (byte) 0), features, is);
+            features.finish();
+
+            log.debug("loaded {} features in {}ms, {}kb", features.size(),
+                    System.currentTimeMillis() - start,
+                    features.getMemoryUsage() / 1024);
+
+            mFeatures = features;
+            mTileCache = Collections.synchronizedMap(
+                    new LRUCache<Tile, TileFeatures>(mCacheSize));
+
+            return OpenResult.SUCCESS;
+        } catch (IOException e) {
+            log.error(e.getMessage());
+            return new OpenResult(e.getMessage());
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    @Override
+    public void close() {
+        mFeatures = null;
+        mTileCache = null;
+    }
+
+    @Override
+    public ITileDataSource getDataSource() {
+        return new GeoJsonFileTileDataSource(mFeatures, mTileCache);
+    }
+
+    /**
+     * Adds all properties as tags by default. Override to filter
+     * or rewrite properties, see {@link #rewriteTag(String, Object)}.
+     */
+    @Override
+    public void decodeTags(MapElement mapElement, Map<String, Object> properties) {
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            Tag tag = rewriteTag(entry.getKey(), entry.getValue());
+            if (tag != null)
+                mapElement.tags.add(tag);
+        }
+    }
+
+    public Tag rewriteTag(String key, Object value) {
+
+        if (value == null)
+            return null;
+
+        String val = (value instanceof String) ? (String) value : String.valueOf(value);
+
+        return new Tag(key, val);
+    }
+
+    /**
+     * modify mapElement before it is added to the in-memory store
+     */
+    @Override
+    public void postGeomHook(MapElement mapElement) {
+
+    }
+}
@@ -34,6 +34,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static com.fasterxml.jackson.core.JsonToken.END_ARRAY;
 import static com.fasterxml.jackson.core.JsonToken.END_OBJECT;
@@ -49,8 +50,23 @@ import static org.oscim.core.MercatorProjection.longitudeToX;
 public class GeoJsonTileDecoder implements ITileDecoder {
     static final Logger log = LoggerFactory.getLogger(GeoJsonTileDecoder.class);
 
+    /**
+     * Tag handling of decoded features, see {@link GeoJsonTileSource}.
+     */
+    public interface Callback {
+        /**
+         * Add tags for 'properties' to mapElement.
+         */
+        void decodeTags(MapElement mapElement, Map<String, Object> properties);
+
+        /**
+         * modify mapElement before process()
+         */
+        void postGeomHook(MapElement mapElement);
+    }
+
     private final MapElement mMapElement;
-    private final GeoJsonTileSource mTileSource;
+    private final Callback mTileSource;
     private final LinkedHashMap<String, Object> mTagMap;
     private final JsonFactory mJsonFactory;
 
@@ -71,7 +87,7 @@ public class GeoJsonTileDecoder implements ITileDecoder {
 
     private double mTileY, mTileX, mTileScale;
 
-    public GeoJsonTileDecoder(GeoJsonTileSource tileSource) {
+    public GeoJsonTileDecoder(Callback tileSource) {
         mTileSource = tileSource;
         mTagMap = new LinkedHashMap<String, Object>();
         mJsonFactory = new JsonFactory();
@@ -324,8 +340,8 @@ public class GeoJsonTileDecoder implements ITileDecoder {
                 break;
         }
 
-        mMapElement.addPoint((float) ((longitudeToX(x) - mTileX) * mTileScale),
-                (float) ((latitudeToY(y) - mTileY) * mTileScale));
+        mMapElement.addPoint((longitudeToX(x) - mTileX) * mTileScale,
+                (latitudeToY(y) - mTileY) * mTileScale);
 
     }
 
@@ -25,7 +25,7 @@ import org.oscim.tiling.source.UrlTileSource;
 import java.util.HashMap;
 import java.util.Map;
 
-public abstract class GeoJsonTileSource extends UrlTileSource {
+public abstract class GeoJsonTileSource extends UrlTileSource implements GeoJsonTileDecoder.Callback {
 
     public GeoJsonTileSource(String url) {
         super(url, "/{Z}/{X}/{Y}.json");
@@ -54,6 +54,7 @@ public abstract class GeoJsonTileSource extends UrlTileSource {
     /**
      * allow overriding tag handling
      */
+    @Override
     public abstract void decodeTags(MapElement mapElement, Map<String, Object> properties);
 
     public Tag rewriteTag(String key, Object value) {
@@ -69,6 +70,7 @@ public abstract class GeoJsonTileSource extends UrlTileSource {
     /**
      * modify mapElement before process()
      */
+    @Override
     public void postGeomHook(MapElement mapElement) {
 
     }
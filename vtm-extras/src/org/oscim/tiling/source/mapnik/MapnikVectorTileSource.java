@@ -17,12 +17,16 @@
 package org.oscim.tiling.source.mapnik;
 
 import org.oscim.core.Tile;
+import org.oscim.theme.IRenderTheme;
+import org.oscim.theme.RenderTheme;
 import org.oscim.tiling.ITileDataSource;
 import org.oscim.tiling.source.UrlTileDataSource;
 import org.oscim.tiling.source.UrlTileSource;
 
 public class MapnikVectorTileSource extends UrlTileSource {
 
+    private volatile ThemeFilter mThemeFilter;
+
     public MapnikVectorTileSource() {
         super("http://d1s11ojcu7opje.cloudfront.net/dev/764e0b8d", "");
         setUrlFormatter(new TileUrlFormatter() {
@@ -51,8 +55,24 @@ public class MapnikVectorTileSource extends UrlTileSource {
         });
     }
 
+    /**
+     * Only decode layers and features that can be matched by 'theme'.
+     * Set the theme used by the VectorTileLayer of this source, or null
+     * to decode all.
+     */
+    public void setRenderTheme(IRenderTheme theme) {
+        if (theme instanceof RenderTheme)
+            mThemeFilter = new ThemeFilter((RenderTheme) theme);
+        else
+            mThemeFilter = null;
+    }
+
+    public ThemeFilter getThemeFilter() {
+        return mThemeFilter;
+    }
+
     @Override
     public ITileDataSource getDataSource() {
-        return new UrlTileDataSource(this, new TileDecoder(), getHttpEngine());
+        return new UrlTileDataSource(this, new TileDecoder(this), getHttpEngine());
     }
 }
@@ -0,0 +1,46 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mapnik;
+
+import org.oscim.theme.RenderTheme;
+import org.oscim.theme.rule.Rule.TagVisitor;
+
+/**
+ * Keys and values a {@link RenderTheme} can match, per zoom-level. Used by
+ * {@link TileDecoder} to skip layers and features that would not be
+ * rendered.
+ */
+public class ThemeFilter {
+
+    private final RenderTheme mTheme;
+    private final TagVisitor[] mZoomLevels = new TagVisitor[32];
+
+    public ThemeFilter(RenderTheme theme) {
+        mTheme = theme;
+    }
+
+    /**
+     * @return tags matched by the theme at 'zoomLevel'.
+     */
+    public synchronized TagVisitor get(int zoomLevel) {
+        TagVisitor tags = mZoomLevels[zoomLevel];
+        if (tags == null) {
+            tags = new TagVisitor(zoomLevel);
+            mTheme.traverseRules(tags);
+            mZoomLevels[zoomLevel] = tags;
+        }
+        return tags;
+    }
+}
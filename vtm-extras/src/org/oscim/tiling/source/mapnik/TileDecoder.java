@@ -20,6 +20,7 @@ import org.oscim.core.GeometryBuffer.GeometryType;
 import org.oscim.core.MapElement;
 import org.oscim.core.Tag;
 import org.oscim.core.Tile;
+import org.oscim.theme.rule.Rule.TagVisitor;
 import org.oscim.tiling.ITileDataSink;
 import org.oscim.tiling.source.PbfDecoder;
 import org.oscim.utils.pool.Inlist;
@@ -30,6 +31,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.zip.InflaterInputStream;
 
 public class TileDecoder extends PbfDecoder {
@@ -71,6 +73,47 @@ public class TileDecoder extends PbfDecoder {
     private final static float REF_TILE_SIZE = 4096.0f;
     private float mScale;
 
+    /* source providing the ThemeFilter, may be null */
+    private final MapnikVectorTileSource mTileSource;
+
+    /* tags matched by the theme at the current zoom-level, null
+     * when all layers and features are decoded */
+    private TagVisitor mThemeTags;
+
+    /* key and value tables of the current layer. values are decoded
+     * on first use from their offset in the buffer */
+    private String[] mKeys = new String[64];
+    private boolean[] mMatchedKeys = new boolean[64];
+    private int mNumKeys;
+
+    private String[] mValues = new String[64];
+    private int[] mValueOffsets = new int[64];
+    private int mNumValues;
+
+    private int[] mFeatureOffsets = new int[256];
+    private int mNumFeatures;
+
+    private int mVersion;
+
+    /* layer tag or untagged elements are matched by the theme */
+    private boolean mLayerMatched;
+
+    /* features with equal tags and type are merged */
+    private final static int FEATURE_HASH_SIZE = 256;
+    private final Feature[] mFeatureHash = new Feature[FEATURE_HASH_SIZE];
+
+    public TileDecoder() {
+        this(null);
+    }
+
+    /**
+     * @param tileSource when the source has a {@link ThemeFilter} only
+     *                   layers and features matched by the theme are decoded.
+     */
+    public TileDecoder(MapnikVectorTileSource tileSource) {
+        mTileSource = tileSource;
+    }
+
     @Override
     public boolean decode(Tile tile, ITileDataSink mapDataCallback, InputStream is)
             throws IOException {
@@ -81,7 +124,9 @@ public class TileDecoder extends PbfDecoder {
         setInputStream(new InflaterInputStream(is));
         mTile = tile;
         mMapDataCallback = mapDataCallback;
-        mScale = REF_TILE_SIZE / Tile.SIZE;
+
+        ThemeFilter filter = (mTileSource == null) ? null : mTileSource.getThemeFilter();
+        mThemeTags = (filter == null) ? null : filter.get(tile.zoomLevel);
 
         int val;
 
@@ -108,21 +153,23 @@ public class TileDecoder extends PbfDecoder {
     }
 
     private boolean decodeLayer() throws IOException {
-
-        //int version = 0;
-        //int extent = 4096;
-
         int bytes = decodeVarint32();
 
-        ArrayList<String> keys = new ArrayList<String>();
-        ArrayList<String> values = new ArrayList<String>();
+        /* keys, values, version and extent are usually written after
+         * the features. read the layer into the buffer and index its
+         * fields first, then decode the features */
+        fillBuffer(bytes);
+        int end = bufferPos + bytes;
 
         String name = null;
-        int numFeatures = 0;
-        ArrayList<Feature> features = new ArrayList<Feature>();
+        int extent = 4096;
 
-        int end = position() + bytes;
-        while (position() < end) {
+        mNumKeys = 0;
+        mNumValues = 0;
+        mNumFeatures = 0;
+        mVersion = 1;
+
+        while (bufferPos < end) {
             // read tag and wire type
             int val = decodeVarint32();
             if (val == 0)
@@ -132,21 +179,21 @@ public class TileDecoder extends PbfDecoder {
 
             switch (tag) {
                 case TAG_LAYER_KEYS:
-                    keys.add(decodeString());
+                    addKey(decodeString());
                     break;
 
                 case TAG_LAYER_VALUES:
-                    values.add(decodeValue());
+                    addValue(bufferPos);
+                    skipMessage();
                     break;
 
                 case TAG_LAYER_FEATURES:
-                    numFeatures++;
-                    decodeFeature(features);
+                    addFeature(bufferPos);
+                    skipMessage();
                     break;
 
                 case TAG_LAYER_VERSION:
-                    //version =
-                    decodeVarint32();
+                    mVersion = decodeVarint32();
                     break;
 
                 case TAG_LAYER_NAME:
@@ -154,21 +201,32 @@ public class TileDecoder extends PbfDecoder {
                     break;
 
                 case TAG_LAYER_EXTENT:
-                    //extent =
-                    decodeVarint32();
+                    extent = decodeVarint32();
                     break;
 
                 default:
                     error(mTile + " invalid type for layer: " + tag);
                     break;
             }
+        }
 
+        if (mNumFeatures == 0 || !matchLayer(name)) {
+            bufferPos = end;
+            return true;
         }
 
-        Tag layerTag = new Tag(name, Tag.VALUE_YES);
+        mScale = extent / (float) Tile.SIZE;
 
-        if (numFeatures == 0)
-            return true;
+        Arrays.fill(mFeatureHash, null);
+        ArrayList<Feature> features = new ArrayList<Feature>();
+
+        for (int i = 0; i < mNumFeatures; i++) {
+            bufferPos = mFeatureOffsets[i];
+            decodeFeature(features);
+        }
+        bufferPos = end;
+
+        Tag layerTag = new Tag(name, Tag.VALUE_YES);
 
         int[] ignoreLocal = new int[20];
         int numIgnore = 0;
@@ -176,8 +234,8 @@ public class TileDecoder extends PbfDecoder {
         int fallBackLocal = -1;
         int matchedLocal = -1;
 
-        for (int i = 0; i < keys.size(); i++) {
-            String key = keys.get(i);
+        for (int i = 0; i < mNumKeys; i++) {
+            String key = mKeys[i];
             if (!key.startsWith(Tag.KEY_NAME))
                 continue;
             int len = key.length();
@@ -186,22 +244,25 @@ public class TileDecoder extends PbfDecoder {
                 continue;
             }
             if (len < 7) {
-                ignoreLocal[numIgnore++] = i;
+                if (numIgnore < ignoreLocal.length)
+                    ignoreLocal[numIgnore++] = i;
                 continue;
             }
 
             if (mLocale.equals(key.substring(5))) {
                 //log.debug("found local " + key);
                 matchedLocal = i;
-            } else
+            } else if (numIgnore < ignoreLocal.length)
                 ignoreLocal[numIgnore++] = i;
 
         }
 
         for (Feature f : features) {
 
-            if (f.elem.type == GeometryType.NONE)
+            if (f.elem.type == GeometryType.NONE) {
+                mFeaturePool.release(f);
                 continue;
+            }
 
             f.elem.tags.clear();
             f.elem.tags.add(layerTag);
@@ -212,25 +273,28 @@ public class TileDecoder extends PbfDecoder {
             tagLoop:
             for (int j = 0; j < (f.numTags << 1); j += 2) {
                 int keyIdx = f.tags[j];
+                if (keyIdx >= mNumKeys)
+                    continue;
+
                 for (int i = 0; i < numIgnore; i++)
                     if (keyIdx == ignoreLocal[i])
                         continue tagLoop;
 
+                String val = getValue(f.tags[j + 1]);
+                if (val == null)
+                    continue;
+
                 if (keyIdx == fallBackLocal) {
-                    fallbackName = values.get(f.tags[j + 1]);
+                    fallbackName = val;
                     continue;
                 }
 
-                String key;
-                String val = values.get(f.tags[j + 1]);
-
                 if (keyIdx == matchedLocal) {
                     hasName = true;
                     f.elem.tags.add(new Tag(Tag.KEY_NAME, val, false));
 
                 } else {
-                    key = keys.get(keyIdx);
-                    f.elem.tags.add(new Tag(key, val));
+                    f.elem.tags.add(new Tag(mKeys[keyIdx], val));
                 }
             }
 
@@ -240,12 +304,101 @@ public class TileDecoder extends PbfDecoder {
             // FIXME extract layer tag here
             f.elem.setLayer(5);
             mMapDataCallback.process(f.elem);
-            f = mFeaturePool.release(f);
+            mFeaturePool.release(f);
         }
 
         return true;
     }
 
+    /**
+     * @return false when the theme can not match any feature of the layer.
+     */
+    private boolean matchLayer(String name) throws IOException {
+        TagVisitor theme = mThemeTags;
+        mLayerMatched = (theme == null)
+                || theme.matchesUntagged
+                || theme.keys.contains(name);
+
+        boolean matched = mLayerMatched;
+        for (int i = 0; i < mNumKeys; i++) {
+            mMatchedKeys[i] = mLayerMatched || theme.keys.contains(mKeys[i]);
+            matched |= mMatchedKeys[i];
+        }
+
+        if (!matched && !theme.values.isEmpty()) {
+            for (int i = 0; i < mNumValues; i++)
+                if (theme.values.contains(getValue(i)))
+                    return true;
+        }
+        return matched;
+    }
+
+    /**
+     * @return true when the theme can match one of the tags in mTmpTags.
+     */
+    private boolean matchTags(int numTags) throws IOException {
+        if (mLayerMatched)
+            return true;
+
+        boolean matchValues = !mThemeTags.values.isEmpty();
+
+        for (int j = 0; j < (numTags << 1); j += 2) {
+            int keyIdx = mTmpTags[j];
+            if (keyIdx < mNumKeys && mMatchedKeys[keyIdx])
+                return true;
+
+            if (matchValues && mThemeTags.values.contains(getValue(mTmpTags[j + 1])))
+                return true;
+        }
+        return false;
+    }
+
+    private void skipMessage() throws IOException {
+        int bytes = decodeVarint32();
+        bufferPos += bytes;
+    }
+
+    private void addKey(String key) {
+        if (mNumKeys == mKeys.length) {
+            mKeys = Arrays.copyOf(mKeys, mNumKeys * 2);
+            mMatchedKeys = Arrays.copyOf(mMatchedKeys, mNumKeys * 2);
+        }
+        mKeys[mNumKeys++] = key;
+    }
+
+    private void addValue(int offset) {
+        if (mNumValues == mValues.length) {
+            mValues = Arrays.copyOf(mValues, mNumValues * 2);
+            mValueOffsets = Arrays.copyOf(mValueOffsets, mNumValues * 2);
+        }
+        mValues[mNumValues] = null;
+        mValueOffsets[mNumValues++] = offset;
+    }
+
+    private void addFeature(int offset) {
+        if (mNumFeatures == mFeatureOffsets.length)
+            mFeatureOffsets = Arrays.copyOf(mFeatureOffsets, mNumFeatures * 2);
+
+        mFeatureOffsets[mNumFeatures++] = offset;
+    }
+
+    /**
+     * @return value 'idx' of the current layer, decoded on first use.
+     */
+    private String getValue(int idx) throws IOException {
+        if (idx < 0 || idx >= mNumValues)
+            return null;
+
+        String value = mValues[idx];
+        if (value == null) {
+            int pos = bufferPos;
+            bufferPos = mValueOffsets[idx];
+            value = mValues[idx] = decodeValue();
+            bufferPos = pos;
+        }
+        return value;
+    }
+
     private final Pool<Feature> mFeaturePool = new Pool<Feature>() {
         int count;
 
@@ -267,6 +420,8 @@ public class TileDecoder extends PbfDecoder {
             item.tags = null;
             item.type = 0;
             item.numTags = 0;
+            item.hash = 0;
+            item.hashNext = null;
 
             return true;
         }
@@ -277,6 +432,9 @@ public class TileDecoder extends PbfDecoder {
         int numTags;
         int type;
 
+        int hash;
+        Feature hashNext;
+
         final MapElement elem;
 
         Feature() {
@@ -297,6 +455,12 @@ public class TileDecoder extends PbfDecoder {
             return true;
         }
 
+        static int hash(short tags[], int numTags, int type) {
+            int h = type;
+            for (int i = 0; i < numTags << 1; i++)
+                h = 31 * h + tags[i];
+            return h;
+        }
     }
 
     private void decodeFeature(ArrayList<Feature> features) throws IOException {
@@ -326,7 +490,7 @@ public class TileDecoder extends PbfDecoder {
             switch (tag) {
                 case TAG_FEATURE_ID:
                     //id =
-                    decodeVarint32();
+                    decodeVarint64();
                     break;
 
                 case TAG_FEATURE_TAGS:
@@ -345,24 +509,14 @@ public class TileDecoder extends PbfDecoder {
                     break;
 
                 case TAG_FEATURE_GEOMETRY:
-
-                    for (Feature f : features) {
-                        if (f.match(mTmpTags, numTags, type)) {
-                            curFeature = f;
+                    if (curFeature == null) {
+                        if (mThemeTags != null && !matchTags(numTags)) {
+                            /* not matched by theme, skip geometry */
+                            decodeCoordinates(type, null);
                             break;
                         }
+                        curFeature = getFeature(numTags, type, features);
                     }
-
-                    if (curFeature == null) {
-                        curFeature = mFeaturePool.get();
-                        curFeature.tags = new short[numTags << 1];
-                        System.arraycopy(mTmpTags, 0, curFeature.tags, 0, numTags << 1);
-                        curFeature.numTags = numTags;
-                        curFeature.type = type;
-
-                        features.add(curFeature);
-                    }
-
                     decodeCoordinates(type, curFeature);
                     break;
 
@@ -373,6 +527,30 @@ public class TileDecoder extends PbfDecoder {
         }
     }
 
+    /**
+     * @return feature with tags in mTmpTags and 'type' for the current layer.
+     */
+    private Feature getFeature(int numTags, int type, ArrayList<Feature> features) {
+        int hash = Feature.hash(mTmpTags, numTags, type);
+        int slot = hash & (FEATURE_HASH_SIZE - 1);
+
+        for (Feature f = mFeatureHash[slot]; f != null; f = f.hashNext)
+            if (f.hash == hash && f.match(mTmpTags, numTags, type))
+                return f;
+
+        Feature f = mFeaturePool.get();
+        f.tags = new short[numTags << 1];
+        System.arraycopy(mTmpTags, 0, f.tags, 0, numTags << 1);
+        f.numTags = numTags;
+        f.type = type;
+        f.hash = hash;
+        f.hashNext = mFeatureHash[slot];
+        mFeatureHash[slot] = f;
+
+        features.add(f);
+        return f;
+    }
+
     private final static int CLOSE_PATH = 0x07;
     private final static int MOVE_TO = 0x01;
     //private final static int LINE_TO = 0x02;
@@ -410,6 +588,7 @@ public class TileDecoder extends PbfDecoder {
 
         int curX = 0;
         int curY = 0;
+        int prevRawX = 0;
         int prevX = 0;
         int prevY = 0;
 
@@ -427,13 +606,18 @@ public class TileDecoder extends PbfDecoder {
         int xmin = Integer.MAX_VALUE, xmax = Integer.MIN_VALUE;
         int ymin = Integer.MAX_VALUE, ymax = Integer.MIN_VALUE;
 
+        /* MVT v2: rings with positive area start a new polygon */
+        boolean winding = isPoly && mVersion >= 2;
+        boolean firstRing = true;
+        long area = 0;
+        int ringX = 0, ringY = 0;
+
         for (int end = bufferPos + bytes; bufferPos < end; ) {
             val = decodeVarint32Filled();
 
             if (num == 0) {
                 // number of points
                 num = val >>> 3;
-                cnt = 0;
                 // path command
                 cmd = val & 0x07;
 
@@ -443,9 +627,19 @@ public class TileDecoder extends PbfDecoder {
                 }
 
                 if (cmd == CLOSE_PATH) {
+                    if (winding) {
+                        area += (long) curX * ringY - (long) ringX * curY;
+                        if (area > 0 && !firstRing)
+                            startPolygon(elem);
+                        firstRing = false;
+                    }
                     num = 0;
                     continue;
                 }
+                if (cmd == MOVE_TO) {
+                    cnt = 0;
+                    area = 0;
+                }
                 if (first) {
                     first = false;
                     continue;
@@ -466,6 +660,7 @@ public class TileDecoder extends PbfDecoder {
             if (even) {
                 // get x coordinate
                 even = false;
+                prevRawX = curX;
                 curX = lastX = lastX + s;
                 continue;
             }
@@ -473,8 +668,18 @@ public class TileDecoder extends PbfDecoder {
             num--;
 
             even = true;
+            int prevRawY = curY;
             curY = lastY = lastY + s;
 
+            if (winding) {
+                if (cmd == MOVE_TO) {
+                    ringX = curX;
+                    ringY = curY;
+                } else {
+                    area += (long) prevRawX * curY - (long) curX * prevRawY;
+                }
+            }
+
             int dx = (curX - prevX);
             int dy = (curY - prevY);
 
@@ -482,10 +687,10 @@ public class TileDecoder extends PbfDecoder {
                 prevX = curX;
                 prevY = curY;
 
-                // only add last point if it is di
+                // only add last point if it differs from the first
                 int ppos = cnt * 2;
-                if (elem.points[elem.pointPos - ppos] != curX
-                        || elem.points[elem.pointPos - ppos + 1] != curY)
+                if (elem.points[elem.pointPos - ppos] != curX / mScale
+                        || elem.points[elem.pointPos - ppos + 1] != curY / mScale)
                     elem.addPoint(curX / mScale, curY / mScale);
 
                 lastClip = false;
@@ -541,6 +746,23 @@ public class TileDecoder extends PbfDecoder {
         return 1;
     }
 
+    /**
+     * Turn the last ring of 'elem', added as hole, into a new polygon.
+     */
+    private static void startPolygon(MapElement elem) {
+        int[] index = elem.index;
+        if (elem.indexPos + 3 > index.length)
+            index = elem.ensureIndexSize(elem.indexPos + 2, true);
+
+        int pos = elem.indexPos;
+        index[pos + 1] = index[pos];
+        index[pos] = 0;
+        elem.indexPos = pos + 1;
+
+        if (index.length > pos + 2)
+            index[pos + 2] = -1;
+    }
+
     private static boolean testBBox(int dx, int dy) {
         return dx * dy > 64 * 64;
     }
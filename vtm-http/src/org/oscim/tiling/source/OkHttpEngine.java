@@ -19,6 +19,7 @@ package org.oscim.tiling.source;
 
 import com.squareup.okhttp.HttpResponseCache;
 import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
 
 import org.oscim.core.Tile;
 import org.oscim.utils.IOUtils;
@@ -31,11 +32,35 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Map.Entry;
-
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * HttpEngine based on OkHttp. All engines of a factory share one client,
+ * so that with servers supporting HTTP/2 or SPDY the requests of all
+ * TileLoaders are multiplexed over a single connection. Response bodies
+ * are passed as they arrive to the tile decoder.
+ */
 public class OkHttpEngine implements HttpEngine {
     static final Logger log = LoggerFactory.getLogger(OkHttpEngine.class);
 
+    /**
+     * Cancels requests off the calling thread, e.g. the main thread
+     * on Android must not do network operations.
+     */
+    private static final ExecutorService sCancelExecutor =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "OkHttpEngine-cancel");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
     private final OkHttpClient mClient;
     private final UrlTileSource mTileSource;
 
@@ -44,10 +69,13 @@ public class OkHttpEngine implements HttpEngine {
 
         public OkHttpFactory() {
             mClient = new OkHttpClient();
+            mClient.setProtocols(Arrays.asList(Protocol.HTTP_2,
+                    Protocol.SPDY_3,
+                    Protocol.HTTP_11));
         }
 
         public OkHttpFactory(HttpResponseCache responseCache) {
-            mClient = new OkHttpClient();
+            this();
             mClient.setResponseCache(responseCache);
         }
 
@@ -57,6 +85,8 @@ public class OkHttpEngine implements HttpEngine {
         }
     }
 
+    /* connection and response of the current request */
+    private HttpURLConnection mConnection;
     private InputStream inputStream;
 
     public OkHttpEngine(OkHttpClient client, UrlTileSource tileSource) {
@@ -66,7 +96,11 @@ public class OkHttpEngine implements HttpEngine {
 
     @Override
     public InputStream read() throws IOException {
-        return inputStream;
+        InputStream is = inputStream;
+        if (is == null)
+            throw new IOException("Request canceled");
+
+        return is;
     }
 
     @Override
@@ -80,27 +114,49 @@ public class OkHttpEngine implements HttpEngine {
         for (Entry<String, String> opt : mTileSource.getRequestHeader().entrySet())
             conn.addRequestProperty(opt.getKey(), opt.getValue());
 
+        synchronized (this) {
+            mConnection = conn;
+        }
+
+        InputStream is;
         try {
-            inputStream = conn.getInputStream();
+            is = conn.getInputStream();
         } catch (FileNotFoundException e) {
             throw new IOException("ERROR " + conn.getResponseCode()
                     + ": " + conn.getResponseMessage());
         }
+
+        synchronized (this) {
+            /* canceled while waiting for the response */
+            if (mConnection != conn) {
+                IOUtils.closeQuietly(is);
+                throw new IOException("Request canceled");
+            }
+            inputStream = is;
+        }
     }
 
+    /**
+     * Cancel the current request. With a multiplexed connection only
+     * the stream of this request is reset.
+     */
     @Override
     public void close() {
-        if (inputStream == null)
+        final HttpURLConnection conn;
+        synchronized (this) {
+            conn = mConnection;
+            mConnection = null;
+            inputStream = null;
+        }
+        if (conn == null)
             return;
 
-        final InputStream is = inputStream;
-        inputStream = null;
-        new Thread(new Runnable() {
+        sCancelExecutor.execute(new Runnable() {
             @Override
             public void run() {
-                IOUtils.closeQuietly(is);
+                conn.disconnect();
             }
-        }).start();
+        });
     }
 
     @Override
@@ -110,8 +166,15 @@ public class OkHttpEngine implements HttpEngine {
 
     @Override
     public boolean requestCompleted(boolean success) {
-        IOUtils.closeQuietly(inputStream);
-        inputStream = null;
+        InputStream is;
+        synchronized (this) {
+            is = inputStream;
+            inputStream = null;
+            mConnection = null;
+        }
+        /* releases the connection, or the stream of a
+         * multiplexed connection, for the next request */
+        IOUtils.closeQuietly(is);
 
         return success;
     }
@@ -18,12 +18,15 @@ package org.oscim.layers;
 
 import org.jeo.tile.Tile;
 import org.jeo.tile.TileDataset;
+import org.jeo.tile.TileGrid;
+import org.jeo.tile.TilePyramid;
 import org.oscim.backend.CanvasAdapter;
 import org.oscim.backend.canvas.Bitmap;
 import org.oscim.layers.tile.MapTile;
 import org.oscim.tiling.ITileDataSink;
 import org.oscim.tiling.ITileDataSource;
 import org.oscim.tiling.TileSource;
+import org.oscim.tiling.source.ITileDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,59 +37,164 @@ import static org.oscim.tiling.QueryResult.FAILED;
 import static org.oscim.tiling.QueryResult.SUCCESS;
 import static org.oscim.tiling.QueryResult.TILE_NOT_FOUND;
 
+/**
+ * TileSource for jeo {@link TileDataset}s, e.g. MBTiles or GeoPackage
+ * tile pyramids. Zoom bounds and y-axis origin are taken from the
+ * dataset's {@link TilePyramid}.
+ * <p/>
+ * Bitmap tiles are decoded directly from the tile data. For vector
+ * payloads override {@link #createDecoder()}.
+ * <p/>
+ * When created with a {@link DatasetFactory} every TileLoader thread
+ * reads from its own dataset instance, so that readers do not contend
+ * for one connection.
+ */
 public class JeoTileSource extends TileSource {
     final static Logger log = LoggerFactory.getLogger(JeoTileSource.class);
 
+    public interface DatasetFactory {
+        /**
+         * @return a new dataset instance, closed by the caller.
+         */
+        TileDataset open() throws IOException;
+    }
+
     final TileDataset mTileDataset;
+    final DatasetFactory mDatasetFactory;
+
+    /* whether tile rows count from the bottom (TMS) */
+    boolean mFlipY = true;
 
     public JeoTileSource(TileDataset tileDataset) {
+        this(tileDataset, null);
+    }
+
+    /**
+     * @param tileDataset    dataset used to read the pyramid and, without
+     *                       factory, all tiles.
+     * @param datasetFactory opens one dataset per TileLoader thread,
+     *                       may be null.
+     */
+    public JeoTileSource(TileDataset tileDataset, DatasetFactory datasetFactory) {
         log.debug("load tileset {}", tileDataset.name());
         mTileDataset = tileDataset;
-        //mTileDataset.pyramid().
-        mZoomMax = 1;
-        mZoomMin = 0;
+        mDatasetFactory = datasetFactory;
+
+        readPyramid();
+    }
+
+    private void readPyramid() {
+        TilePyramid pyramid;
+        try {
+            pyramid = mTileDataset.pyramid();
+        } catch (IOException e) {
+            log.error("read pyramid {}", e.getMessage());
+            return;
+        }
+        if (pyramid == null)
+            return;
+
+        int zoomMin = Integer.MAX_VALUE;
+        int zoomMax = Integer.MIN_VALUE;
+        for (TileGrid grid : pyramid.grids()) {
+            zoomMin = Math.min(zoomMin, grid.z());
+            zoomMax = Math.max(zoomMax, grid.z());
+        }
+        if (zoomMin <= zoomMax) {
+            mZoomMin = zoomMin;
+            mZoomMax = zoomMax;
+        }
+        mFlipY = pyramid.origin() != TilePyramid.Origin.TOP_LEFT;
+
+        log.debug("zoom {}-{}, flip y {}", mZoomMin, mZoomMax, mFlipY);
+    }
+
+    /**
+     * Override to decode vector tile payloads, e.g. to return
+     * a Mapbox vector tile decoder. Called once per TileLoader thread.
+     *
+     * @return decoder or null for bitmap tiles.
+     */
+    protected ITileDecoder createDecoder() {
+        return null;
     }
 
     @Override
     public ITileDataSource getDataSource() {
-        return new ITileDataSource() {
-
-            @Override
-            public void query(MapTile tile, ITileDataSink sink) {
-                log.debug("query {}", tile);
-                try {
-                    Tile t = mTileDataset.read(tile.zoomLevel, tile.tileX,
-                            // flip Y axis
-                            (1 << tile.zoomLevel) - 1 - tile.tileY);
-                    if (t == null) {
-                        log.debug("not found {}", tile);
-                        sink.completed(TILE_NOT_FOUND);
-                        return;
-                    }
-                    Bitmap b = CanvasAdapter.decodeBitmap(new ByteArrayInputStream(t.data()));
-                    sink.setTileImage(b);
-                    log.debug("success {}", tile);
-                    sink.completed(SUCCESS);
+        TileDataset dataset = mTileDataset;
+        if (mDatasetFactory != null) {
+            try {
+                dataset = mDatasetFactory.open();
+            } catch (IOException e) {
+                log.error("open dataset {}", e.getMessage());
+                dataset = mTileDataset;
+            }
+        }
+        return new JeoTileDataSource(dataset, createDecoder());
+    }
+
+    class JeoTileDataSource implements ITileDataSource {
+        final TileDataset mDataset;
+        final ITileDecoder mDecoder;
+
+        JeoTileDataSource(TileDataset dataset, ITileDecoder decoder) {
+            mDataset = dataset;
+            mDecoder = decoder;
+        }
+
+        @Override
+        public void query(MapTile tile, ITileDataSink sink) {
+            try {
+                Tile t = read(tile);
+                if (t == null || t.data() == null) {
+                    log.debug("not found {}", tile);
+                    sink.completed(TILE_NOT_FOUND);
                     return;
+                }
+                byte[] data = t.data();
 
-                } catch (IOException e) {
-                    e.printStackTrace();
+                if (mDecoder != null) {
+                    if (mDecoder.decode(tile, sink, new ByteArrayInputStream(data))) {
+                        sink.completed(SUCCESS);
+                        return;
+                    }
+                } else {
+                    Bitmap b = CanvasAdapter.decodeBitmap(data, 0, data.length);
+                    if (b != null) {
+                        sink.setTileImage(b);
+                        sink.completed(SUCCESS);
+                        return;
+                    }
                 }
-                log.debug("fail {}", tile);
-                sink.completed(FAILED);
+            } catch (IOException e) {
+                log.debug("{} {}", tile, e.getMessage());
             }
+            log.debug("fail {}", tile);
+            sink.completed(FAILED);
+        }
 
-            @Override
-            public void dispose() {
+        private Tile read(MapTile tile) throws IOException {
+            int y = mFlipY ? (1 << tile.zoomLevel) - 1 - tile.tileY : tile.tileY;
 
+            if (mDataset != mTileDataset)
+                return mDataset.read(tile.zoomLevel, tile.tileX, y);
+
+            /* shared dataset */
+            synchronized (mTileDataset) {
+                return mTileDataset.read(tile.zoomLevel, tile.tileX, y);
             }
+        }
 
-            @Override
-            public void cancel() {
+        @Override
+        public void dispose() {
+            if (mDataset != mTileDataset)
+                mDataset.close();
+        }
 
-            }
+        @Override
+        public void cancel() {
 
-        };
+        }
     }
 
     int mRefs;
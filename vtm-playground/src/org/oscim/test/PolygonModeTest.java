@@ -0,0 +1,83 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.test;
+
+import com.badlogic.gdx.Input;
+
+import org.oscim.gdx.GdxMap;
+import org.oscim.gdx.GdxMapApp;
+import org.oscim.layers.MetricsLayer;
+import org.oscim.layers.tile.vector.VectorTileLoader;
+import org.oscim.layers.tile.vector.labeling.LabelLayer;
+import org.oscim.theme.VtmThemes;
+import org.oscim.tiling.source.mapfile.MapFileTileSource;
+
+import java.io.File;
+
+/**
+ * Compare load and frame times of polygons drawn by stencil (1),
+ * mesh (2) and adaptive mode (3) on tiles of a map file.
+ */
+public class PolygonModeTest extends GdxMap {
+
+    private static File mapFile;
+
+    private MetricsLayer mMetricsLayer;
+
+    @Override
+    protected boolean onKeyDown(int keycode) {
+        if (keycode == Input.Keys.NUM_1) {
+            VectorTileLoader.USE_MESH_POLY = false;
+            VectorTileLoader.ADAPTIVE_MESH_POLY = false;
+        } else if (keycode == Input.Keys.NUM_2) {
+            VectorTileLoader.USE_MESH_POLY = true;
+            VectorTileLoader.ADAPTIVE_MESH_POLY = false;
+        } else if (keycode == Input.Keys.NUM_3) {
+            VectorTileLoader.USE_MESH_POLY = false;
+            VectorTileLoader.ADAPTIVE_MESH_POLY = true;
+        } else {
+            return false;
+        }
+
+        mMetricsLayer.getCollector().reset();
+        mMap.clearMap();
+        mMap.updateMap(true);
+        return true;
+    }
+
+    @Override
+    public void createLayers() {
+        MapFileTileSource tileSource = new MapFileTileSource();
+        tileSource.setMapFile(mapFile.getAbsolutePath());
+
+        mMap.layers().add(new LabelLayer(mMap, mMap.setBaseMap(tileSource)));
+        mMap.setTheme(VtmThemes.DEFAULT);
+
+        mMetricsLayer = new MetricsLayer(mMap);
+        mMap.layers().add(mMetricsLayer);
+
+        mMap.setMapPosition(53.08, 8.83, 1 << 14);
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0)
+            throw new IllegalArgumentException("missing argument: <mapFile>");
+
+        mapFile = new File(args[0]);
+
+        GdxMapApp.init();
+        GdxMapApp.run(new PolygonModeTest());
+    }
+}
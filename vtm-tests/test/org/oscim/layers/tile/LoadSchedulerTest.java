@@ -0,0 +1,86 @@
+package org.oscim.layers.tile;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LoadSchedulerTest {
+
+    static TileManager makeManager(float distance, boolean prefetch) {
+        MapTile t = new MapTile(null, 0, 0, 0);
+        t.distance = distance;
+
+        TileManager m = mock(TileManager.class);
+        when(m.peekTileJob()).thenReturn(t);
+        when(m.hasTileJobs()).thenReturn(true);
+        when(m.isPrefetching()).thenReturn(prefetch);
+        m.mLoadWeight = 1;
+        return m;
+    }
+
+    @Test
+    public void shouldLoadVisibleTilesFirst() {
+        TileManager visible = makeManager(10, false);
+        TileManager prefetch = makeManager(1, true);
+
+        assertThat(LoadScheduler.compare(visible, prefetch)).isLessThan(0);
+        assertThat(LoadScheduler.compare(prefetch, visible)).isGreaterThan(0);
+    }
+
+    @Test
+    public void shouldShareByWeight() {
+        TileManager a = makeManager(10, false);
+        TileManager b = makeManager(1, false);
+
+        /* closer tile first */
+        assertThat(LoadScheduler.compare(a, b)).isGreaterThan(0);
+
+        /* 'a' may load twice as many tiles as 'b', equal share
+         * is ordered by distance */
+        a.mLoadWeight = 2;
+        a.mLoading = 1;
+        b.mLoading = 0;
+        assertThat(LoadScheduler.compare(a, b)).isGreaterThan(0);
+
+        b.mLoading = 1;
+        assertThat(LoadScheduler.compare(a, b)).isLessThan(0);
+    }
+
+    @Test
+    public void shouldLimitConcurrentLoads() throws Exception {
+        int maxConcurrent = LoadScheduler.MAX_CONCURRENT;
+        LoadScheduler.MAX_CONCURRENT = 1;
+        try {
+            final LoadScheduler scheduler = new LoadScheduler();
+            final TileManager m = makeManager(1, false);
+
+            assertThat(scheduler.acquire(m)).isTrue();
+
+            final boolean[] acquired = new boolean[1];
+            Thread t = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        acquired[0] = scheduler.acquire(m);
+                    } catch (InterruptedException e) {
+                    }
+                }
+            };
+            t.start();
+            while (t.getState() != Thread.State.WAITING)
+                Thread.sleep(1);
+
+            assertThat(scheduler.getRunning()).isEqualTo(1);
+
+            scheduler.release(m);
+            t.join();
+
+            assertThat(acquired[0]).isTrue();
+            assertThat(scheduler.getRunning()).isEqualTo(1);
+        } finally {
+            LoadScheduler.MAX_CONCURRENT = maxConcurrent;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package org.oscim.layers.tile;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.oscim.core.MapPosition;
+import org.oscim.core.Tile;
+import org.oscim.map.Animator;
+import org.oscim.map.Map;
+import org.oscim.map.ViewController;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyFloat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.oscim.layers.tile.MapTile.State.NEW_DATA;
+import static org.oscim.layers.tile.MapTile.State.NONE;
+import static org.oscim.layers.tile.MapTile.State.READY;
+
+public class TileManagerTest {
+
+    static final int ZOOM = 10;
+
+    TileManager mTileManager;
+    MapPosition mEnd;
+
+    @Before
+    public void setUp() {
+        ViewController viewport = mock(ViewController.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                /* view of 2x2 tiles */
+                float[] box = (float[]) invocation.getArguments()[0];
+                int s = Tile.SIZE;
+                float[] extents = {-s, -s, s, -s, s, s, -s, s};
+                System.arraycopy(extents, 0, box, 0, 8);
+                return null;
+            }
+        }).when(viewport).getMapExtents(any(float[].class), anyFloat());
+
+        Animator animator = mock(Animator.class);
+        when(animator.getEndPosition(any(MapPosition.class))).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                if (mEnd == null)
+                    return false;
+                ((MapPosition) invocation.getArguments()[0]).copy(mEnd);
+                return true;
+            }
+        });
+
+        Map map = mock(Map.class);
+        when(map.viewport()).thenReturn(viewport);
+        when(map.animator()).thenReturn(animator);
+        when(map.getWidth()).thenReturn(2 * Tile.SIZE);
+        when(map.getHeight()).thenReturn(2 * Tile.SIZE);
+
+        mTileManager = new TileManager(map, 100);
+    }
+
+    static MapPosition position(double tileX, double tileY) {
+        MapPosition pos = new MapPosition();
+        pos.x = tileX / (1 << ZOOM);
+        pos.y = tileY / (1 << ZOOM);
+        pos.scale = 1 << ZOOM;
+        pos.zoomLevel = ZOOM;
+        return pos;
+    }
+
+    /**
+     * Poll all queued jobs and reset them as they would be when
+     * the queue is cleared.
+     *
+     * @return the prefetch jobs.
+     */
+    List<MapTile> pollPrefetchJobs() {
+        List<MapTile> tiles = new ArrayList<MapTile>();
+        while (mTileManager.hasTileJobs()) {
+            boolean prefetch = mTileManager.isPrefetching();
+            MapTile t = mTileManager.getTileJob();
+            if (prefetch)
+                tiles.add(t);
+            t.setState(NONE);
+        }
+        return tiles;
+    }
+
+    /**
+     * Poll all queued jobs and set them READY as if they were
+     * loaded and uploaded.
+     */
+    void loadTileJobs() {
+        while (mTileManager.hasTileJobs()) {
+            MapTile t = mTileManager.getTileJob();
+            t.setState(NEW_DATA);
+            t.setState(READY);
+        }
+    }
+
+    @Test
+    public void shouldNotPrefetchWithoutAnimation() {
+        mTileManager.update(position(512.5, 512.5));
+
+        assertThat(pollPrefetchJobs()).isEmpty();
+    }
+
+    @Test
+    public void shouldPrefetchAlongPath() {
+        mEnd = position(516.5, 512.5);
+        mTileManager.update(position(512.5, 512.5));
+
+        List<MapTile> tiles = pollPrefetchJobs();
+        assertThat(tiles).isNotEmpty();
+        assertThat(tiles).contains(mTileManager.getTile(516, 512, ZOOM));
+
+        for (MapTile t : tiles) {
+            /* right of the visible tiles */
+            assertThat(t.tileX).isGreaterThan(513);
+            assertThat((int) t.zoomLevel).isEqualTo(ZOOM);
+        }
+    }
+
+    @Test
+    public void shouldLimitPrefetchToBudget() {
+        mTileManager.setPrefetchBudget(3);
+        mEnd = position(520.5, 512.5);
+        mTileManager.update(position(512.5, 512.5));
+
+        assertThat(pollPrefetchJobs()).hasSize(3);
+    }
+
+    @Test
+    public void shouldKeepSelectionForSameEndPosition() {
+        mTileManager.setPrefetchBudget(3);
+        mEnd = position(516.5, 512.5);
+        mTileManager.update(position(512.5, 512.5));
+        List<MapTile> first = pollPrefetchJobs();
+        assertThat(first).hasSize(3);
+
+        mTileManager.update(position(512.5, 512.5));
+        assertThat(pollPrefetchJobs()).containsOnly(first.toArray(new MapTile[first.size()]));
+
+        /* moving along the path does not select more tiles */
+        mTileManager.update(position(513.5, 512.5));
+        for (MapTile t : pollPrefetchJobs())
+            assertThat(first).contains(t);
+    }
+
+    @Test
+    public void shouldSelectAgainWhenEndPositionChanges() {
+        mEnd = position(516.5, 512.5);
+        mTileManager.update(position(512.5, 512.5));
+        pollPrefetchJobs();
+
+        mEnd = position(512.5, 516.5);
+        mTileManager.update(position(512.5, 512.5));
+
+        List<MapTile> tiles = pollPrefetchJobs();
+        assertThat(tiles).contains(mTileManager.getTile(512, 516, ZOOM));
+        for (MapTile t : tiles)
+            assertThat(t.tileY).isGreaterThan(513);
+    }
+
+    @Test
+    public void shouldRemoveTilesExceedingCacheLimit() {
+        for (int i = 0; i < 6; i++) {
+            mTileManager.update(position(512.5 + i * 10, 512.5));
+            loadTileJobs();
+        }
+        /* all tiles fit into the cache */
+        assertThat(mTileManager.getTile(512, 512, ZOOM)).isNotNull();
+
+        mTileManager.setCacheLimit(10);
+        assertThat(mTileManager.getCacheLimit()).isEqualTo(10);
+
+        mTileManager.update(position(572.5, 512.5));
+
+        /* farthest tiles are removed first */
+        assertThat(mTileManager.getTile(512, 512, ZOOM)).isNull();
+        assertThat(mTileManager.getTile(572, 512, ZOOM)).isNotNull();
+    }
+}
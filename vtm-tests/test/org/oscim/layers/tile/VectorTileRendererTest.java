@@ -0,0 +1,36 @@
+package org.oscim.layers.tile;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.data.Offset.offset;
+
+public class VectorTileRendererTest {
+
+    /**
+     * @return alpha of the proxy with the tile drawn over it.
+     */
+    static float blend(float layerAlpha, float fade) {
+        float proxy = VectorTileRenderer.getProxyAlpha(layerAlpha, fade);
+        return 1 - (1 - proxy) * (1 - layerAlpha * fade);
+    }
+
+    @Test
+    public void shouldDrawOpaqueProxyForOpaqueLayer() {
+        assertThat(VectorTileRenderer.getProxyAlpha(1, 0)).isEqualTo(1);
+        assertThat(VectorTileRenderer.getProxyAlpha(1, 0.5f)).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldKeepLayerAlphaWhileFading() {
+        for (float fade = 0; fade < 1; fade += 0.25f) {
+            assertThat(blend(0.5f, fade)).isEqualTo(0.5f, offset(1E-6f));
+            assertThat(blend(0.8f, fade)).isEqualTo(0.8f, offset(1E-6f));
+        }
+    }
+
+    @Test
+    public void shouldNotDrawProxyAfterFade() {
+        assertThat(VectorTileRenderer.getProxyAlpha(0.5f, 1)).isEqualTo(0);
+    }
+}
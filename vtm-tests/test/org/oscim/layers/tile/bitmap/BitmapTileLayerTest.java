@@ -0,0 +1,88 @@
+package org.oscim.layers.tile.bitmap;
+
+import org.junit.After;
+import org.junit.Test;
+import org.oscim.layers.tile.TileManager;
+import org.oscim.layers.tile.VectorTileRenderer;
+import org.oscim.map.Map;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.TileSource;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BitmapTileLayerTest {
+
+    static final int CACHE_LIMIT = 10;
+
+    TileManager mTileManager;
+    VectorTileRenderer mRenderer;
+    BitmapTileLayer mLayer;
+
+    BitmapTileLayer createLayer(boolean rgb565) {
+        Map map = mock(Map.class);
+        TileSource tileSource = mock(TileSource.class);
+        when(tileSource.getDataSource()).thenReturn(mock(ITileDataSource.class));
+        when(tileSource.getTileSize()).thenReturn(256);
+
+        mTileManager = new TileManager(map, CACHE_LIMIT);
+        mRenderer = mock(VectorTileRenderer.class);
+        mLayer = new BitmapTileLayer(map, tileSource, mTileManager, mRenderer, rgb565);
+        return mLayer;
+    }
+
+    @After
+    public void tearDown() {
+        if (mLayer != null)
+            mLayer.onDetach();
+    }
+
+    @Test
+    public void shouldRaiseCacheLimitInPyramidMode() {
+        createLayer(false).setPyramidMode(true);
+
+        /* 32 MB of 256x256 RGBA textures */
+        assertThat(mTileManager.getCacheLimit())
+                .isEqualTo(BitmapTileLayer.CACHE_BUDGET / (256 * 256 * 4))
+                .isEqualTo(128);
+        verify(mRenderer).setCrossFade(true);
+    }
+
+    @Test
+    public void shouldKeepTwiceTheTilesWithRGB565() {
+        createLayer(false).setPyramidMode(true);
+        int rgba = mTileManager.getCacheLimit();
+        mLayer.onDetach();
+
+        createLayer(true).setPyramidMode(true);
+        assertThat(mTileManager.getCacheLimit()).isEqualTo(2 * rgba);
+    }
+
+    @Test
+    public void shouldSizeTexturesBySourceTileSize() {
+        TileSource tileSource = mock(TileSource.class);
+        when(tileSource.getTileSize()).thenReturn(256);
+        assertThat(BitmapTileLayer.textureBytes(tileSource, false)).isEqualTo(256 * 256 * 4);
+        assertThat(BitmapTileLayer.textureBytes(tileSource, true)).isEqualTo(256 * 256 * 2);
+
+        /* the pool keeps 20 RGBA textures of 256x256 pixels */
+        assertThat(BitmapTileLayer.POOL_BUDGET / BitmapTileLayer.textureBytes(tileSource, false))
+                .isEqualTo(20);
+
+        /* tile size not set */
+        when(tileSource.getTileSize()).thenReturn(0);
+        assertThat(BitmapTileLayer.textureBytes(tileSource, false)).isEqualTo(256 * 256 * 4);
+    }
+
+    @Test
+    public void shouldRestoreCacheLimit() {
+        BitmapTileLayer layer = createLayer(false);
+        layer.setPyramidMode(true);
+        layer.setPyramidMode(false);
+
+        assertThat(mTileManager.getCacheLimit()).isEqualTo(CACHE_LIMIT);
+        verify(mRenderer).setCrossFade(false);
+    }
+}
@@ -0,0 +1,34 @@
+package org.oscim.layers.tile.bitmap;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class RGB565BitmapTest {
+
+    @Test
+    public void shouldConvertToRGB565() {
+        assertThat(RGB565Bitmap.toRGB565(0xffff0000)).isEqualTo((short) 0xf800);
+        assertThat(RGB565Bitmap.toRGB565(0xff00ff00)).isEqualTo((short) 0x07e0);
+        assertThat(RGB565Bitmap.toRGB565(0xff0000ff)).isEqualTo((short) 0x001f);
+        assertThat(RGB565Bitmap.toRGB565(0xffffffff)).isEqualTo((short) 0xffff);
+    }
+
+    @Test
+    public void shouldConvertBitmap() {
+        RGB565Bitmap b = RGB565Bitmap.convert(2, 1, new int[]{0xffff0000, 0xff0000ff});
+        assertThat(b.getWidth()).isEqualTo(2);
+        assertThat(b.isValid()).isTrue();
+
+        b.recycle();
+        assertThat(b.isValid()).isFalse();
+    }
+
+    @Test
+    public void shouldNotConvertWithoutPixels() {
+        assertThat(RGB565Bitmap.convert(2, 1, null)).isNull();
+
+        /* reused array of a smaller tile */
+        assertThat(RGB565Bitmap.convert(2, 2, new int[2])).isNull();
+    }
+}
@@ -0,0 +1,57 @@
+package org.oscim.layers.tile.buildings;
+
+import org.junit.Test;
+import org.oscim.core.MapElement;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class BuildingLayerTest {
+
+    private static MapElement square(float x, float y, float size) {
+        MapElement e = new MapElement();
+        e.startPolygon();
+        e.addPoint(x, y);
+        e.addPoint(x + size, y);
+        e.addPoint(x + size, y + size);
+        e.addPoint(x, y + size);
+        return e;
+    }
+
+    @Test
+    public void shouldDropSmallFootprints() {
+        assertThat(BuildingLayer.isTooSmall(square(10, 10, 1))).isTrue();
+        assertThat(BuildingLayer.isTooSmall(square(10, 10, 4))).isFalse();
+    }
+
+    @Test
+    public void shouldMeasureFootprintsInTileBuffer() {
+        assertThat(BuildingLayer.isTooSmall(square(-20, -20, 1))).isTrue();
+        assertThat(BuildingLayer.isTooSmall(square(-20, -20, 10))).isFalse();
+        assertThat(BuildingLayer.isTooSmall(square(400, 400, 1))).isTrue();
+        assertThat(BuildingLayer.isTooSmall(square(400, 400, 10))).isFalse();
+    }
+
+    @Test
+    public void shouldSimplifyCopyOfOutline() {
+        MapElement e = square(0, 0, 10);
+        /* points closer than 1.5 pixels */
+        e.startHole();
+        e.addPoint(2, 2);
+        e.addPoint(2.5f, 2);
+        e.addPoint(5, 2);
+        e.addPoint(5, 5);
+
+        MapElement s = new MapElement();
+        s.set(e);
+        s.simplify(1.5f * 1.5f, true);
+
+        assertThat(s.index[0]).isEqualTo(8);
+        assertThat(s.index[1]).isEqualTo(6);
+        assertThat(s.pointPos).isEqualTo(14);
+        assertThat(s.points[10]).isEqualTo(5.0);
+
+        /* original is unchanged */
+        assertThat(e.index[1]).isEqualTo(8);
+        assertThat(e.pointPos).isEqualTo(16);
+    }
+}
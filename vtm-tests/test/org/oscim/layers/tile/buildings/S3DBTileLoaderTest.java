@@ -0,0 +1,150 @@
+package org.oscim.layers.tile.buildings;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tag;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.layers.tile.TileManager;
+import org.oscim.renderer.bucket.ExtrusionBucket;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.QueryResult;
+import org.oscim.tiling.TileSource;
+
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class S3DBTileLoaderTest {
+
+    /* shorts per mesh vertex */
+    static final int VERTEX_SIZE = 6;
+
+    /* vertices of the transparent tile plane in each first mesh */
+    static final int PLANE_VERTICES = 4;
+
+    final List<MapElement> mElements = new ArrayList<MapElement>();
+    S3DBTileLoader mLoader;
+
+    @Before
+    public void setUp() {
+        ITileDataSource dataSource = new ITileDataSource() {
+            @Override
+            public void query(MapTile tile, ITileDataSink sink) {
+                for (MapElement e : mElements)
+                    sink.process(e);
+                sink.completed(QueryResult.SUCCESS);
+            }
+
+            @Override
+            public void dispose() {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        };
+        TileSource tileSource = mock(TileSource.class);
+        when(tileSource.getDataSource()).thenReturn(dataSource);
+
+        mLoader = new S3DBTileLoader(mock(TileManager.class), tileSource);
+    }
+
+    /**
+     * @param z   height of the triangles, distinguishes their vertices.
+     * @param num number of triangles.
+     */
+    static MapElement triangles(int z, int num, String color) {
+        MapElement e = new MapElement();
+        e.type = GeometryType.TRIS;
+        e.points = new double[num * 9];
+        e.index = new int[num * 3];
+        for (int i = 0; i < num; i++) {
+            double[] p = {0, 0, z + i, 10, 0, z + i, 0, 10, z + i};
+            System.arraycopy(p, 0, e.points, i * 9, 9);
+            for (int j = 0; j < 3; j++)
+                e.index[i * 3 + j] = i * 3 + j;
+        }
+        if (color != null)
+            e.tags.add(new Tag("c", color));
+        return e;
+    }
+
+    ExtrusionBucket load() {
+        MapTile tile = new MapTile(null, 0, 0, 17);
+        assertThat(mLoader.loadTile(tile)).isTrue();
+        return BuildingLayer.get(tile).buckets();
+    }
+
+    static short[] compile(ExtrusionBucket b) {
+        ShortBuffer vbo = ShortBuffer.allocate(1 << 20);
+        ShortBuffer ibo = ShortBuffer.allocate(1 << 20);
+        b.compile(vbo, ibo);
+        return Arrays.copyOf(vbo.array(), vbo.position());
+    }
+
+    static int rgba(short[] vertices, int vertex) {
+        int pos = vertex * VERTEX_SIZE;
+        return (vertices[pos + 4] & 0xffff) | (vertices[pos + 5] & 0xffff) << 16;
+    }
+
+    @Test
+    public void shouldStoreColorPerVertex() {
+        mElements.add(triangles(0, 1, "white"));
+        mElements.add(triangles(0, 1, "black"));
+        /* same vertices as the first triangle */
+        mElements.add(triangles(0, 1, "white"));
+
+        ExtrusionBucket b = load();
+        assertThat(b.next).isNull();
+
+        short[] vertices = compile(b);
+        assertThat(vertices.length).isEqualTo((PLANE_VERTICES + 6) * VERTEX_SIZE);
+
+        /* transparent plane */
+        assertThat(rgba(vertices, 0)).isEqualTo(0);
+
+        /* premultiplied, bytes in order r, g, b, a */
+        for (int i = 0; i < 3; i++) {
+            assertThat(rgba(vertices, PLANE_VERTICES + i)).isEqualTo(0xfff0f0f0);
+            assertThat(rgba(vertices, PLANE_VERTICES + 3 + i)).isEqualTo(0xff565656);
+        }
+    }
+
+    @Test
+    public void shouldCountIndicesToTerminator() {
+        MapElement e = triangles(0, 1, null);
+        /* index buffer with unused capacity */
+        e.index = Arrays.copyOf(e.index, 1 << 16);
+        e.index[3] = -1;
+        mElements.add(e);
+        mElements.add(triangles(1, 1, null));
+
+        assertThat(S3DBTileLoader.numIndices(e)).isEqualTo(3);
+
+        ExtrusionBucket b = load();
+        assertThat(b.next).isNull();
+        assertThat(compile(b).length).isEqualTo((PLANE_VERTICES + 6) * VERTEX_SIZE);
+    }
+
+    @Test
+    public void shouldSplitBeforeIndexOverflow() {
+        int num = 11000;
+        mElements.add(triangles(0, num, null));
+        mElements.add(triangles(num, num, null));
+
+        ExtrusionBucket b = load();
+        assertThat(b.next).isNotNull();
+        assertThat(b.next.next).isNull();
+
+        assertThat(compile(b).length).isEqualTo((PLANE_VERTICES + 3 * num) * VERTEX_SIZE);
+        assertThat(compile(b.next()).length).isEqualTo(3 * num * VERTEX_SIZE);
+    }
+}
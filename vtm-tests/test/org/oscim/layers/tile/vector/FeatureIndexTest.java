@@ -0,0 +1,102 @@
+package org.oscim.layers.tile.vector;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tag;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class FeatureIndexTest {
+    private FeatureIndex index;
+    private List<FeatureIndex.Feature> out;
+
+    @Before
+    public void setUp() {
+        index = new FeatureIndex();
+        out = new ArrayList<FeatureIndex.Feature>();
+
+        MapElement e = new MapElement();
+        e.startPolygon();
+        e.addPoint(100, 100);
+        e.addPoint(300, 100);
+        e.addPoint(300, 300);
+        e.addPoint(100, 300);
+        e.startHole();
+        e.addPoint(150, 150);
+        e.addPoint(200, 150);
+        e.addPoint(200, 200);
+        e.addPoint(150, 200);
+        e.tags.add(new Tag("landuse", "forest"));
+        index.add(e);
+
+        e.clear();
+        e.tags.clear();
+        e.startLine();
+        e.addPoint(0, 0);
+        e.addPoint(400, 400);
+        e.tags.add(new Tag("highway", "primary"));
+        index.add(e);
+
+        e.clear();
+        e.tags.clear();
+        e.startPoints();
+        e.addPoint(250, 120);
+        e.tags.add(new Tag("amenity", "cafe"));
+        index.add(e);
+
+        index.finish();
+    }
+
+    @Test
+    public void shouldFindPolygon() {
+        assertThat(index.search(280, 200, 1, out)).isEqualTo(1);
+        assertThat(out.get(0).type).isEqualTo(GeometryType.POLY);
+        assertThat(out.get(0).tags.getValue("landuse")).isEqualTo("forest");
+    }
+
+    @Test
+    public void shouldNotFindPolygonInHole() {
+        assertThat(index.search(160, 190, 1, out)).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldFindLineWithinRadius() {
+        assertThat(index.search(50, 55, 4, out)).isEqualTo(1);
+        assertThat(out.get(0).tags.getValue("highway")).isEqualTo("primary");
+
+        out.clear();
+        assertThat(index.search(50, 65, 4, out)).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldFindPointAndArea() {
+        assertThat(index.search(252, 121, 4, out)).isEqualTo(2);
+        assertThat(out.get(0).getArea() + out.get(1).getArea()).isEqualTo(200 * 200);
+    }
+
+    @Test
+    public void shouldFindFeaturesInBox() {
+        /* crosses the line only */
+        assertThat(index.search(10, 5, 20, 12, out)).isEqualTo(1);
+        assertThat(out.get(0).type).isEqualTo(GeometryType.LINE);
+
+        /* point within the polygon */
+        out.clear();
+        assertThat(index.search(240, 110, 260, 130, out)).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldFindPolygonContainingBox() {
+        assertThat(index.search(250, 200, 290, 240, out)).isEqualTo(1);
+        assertThat(out.get(0).type).isEqualTo(GeometryType.POLY);
+
+        /* box within the hole */
+        out.clear();
+        assertThat(index.search(160, 175, 170, 195, out)).isEqualTo(0);
+    }
+}
@@ -0,0 +1,225 @@
+package org.oscim.layers.tile.vector;
+
+import org.junit.Test;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tag;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.QueryResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class OverzoomTileDataSourceTest {
+
+    static class ParentSource implements ITileDataSource {
+        int queries;
+        MapTile lastTile;
+
+        @Override
+        public void query(MapTile tile, ITileDataSink sink) {
+            queries++;
+            lastTile = tile;
+
+            MapElement e = new MapElement();
+            e.startLine();
+            e.addPoint(0, Tile.SIZE / 4);
+            e.addPoint(Tile.SIZE, Tile.SIZE / 4);
+            e.tags.add(new Tag("highway", "primary"));
+            sink.process(e);
+
+            e = new MapElement();
+            e.startPoints();
+            e.addPoint(Tile.SIZE * 3 / 4, Tile.SIZE * 3 / 4);
+            e.tags.add(new Tag("amenity", "cafe"));
+            sink.process(e);
+
+            sink.completed(QueryResult.SUCCESS);
+        }
+
+        @Override
+        public void dispose() {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+
+    /**
+     * Blocks in query() until released.
+     */
+    static class BlockingSource extends ParentSource {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void query(MapTile tile, ITileDataSink sink) {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                sink.completed(QueryResult.FAILED);
+                return;
+            }
+            super.query(tile, sink);
+        }
+    }
+
+    static class Sink implements ITileDataSink {
+        final List<MapElement> elements = new ArrayList<MapElement>();
+        QueryResult result;
+
+        @Override
+        public void process(MapElement element) {
+            MapElement copy = new MapElement();
+            copy.type = element.type;
+            copy.points = element.points.clone();
+            copy.pointPos = element.pointPos;
+            copy.tags.set(element.tags.asArray());
+            elements.add(copy);
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+            this.result = result;
+        }
+    }
+
+    @Test
+    public void shouldClipParentFeatures() {
+        ParentSource source = new ParentSource();
+        OverzoomTileDataSource ds = new OverzoomTileDataSource(source, 14,
+                new HashMap<Tile, OverzoomTileDataSource.Parent>());
+
+        /* top-left child contains the line */
+        Sink sink = new Sink();
+        ds.query(new MapTile(null, 200, 100, 15), sink);
+
+        assertEquals(QueryResult.SUCCESS, sink.result);
+        assertEquals(100, source.lastTile.tileX);
+        assertEquals(50, source.lastTile.tileY);
+        assertEquals(14, source.lastTile.zoomLevel);
+
+        assertEquals(1, sink.elements.size());
+        MapElement line = sink.elements.get(0);
+        assertEquals("primary", line.tags.getValue("highway"));
+        assertEquals(Tile.SIZE / 2, line.points[1], 0.001);
+        assertEquals(Tile.SIZE + OverzoomTileDataSource.CLIP_BUFFER, line.points[2], 0.001);
+
+        /* bottom-right child contains the point, parent is cached */
+        sink = new Sink();
+        ds.query(new MapTile(null, 201, 101, 15), sink);
+
+        assertEquals(1, source.queries);
+        assertEquals(1, sink.elements.size());
+        MapElement point = sink.elements.get(0);
+        assertEquals("cafe", point.tags.getValue("amenity"));
+        assertEquals(Tile.SIZE / 2, point.points[0], 0.001);
+        assertEquals(Tile.SIZE / 2, point.points[1], 0.001);
+    }
+
+    @Test
+    public void shouldPassTilesUpToMaxZoom() {
+        ParentSource source = new ParentSource();
+        OverzoomTileDataSource ds = new OverzoomTileDataSource(source, 14,
+                new HashMap<Tile, OverzoomTileDataSource.Parent>());
+
+        Sink sink = new Sink();
+        MapTile tile = new MapTile(null, 100, 50, 14);
+        ds.query(tile, sink);
+
+        assertEquals(tile, source.lastTile);
+        assertEquals(2, sink.elements.size());
+    }
+
+    @Test
+    public void shouldWaitForParentQueriedBySibling() throws Exception {
+        final BlockingSource source = new BlockingSource();
+        Map<Tile, OverzoomTileDataSource.Parent> cache =
+                new HashMap<Tile, OverzoomTileDataSource.Parent>();
+        final OverzoomTileDataSource first = new OverzoomTileDataSource(source, 14, cache);
+        final OverzoomTileDataSource second = new OverzoomTileDataSource(source, 14, cache);
+
+        final Sink firstSink = new Sink();
+        Thread t1 = new Thread() {
+            @Override
+            public void run() {
+                first.query(new MapTile(null, 200, 100, 15), firstSink);
+            }
+        };
+        t1.start();
+        source.entered.await();
+
+        final Sink secondSink = new Sink();
+        Thread t2 = new Thread() {
+            @Override
+            public void run() {
+                second.query(new MapTile(null, 201, 101, 15), secondSink);
+            }
+        };
+        t2.start();
+        while (t2.getState() != Thread.State.WAITING)
+            Thread.sleep(1);
+
+        source.release.countDown();
+        t1.join();
+        t2.join();
+
+        assertEquals(1, source.queries);
+        assertEquals(QueryResult.SUCCESS, firstSink.result);
+        assertEquals(QueryResult.SUCCESS, secondSink.result);
+        assertEquals(1, secondSink.elements.size());
+    }
+
+    @Test
+    public void shouldStopWaitingWhenCanceled() throws Exception {
+        final BlockingSource source = new BlockingSource();
+        Map<Tile, OverzoomTileDataSource.Parent> cache =
+                new HashMap<Tile, OverzoomTileDataSource.Parent>();
+        final OverzoomTileDataSource first = new OverzoomTileDataSource(source, 14, cache);
+        final OverzoomTileDataSource second = new OverzoomTileDataSource(source, 14, cache);
+
+        Thread t1 = new Thread() {
+            @Override
+            public void run() {
+                first.query(new MapTile(null, 200, 100, 15), new Sink());
+            }
+        };
+        t1.start();
+        source.entered.await();
+
+        final Sink secondSink = new Sink();
+        Thread t2 = new Thread() {
+            @Override
+            public void run() {
+                second.query(new MapTile(null, 201, 101, 15), secondSink);
+            }
+        };
+        t2.start();
+        while (t2.getState() != Thread.State.WAITING)
+            Thread.sleep(1);
+
+        second.cancel();
+        t2.join(1000);
+        assertFalse(t2.isAlive());
+        assertEquals(QueryResult.FAILED, secondSink.result);
+
+        source.release.countDown();
+        t1.join();
+        assertEquals(1, source.queries);
+    }
+}
@@ -0,0 +1,80 @@
+package org.oscim.layers.tile.vector;
+
+import org.junit.Test;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tag;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TileFeaturesTest {
+
+    @Test
+    public void shouldRestorePolygonWithHole() {
+        Tag tag = new Tag("building", "yes");
+        MapElement e = new MapElement();
+        e.startPolygon();
+        e.addPoint(0, 0);
+        e.addPoint(10, 0);
+        e.addPoint(10, 10);
+        e.startHole();
+        e.addPoint(2, 2);
+        e.addPoint(4, 2);
+        e.addPoint(4, 4);
+        e.tags.add(tag);
+        e.setLayer(7);
+
+        TileFeatures features = new TileFeatures();
+        features.add(e);
+        features.compact();
+
+        MapElement out = features.get(0, new MapElement());
+        assertEquals(GeometryType.POLY, out.type);
+        assertEquals(7, out.layer);
+        assertEquals(12, out.pointPos);
+        assertEquals(6, out.index[0]);
+        assertEquals(6, out.index[1]);
+        assertEquals(-1, out.index[2]);
+        assertEquals(4.0, out.points[11], 0);
+        assertEquals(1, out.tags.numTags);
+        assertSame(tag, out.tags.tags[0]);
+    }
+
+    @Test
+    public void shouldRestoreMultipleElements() {
+        TileFeatures features = new TileFeatures();
+        MapElement e = new MapElement();
+
+        for (int i = 0; i < 100; i++) {
+            e.clear();
+            e.tags.clear();
+            if (i % 2 == 0) {
+                e.startPoints();
+                e.addPoint(i, i);
+            } else {
+                e.startLine();
+                e.addPoint(0, 0);
+                e.addPoint(i, i);
+            }
+            e.tags.add(new Tag("ref", String.valueOf(i)));
+            features.add(e);
+        }
+        assertEquals(100, features.size());
+
+        MapElement out = new MapElement();
+        for (int i = 0; i < 100; i++) {
+            features.get(i, out);
+            if (i % 2 == 0) {
+                assertEquals(GeometryType.POINT, out.type);
+                assertEquals(2, out.pointPos);
+            } else {
+                assertEquals(GeometryType.LINE, out.type);
+                assertEquals(4, out.index[0]);
+                assertEquals(-1, out.index[1]);
+            }
+            assertEquals((double) i, out.points[out.pointPos - 1], 0);
+            assertEquals(String.valueOf(i), out.tags.getValue("ref"));
+        }
+    }
+}
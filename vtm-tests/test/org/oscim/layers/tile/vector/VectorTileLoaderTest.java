@@ -0,0 +1,257 @@
+package org.oscim.layers.tile.vector;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.backend.canvas.Color;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.TagSet;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.layers.tile.TileManager;
+import org.oscim.layers.tile.VectorTileRenderer;
+import org.oscim.map.Map;
+import org.oscim.renderer.bucket.PolygonBucket;
+import org.oscim.renderer.bucket.RenderBuckets;
+import org.oscim.renderer.bucket.TextureItem;
+import org.oscim.theme.IRenderTheme;
+import org.oscim.theme.styles.AreaStyle;
+import org.oscim.theme.styles.ExtrusionStyle;
+import org.oscim.theme.styles.RenderStyle;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.QueryResult;
+import org.oscim.utils.geom.GeometryUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.oscim.layers.tile.MapTile.State.LOADING;
+
+public class VectorTileLoaderTest {
+
+    /**
+     * Loads tiles of the given elements, all matching 'styles'.
+     */
+    static class TestLoader extends VectorTileLoader {
+        final VectorTileLayer layer;
+        final List<MapElement> elements = new ArrayList<MapElement>();
+
+        TestLoader(RenderStyle... styles) {
+            this(mockLayer(styles));
+        }
+
+        TestLoader(VectorTileLayer layer) {
+            super(layer);
+            this.layer = layer;
+            setDataSource(new ITileDataSource() {
+                @Override
+                public void query(MapTile tile, ITileDataSink sink) {
+                    for (MapElement e : elements)
+                        sink.process(e);
+                    sink.completed(QueryResult.SUCCESS);
+                }
+
+                @Override
+                public void dispose() {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+        }
+
+        static VectorTileLayer mockLayer(RenderStyle... styles) {
+            IRenderTheme theme = mock(IRenderTheme.class);
+            when(theme.getLevels()).thenReturn(1);
+            when(theme.matchElement(any(GeometryType.class), any(TagSet.class), anyInt()))
+                    .thenReturn(styles);
+
+            VectorTileLayer layer = mock(VectorTileLayer.class);
+            when(layer.getManager()).thenReturn(mock(TileManager.class));
+            when(layer.getTheme()).thenReturn(theme);
+            return layer;
+        }
+
+        RenderBuckets load(MapElement... elements) {
+            return load(new MapTile(null, 0, 0, 14), elements);
+        }
+
+        RenderBuckets load(MapTile tile, MapElement... elements) {
+            this.elements.clear();
+            this.elements.addAll(Arrays.asList(elements));
+
+            tile.setState(LOADING);
+            mTile = tile;
+            assertThat(loadTile(tile)).isTrue();
+            return (RenderBuckets) tile.data;
+        }
+    }
+
+    static double[] square(double x, double y, double size) {
+        return new double[]{x, y, x + size, y, x + size, y + size, x, y + size};
+    }
+
+    @Test
+    public void shouldPreferMeshForSmallPolygonsFarFromCenter() {
+        double[] points = square(0, 0, 4);
+        int[] index = {8, -1};
+        double area = GeometryUtils.area(points, index);
+
+        assertThat(area).isEqualTo(16);
+        assertThat(VectorTileLoader.preferMesh(points, index, 4, area)).isTrue();
+    }
+
+    @Test
+    public void shouldPreferStencilForLargePolygons() {
+        double[] points = square(0, 0, Tile.SIZE);
+        int[] index = {8, -1};
+        double area = GeometryUtils.area(points, index);
+
+        /* fan equals area */
+        assertThat(VectorTileLoader.preferMesh(points, index, 4, area)).isFalse();
+
+        /* too many points to tessellate */
+        points = square(0, 0, 4);
+        int numPoints = VectorTileLoader.MESH_MAX_POINTS * 2 + 1;
+        assertThat(VectorTileLoader.preferMesh(points, index, numPoints, 16)).isFalse();
+    }
+
+    @Test
+    public void shouldDetectConvexRings() {
+        assertThat(GeometryUtils.isConvex(square(0, 0, 1), 0, 8)).isTrue();
+
+        double[] arrow = {0, 0, 10, 0, 5, 2, 10, 10, 0, 10};
+        assertThat(GeometryUtils.isConvex(arrow, 0, arrow.length)).isFalse();
+    }
+
+    @Test
+    public void shouldNotMeshTexturedOrBlendedAreas() {
+        assertThat(VectorTileLoader.canMesh(AreaStyle.builder().color(Color.RED).build())).isTrue();
+
+        AreaStyle blend = AreaStyle.builder()
+                .color(Color.RED)
+                .blendColor(Color.BLUE)
+                .blendScale(16)
+                .build();
+        assertThat(VectorTileLoader.canMesh(blend)).isFalse();
+
+        AreaStyle texture = AreaStyle.builder()
+                .color(Color.RED)
+                .texture(new TextureItem(mock(Bitmap.class)))
+                .build();
+        assertThat(VectorTileLoader.canMesh(texture)).isFalse();
+
+        AreaStyle stroke = AreaStyle.builder()
+                .color(Color.RED)
+                .strokeColor(Color.BLACK)
+                .strokeWidth(1)
+                .build();
+        assertThat(VectorTileLoader.canMesh(stroke)).isFalse();
+    }
+
+    @Test
+    public void shouldKeepStrokedAreasOnPolygonPath() {
+        AreaStyle stroke = AreaStyle.builder()
+                .color(Color.RED)
+                .strokeColor(Color.BLACK)
+                .strokeWidth(1)
+                .build();
+
+        MapElement e = new MapElement();
+        e.startPolygon();
+        double[] points = square(0, 0, 4);
+        for (int i = 0; i < points.length; i += 2)
+            e.addPoint((float) points[i], (float) points[i + 1]);
+
+        /* would be tessellated without stroke */
+        assertThat(VectorTileLoader.preferMesh(e.points, e.index, 4, 16)).isTrue();
+
+        boolean adaptive = VectorTileLoader.ADAPTIVE_MESH_POLY;
+        VectorTileLoader.ADAPTIVE_MESH_POLY = true;
+        try {
+            RenderBuckets buckets = new TestLoader(stroke).load(e);
+            assertThat(buckets.get()).isInstanceOf(PolygonBucket.class);
+            assertThat(buckets.get().next).isNull();
+        } finally {
+            VectorTileLoader.ADAPTIVE_MESH_POLY = adaptive;
+        }
+    }
+
+    static MapElement polygon(double... points) {
+        MapElement e = new MapElement();
+        e.startPolygon();
+        for (int i = 0; i < points.length; i += 2)
+            e.addPoint((float) points[i], (float) points[i + 1]);
+        return e;
+    }
+
+    @Test
+    public void shouldPassUnsimplifiedGeometryToThemeHooks() {
+        AreaStyle area = AreaStyle.builder().color(Color.RED).build();
+        ExtrusionStyle extrusion = new ExtrusionStyle(0, Color.RED, Color.RED, Color.RED, 10);
+
+        TestLoader loader = new TestLoader(area, extrusion);
+        when(loader.layer.getSimplifyTolerance(anyInt())).thenReturn(1f);
+
+        final List<Integer> hookPoints = new ArrayList<Integer>();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                MapElement e = (MapElement) invocation.getArguments()[2];
+                hookPoints.add(e.getNumPoints());
+                return null;
+            }
+        }).when(loader.layer).callThemeHooks(any(MapTile.class), any(RenderBuckets.class),
+                any(MapElement.class), eq(extrusion), anyInt());
+
+        /* square with points on its edges */
+        MapElement building = polygon(10, 10, 50, 10, 90, 10, 90, 50,
+                90, 90, 50, 90, 10, 90, 10, 50);
+        /* collapses with the tolerance */
+        MapElement tiny = polygon(200, 200, 200.5, 200, 200.5, 200.5, 200, 200.5);
+
+        RenderBuckets buckets = loader.load(building, tiny);
+
+        assertThat(hookPoints).containsExactly(8, 4);
+        assertThat(building.getNumPoints()).isEqualTo(8);
+        assertThat(tiny.getNumPoints()).isEqualTo(4);
+
+        /* only the building is added to the polygon bucket */
+        assertThat(buckets.get()).isInstanceOf(PolygonBucket.class);
+        assertThat(buckets.get().next).isNull();
+    }
+
+    @Test
+    public void shouldUseSimplifyTolerancePerZoomLevel() {
+        Map map = mock(Map.class);
+        VectorTileLayer layer = new VectorTileLayer(map, new TileManager(map, 10),
+                mock(VectorTileRenderer.class));
+        try {
+            assertThat(layer.getSimplifyTolerance(10)).isEqualTo(0);
+
+            layer.setSimplification(0, 0, 4, 2);
+            assertThat(layer.getSimplifyTolerance(0)).isEqualTo(0);
+            assertThat(layer.getSimplifyTolerance(2)).isEqualTo(4);
+            assertThat(layer.getSimplifyTolerance(3)).isEqualTo(2);
+            /* last value for higher zoom-levels */
+            assertThat(layer.getSimplifyTolerance(17)).isEqualTo(2);
+
+            layer.setSimplification();
+            assertThat(layer.getSimplifyTolerance(2)).isEqualTo(0);
+        } finally {
+            layer.onDetach();
+        }
+    }
+}
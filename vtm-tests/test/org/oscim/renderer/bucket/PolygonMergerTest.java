@@ -0,0 +1,72 @@
+package org.oscim.renderer.bucket;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class PolygonMergerTest {
+
+    static class Rings implements PolygonMerger.RingSink {
+        final List<int[]> rings = new ArrayList<int[]>();
+
+        @Override
+        public void addRing(int[] ring, int length) {
+            int[] r = new int[length];
+            System.arraycopy(ring, 0, r, 0, length);
+            rings.add(r);
+        }
+    }
+
+    static void addRing(PolygonMerger m, int... xy) {
+        int n = xy.length;
+        for (int i = 0; i < n; i += 2) {
+            int a = PolygonMerger.pack((short) xy[i], (short) xy[i + 1]);
+            int b = PolygonMerger.pack((short) xy[(i + 2) % n], (short) xy[(i + 3) % n]);
+            m.addEdge(a, b);
+        }
+    }
+
+    @Test
+    public void shouldRemoveCommonEdge() {
+        PolygonMerger m = new PolygonMerger();
+        addRing(m, 0, 0, 10, 0, 10, 10, 0, 10);
+        addRing(m, 10, 0, 20, 0, 20, 10, 10, 10);
+        assertThat(m.getNumEdges()).isEqualTo(8);
+
+        Rings sink = new Rings();
+        m.merge(sink);
+
+        assertThat(sink.rings).hasSize(1);
+        assertThat(sink.rings.get(0).length).isEqualTo(6);
+        assertThat(m.getNumEdges()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldKeepSeparatePolygons() {
+        PolygonMerger m = new PolygonMerger();
+        addRing(m, 0, 0, 10, 0, 10, 10);
+        addRing(m, -20, -20, -10, -20, -10, -10);
+
+        Rings sink = new Rings();
+        m.merge(sink);
+
+        assertThat(sink.rings).hasSize(2);
+        assertThat(sink.rings.get(0).length).isEqualTo(3);
+        assertThat(sink.rings.get(1).length).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldCancelDuplicatePolygon() {
+        PolygonMerger m = new PolygonMerger();
+        addRing(m, 0, 0, 10, 0, 10, 10);
+        addRing(m, 0, 0, 10, 0, 10, 10);
+
+        Rings sink = new Rings();
+        m.merge(sink);
+
+        assertThat(sink.rings).isEmpty();
+    }
+}
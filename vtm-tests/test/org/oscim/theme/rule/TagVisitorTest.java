@@ -0,0 +1,53 @@
+package org.oscim.theme.rule;
+
+import org.junit.Test;
+import org.oscim.theme.styles.AreaStyle;
+import org.oscim.theme.styles.LineStyle;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class TagVisitorTest {
+
+    private static Rule build(RuleBuilder b) {
+        return b.onComplete(new int[]{0});
+    }
+
+    @Test
+    public void shouldCollectKeysAndValues() {
+        Rule highway = build(RuleBuilder.create("highway", "primary|secondary")
+                .addStyle(new LineStyle(0xff000000, 2))
+                .zoom((byte) 10, (byte) 20));
+        Rule water = build(RuleBuilder.create("water", null)
+                .rules(RuleBuilder.create("natural|waterway", null)));
+        Rule park = build(RuleBuilder.create(null, "park")
+                .addStyle(new AreaStyle(0xff00ff00)));
+
+        Rule.TagVisitor v = new Rule.TagVisitor(14);
+        highway.apply(v);
+        water.apply(v);
+        park.apply(v);
+
+        assertThat(v.keys).containsOnly("highway", "water", "natural", "waterway");
+        assertThat(v.values).containsOnly("park");
+        assertThat(v.matchesUntagged).isFalse();
+
+        /* highway only matches from zoom-level 10 */
+        v = new Rule.TagVisitor(8);
+        highway.apply(v);
+        assertThat(v.keys).isEmpty();
+    }
+
+    @Test
+    public void shouldMatchUntagged() {
+        /* matches when 'building' is not present */
+        Rule rule = build(RuleBuilder.create("building", "~|no")
+                .addStyle(new AreaStyle(0xff00ff00)));
+
+        Rule.TagVisitor v = new Rule.TagVisitor(14);
+        rule.apply(v);
+
+        assertThat(v.keys).containsOnly("building");
+        assertThat(v.values).containsOnly("no");
+        assertThat(v.matchesUntagged).isTrue();
+    }
+}
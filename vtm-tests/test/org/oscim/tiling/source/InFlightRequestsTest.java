@@ -0,0 +1,133 @@
+package org.oscim.tiling.source;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class InFlightRequestsTest {
+
+    @Test
+    public void shouldShareDownload() throws Exception {
+        final InFlightRequests requests = new InFlightRequests();
+        InFlightRequests.Request leader = requests.acquire("url");
+        assertThat(leader.isLeader()).isTrue();
+
+        final byte[][] result = new byte[1][];
+        final boolean[] isLeader = new boolean[1];
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                InFlightRequests.Request r = requests.acquire("url");
+                isLeader[0] = r.isLeader();
+                result[0] = r.await();
+            }
+        };
+        waiter.start();
+
+        while (waiter.getState() != Thread.State.TIMED_WAITING)
+            Thread.sleep(1);
+
+        requests.complete(leader, new byte[]{1, 2, 3});
+        waiter.join();
+
+        assertThat(isLeader[0]).isFalse();
+        assertThat(result[0]).isEqualTo(new byte[]{1, 2, 3});
+
+        /* next request downloads again */
+        assertThat(requests.acquire("url").isLeader()).isTrue();
+    }
+
+    @Test
+    public void shouldReturnNullOnFailure() throws Exception {
+        final InFlightRequests requests = new InFlightRequests();
+        InFlightRequests.Request leader = requests.acquire("url");
+
+        final byte[][] result = new byte[][]{new byte[0]};
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                result[0] = requests.acquire("url").await();
+            }
+        };
+        waiter.start();
+        while (waiter.getState() != Thread.State.TIMED_WAITING)
+            Thread.sleep(1);
+
+        requests.complete(leader, null);
+        waiter.join();
+
+        assertThat(result[0]).isNull();
+    }
+
+    @Test
+    public void shouldNotShareWithoutWaiters() throws Exception {
+        final InFlightRequests requests = new InFlightRequests();
+        InFlightRequests.Request leader = requests.acquire("url");
+
+        assertThat(requests.share(leader)).isFalse();
+
+        /* the URL is released, the next request downloads again */
+        InFlightRequests.Request next = requests.acquire("url");
+        assertThat(next.isLeader()).isTrue();
+        assertThat(next).isNotSameAs(leader);
+
+        requests.complete(leader, null);
+    }
+
+    @Test
+    public void shouldShareWithWaiters() throws Exception {
+        final InFlightRequests requests = new InFlightRequests();
+        InFlightRequests.Request leader = requests.acquire("url");
+
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                requests.acquire("url").await();
+            }
+        };
+        waiter.start();
+        while (waiter.getState() != Thread.State.TIMED_WAITING)
+            Thread.sleep(1);
+
+        assertThat(requests.share(leader)).isTrue();
+
+        requests.complete(leader, new byte[]{1});
+        waiter.join();
+    }
+
+    @Test
+    public void shouldWakeCanceledWaiter() throws Exception {
+        final InFlightRequests requests = new InFlightRequests();
+        InFlightRequests.Request leader = requests.acquire("url");
+
+        final byte[][] result = new byte[][]{new byte[0], new byte[0]};
+        Thread[] waiters = new Thread[2];
+        for (int i = 0; i < 2; i++) {
+            final int id = i;
+            waiters[i] = new Thread() {
+                @Override
+                public void run() {
+                    result[id] = requests.acquire("url").await();
+                }
+            };
+            waiters[i].start();
+            while (waiters[i].getState() != Thread.State.TIMED_WAITING)
+                Thread.sleep(1);
+        }
+
+        leader.cancel(waiters[0]);
+        waiters[0].join(1000);
+        assertThat(waiters[0].isAlive()).isFalse();
+        assertThat(result[0]).isNull();
+
+        /* other waiter still waits for the download */
+        while (waiters[1].getState() == Thread.State.BLOCKED
+                || waiters[1].getState() == Thread.State.RUNNABLE)
+            Thread.sleep(1);
+        assertThat(waiters[1].getState()).isEqualTo(Thread.State.TIMED_WAITING);
+
+        requests.complete(leader, new byte[]{1});
+        waiters[1].join();
+        assertThat(result[1]).isEqualTo(new byte[]{1});
+    }
+}
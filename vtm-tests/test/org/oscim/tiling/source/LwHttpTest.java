@@ -0,0 +1,262 @@
+package org.oscim.tiling.source;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.core.Tile;
+import org.oscim.tiling.source.oscimap4.OSciMap4TileSource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class LwHttpTest {
+    private MockWebServer server;
+    private OSciMap4TileSource tileSource;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        for (int i = 0; i < 4; i++)
+            server.enqueue(new MockResponse().setBody("TILE " + i));
+        server.play();
+        tileSource = new OSciMap4TileSource(server.getUrl("/tiles/vtm").toString());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void shouldReuseConnection() throws Exception {
+        HttpEngine engine = new LwHttp.LwHttpFactory().create(tileSource);
+
+        for (int i = 0; i < 2; i++) {
+            engine.sendRequest(new Tile(i, 2, (byte) 3));
+            assertThat(readLine(engine.read())).isEqualTo("TILE " + i);
+            assertThat(engine.requestCompleted(true)).isTrue();
+        }
+        engine.close();
+
+        assertThat(server.takeRequest().getPath()).isEqualTo("/tiles/vtm/3/0/2.vtm");
+        assertThat(server.takeRequest().getSequenceNumber()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldPipelineRequests() throws Exception {
+        HttpEngine.Factory factory = new LwHttp.LwHttpFactory(1, 4);
+        HttpEngine[] engines = new HttpEngine[3];
+
+        for (int i = 0; i < engines.length; i++) {
+            engines[i] = factory.create(tileSource);
+            engines[i].sendRequest(new Tile(i, 2, (byte) 3));
+        }
+        for (int i = 0; i < engines.length; i++) {
+            assertThat(readLine(engines[i].read())).isEqualTo("TILE " + i);
+            assertThat(engines[i].requestCompleted(true)).isTrue();
+        }
+
+        for (int i = 0; i < engines.length; i++) {
+            RecordedRequest request = server.takeRequest();
+            assertThat(request.getPath()).isEqualTo("/tiles/vtm/3/" + i + "/2.vtm");
+            /* all requests on one connection */
+            assertThat(request.getSequenceNumber()).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void shouldReadResponsesInRequestOrder() throws Exception {
+        HttpEngine.Factory factory = new LwHttp.LwHttpFactory(1, 4);
+        final HttpEngine first = factory.create(tileSource);
+        final HttpEngine second = factory.create(tileSource);
+
+        first.sendRequest(new Tile(0, 2, (byte) 3));
+        second.sendRequest(new Tile(1, 2, (byte) 3));
+
+        final String[] result = new String[1];
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    result[0] = readLine(second.read());
+                    second.requestCompleted(true);
+                } catch (IOException e) {
+                    result[0] = e.getMessage();
+                }
+            }
+        };
+        t.start();
+
+        /* second waits until the response of first was read */
+        t.join(200);
+        assertThat(t.isAlive()).isTrue();
+
+        assertThat(readLine(first.read())).isEqualTo("TILE 0");
+        first.requestCompleted(true);
+
+        t.join(5000);
+        assertThat(result[0]).isEqualTo("TILE 1");
+    }
+
+    @Test
+    public void shouldSkipResponseOfCanceledRequest() throws Exception {
+        HttpEngine.Factory factory = new LwHttp.LwHttpFactory(1, 4);
+        HttpEngine first = factory.create(tileSource);
+        final HttpEngine second = factory.create(tileSource);
+        HttpEngine third = factory.create(tileSource);
+
+        first.sendRequest(new Tile(0, 2, (byte) 3));
+        second.sendRequest(new Tile(1, 2, (byte) 3));
+        third.sendRequest(new Tile(2, 2, (byte) 3));
+
+        final String[] result = new String[1];
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    result[0] = readLine(second.read());
+                } catch (InterruptedIOException e) {
+                    result[0] = "canceled";
+                } catch (IOException e) {
+                    result[0] = e.getMessage();
+                }
+                second.requestCompleted(false);
+            }
+        };
+        t.start();
+        t.join(200);
+        assertThat(t.isAlive()).isTrue();
+
+        /* second stops waiting for its response */
+        second.close();
+        t.join(200);
+        assertThat(result[0]).isEqualTo("canceled");
+
+        assertThat(readLine(first.read())).isEqualTo("TILE 0");
+        first.requestCompleted(true);
+
+        /* response of second was skipped */
+        assertThat(readLine(third.read())).isEqualTo("TILE 2");
+        assertThat(third.requestCompleted(true)).isTrue();
+        t.join(5000);
+
+        /* no request was sent again and the connection is still used */
+        third.sendRequest(new Tile(3, 2, (byte) 3));
+        assertThat(readLine(third.read())).isEqualTo("TILE 3");
+        third.requestCompleted(true);
+
+        for (int i = 0; i < 4; i++) {
+            RecordedRequest request = server.takeRequest();
+            assertThat(request.getPath()).isEqualTo("/tiles/vtm/3/" + i + "/2.vtm");
+            assertThat(request.getSequenceNumber()).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void shouldNotReadResponseAfterCancel() throws Exception {
+        HttpEngine.Factory factory = new LwHttp.LwHttpFactory(1, 4);
+        HttpEngine first = factory.create(tileSource);
+        HttpEngine second = factory.create(tileSource);
+
+        first.sendRequest(new Tile(0, 2, (byte) 3));
+        second.sendRequest(new Tile(1, 2, (byte) 3));
+
+        first.close();
+        try {
+            first.read();
+            fail("expected InterruptedIOException");
+        } catch (InterruptedIOException e) {
+        }
+        first.requestCompleted(false);
+
+        assertThat(readLine(second.read())).isEqualTo("TILE 1");
+        assertThat(second.requestCompleted(true)).isTrue();
+        assertThat(server.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldKeepConnectionAfterErrorResponse() throws Exception {
+        MockWebServer other = new MockWebServer();
+        other.enqueue(new MockResponse().setBody("TILE 0"));
+        other.enqueue(new MockResponse().setResponseCode(404).setBody("Not Found"));
+        other.enqueue(new MockResponse().setBody("TILE 2"));
+        other.enqueue(new MockResponse().setBody("TILE 3"));
+        other.play();
+        try {
+            OSciMap4TileSource source = new OSciMap4TileSource(
+                    other.getUrl("/tiles/vtm").toString());
+            HttpEngine.Factory factory = new LwHttp.LwHttpFactory(1, 4);
+            HttpEngine[] engines = new HttpEngine[3];
+
+            for (int i = 0; i < engines.length; i++) {
+                engines[i] = factory.create(source);
+                engines[i].sendRequest(new Tile(i, 2, (byte) 3));
+            }
+            assertThat(readLine(engines[0].read())).isEqualTo("TILE 0");
+            engines[0].requestCompleted(true);
+
+            try {
+                engines[1].read();
+                fail("expected IOException");
+            } catch (IOException e) {
+                assertThat(e.getMessage()).contains("404");
+            }
+            assertThat(engines[1].requestCompleted(false)).isFalse();
+
+            /* error body was skipped */
+            assertThat(readLine(engines[2].read())).isEqualTo("TILE 2");
+            engines[2].requestCompleted(true);
+
+            engines[1].sendRequest(new Tile(3, 2, (byte) 3));
+            assertThat(readLine(engines[1].read())).isEqualTo("TILE 3");
+            engines[1].requestCompleted(true);
+
+            /* no request was sent again, all on one connection */
+            assertThat(other.getRequestCount()).isEqualTo(4);
+            for (int i = 0; i < 4; i++)
+                assertThat(other.takeRequest().getSequenceNumber()).isEqualTo(i);
+        } finally {
+            other.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldUseOnePoolPerServer() throws Exception {
+        MockWebServer other = new MockWebServer();
+        other.enqueue(new MockResponse().setBody("OTHER"));
+        other.play();
+        try {
+            HttpEngine.Factory factory = new LwHttp.LwHttpFactory(1, 4);
+            HttpEngine first = factory.create(tileSource);
+            HttpEngine second = factory.create(new OSciMap4TileSource(
+                    other.getUrl("/tiles/vtm").toString()));
+
+            first.sendRequest(new Tile(0, 2, (byte) 3));
+            second.sendRequest(new Tile(0, 2, (byte) 3));
+
+            assertThat(readLine(first.read())).isEqualTo("TILE 0");
+            first.requestCompleted(true);
+            assertThat(readLine(second.read())).isEqualTo("OTHER");
+            second.requestCompleted(true);
+
+            assertThat(server.getRequestCount()).isEqualTo(1);
+            assertThat(other.getRequestCount()).isEqualTo(1);
+        } finally {
+            other.shutdown();
+        }
+    }
+
+    private static String readLine(InputStream is) throws IOException {
+        return new BufferedReader(new InputStreamReader(is)).readLine();
+    }
+}
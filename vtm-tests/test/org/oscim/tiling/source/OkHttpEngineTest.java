@@ -13,8 +13,10 @@ import org.oscim.tiling.source.oscimap4.OSciMap4TileSource;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
 
 import static org.fest.assertions.api.Assertions.assertThat;
 
@@ -101,4 +103,29 @@ public class OkHttpEngineTest {
         engine.requestCompleted(true);
         assertThat(cache.getRequestCount()).isEqualTo(1);
     }
+
+    @Test(expected = IOException.class)
+    public void close_shouldCancelRequest() throws Exception {
+        server.enqueue(new MockResponse()
+                .setBody(new byte[1 << 16])
+                .throttleBody(1024, 1, TimeUnit.SECONDS));
+
+        engine.sendRequest(new Tile(1, 2, new Integer(3).byteValue()));
+        engine.requestCompleted(true);
+
+        engine.sendRequest(new Tile(1, 3, new Integer(3).byteValue()));
+        InputStream responseStream = engine.read();
+        engine.close();
+
+        /* canceled stream fails before the throttled body is complete */
+        byte[] buf = new byte[1024];
+        while (responseStream.read(buf) >= 0) ;
+    }
+
+    @Test(expected = IOException.class)
+    public void read_shouldFailAfterClose() throws Exception {
+        engine.sendRequest(new Tile(1, 2, new Integer(3).byteValue()));
+        engine.close();
+        engine.read();
+    }
 }
@@ -0,0 +1,201 @@
+package org.oscim.tiling.source;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.core.BoundingBox;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileCache;
+import org.oscim.tiling.ITileDataSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class TileSeederTest {
+    private static final BoundingBox BBOX = new BoundingBox(52.0, 13.0, 53.0, 14.0);
+
+    private MemoryCache cache;
+    private TestTileSource tileSource;
+    private AtomicInteger requests;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new MemoryCache();
+        requests = new AtomicInteger();
+        tileSource = new TestTileSource();
+        tileSource.setCache(cache);
+        tileSource.setHttpEngine(new HttpEngine.Factory() {
+            @Override
+            public HttpEngine create(UrlTileSource tileSource) {
+                return new TestHttpEngine(requests);
+            }
+        });
+    }
+
+    @Test
+    public void shouldLoadAllTilesOfRegion() throws Exception {
+        TileSeeder seeder = new TileSeeder(tileSource, BBOX, 8, 10);
+        seeder.start();
+        seeder.join();
+
+        assertThat(seeder.getTotalTiles()).isEqualTo(cache.tiles.size());
+        assertThat(seeder.getLoadedTiles()).isEqualTo(seeder.getTotalTiles());
+        assertThat(seeder.getFailedTiles()).isEqualTo(0);
+        assertThat(cache.tiles).containsKey(new Tile(137, 83, (byte) 8));
+    }
+
+    @Test
+    public void shouldSkipCachedTiles() throws Exception {
+        TileSeeder seeder = new TileSeeder(tileSource, BBOX, 8, 10);
+        seeder.start();
+        seeder.join();
+
+        seeder = new TileSeeder(tileSource, BBOX, 8, 11);
+        seeder.start();
+        seeder.join();
+
+        assertThat(seeder.getSkippedTiles()).isEqualTo(cache.tiles.size()
+                - seeder.getLoadedTiles());
+        assertThat(requests.get()).isEqualTo(cache.tiles.size());
+    }
+
+    @Test
+    public void shouldResumeFromProgressFile() throws Exception {
+        File progress = File.createTempFile("seed", ".properties");
+        progress.deleteOnExit();
+
+        TileSeeder seeder = new TileSeeder(tileSource, BBOX, 8, 10);
+        seeder.setProgressFile(progress);
+        seeder.setThreads(1);
+        seeder.start();
+        seeder.join();
+
+        seeder = new TileSeeder(tileSource, BBOX, 8, 10);
+        seeder.setProgressFile(progress);
+        seeder.start();
+        seeder.join();
+
+        assertThat(seeder.getCompletedTiles()).isEqualTo(seeder.getTotalTiles());
+        assertThat(seeder.getSkippedTiles()).isEqualTo(0);
+        assertThat(seeder.getLoadedTiles()).isEqualTo(0);
+    }
+
+    static class TestTileSource extends UrlTileSource {
+        TestTileSource() {
+            super("http://example.org/tiles", "/{Z}/{X}/{Y}.png");
+        }
+
+        @Override
+        public ITileDataSource getDataSource() {
+            return null;
+        }
+    }
+
+    static class TestHttpEngine implements HttpEngine {
+        private final AtomicInteger mRequests;
+        private Tile mTile;
+        private OutputStream mCache;
+
+        TestHttpEngine(AtomicInteger requests) {
+            mRequests = requests;
+        }
+
+        @Override
+        public void sendRequest(Tile tile) throws IOException {
+            mTile = tile;
+            mRequests.incrementAndGet();
+        }
+
+        @Override
+        public InputStream read() throws IOException {
+            final byte[] data = mTile.toString().getBytes();
+            return new ByteArrayInputStream(data) {
+                @Override
+                public synchronized int read(byte[] b, int off, int len) {
+                    int n = super.read(b, off, len);
+                    if (n > 0 && mCache != null) {
+                        try {
+                            mCache.write(b, off, n);
+                        } catch (IOException e) {
+                            return -1;
+                        }
+                    }
+                    return n;
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void setCache(OutputStream os) {
+            mCache = os;
+        }
+
+        @Override
+        public boolean requestCompleted(boolean success) {
+            mCache = null;
+            return success;
+        }
+    }
+
+    static class MemoryCache implements ITileCache {
+        final Map<Tile, byte[]> tiles = Collections.synchronizedMap(new HashMap<Tile, byte[]>());
+
+        @Override
+        public TileWriter writeTile(final Tile tile) {
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            return new TileWriter() {
+                @Override
+                public Tile getTile() {
+                    return tile;
+                }
+
+                @Override
+                public OutputStream getOutputStream() {
+                    return os;
+                }
+
+                @Override
+                public void complete(boolean success) {
+                    if (success)
+                        tiles.put(tile, os.toByteArray());
+                }
+            };
+        }
+
+        @Override
+        public TileReader getTile(final Tile tile) {
+            final byte[] data = tiles.get(tile);
+            if (data == null)
+                return null;
+
+            return new TileReader() {
+                @Override
+                public Tile getTile() {
+                    return tile;
+                }
+
+                @Override
+                public InputStream getInputStream() {
+                    return new ByteArrayInputStream(data);
+                }
+            };
+        }
+
+        @Override
+        public void setCacheSize(long size) {
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.oscim.tiling.source.geojson;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.QueryResult;
+import org.oscim.tiling.TileSource.OpenResult;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class GeoJsonFileTileSourceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GeoJsonFileTileSource mTileSource;
+
+    static class TestSink implements ITileDataSink {
+        List<MapElement> elements = new ArrayList<MapElement>();
+        QueryResult result;
+
+        @Override
+        public void process(MapElement element) {
+            MapElement e = new MapElement();
+            e.set(element);
+            e.tags.set(element.tags.tags);
+            elements.add(e);
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+            this.result = result;
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        /* line along lat 1 from lon -10 to 10 with many collinear points */
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"type\":\"FeatureCollection\",\"features\":[");
+        sb.append("{\"type\":\"Feature\",\"properties\":{\"highway\":\"primary\"},");
+        sb.append("\"geometry\":{\"type\":\"LineString\",\"coordinates\":[");
+        for (int i = 0; i <= 200; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append('[').append(-10 + i * 0.1).append(",1]");
+        }
+        sb.append("]}}]}");
+
+        File file = folder.newFile("test.geojson");
+        FileWriter writer = new FileWriter(file);
+        writer.write(sb.toString());
+        writer.close();
+
+        mTileSource = new GeoJsonFileTileSource(file.getPath());
+        assertThat(mTileSource.open()).isEqualTo(OpenResult.SUCCESS);
+    }
+
+    private TestSink query(int x, int y, int z) {
+        ITileDataSource ds = mTileSource.getDataSource();
+        TestSink sink = new TestSink();
+        ds.query(new MapTile(null, x, y, z), sink);
+        return sink;
+    }
+
+    @Test
+    public void shouldClipAndSimplifyFeatures() {
+        TestSink sink = query(7, 7, 4);
+
+        assertThat(sink.result).isEqualTo(QueryResult.SUCCESS);
+        assertThat(sink.elements).hasSize(1);
+
+        MapElement e = sink.elements.get(0);
+        assertThat(e.type).isEqualTo(GeometryType.LINE);
+        assertThat(e.tags.getValue("highway")).isEqualTo("primary");
+
+        /* collinear points are removed */
+        assertThat(e.getNumPoints()).isEqualTo(2);
+        assertThat(e.pointPos).isEqualTo(4);
+
+        for (int i = 0; i < e.pointPos; i += 2) {
+            assertThat(e.points[i]).isGreaterThanOrEqualTo(-16);
+            assertThat(e.points[i]).isLessThanOrEqualTo(Tile.SIZE + 16);
+        }
+    }
+
+    @Test
+    public void shouldReturnCachedTile() {
+        TestSink first = query(8, 7, 4);
+        TestSink second = query(8, 7, 4);
+
+        assertThat(second.result).isEqualTo(QueryResult.SUCCESS);
+        assertThat(second.elements).hasSize(first.elements.size());
+        assertThat(second.elements.get(0).pointPos)
+                .isEqualTo(first.elements.get(0).pointPos);
+    }
+
+    @Test
+    public void shouldReturnEmptyTile() {
+        TestSink sink = query(0, 0, 4);
+
+        assertThat(sink.result).isEqualTo(QueryResult.SUCCESS);
+        assertThat(sink.elements).isEmpty();
+    }
+}
@@ -0,0 +1,122 @@
+package org.oscim.tiling.source.mapfile;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.QueryResult;
+import org.oscim.tiling.TileSource.OpenResult;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class BlockCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestMapFileWriter mWriter;
+    private File mFile;
+    private MapFileTileSource mTileSource;
+
+    static class TestSink implements ITileDataSink {
+        List<String> names = new ArrayList<String>();
+        QueryResult result;
+
+        @Override
+        public void process(MapElement element) {
+            names.add(element.tags.getValue("name"));
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+            this.result = result;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mWriter = new TestMapFileWriter(53.0, 8.7, 53.1, 8.9, 10, 10, 14,
+                new String[]{"amenity=cafe"},
+                new String[]{"highway=primary"});
+        mWriter.addPoi(53.05, 8.8, "Cafe", 0);
+        mWriter.addWay(new double[]{53.05, 8.72, 53.05, 8.88}, "Street", 0);
+
+        mFile = folder.newFile("test.map");
+        mWriter.write(mFile);
+
+        mTileSource = new MapFileTileSource();
+        mTileSource.setMapFile(mFile.getPath());
+    }
+
+    private TestSink query(int x, int y, int z) {
+        MapDatabase db = (MapDatabase) mTileSource.getDataSource();
+        TestSink sink = new TestSink();
+        db.query(new MapTile(null, x, y, z), sink);
+        db.dispose();
+        return sink;
+    }
+
+    /**
+     * Overwrite the zoom table of the block containing 53.05/8.8
+     */
+    private void corruptBlock() throws Exception {
+        long left = Projection.longitudeToTileX(8.7, 10);
+        long top = Projection.latitudeToTileY(53.1, 10);
+        long width = Projection.longitudeToTileX(8.9, 10) - left + 1;
+        long x = Projection.longitudeToTileX(8.8, 10);
+        long y = Projection.latitudeToTileY(53.05, 10);
+
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        raf.seek(mWriter.getBlockAddress((int) ((y - top) * width + (x - left))));
+        raf.write(new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff, 0x7f});
+        raf.close();
+    }
+
+    @Test
+    public void shouldDecodeBlockOnce() throws Exception {
+        assertThat(mTileSource.open()).isEqualTo(OpenResult.SUCCESS);
+
+        int x = (int) Projection.longitudeToTileX(8.8, 12);
+        int y = (int) Projection.latitudeToTileY(53.05, 12);
+
+        TestSink sink = query(x, y, 12);
+        assertThat(sink.result).isEqualTo(QueryResult.SUCCESS);
+        assertThat(sink.names).containsOnly("Cafe", "Street");
+
+        /* the sibling tile is served from the cached block */
+        corruptBlock();
+
+        sink = query(x ^ 1, y, 12);
+        assertThat(sink.result).isEqualTo(QueryResult.SUCCESS);
+        assertThat(sink.names).contains("Street");
+    }
+
+    @Test
+    public void shouldNotCacheIncompleteBlock() throws Exception {
+        corruptBlock();
+        assertThat(mTileSource.open()).isEqualTo(OpenResult.SUCCESS);
+
+        int x = (int) Projection.longitudeToTileX(8.8, 12);
+        int y = (int) Projection.latitudeToTileY(53.05, 12);
+
+        TestSink sink = query(x, y, 12);
+        assertThat(sink.result).isEqualTo(QueryResult.FAILED);
+        assertThat(sink.names).isEmpty();
+
+        sink = query(x ^ 1, y, 12);
+        assertThat(sink.result).isEqualTo(QueryResult.FAILED);
+    }
+}
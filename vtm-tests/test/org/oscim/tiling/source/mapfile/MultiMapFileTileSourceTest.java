@@ -0,0 +1,84 @@
+package org.oscim.tiling.source.mapfile;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.QueryResult;
+import org.oscim.tiling.TileSource.OpenResult;
+import org.oscim.tiling.source.mapfile.BlockCacheTest.TestSink;
+
+import java.io.File;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class MultiMapFileTileSourceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MultiMapFileTileSource mTileSource;
+
+    private File writeMapFile(String name, double lat, double lon) throws Exception {
+        TestMapFileWriter writer = new TestMapFileWriter(lat, lon, lat + 0.1, lon + 0.2,
+                10, 10, 14, new String[0], new String[]{"highway=primary"});
+        writer.addWay(new double[]{lat + 0.05, lon + 0.02, lat + 0.05, lon + 0.18}, name, 0);
+
+        File file = folder.newFile(name + ".map");
+        writer.write(file);
+        return file;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mTileSource = new MultiMapFileTileSource();
+        assertThat(mTileSource.add(writeMapFile("Bremen", 53.0, 8.7).getPath())).isTrue();
+        assertThat(mTileSource.add(writeMapFile("Berlin", 52.5, 13.3).getPath())).isTrue();
+        assertThat(mTileSource.open()).isEqualTo(OpenResult.SUCCESS);
+    }
+
+    private TestSink query(double lat, double lon, int z) {
+        ITileDataSource ds = mTileSource.getDataSource();
+        TestSink sink = new TestSink();
+        ds.query(new MapTile(null,
+                (int) Projection.longitudeToTileX(lon, z),
+                (int) Projection.latitudeToTileY(lat, z), z), sink);
+        ds.dispose();
+        return sink;
+    }
+
+    @Test
+    public void shouldQueryFileOverlappingTile() {
+        TestSink sink = query(53.05, 8.8, 10);
+        assertThat(sink.result).isEqualTo(QueryResult.SUCCESS);
+        assertThat(sink.names).containsExactly("Bremen");
+    }
+
+    @Test
+    public void shouldFallThroughToSecondFile() {
+        TestSink sink = query(52.55, 13.4, 10);
+        assertThat(sink.result).isEqualTo(QueryResult.SUCCESS);
+        assertThat(sink.names).containsExactly("Berlin");
+
+        /* tiles above the base zoom-level use the shared block cache */
+        sink = query(52.55, 13.4, 12);
+        assertThat(sink.result).isEqualTo(QueryResult.SUCCESS);
+        assertThat(sink.names).containsExactly("Berlin");
+    }
+
+    @Test
+    public void shouldQueryAllOverlappingFiles() {
+        TestSink sink = query(53.0, 10.0, 4);
+        assertThat(sink.result).isEqualTo(QueryResult.SUCCESS);
+        assertThat(sink.names).containsOnly("Bremen", "Berlin");
+    }
+
+    @Test
+    public void shouldReturnEmptyTileOutsideOfFiles() {
+        TestSink sink = query(48.1, 11.5, 10);
+        assertThat(sink.result).isEqualTo(QueryResult.SUCCESS);
+        assertThat(sink.names).isEmpty();
+    }
+}
@@ -0,0 +1,83 @@
+package org.oscim.tiling.source.mapfile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.core.BoundingBox;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class PoiIndexTest {
+
+    private File mFile;
+    private PoiIndex mIndex;
+
+    @Before
+    public void setUp() throws Exception {
+        PoiIndexWriter writer = new PoiIndexWriter();
+        writer.add("Café Zürich", "amenity=cafe", 53.0750, 8.8070);
+        writer.add("Zürich Hauptbahnhof", "railway=station", 47.3779, 8.5403);
+        writer.add("Bremen Hauptbahnhof", "railway=station", 53.0830, 8.8130);
+        writer.add("Rathaus", "amenity=townhall", 53.0760, 8.8075);
+        writer.add("Weser", "waterway=river", 53.0700, 8.8000);
+        writer.add("", "amenity=bench", 53.0750, 8.8070);
+
+        mFile = File.createTempFile("poi", ".idx");
+        writer.write(mFile);
+        mIndex = new PoiIndex(mFile);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mIndex.close();
+        mFile.delete();
+    }
+
+    @Test
+    public void shouldTokenize() {
+        List<String> tokens = new ArrayList<String>();
+        PoiIndex.tokenize("Café Zürich-Nord, 2", tokens);
+        assertThat(tokens).containsExactly("cafe", "zurich", "nord", "2");
+    }
+
+    @Test
+    public void shouldFindByPrefix() {
+        assertThat(mIndex.size()).isEqualTo(5);
+
+        List<PoiIndex.Entry> result = mIndex.search("hauptb", 53.0750, 8.8070, 10);
+        assertThat(result).hasSize(2);
+        assertThat(result.get(0).name).isEqualTo("Bremen Hauptbahnhof");
+        assertThat(result.get(0).key).isEqualTo("railway");
+        assertThat(result.get(0).value).isEqualTo("station");
+        assertThat(result.get(1).name).isEqualTo("Zürich Hauptbahnhof");
+        assertThat(result.get(0).distance).isLessThan(result.get(1).distance);
+
+        /* all tokens must match, accents are ignored */
+        result = mIndex.search("zurich haupt", 53.0750, 8.8070, 10);
+        assertThat(result).hasSize(1);
+        assertThat(result.get(0).name).isEqualTo("Zürich Hauptbahnhof");
+
+        /* values of the type tag are indexed */
+        assertThat(mIndex.search("station", 53.0750, 8.8070, 10)).hasSize(2);
+        assertThat(mIndex.search("museum", 53.0750, 8.8070, 10)).isEmpty();
+    }
+
+    @Test
+    public void shouldFindClosest() {
+        List<PoiIndex.Entry> result = mIndex.search(null, 53.0761, 8.8076, 2);
+        assertThat(result).hasSize(2);
+        assertThat(result.get(0).name).isEqualTo("Rathaus");
+        assertThat(result.get(1).name).isEqualTo("Café Zürich");
+    }
+
+    @Test
+    public void shouldFindInside() {
+        BoundingBox bbox = new BoundingBox(53.0, 8.7, 53.1, 8.9);
+        assertThat(mIndex.search(null, bbox, 10)).hasSize(4);
+        assertThat(mIndex.search("zurich", bbox, 10)).hasSize(1);
+    }
+}
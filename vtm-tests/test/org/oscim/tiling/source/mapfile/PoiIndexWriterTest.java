@@ -0,0 +1,138 @@
+package org.oscim.tiling.source.mapfile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.oscim.tiling.TileSource.OpenResult;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.data.Offset.offset;
+
+public class PoiIndexWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldAddWayCrossingTilesOnce() throws Exception {
+        int z = PoiIndexWriter.QUERY_ZOOM;
+        TestMapFileWriter map = new TestMapFileWriter(53.07, 8.78, 53.09, 8.84, z, z - 2, z,
+                new String[]{"amenity=cafe"},
+                new String[]{"highway=primary"});
+        map.addPoi(53.08, 8.80, "Cafe", 0);
+        map.addWay(new double[]{53.08, 8.781, 53.085, 8.81, 53.08, 8.839}, "Long Street", 0);
+
+        /* the way crosses several tiles */
+        assertThat(Projection.longitudeToTileX(8.839, z)
+                - Projection.longitudeToTileX(8.781, z)).isGreaterThan(1);
+
+        File mapFile = folder.newFile("test.map");
+        map.write(mapFile);
+
+        MapFileTileSource tileSource = new MapFileTileSource();
+        tileSource.setMapFile(mapFile.getPath());
+        assertThat(tileSource.open()).isEqualTo(OpenResult.SUCCESS);
+
+        PoiIndexWriter writer = new PoiIndexWriter();
+        try {
+            writer.addMapFile(tileSource);
+        } finally {
+            tileSource.close();
+        }
+        assertThat(writer.size()).isEqualTo(2);
+
+        File indexFile = folder.newFile("test.idx");
+        writer.write(indexFile);
+        PoiIndex index = new PoiIndex(indexFile);
+        try {
+            List<PoiIndex.Entry> result = index.search("long street", 53.08, 8.81, 10);
+            assertThat(result).hasSize(1);
+            assertThat(result.get(0).value).isEqualTo("primary");
+
+            /* center of the whole way */
+            assertThat(result.get(0).latitude).isEqualTo(53.0825, offset(1E-4));
+            assertThat(result.get(0).longitude).isEqualTo(8.81, offset(1E-4));
+
+            assertThat(index.search("cafe", 53.08, 8.81, 10)).hasSize(1);
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    public void shouldMergeClippedPiecesOfWay() throws Exception {
+        int z = PoiIndexWriter.QUERY_ZOOM;
+        TestMapFileWriter map = new TestMapFileWriter(53.07, 8.78, 53.09, 8.84, z, z - 2, z,
+                new String[]{},
+                new String[]{"highway=primary"});
+        map.setClipWays(true);
+        map.addWay(new double[]{53.08, 8.781, 53.085, 8.81, 53.08, 8.839}, "Long Street", 0);
+        /* another way of the same name */
+        map.addWay(new double[]{53.072, 8.79, 53.072, 8.80}, "Long Street", 0);
+
+        /* the way is stored in pieces */
+        double[] way = {53.08, 8.781, 53.085, 8.81, 53.08, 8.839};
+        double west = Projection.tileXToLongitude(Projection.longitudeToTileX(8.81, z), z);
+        assertThat(TestMapFileWriter.clip(way, 53.0, west, 53.1, 8.9)).hasSize(1);
+        assertThat(TestMapFileWriter.clip(way, 53.0, west, 53.1, 8.9).get(0)[1])
+                .isEqualTo(west, offset(1E-9));
+
+        File mapFile = folder.newFile("test.map");
+        map.write(mapFile);
+
+        MapFileTileSource tileSource = new MapFileTileSource();
+        tileSource.setMapFile(mapFile.getPath());
+        assertThat(tileSource.open()).isEqualTo(OpenResult.SUCCESS);
+
+        PoiIndexWriter writer = new PoiIndexWriter();
+        try {
+            writer.addMapFile(tileSource);
+        } finally {
+            tileSource.close();
+        }
+        assertThat(writer.size()).isEqualTo(2);
+
+        File indexFile = folder.newFile("test.idx");
+        writer.write(indexFile);
+        PoiIndex index = new PoiIndex(indexFile);
+        try {
+            List<PoiIndex.Entry> result = index.search("long street", 53.085, 8.81, 10);
+            assertThat(result).hasSize(2);
+
+            /* center of the whole way */
+            assertThat(result.get(0).latitude).isEqualTo(53.0825, offset(1E-4));
+            assertThat(result.get(0).longitude).isEqualTo(8.81, offset(1E-4));
+
+            assertThat(result.get(1).latitude).isEqualTo(53.072, offset(1E-4));
+            assertThat(result.get(1).longitude).isEqualTo(8.795, offset(1E-4));
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    public void shouldTruncateNameOnCharacterBoundary() throws Exception {
+        /* 0x10000 bytes of two byte characters */
+        char[] chars = new char[0x8000];
+        Arrays.fill(chars, 'ä');
+        String name = new String(chars);
+
+        PoiIndexWriter writer = new PoiIndexWriter();
+        writer.add(name, "amenity=cafe", 53.08, 8.81);
+
+        File indexFile = folder.newFile("test.idx");
+        writer.write(indexFile);
+        PoiIndex index = new PoiIndex(indexFile);
+        try {
+            List<PoiIndex.Entry> result = index.search(null, 53.08, 8.81, 1);
+            assertThat(result).hasSize(1);
+            assertThat(result.get(0).name).isEqualTo(name.substring(1));
+        } finally {
+            index.close();
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package org.oscim.tiling.source.mapfile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes minimal map files with one sub-file for tests. Each block
+ * contains the POIs within its tile and the ways intersecting its tile,
+ * all visible at every zoom-level of the sub-file. Ways are written
+ * unclipped unless {@link #setClipWays(boolean)} is enabled.
+ */
+class TestMapFileWriter {
+
+    private static class Element {
+        double[] latLon;
+        String name;
+        int[] tags;
+        boolean poi;
+    }
+
+    private final double mMinLat, mMinLon, mMaxLat, mMaxLon;
+    private final int mBaseZoom, mZoomMin, mZoomMax;
+    private final String[] mPoiTags, mWayTags;
+    private final List<Element> mElements = new ArrayList<Element>();
+
+    private long[] mBlockAddress;
+    private boolean mClipWays;
+
+    TestMapFileWriter(double minLat, double minLon, double maxLat, double maxLon,
+                      int baseZoom, int zoomMin, int zoomMax,
+                      String[] poiTags, String[] wayTags) {
+        mMinLat = minLat;
+        mMinLon = minLon;
+        mMaxLat = maxLat;
+        mMaxLon = maxLon;
+        mBaseZoom = baseZoom;
+        mZoomMin = zoomMin;
+        mZoomMax = zoomMax;
+        mPoiTags = poiTags;
+        mWayTags = wayTags;
+    }
+
+    void addPoi(double lat, double lon, String name, int... tags) {
+        Element e = new Element();
+        e.latLon = new double[]{lat, lon};
+        e.name = name;
+        e.tags = tags;
+        e.poi = true;
+        mElements.add(e);
+    }
+
+    /**
+     * @param latLon lat/lon pairs of the way nodes.
+     */
+    void addWay(double[] latLon, String name, int... tags) {
+        Element e = new Element();
+        e.latLon = latLon;
+        e.name = name;
+        e.tags = tags;
+        mElements.add(e);
+    }
+
+    /**
+     * Clip ways to the tile of each block, like the mapsforge writer.
+     */
+    void setClipWays(boolean clip) {
+        mClipWays = clip;
+    }
+
+    /**
+     * @return file offset of block 'i', valid after write().
+     */
+    long getBlockAddress(int i) {
+        return mBlockAddress[i];
+    }
+
+    void write(File file) throws IOException {
+        long left = Projection.longitudeToTileX(mMinLon, mBaseZoom);
+        long right = Projection.longitudeToTileX(mMaxLon, mBaseZoom);
+        long top = Projection.latitudeToTileY(mMaxLat, mBaseZoom);
+        long bottom = Projection.latitudeToTileY(mMinLat, mBaseZoom);
+
+        int numBlocks = (int) ((right - left + 1) * (bottom - top + 1));
+        long indexSize = numBlocks * 5;
+
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        long[] pointers = new long[numBlocks];
+
+        for (long y = top, i = 0; y <= bottom; y++) {
+            for (long x = left; x <= right; x++, i++) {
+                pointers[(int) i] = indexSize + blocks.size();
+                blocks.write(block(x, y));
+            }
+        }
+
+        ByteArrayOutputStream subFile = new ByteArrayOutputStream();
+        for (long p : pointers) {
+            for (int shift = 32; shift >= 0; shift -= 8)
+                subFile.write((int) (p >> shift));
+        }
+        blocks.writeTo(subFile);
+
+        /* header length does not depend on the values */
+        int headerSize = header(0, 0, 0).length;
+        long fileSize = headerSize + subFile.size();
+        byte[] header = header(fileSize, headerSize, subFile.size());
+
+        mBlockAddress = new long[numBlocks];
+        for (int i = 0; i < numBlocks; i++)
+            mBlockAddress[i] = headerSize + pointers[i];
+
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(header);
+        subFile.writeTo(out);
+        out.close();
+    }
+
+    private byte[] header(long fileSize, long startAddress, long subFileSize)
+            throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream d = new DataOutputStream(buf);
+        d.writeInt(3);
+        d.writeLong(fileSize);
+        d.writeLong(1400000000000L);
+        d.writeInt(e6(mMinLat));
+        d.writeInt(e6(mMinLon));
+        d.writeInt(e6(mMaxLat));
+        d.writeInt(e6(mMaxLon));
+        d.writeShort(256);
+        writeString(buf, "Mercator");
+        d.writeByte(0);
+        d.writeShort(mPoiTags.length);
+        for (String t : mPoiTags)
+            writeString(buf, t);
+        d.writeShort(mWayTags.length);
+        for (String t : mWayTags)
+            writeString(buf, t);
+        d.writeByte(1);
+        d.writeByte(mBaseZoom);
+        d.writeByte(mZoomMin);
+        d.writeByte(mZoomMax);
+        d.writeLong(startAddress);
+        d.writeLong(subFileSize);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("mapsforge binary OSM".getBytes("UTF-8"));
+        new DataOutputStream(out).writeInt(buf.size());
+        buf.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private byte[] block(long tileX, long tileY) throws IOException {
+        double north = Projection.tileYToLatitude(tileY, mBaseZoom);
+        double south = Projection.tileYToLatitude(tileY + 1, mBaseZoom);
+        double west = Projection.tileXToLongitude(tileX, mBaseZoom);
+        double east = Projection.tileXToLongitude(tileX + 1, mBaseZoom);
+
+        int tileLat = (int) (north * 1E6);
+        int tileLon = (int) (west * 1E6);
+
+        ByteArrayOutputStream pois = new ByteArrayOutputStream();
+        ByteArrayOutputStream ways = new ByteArrayOutputStream();
+        int numPois = 0, numWays = 0;
+
+        for (Element e : mElements) {
+            double minLat = 90, maxLat = -90, minLon = 180, maxLon = -180;
+            for (int i = 0; i < e.latLon.length; i += 2) {
+                minLat = Math.min(minLat, e.latLon[i]);
+                maxLat = Math.max(maxLat, e.latLon[i]);
+                minLon = Math.min(minLon, e.latLon[i + 1]);
+                maxLon = Math.max(maxLon, e.latLon[i + 1]);
+            }
+            if (e.poi) {
+                if (minLat <= south || minLat > north || minLon < west || minLon >= east)
+                    continue;
+
+                writeSigned(pois, e6(e.latLon[0]) - tileLat);
+                writeSigned(pois, e6(e.latLon[1]) - tileLon);
+                pois.write((5 << 4) | e.tags.length);
+                for (int t : e.tags)
+                    writeUnsigned(pois, t);
+                pois.write(e.name != null ? 0x80 : 0);
+                if (e.name != null)
+                    writeString(pois, e.name);
+                numPois++;
+            } else {
+                if (maxLat < south || minLat > north || maxLon < west || minLon > east)
+                    continue;
+
+                List<double[]> pieces;
+                if (mClipWays)
+                    pieces = clip(e.latLon, south, west, north, east);
+                else
+                    pieces = Collections.singletonList(e.latLon);
+
+                for (double[] latLon : pieces) {
+                    writeWay(ways, e, latLon, tileLat, tileLon);
+                    numWays++;
+                }
+            }
+        }
+
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        for (int z = mZoomMin; z <= mZoomMax; z++) {
+            writeUnsigned(block, z == mZoomMin ? numPois : 0);
+            writeUnsigned(block, z == mZoomMin ? numWays : 0);
+        }
+        writeUnsigned(block, pois.size());
+        pois.writeTo(block);
+        ways.writeTo(block);
+        return block.toByteArray();
+    }
+
+    private static void writeWay(ByteArrayOutputStream ways, Element e,
+                                 double[] latLon, int tileLat, int tileLon)
+            throws IOException {
+        ByteArrayOutputStream way = new ByteArrayOutputStream();
+        way.write(0xff);
+        way.write(0xff);
+        way.write((5 << 4) | e.tags.length);
+        for (int t : e.tags)
+            writeUnsigned(way, t);
+        way.write(e.name != null ? 0x80 : 0);
+        if (e.name != null)
+            writeString(way, e.name);
+
+        /* one way data block with one coordinate block */
+        writeUnsigned(way, 1);
+        writeUnsigned(way, latLon.length / 2);
+        int lat = tileLat, lon = tileLon;
+        for (int i = 0; i < latLon.length; i += 2) {
+            int la = e6(latLon[i]);
+            int lo = e6(latLon[i + 1]);
+            writeSigned(way, la - lat);
+            writeSigned(way, lo - lon);
+            lat = la;
+            lon = lo;
+        }
+        writeUnsigned(ways, way.size());
+        way.writeTo(ways);
+    }
+
+    /**
+     * Clip a line to the box, linear in lat/lon.
+     *
+     * @return the pieces of the line within the box.
+     */
+    static List<double[]> clip(double[] latLon, double south, double west,
+                               double north, double east) {
+        List<double[]> pieces = new ArrayList<double[]>();
+        List<Double> piece = new ArrayList<Double>();
+
+        for (int i = 0; i < latLon.length - 2; i += 2) {
+            double lat0 = latLon[i], lon0 = latLon[i + 1];
+            double dLat = latLon[i + 2] - lat0, dLon = latLon[i + 3] - lon0;
+
+            /* Liang-Barsky */
+            double[] p = {-dLat, dLat, -dLon, dLon};
+            double[] q = {lat0 - south, north - lat0, lon0 - west, east - lon0};
+            double t0 = 0, t1 = 1;
+            boolean inside = true;
+            for (int k = 0; k < 4 && inside; k++) {
+                if (p[k] == 0) {
+                    inside = q[k] >= 0;
+                } else {
+                    double t = q[k] / p[k];
+                    if (p[k] < 0)
+                        t0 = Math.max(t0, t);
+                    else
+                        t1 = Math.min(t1, t);
+                    inside = t0 <= t1;
+                }
+            }
+            if (!inside) {
+                addPiece(pieces, piece);
+                continue;
+            }
+
+            if (piece.isEmpty() || t0 > 0) {
+                addPiece(pieces, piece);
+                piece.add(lat0 + t0 * dLat);
+                piece.add(lon0 + t0 * dLon);
+            }
+            piece.add(lat0 + t1 * dLat);
+            piece.add(lon0 + t1 * dLon);
+            if (t1 < 1)
+                addPiece(pieces, piece);
+        }
+        addPiece(pieces, piece);
+        return pieces;
+    }
+
+    private static void addPiece(List<double[]> pieces, List<Double> piece) {
+        if (piece.size() >= 4) {
+            double[] p = new double[piece.size()];
+            for (int i = 0; i < p.length; i++)
+                p[i] = piece.get(i).doubleValue();
+            pieces.add(p);
+        }
+        piece.clear();
+    }
+
+    private static int e6(double deg) {
+        return (int) Math.round(deg * 1E6);
+    }
+
+    private static void writeUnsigned(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeSigned(ByteArrayOutputStream out, int value) {
+        int sign = value < 0 ? 0x40 : 0;
+        value = Math.abs(value);
+        while ((value & ~0x3f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value | sign);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String s)
+            throws IOException {
+        byte[] b = s.getBytes("UTF-8");
+        writeUnsigned(out, b.length);
+        out.write(b);
+    }
+}
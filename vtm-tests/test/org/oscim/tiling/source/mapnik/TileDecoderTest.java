@@ -0,0 +1,319 @@
+package org.oscim.tiling.source.mapnik;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.TagSet;
+import org.oscim.core.Tile;
+import org.oscim.theme.rule.Rule.TagVisitor;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.QueryResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TileDecoderTest {
+
+    private static final int MOVE_TO = 1;
+    private static final int LINE_TO = 2;
+    private static final int CLOSE_PATH = 7;
+
+    private static final int POINT = 1;
+    private static final int POLYGON = 3;
+
+    private Sink sink;
+
+    @Before
+    public void setUp() throws Exception {
+        sink = new Sink();
+    }
+
+    @Test
+    public void shouldSkipLayersAndFeaturesNotMatchedByTheme() throws Exception {
+        TagVisitor theme = new TagVisitor(14);
+        theme.keys.add("class");
+        theme.values.add("park");
+
+        MapnikVectorTileSource tileSource = mock(MapnikVectorTileSource.class);
+        ThemeFilter filter = mock(ThemeFilter.class);
+        when(tileSource.getThemeFilter()).thenReturn(filter);
+        when(filter.get(14)).thenReturn(theme);
+
+        Message water = layer(1, "water", 4096,
+                new String[]{"kind"}, new String[]{"lake"},
+                feature(new int[]{0, 0}, POINT, point(100, 100)));
+
+        Message road = layer(1, "road", 4096,
+                new String[]{"class", "oneway"}, new String[]{"primary", "yes"},
+                feature(new int[]{0, 0}, POINT, point(100, 100)),
+                feature(new int[]{1, 1}, POINT, point(200, 200)));
+
+        /* neither layer nor key are matched but the value */
+        Message landuse = layer(1, "landcover", 4096,
+                new String[]{"landuse"}, new String[]{"park", "farm"},
+                feature(new int[]{0, 0}, POINT, point(300, 300)),
+                feature(new int[]{0, 1}, POINT, point(400, 400)));
+
+        decode(new TileDecoder(tileSource), water, road, landuse);
+
+        assertThat(sink.elements).hasSize(2);
+        assertThat(sink.elements.get(0).tags.getValue("class")).isEqualTo("primary");
+        assertThat(sink.elements.get(0).tags.containsKey("oneway")).isFalse();
+        assertThat(sink.elements.get(1).tags.getValue("landuse")).isEqualTo("park");
+
+        /* all features are decoded without theme */
+        sink = new Sink();
+        decode(new TileDecoder(), water, road, landuse);
+        assertThat(sink.elements).hasSize(5);
+    }
+
+    @Test
+    public void shouldDecodeAllFeaturesOfMatchedLayer() throws Exception {
+        TagVisitor theme = new TagVisitor(14);
+        theme.keys.add("road");
+
+        MapnikVectorTileSource tileSource = mock(MapnikVectorTileSource.class);
+        ThemeFilter filter = mock(ThemeFilter.class);
+        when(tileSource.getThemeFilter()).thenReturn(filter);
+        when(filter.get(14)).thenReturn(theme);
+
+        decode(new TileDecoder(tileSource), layer(1, "road", 4096,
+                new String[]{"class", "oneway"}, new String[]{"primary", "yes"},
+                feature(new int[]{0, 0}, POINT, point(100, 100)),
+                feature(new int[]{1, 1}, POINT, point(200, 200))));
+
+        assertThat(sink.elements).hasSize(2);
+        assertThat(sink.elements.get(0).tags.getValue("road")).isEqualTo("yes");
+    }
+
+    @Test
+    public void shouldSplitPolygonsByWindingInVersion2() throws Exception {
+        /* outer, hole (negative area), second outer */
+        int[] geometry = concat(
+                ring(100, 100, 1000, 100, 1000, 1000, 100, 1000),
+                ring(200, 200, 200, 800, 800, 800, 800, 200),
+                ring(2000, 2000, 3000, 2000, 3000, 3000, 2000, 3000));
+
+        decode(new TileDecoder(), layer(2, "building", 4096,
+                new String[]{"height"}, new String[]{"10"},
+                feature(new int[]{0, 0}, POLYGON, geometry)));
+
+        assertThat(sink.elements).hasSize(1);
+        Element e = sink.elements.get(0);
+        assertThat(e.type).isEqualTo(GeometryType.POLY);
+        /* first polygon with a hole, separated by 0 from the second */
+        assertThat(e.index).isEqualTo(new int[]{8, 8, 0, 8});
+        assertThat(e.points[16]).isEqualTo(2000 / 8.0);
+
+        /* all inner rings are holes in version 1 */
+        sink = new Sink();
+        decode(new TileDecoder(), layer(1, "building", 4096,
+                new String[]{"height"}, new String[]{"10"},
+                feature(new int[]{0, 0}, POLYGON, geometry)));
+
+        assertThat(sink.elements.get(0).index).isEqualTo(new int[]{8, 8, 8});
+    }
+
+    @Test
+    public void shouldScaleCoordinatesByLayerExtent() throws Exception {
+        decode(new TileDecoder(),
+                layer(2, "a", 4096, new String[]{"k"}, new String[]{"v"},
+                        feature(new int[]{0, 0}, POINT, point(2048, 1024))),
+                layer(2, "b", 512, new String[]{"k"}, new String[]{"v"},
+                        feature(new int[]{0, 0}, POINT, point(256, 128))));
+
+        /* both at the same position in the tile */
+        assertThat(sink.elements).hasSize(2);
+        for (Element e : sink.elements) {
+            assertThat(e.points[0]).isEqualTo(Tile.SIZE / 2.0);
+            assertThat(e.points[1]).isEqualTo(Tile.SIZE / 4.0);
+        }
+    }
+
+    private void decode(TileDecoder decoder, Message... layers) throws IOException {
+        Message tile = new Message();
+        for (Message layer : layers)
+            tile.message(3, layer);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DeflaterOutputStream deflater = new DeflaterOutputStream(out);
+        deflater.write(tile.toByteArray());
+        deflater.close();
+
+        assertThat(decoder.decode(new Tile(0, 0, (byte) 14), sink,
+                new ByteArrayInputStream(out.toByteArray()))).isTrue();
+    }
+
+    private static Message layer(int version, String name, int extent,
+                                 String[] keys, String[] values, Message... features) {
+        Message layer = new Message();
+        layer.string(1, name);
+        for (Message f : features)
+            layer.message(2, f);
+        /* tables are written after the features */
+        for (String k : keys)
+            layer.string(3, k);
+        for (String v : values)
+            layer.message(4, new Message().string(1, v));
+        layer.varint(5, extent);
+        layer.varint(15, version);
+        return layer;
+    }
+
+    private static Message feature(int[] tags, int type, int[] geometry) {
+        return new Message()
+                .packed(2, tags)
+                .varint(3, type)
+                .packed(4, geometry);
+    }
+
+    private static int[] point(int x, int y) {
+        return new int[]{command(MOVE_TO, 1), zigzag(x), zigzag(y)};
+    }
+
+    /* ring relative to the origin, cursor positions are tracked by
+     * concat() */
+    private static int[] ring(int... xy) {
+        int[] g = new int[xy.length + 3];
+        g[0] = command(MOVE_TO, 1);
+        g[1] = xy[0];
+        g[2] = xy[1];
+        g[3] = command(LINE_TO, xy.length / 2 - 1);
+        System.arraycopy(xy, 2, g, 4, xy.length - 2);
+        g[g.length - 1] = command(CLOSE_PATH, 1);
+        return g;
+    }
+
+    /**
+     * Concatenate rings with absolute coordinates into delta encoded
+     * geometry.
+     */
+    private static int[] concat(int[]... rings) {
+        int size = 0;
+        for (int[] r : rings)
+            size += r.length;
+        int[] g = new int[size];
+        int pos = 0, x = 0, y = 0;
+        for (int[] r : rings) {
+            for (int i = 0; i < r.length; ) {
+                int cmd = r[i];
+                g[pos++] = r[i++];
+                if ((cmd & 7) == CLOSE_PATH)
+                    continue;
+                for (int n = cmd >> 3; n > 0; n--) {
+                    g[pos++] = zigzag(r[i] - x);
+                    g[pos++] = zigzag(r[i + 1] - y);
+                    x = r[i];
+                    y = r[i + 1];
+                    i += 2;
+                }
+            }
+        }
+        return g;
+    }
+
+    private static int command(int id, int count) {
+        return (id & 7) | (count << 3);
+    }
+
+    private static int zigzag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    /**
+     * Protobuf message writer.
+     */
+    static class Message {
+        private final ByteArrayOutputStream mOut = new ByteArrayOutputStream();
+
+        Message varint(int field, int value) {
+            writeVarint(mOut, field << 3);
+            writeVarint(mOut, value);
+            return this;
+        }
+
+        Message string(int field, String value) {
+            try {
+                return bytes(field, value.getBytes("UTF-8"));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        Message message(int field, Message value) {
+            return bytes(field, value.toByteArray());
+        }
+
+        Message packed(int field, int[] values) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (int v : values)
+                writeVarint(out, v);
+            return bytes(field, out.toByteArray());
+        }
+
+        private Message bytes(int field, byte[] value) {
+            writeVarint(mOut, (field << 3) | 2);
+            writeVarint(mOut, value.length);
+            mOut.write(value, 0, value.length);
+            return this;
+        }
+
+        byte[] toByteArray() {
+            return mOut.toByteArray();
+        }
+
+        private static void writeVarint(ByteArrayOutputStream out, int value) {
+            while ((value & ~0x7f) != 0) {
+                out.write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+    }
+
+    /* copy of an element passed to the sink */
+    static class Element {
+        final GeometryType type;
+        final TagSet tags = new TagSet();
+        final double[] points;
+        final int[] index;
+
+        Element(MapElement e) {
+            type = e.type;
+            tags.set(e.tags.asArray());
+            points = Arrays.copyOf(e.points, e.pointPos);
+            int n = 0;
+            while (n < e.index.length && e.index[n] >= 0 && n <= e.indexPos)
+                n++;
+            index = Arrays.copyOf(e.index, n);
+        }
+    }
+
+    static class Sink implements ITileDataSink {
+        final List<Element> elements = new ArrayList<Element>();
+
+        @Override
+        public void process(MapElement element) {
+            elements.add(new Element(element));
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.oscim.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class PackedRTreeTest {
+
+    @Test
+    public void shouldFindSameItemsAsBruteForce() {
+        Random r = new Random(42);
+        int n = 10000;
+        int[] boxes = new int[n * 4];
+
+        PackedRTree tree = new PackedRTree(n);
+        for (int i = 0; i < n; i++) {
+            int x = r.nextInt(1 << 20);
+            int y = r.nextInt(1 << 20);
+            boxes[i * 4] = x;
+            boxes[i * 4 + 1] = y;
+            boxes[i * 4 + 2] = x + r.nextInt(1000);
+            boxes[i * 4 + 3] = y + r.nextInt(1000);
+            assertEquals(i, tree.add(boxes[i * 4], boxes[i * 4 + 1],
+                    boxes[i * 4 + 2], boxes[i * 4 + 3]));
+        }
+        tree.finish();
+
+        for (int q = 0; q < 100; q++) {
+            int minX = r.nextInt(1 << 20);
+            int minY = r.nextInt(1 << 20);
+            int maxX = minX + r.nextInt(50000);
+            int maxY = minY + r.nextInt(50000);
+
+            final ArrayList<Integer> found = new ArrayList<Integer>();
+            tree.search(minX, minY, maxX, maxY, new PackedRTree.Visitor() {
+                @Override
+                public boolean visit(int item) {
+                    found.add(item);
+                    return true;
+                }
+            });
+
+            ArrayList<Integer> expected = new ArrayList<Integer>();
+            for (int i = 0; i < n; i++) {
+                if (maxX < boxes[i * 4] || maxY < boxes[i * 4 + 1]
+                        || minX > boxes[i * 4 + 2] || minY > boxes[i * 4 + 3])
+                    continue;
+                expected.add(i);
+            }
+            Collections.sort(found);
+            assertEquals(expected, found);
+        }
+    }
+
+    @Test
+    public void shouldWorkWithSingleItem() {
+        PackedRTree tree = new PackedRTree(1);
+        tree.add(0, 0, 10, 10);
+        tree.finish();
+
+        final int[] count = {0};
+        PackedRTree.Visitor v = new PackedRTree.Visitor() {
+            @Override
+            public boolean visit(int item) {
+                count[0]++;
+                return true;
+            }
+        };
+        tree.search(5, 5, 20, 20, v);
+        assertEquals(1, count[0]);
+        tree.search(11, 11, 20, 20, v);
+        assertEquals(1, count[0]);
+    }
+
+    @Test
+    public void shouldStopSearch() {
+        PackedRTree tree = new PackedRTree(100);
+        for (int i = 0; i < 100; i++)
+            tree.add(i, i, i + 1, i + 1);
+        tree.finish();
+
+        assertFalse(tree.search(0, 0, 100, 100, new PackedRTree.Visitor() {
+            @Override
+            public boolean visit(int item) {
+                return false;
+            }
+        }));
+    }
+}
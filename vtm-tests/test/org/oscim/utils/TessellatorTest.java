@@ -0,0 +1,73 @@
+package org.oscim.utils;
+
+import org.junit.Test;
+import org.oscim.renderer.bucket.VertexData;
+
+import static org.junit.Assert.assertEquals;
+
+public class TessellatorTest {
+
+    private static short[] indices(VertexData vd, int n) {
+        short[] out = new short[n];
+        int pos = 0;
+        for (VertexData.Chunk c = vd.head(); c != null; c = c.next) {
+            System.arraycopy(c.vertices, 0, out, pos, Math.min(c.used, n - pos));
+            pos += c.used;
+        }
+        return out;
+    }
+
+    @Test
+    public void shouldTriangulateConcaveRing() {
+        /* L-shaped building footprint */
+        double[] points = {
+                0, 0, 20, 0, 20, 10, 10, 10, 10, 20, 0, 20
+        };
+        VertexData vd = new VertexData();
+        int n = Tessellator.earClip(points, 0, points.length, 1, vd);
+        assertEquals(4 * 3, n);
+        vd.countSize();
+
+        /* sum of triangle areas equals ring area */
+        short[] tris = indices(vd, n);
+        double area = 0;
+        for (int i = 0; i < n; i += 3) {
+            int a = (tris[i] - 1), b = (tris[i + 1] - 1), c = (tris[i + 2] - 1);
+            area += ((points[b] - points[a]) * (points[c + 1] - points[a + 1])
+                    - (points[b + 1] - points[a + 1]) * (points[c] - points[a])) / 2;
+        }
+        assertEquals(300, area, 1e-9);
+        vd.dispose();
+    }
+
+    @Test
+    public void shouldKeepClockwiseOrientation() {
+        double[] points = {
+                0, 0, 0, 10, 10, 10, 10, 0
+        };
+        VertexData vd = new VertexData();
+        int n = Tessellator.earClip(points, 0, points.length, 0, vd);
+        assertEquals(6, n);
+        vd.countSize();
+
+        short[] tris = indices(vd, n);
+        for (int i = 0; i < n; i += 3) {
+            int a = tris[i], b = tris[i + 1], c = tris[i + 2];
+            double cross = (points[b] - points[a]) * (points[c + 1] - points[a + 1])
+                    - (points[b + 1] - points[a + 1]) * (points[c] - points[a]);
+            assertEquals(true, cross < 0);
+        }
+        vd.dispose();
+    }
+
+    @Test
+    public void shouldRejectSelfIntersectingRing() {
+        /* bow tie */
+        double[] points = {
+                0, 0, 10, 10, 10, 0, 0, 10, -5, 5
+        };
+        VertexData vd = new VertexData();
+        assertEquals(-1, Tessellator.earClip(points, 0, points.length, 0, vd));
+        assertEquals(0, vd.countSize());
+    }
+}
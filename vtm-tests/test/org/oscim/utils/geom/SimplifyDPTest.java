@@ -0,0 +1,170 @@
+package org.oscim.utils.geom;
+
+import org.junit.Test;
+import org.oscim.core.GeometryBuffer;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.data.Offset.offset;
+
+public class SimplifyDPTest {
+
+    @Test
+    public void shouldRemoveCollinearPoints() {
+        GeometryBuffer g = new GeometryBuffer(16, 2);
+        g.startLine();
+        for (int i = 0; i <= 10; i++)
+            g.addPoint(i * 10, 0.1f * (i % 2));
+
+        assertThat(new SimplifyDP().simplify(g, 1)).isTrue();
+        assertThat(g.index[0]).isEqualTo(4);
+        assertThat(g.index[1]).isEqualTo(-1);
+        assertThat(g.pointPos).isEqualTo(4);
+        assertThat(g.points[2]).isEqualTo(100.0);
+    }
+
+    @Test
+    public void shouldRemoveCollapsedRings() {
+        GeometryBuffer g = new GeometryBuffer(32, 8);
+
+        /* polygon with a tiny hole */
+        g.startPolygon();
+        g.addPoint(0, 0);
+        g.addPoint(100, 0);
+        g.addPoint(100, 100);
+        g.addPoint(0, 100);
+        g.startHole();
+        g.addPoint(50, 50);
+        g.addPoint(50.2f, 50);
+        g.addPoint(50.2f, 50.2f);
+
+        /* tiny polygon with a hole */
+        g.startPolygon();
+        g.addPoint(200, 200);
+        g.addPoint(200.5f, 200);
+        g.addPoint(200.5f, 200.5f);
+        g.startHole();
+        g.addPoint(200.1f, 200.1f);
+        g.addPoint(200.2f, 200.1f);
+        g.addPoint(200.2f, 200.2f);
+
+        /* polygon with a hole to keep */
+        g.startPolygon();
+        g.addPoint(300, 300);
+        g.addPoint(400, 300);
+        g.addPoint(400, 400);
+        g.startHole();
+        g.addPoint(350, 310);
+        g.addPoint(390, 310);
+        g.addPoint(390, 350);
+
+        assertThat(new SimplifyDP().simplify(g, 1)).isTrue();
+
+        assertThat(g.index[0]).isEqualTo(8);
+        assertThat(g.index[1]).isEqualTo(0);
+        assertThat(g.index[2]).isEqualTo(6);
+        assertThat(g.index[3]).isEqualTo(6);
+        assertThat(g.index[4]).isEqualTo(-1);
+        assertThat(g.pointPos).isEqualTo(20);
+        assertThat(g.points[8]).isEqualTo(300.0);
+        assertThat(g.points[14]).isEqualTo(350.0);
+    }
+
+    @Test
+    public void shouldReportEmptyPolygon() {
+        GeometryBuffer g = new GeometryBuffer(8, 2);
+        g.startPolygon();
+        g.addPoint(0, 0);
+        g.addPoint(0.1f, 0);
+        g.addPoint(0.1f, 0.1f);
+
+        assertThat(new SimplifyDP().simplify(g, 1)).isFalse();
+        assertThat(g.pointPos).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldKeepClosedLinesClosed() {
+        GeometryBuffer g = new GeometryBuffer(64, 2);
+        g.startLine();
+        for (int i = 0; i < 32; i++) {
+            double a = Math.PI * 2 * i / 32;
+            g.addPoint((float) (100 * Math.cos(a)), (float) (100 * Math.sin(a)));
+        }
+        g.addPoint(100, 0);
+
+        assertThat(new SimplifyDP().simplify(g, 4)).isTrue();
+        int n = g.index[0];
+        assertThat(n).isLessThan(66).isGreaterThanOrEqualTo(8);
+        assertThat(g.points[n - 2]).isEqualTo(g.points[0]);
+        assertThat(g.points[n - 1]).isEqualTo(g.points[1]);
+    }
+
+    @Test
+    public void shouldKeepAtLeastThreePointsPerRing() {
+        GeometryBuffer g = new GeometryBuffer(32, 2);
+        g.startPolygon();
+        /* triangle with points on its edges */
+        g.addPoint(0, 0);
+        g.addPoint(50, 0);
+        g.addPoint(100, 0);
+        g.addPoint(75, 50);
+        g.addPoint(50, 100);
+
+        assertThat(new SimplifyDP().simplify(g, 1)).isTrue();
+        assertThat(g.index[0]).isEqualTo(6);
+        assertThat(g.index[1]).isEqualTo(-1);
+
+        /* sliver collapses to two points */
+        g.clear();
+        g.startPolygon();
+        g.addPoint(0, 0);
+        g.addPoint(50, 0.2f);
+        g.addPoint(100, 0.1f);
+
+        assertThat(new SimplifyDP().simplify(g, 1)).isFalse();
+    }
+
+    @Test
+    public void shouldKeepPolygonWhenHoleWouldCrossShell() {
+        GeometryBuffer g = new GeometryBuffer(32, 8);
+        g.startPolygon();
+        /* shell with a small bulge at the bottom */
+        g.addPoint(0, 0);
+        g.addPoint(50, -0.8f);
+        g.addPoint(100, 0);
+        g.addPoint(100, 100);
+        g.addPoint(0, 100);
+        /* hole inside of the bulge */
+        g.startHole();
+        g.addPoint(48, -0.5f);
+        g.addPoint(52, -0.5f);
+        g.addPoint(50, 5);
+
+        /* a polygon next to it is still simplified */
+        g.startPolygon();
+        g.addPoint(200, 0);
+        g.addPoint(250, 0.5f);
+        g.addPoint(300, 0);
+        g.addPoint(300, 100);
+        g.addPoint(200, 100);
+
+        assertThat(new SimplifyDP().simplify(g, 1)).isTrue();
+        assertThat(g.index[0]).isEqualTo(10);
+        assertThat(g.index[1]).isEqualTo(6);
+        assertThat(g.index[2]).isEqualTo(0);
+        assertThat(g.index[3]).isEqualTo(8);
+        assertThat(g.index[4]).isEqualTo(-1);
+        assertThat(g.pointPos).isEqualTo(24);
+        assertThat(g.points[3]).isEqualTo(-0.8f, offset(1e-6));
+        assertThat(g.points[16]).isEqualTo(200.0);
+        assertThat(g.points[18]).isEqualTo(300.0);
+    }
+
+    @Test
+    public void shouldDetectSelfIntersectingRing() {
+        double[] bowtie = {0, 0, 10, 10, 10, 0, 0, 10};
+        assertThat(SimplifyDP.intersects(bowtie, new int[]{8}, 0, 0, 1)).isTrue();
+
+        double[] square = {0, 0, 10, 0, 10, 10, 0, 10};
+        assertThat(SimplifyDP.intersects(square, new int[]{8}, 0, 0, 1)).isFalse();
+    }
+}
@@ -0,0 +1,85 @@
+package org.oscim.utils.metrics;
+
+import org.junit.After;
+import org.junit.Test;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.Tag;
+import org.oscim.core.TagSet;
+import org.oscim.theme.RenderTheme;
+import org.oscim.theme.rule.Rule;
+import org.oscim.theme.rule.RuleBuilder;
+import org.oscim.theme.styles.LineStyle;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class MetricsTest {
+
+    @After
+    public void tearDown() {
+        Metrics.setSink(null);
+    }
+
+    @Test
+    public void histogramShouldBoundPercentiles() {
+        Histogram h = new Histogram();
+        for (int i = 1; i <= 100; i++)
+            h.add(i);
+
+        assertThat(h.getCount()).isEqualTo(100);
+        assertThat(h.getSum()).isEqualTo(5050);
+        assertThat(h.getMin()).isEqualTo(1);
+        assertThat(h.getMax()).isEqualTo(100);
+
+        /* 50 is in bucket [32, 64) */
+        assertThat(h.getPercentile(0.5)).isEqualTo(63);
+        assertThat(h.getPercentile(1)).isEqualTo(100);
+
+        h.reset();
+        assertThat(h.getCount()).isEqualTo(0);
+        assertThat(h.getPercentile(0.5)).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldNotMeasureWithoutSink() {
+        assertThat(Metrics.isEnabled()).isFalse();
+        assertThat(Metrics.start()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldRecordToCollector() {
+        MetricsCollector collector = new MetricsCollector();
+        Metrics.setSink(collector);
+
+        long t = Metrics.start();
+        assertThat(t).isNotEqualTo(0);
+        Metrics.stop(Metrics.TILE_PROCESS, t);
+        Metrics.record(Metrics.THEME_HIT, 2);
+        Metrics.record(Metrics.THEME_HIT, 3);
+
+        assertThat(collector.get(Metrics.TILE_PROCESS).getCount()).isEqualTo(1);
+        assertThat(collector.get(Metrics.THEME_HIT).getCount()).isEqualTo(2);
+        assertThat(collector.toString()).contains("process: 1 avg").contains("theme hit: 5");
+    }
+
+    @Test
+    public void shouldRecordThemeHitsInBatches() {
+        MetricsCollector collector = new MetricsCollector();
+        Metrics.setSink(collector);
+
+        Rule rule = RuleBuilder.create("highway", "primary")
+                .addStyle(new LineStyle(0xff000000, 2))
+                .onComplete(new int[]{0});
+        RenderTheme theme = new RenderTheme(0, 1, new Rule[]{rule}, 1);
+
+        TagSet tags = new TagSet();
+        tags.add(new Tag("highway", "primary"));
+
+        /* one miss and 299 hits */
+        for (int i = 0; i < 300; i++)
+            assertThat(theme.matchElement(GeometryType.LINE, tags, 14)).hasSize(1);
+
+        assertThat(collector.get(Metrics.THEME_MISS).getCount()).isEqualTo(1);
+        assertThat(collector.get(Metrics.THEME_HIT).getCount()).isEqualTo(1);
+        assertThat(collector.get(Metrics.THEME_HIT).getSum()).isEqualTo(256);
+    }
+}
@@ -0,0 +1,26 @@
+package org.oscim.layers.tile;
+
+/**
+ * Tiles are loaded one after another on the main thread, nothing
+ * to schedule.
+ */
+public class LoadScheduler {
+
+    public static int MAX_CONCURRENT = 1;
+
+    private final static LoadScheduler sInstance = new LoadScheduler();
+
+    static LoadScheduler getInstance() {
+        return sInstance;
+    }
+
+    boolean acquire(TileManager manager) {
+        return manager.hasTileJobs();
+    }
+
+    void release(TileManager manager) {
+    }
+
+    void jobsChanged() {
+    }
+}
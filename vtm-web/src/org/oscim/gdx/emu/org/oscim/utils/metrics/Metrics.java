@@ -0,0 +1,176 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.utils.metrics;
+
+import com.google.gwt.core.client.Duration;
+
+import org.oscim.renderer.LayerRenderer;
+
+/**
+ * Instrumentation of the tile path. Measurements are passed to the
+ * {@link MetricsSink} set by {@link #setSink(MetricsSink)}, by default
+ * nothing is measured.
+ * <p/>
+ * Usage: <pre>
+ * long t = Metrics.start();
+ * ...
+ * Metrics.stop(Metrics.TILE_PROCESS, t);
+ * </pre>
+ */
+public final class Metrics {
+
+    /**
+     * Time to load a tile by a TileLoader, from query to completion
+     */
+    public static final int TILE_QUERY = 0;
+
+    /**
+     * Time from sending a tile request to the response, or to read a
+     * block of a map file
+     */
+    public static final int TILE_REQUEST = 1;
+
+    /**
+     * Time to decode a tile and to process its elements by the
+     * ITileDataSink. Includes reading the response, theme matching
+     * (THEME_MISS) and adding elements to buckets.
+     */
+    public static final int TILE_PROCESS = 2;
+
+    /**
+     * RenderTheme style cache hits, recorded in batches as sum
+     */
+    public static final int THEME_HIT = 3;
+
+    /**
+     * Time to match rules on RenderTheme style cache misses
+     */
+    public static final int THEME_MISS = 4;
+
+    /**
+     * Time of RenderBuckets.prepare()
+     */
+    public static final int BUCKETS_PREPARE = 5;
+
+    /**
+     * Time of RenderBuckets.compile(), including the upload
+     */
+    public static final int BUCKETS_COMPILE = 6;
+
+    /**
+     * Bytes uploaded by RenderBuckets.compile()
+     */
+    public static final int UPLOAD_BYTES = 7;
+
+    /**
+     * Time to draw a frame
+     */
+    public static final int FRAME = 8;
+
+    /**
+     * Points removed per tile by simplification
+     */
+    public static final int SIMPLIFY = 9;
+
+    /**
+     * Polygons per tile drawn by the stencil method
+     */
+    public static final int STENCIL_POLYGONS = 10;
+
+    /**
+     * Polygons per tile tessellated into a mesh
+     */
+    public static final int MESH_POLYGONS = 11;
+
+    public static final int NUM_METRICS = 12;
+
+    private static final String[] NAMES = {
+            "query", "request", "process", "theme hit", "theme miss",
+            "prepare", "compile", "upload", "frame", "simplify",
+            "stencil", "mesh"
+    };
+
+    /**
+     * Sink that ignores all measurements
+     */
+    public static final MetricsSink NONE = new MetricsSink() {
+        @Override
+        public void record(int metric, long value) {
+        }
+
+        @Override
+        public void recordLayer(LayerRenderer renderer, long nanos) {
+        }
+    };
+
+    private static volatile MetricsSink sSink = NONE;
+    private static volatile boolean sEnabled;
+
+    private Metrics() {
+    }
+
+    /**
+     * @param sink receives measurements, null to disable.
+     */
+    public static void setSink(MetricsSink sink) {
+        sSink = (sink == null) ? NONE : sink;
+        sEnabled = (sink != null);
+    }
+
+    public static MetricsSink getSink() {
+        return sSink;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    public static String getName(int metric) {
+        return NAMES[metric];
+    }
+
+    /**
+     * @return start time for {@link #stop(int, long)}, 0 when disabled.
+     */
+    public static long start() {
+        return sEnabled ? nanoTime() : 0;
+    }
+
+    /**
+     * Record time passed since 'start' for 'metric'.
+     */
+    public static void stop(int metric, long start) {
+        if (start != 0)
+            sSink.record(metric, nanoTime() - start);
+    }
+
+    /**
+     * Record time passed since 'start' for rendering by 'renderer'.
+     */
+    public static void stop(LayerRenderer renderer, long start) {
+        if (start != 0)
+            sSink.recordLayer(renderer, nanoTime() - start);
+    }
+
+    public static void record(int metric, long value) {
+        if (sEnabled)
+            sSink.record(metric, value);
+    }
+
+    /* System.nanoTime() is not emulated */
+    private static long nanoTime() {
+        return (long) (Duration.currentTimeMillis() * 1000000);
+    }
+}
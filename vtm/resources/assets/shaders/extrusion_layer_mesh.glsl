@@ -2,10 +2,11 @@
 precision highp float;
 #endif
 uniform mat4 u_mvp;
-uniform vec4 u_color;
 uniform float u_alpha;
 attribute vec4 a_pos;
 attribute vec2 a_light;
+// premultiplied vertex color
+attribute vec4 a_color;
 varying vec4 color;
 varying float depth;
 const float alpha = 1.0;
@@ -38,7 +39,7 @@ main(){
 
   // extreme fake-ssao by height
   l += (clamp(a_pos.z / 2048.0, 0.0, 0.1) - 0.05);
-  color = vec4(u_color.rgb * (clamp(l, 0.0, 1.0) * alpha), u_color.a * alpha);
+  color = vec4(a_color.rgb * (clamp(l, 0.0, 1.0) * alpha), a_color.a * alpha);
 }
 
 $$
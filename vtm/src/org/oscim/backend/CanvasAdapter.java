@@ -23,6 +23,7 @@ import org.oscim.backend.canvas.Paint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -106,6 +107,24 @@ public abstract class CanvasAdapter {
         return g.decodeBitmapImpl(inputStream);
     }
 
+    /**
+     * Create {@link Bitmap} from encoded image data. Backends that can
+     * decode directly from an array override this to avoid wrapping
+     * the data in a stream.
+     *
+     * @param data   the encoded image
+     * @param offset start of image in data
+     * @param length length of image in bytes
+     * @return the bitmap
+     */
+    protected Bitmap decodeBitmapImpl(byte[] data, int offset, int length) {
+        return decodeBitmapImpl(new ByteArrayInputStream(data, offset, length));
+    }
+
+    public static Bitmap decodeBitmap(byte[] data, int offset, int length) {
+        return g.decodeBitmapImpl(data, offset, length);
+    }
+
     /**
      * Create SVG {@link Bitmap} from InputStream.
      *
@@ -320,6 +320,7 @@ public interface GL {
     public static final int DEPTH_COMPONENT16 = 0x81A5;
     public static final int STENCIL_INDEX = 0x1901;
     public static final int STENCIL_INDEX8 = 0x8D48;
+    public static final int DEPTH24_STENCIL8 = 0x88F0;
     public static final int RENDERBUFFER_WIDTH = 0x8D42;
     public static final int RENDERBUFFER_HEIGHT = 0x8D43;
     public static final int RENDERBUFFER_INTERNAL_FORMAT = 0x8D44;
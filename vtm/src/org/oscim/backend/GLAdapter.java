@@ -35,6 +35,11 @@ public class GLAdapter {
      */
     public static boolean NO_BUFFER_SUB_DATA = false;
 
+    /**
+     * Set when renderbuffers with packed depth and stencil are supported
+     */
+    public static boolean PACKED_DEPTH_STENCIL = false;
+
     public static void init(GL gl20) {
         gl = gl20;
     }
@@ -274,6 +274,30 @@ public class GeometryBuffer {
             index[indexPos + 1] = -1;
     }
 
+    /**
+     * Copy geometry of 'other' into this buffer.
+     */
+    public GeometryBuffer set(GeometryBuffer other) {
+        clear();
+
+        int numIndices = 0;
+        for (int n = other.index.length; numIndices < n; numIndices++)
+            if (other.index[numIndices] < 0)
+                break;
+
+        ensurePointSize(other.pointPos >> 1, false);
+        ensureIndexSize(numIndices + 1, false);
+
+        System.arraycopy(other.points, 0, points, 0, other.pointPos);
+        System.arraycopy(other.index, 0, index, 0, numIndices);
+        index[numIndices] = -1;
+
+        pointPos = other.pointPos;
+        indexPos = other.indexPos;
+        type = other.type;
+        return this;
+    }
+
     public GeometryBuffer translate(float dx, float dy) {
         for (int i = 0; i < pointPos; i += 2) {
             points[i] += dx;
@@ -374,7 +398,7 @@ public class GeometryBuffer {
             if (index[idx] == 0)
                 continue;
 
-            int first = inPos;
+            int first = outPos;
             double px = points[inPos++];
             double py = points[inPos++];
 
@@ -408,6 +432,7 @@ public class GeometryBuffer {
             }
             index[idx] = cnt;
         }
+        pointPos = outPos;
     }
 
     public String toString() {
@@ -0,0 +1,153 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers;
+
+import org.oscim.backend.CanvasAdapter;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.backend.canvas.Canvas;
+import org.oscim.backend.canvas.Color;
+import org.oscim.backend.canvas.Paint;
+import org.oscim.core.MapPosition;
+import org.oscim.event.Event;
+import org.oscim.map.Map;
+import org.oscim.renderer.BitmapRenderer;
+import org.oscim.renderer.GLViewport;
+import org.oscim.utils.metrics.Metrics;
+import org.oscim.utils.metrics.MetricsCollector;
+
+/**
+ * Debug overlay showing the measurements of a {@link MetricsCollector}.
+ * Sets the collector as {@link Metrics} sink while the layer is enabled.
+ */
+public class MetricsLayer extends Layer implements Map.UpdateListener {
+
+    /**
+     * Interval between updates of the overlay in milliseconds, also
+     * while the map is idle
+     */
+    public static long UPDATE_INTERVAL = 1000;
+
+    private final static int WIDTH = 512;
+    private final static int HEIGHT = 256;
+
+    private final MetricsCollector mCollector;
+    private final BitmapRenderer mBitmapRenderer;
+
+    private final Bitmap mBitmap;
+    private final Canvas mCanvas;
+    private final Paint mPaint;
+    private final float mLineHeight;
+
+    private final StringBuilder mText = new StringBuilder();
+    private long mLastUpdate;
+
+    /* update while the map is idle */
+    private boolean mScheduled;
+    private boolean mDetached;
+
+    private final Runnable mUpdateTask = new Runnable() {
+        @Override
+        public void run() {
+            mScheduled = false;
+            if (mDetached || !isEnabled())
+                return;
+
+            update();
+            mMap.render();
+            schedule();
+        }
+    };
+
+    public MetricsLayer(Map map) {
+        this(map, new MetricsCollector());
+    }
+
+    public MetricsLayer(Map map, MetricsCollector collector) {
+        super(map);
+        mCollector = collector;
+
+        mBitmap = CanvasAdapter.newBitmap(WIDTH, HEIGHT, 0);
+        mCanvas = CanvasAdapter.newCanvas();
+        mCanvas.setBitmap(mBitmap);
+
+        mPaint = CanvasAdapter.newPaint();
+        mPaint.setColor(Color.WHITE);
+        mPaint.setTypeface(Paint.FontFamily.MONOSPACE, Paint.FontStyle.NORMAL);
+        mPaint.setTextSize(12 * CanvasAdapter.dpi / 160);
+        mLineHeight = mPaint.getFontHeight();
+
+        mRenderer = mBitmapRenderer = new BitmapRenderer();
+        mBitmapRenderer.setBitmap(mBitmap, WIDTH, HEIGHT);
+        mBitmapRenderer.setPosition(GLViewport.Position.TOP_LEFT);
+
+        Metrics.setSink(mCollector);
+        schedule();
+    }
+
+    public MetricsCollector getCollector() {
+        return mCollector;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        super.setEnabled(enabled);
+        Metrics.setSink(enabled ? mCollector : null);
+        if (enabled)
+            schedule();
+    }
+
+    @Override
+    public void onDetach() {
+        mDetached = true;
+        if (Metrics.getSink() == mCollector)
+            Metrics.setSink(null);
+    }
+
+    @Override
+    public void onMapEvent(Event e, MapPosition mapPosition) {
+        if (System.currentTimeMillis() - mLastUpdate >= UPDATE_INTERVAL)
+            update();
+    }
+
+    private void schedule() {
+        if (mScheduled || mDetached)
+            return;
+
+        mScheduled = true;
+        mMap.postDelayed(mUpdateTask, UPDATE_INTERVAL);
+    }
+
+    private void update() {
+        mLastUpdate = System.currentTimeMillis();
+
+        mText.setLength(0);
+        mCollector.format(mText);
+
+        synchronized (mBitmap) {
+            mCanvas.fillColor(Color.get(160, 0, 0, 0));
+
+            float y = mLineHeight;
+            int start = 0;
+            for (int i = 0, n = mText.length(); i < n && y < HEIGHT; i++) {
+                if (mText.charAt(i) != '\n')
+                    continue;
+                mCanvas.drawText(mText.substring(start, i), 4, y, mPaint);
+                start = i + 1;
+                y += mLineHeight;
+            }
+        }
+        mBitmapRenderer.updateBitmap();
+    }
+}
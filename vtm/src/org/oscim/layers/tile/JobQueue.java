@@ -32,13 +32,29 @@ public class JobQueue {
 
     private int mCurrentJob = 0;
     private MapTile[] mJobs;
+    private boolean mSorted;
+
+    /* number of prefetch jobs at the end of mJobs */
+    private int mNumPrefetch;
 
     /**
      * @param tiles the jobs to be added to this queue.
      */
     public synchronized void setJobs(MapTile[] tiles) {
+        setJobs(tiles, 0);
+    }
+
+    /**
+     * @param tiles       the jobs to be added to this queue.
+     * @param numPrefetch number of tiles that are prefetched, i.e. not
+     *                    visible. They must have a larger distance than
+     *                    the visible tiles.
+     */
+    public synchronized void setJobs(MapTile[] tiles, int numPrefetch) {
         mJobs = tiles;
         mCurrentJob = 0;
+        mSorted = false;
+        mNumPrefetch = numPrefetch;
     }
 
     /**
@@ -62,6 +78,7 @@ public class JobQueue {
         }
         mCurrentJob = 0;
         mJobs = null;
+        mNumPrefetch = 0;
     }
 
     /**
@@ -78,11 +95,7 @@ public class JobQueue {
         if (mJobs == null)
             return null;
 
-        if (mCurrentJob == 0) {
-            int len = mJobs.length;
-            if (len > 1)
-                TileDistanceSort.sort(mJobs, 0, len);
-        }
+        sort();
 
         MapTile t = mJobs[mCurrentJob];
         mJobs[mCurrentJob] = null;
@@ -93,4 +106,35 @@ public class JobQueue {
         return t;
 
     }
+
+    /**
+     * @return the most important job without removing it from this queue
+     * or null, if empty.
+     */
+    public synchronized MapTile peek() {
+        if (mJobs == null)
+            return null;
+
+        sort();
+
+        return mJobs[mCurrentJob];
+    }
+
+    /**
+     * @return true if only prefetch jobs are left.
+     */
+    public synchronized boolean isPrefetching() {
+        return mJobs != null && mCurrentJob >= mJobs.length - mNumPrefetch;
+    }
+
+    private void sort() {
+        if (mSorted)
+            return;
+
+        int len = mJobs.length;
+        if (len > 1)
+            TileDistanceSort.sort(mJobs, 0, len);
+
+        mSorted = true;
+    }
 }
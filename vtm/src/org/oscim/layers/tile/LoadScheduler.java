@@ -0,0 +1,133 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile;
+
+import java.util.ArrayList;
+
+/**
+ * Limits the number of tiles loaded at the same time by the TileLoaders of
+ * all TileLayers. A TileLoader must acquire a permit before taking a job
+ * from its TileManager.
+ * <p/>
+ * Permits are given to the waiting loader with the most important job:
+ * <ul>
+ * <li>visible tiles before tiles that are prefetched</li>
+ * <li>layers loading less tiles relative to their weight
+ * (see {@link TileLayer#setLoadWeight(float)})</li>
+ * <li>tiles closer to the map center</li>
+ * </ul>
+ */
+public class LoadScheduler {
+
+    /**
+     * Maximum number of tiles loaded concurrently by all TileLayers
+     */
+    public static int MAX_CONCURRENT =
+            Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private final static LoadScheduler sInstance = new LoadScheduler();
+
+    static LoadScheduler getInstance() {
+        return sInstance;
+    }
+
+    private final ArrayList<TileManager> mWaiting = new ArrayList<TileManager>();
+
+    private int mRunning;
+
+    /**
+     * Wait until a job of 'manager' may be loaded.
+     *
+     * @return false when 'manager' has no more jobs.
+     */
+    synchronized boolean acquire(TileManager manager) throws InterruptedException {
+        mWaiting.add(manager);
+        try {
+            while (true) {
+                if (!manager.hasTileJobs())
+                    return false;
+
+                if (mRunning < MAX_CONCURRENT && isNext(manager))
+                    break;
+
+                wait();
+            }
+        } finally {
+            mWaiting.remove(manager);
+
+            /* the order of remaining waiters may change */
+            notifyAll();
+        }
+
+        mRunning++;
+        manager.mLoading++;
+        return true;
+    }
+
+    /**
+     * Return the permit of 'manager' after loading a tile.
+     */
+    synchronized void release(TileManager manager) {
+        mRunning--;
+        manager.mLoading--;
+        notifyAll();
+    }
+
+    /**
+     * Reevaluate waiting loaders, called when jobs were added.
+     */
+    synchronized void jobsChanged() {
+        notifyAll();
+    }
+
+    /**
+     * @return number of tiles currently loaded.
+     */
+    synchronized int getRunning() {
+        return mRunning;
+    }
+
+    private boolean isNext(TileManager manager) {
+        for (int i = 0, n = mWaiting.size(); i < n; i++) {
+            TileManager other = mWaiting.get(i);
+            if (other != manager && compare(other, manager) < 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return negative when the next job of 'a' is more important.
+     */
+    static int compare(TileManager a, TileManager b) {
+        MapTile ta = a.peekTileJob();
+        MapTile tb = b.peekTileJob();
+
+        if (ta == null || tb == null)
+            return ta == null ? (tb == null ? 0 : 1) : -1;
+
+        boolean pa = a.isPrefetching();
+        boolean pb = b.isPrefetching();
+        if (pa != pb)
+            return pa ? 1 : -1;
+
+        float la = (a.mLoading + 1) / a.mLoadWeight;
+        float lb = (b.mLoading + 1) / b.mLoadWeight;
+        if (la != lb)
+            return la < lb ? -1 : 1;
+
+        return Float.compare(ta.distance, tb.distance);
+    }
+}
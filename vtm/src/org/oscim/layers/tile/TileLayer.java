@@ -90,6 +90,19 @@ public abstract class TileLayer extends Layer implements UpdateListener {
         mNumLoaders = num;
     }
 
+    /**
+     * Set the share of tiles this layer may load concurrently relative to
+     * other layers, when all are loading visible tiles. Default is 1.
+     * The number of tiles loaded by all layers is limited by
+     * {@link LoadScheduler#MAX_CONCURRENT}.
+     */
+    public void setLoadWeight(float weight) {
+        if (weight <= 0)
+            throw new IllegalArgumentException("weight must be > 0");
+
+        mTileManager.mLoadWeight = weight;
+    }
+
     @Override
     public void onMapEvent(Event event, MapPosition mapPosition) {
 
@@ -106,6 +119,10 @@ public abstract class TileLayer extends Layer implements UpdateListener {
         } else if (event == Map.POSITION_EVENT) {
             if (mTileManager.update(mapPosition))
                 notifyLoaders();
+
+        } else if (event == Map.ANIM_END) {
+            if (mTileManager.cancelPrefetch(mapPosition))
+                notifyLoaders();
         }
     }
 
@@ -121,6 +138,9 @@ public abstract class TileLayer extends Layer implements UpdateListener {
     void notifyLoaders() {
         for (TileLoader loader : mTileLoader)
             loader.go();
+
+        /* the order of jobs across layers has changed */
+        LoadScheduler.getInstance().jobsChanged();
     }
 
     protected void pauseLoaders(boolean wait) {
@@ -21,6 +21,8 @@ import org.oscim.core.MapElement;
 import org.oscim.tiling.ITileDataSink;
 import org.oscim.tiling.QueryResult;
 import org.oscim.utils.PausableThread;
+import org.oscim.utils.Tessellator;
+import org.oscim.utils.metrics.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,17 +58,25 @@ public abstract class TileLoader extends PausableThread implements ITileDataSink
     }
 
     @Override
-    protected void doWork() {
-        mTile = mTileManager.getTileJob();
-
-        if (mTile == null)
+    protected void doWork() throws InterruptedException {
+        LoadScheduler scheduler = LoadScheduler.getInstance();
+        if (!scheduler.acquire(mTileManager))
             return;
 
         try {
+            mTile = mTileManager.getTileJob();
+
+            if (mTile == null)
+                return;
+
+            long t = Metrics.start();
             loadTile(mTile);
+            Metrics.stop(Metrics.TILE_QUERY, t);
         } catch (Exception e) {
             e.printStackTrace();
             completed(FAILED);
+        } finally {
+            scheduler.release(mTileManager);
         }
     }
 
@@ -85,6 +95,12 @@ public abstract class TileLoader extends PausableThread implements ITileDataSink
         return mTileManager.hasTileJobs();
     }
 
+    @Override
+    protected void afterRun() {
+        /* free native tessellator contexts of this thread */
+        Tessellator.disposeContexts();
+    }
+
     public abstract void dispose();
 
     public abstract void cancel();
@@ -27,6 +27,7 @@ import org.oscim.map.Map;
 import org.oscim.map.Viewport;
 import org.oscim.renderer.BufferObject;
 import org.oscim.tiling.QueryResult;
+import org.oscim.utils.FastMath;
 import org.oscim.utils.ScanBox;
 import org.oscim.utils.quadtree.TileIndex;
 import org.slf4j.Logger;
@@ -50,7 +51,7 @@ public class TileManager {
     public final static Event TILE_LOADED = new Event();
     public final static Event TILE_REMOVED = new Event();
 
-    private final int mCacheLimit;
+    private int mCacheLimit;
     private int mCacheReduce;
 
     private int mMinZoom;
@@ -70,6 +71,12 @@ public class TileManager {
     private static final int CACHE_THRESHOLD = 25;
     private static final int CACHE_CLEAR_THRESHOLD = 10;
 
+    /**
+     * Number of positions on the path of an animation at which
+     * tiles are prefetched, the last one is the end position.
+     */
+    private static final int PREFETCH_STEPS = 4;
+
     private final Map mMap;
     private final Viewport mViewport;
 
@@ -98,6 +105,27 @@ public class TileManager {
      */
     private final ArrayList<MapTile> mJobs;
 
+    /**
+     * Tiles to prefetch for a running animation, loaded after mJobs.
+     */
+    private final ArrayList<MapTile> mPrefetchJobs;
+
+    /**
+     * Max number of tiles to prefetch for an animation.
+     */
+    private int mPrefetchBudget = 16;
+    private int mPrefetchCount;
+    private boolean mPrefetchPending;
+    private final MapPosition mPrefetchPos = new MapPosition();
+
+    /**
+     * Tiles selected for the animation end position mPrefetchEnd,
+     * as x, y, zoomLevel triples. Selected once per animation.
+     */
+    private int[] mPrefetchTiles = new int[0];
+    private boolean mPrefetchSelected;
+    private final MapPosition mPrefetchEnd = new MapPosition();
+
     /**
      * counter to check whether current TileSet has changed
      */
@@ -118,6 +146,17 @@ public class TileManager {
 
     private final float[] mMapPlane = new float[8];
 
+    /**
+     * share of tiles loaded concurrently relative to other layers,
+     * see {@link LoadScheduler}
+     */
+    float mLoadWeight = 1;
+
+    /**
+     * number of tiles currently loaded, guarded by LoadScheduler
+     */
+    int mLoading;
+
     private boolean mLoadParent;
     private int mPrevZoomlevel;
 
@@ -166,6 +205,7 @@ public class TileManager {
 
         jobQueue = new JobQueue();
         mJobs = new ArrayList<MapTile>();
+        mPrefetchJobs = new ArrayList<MapTile>();
         mTiles = new MapTile[mCacheLimit];
 
         mTilesEnd = 0;
@@ -173,6 +213,18 @@ public class TileManager {
         mUpdateSerial = 0;
     }
 
+    /**
+     * Set the number of tiles to keep in cache. Tiles exceeding
+     * the limit are removed on the next update, farthest first.
+     */
+    public void setCacheLimit(int cacheLimit) {
+        mCacheLimit = cacheLimit;
+    }
+
+    public int getCacheLimit() {
+        return mCacheLimit;
+    }
+
     public void setZoomTable(int[] zoomTable) {
         mZoomTable = zoomTable;
     }
@@ -186,6 +238,14 @@ public class TileManager {
         mLevelUpThreshold = clamp(up, 1, 2);
     }
 
+    /**
+     * Set the max number of tiles that are prefetched along the path
+     * of a running animation, e.g. a fling. 0 disables prefetching.
+     */
+    public void setPrefetchBudget(int tiles) {
+        mPrefetchBudget = tiles;
+    }
+
     public MapTile getTile(int x, int y, int z) {
         synchronized (mTilelock) {
             return mIndex.getTile(x, y, z);
@@ -250,6 +310,7 @@ public class TileManager {
          * should increase the chance that they are free when new
          * jobs come in. */
         jobQueue.clear();
+        mPrefetchPending = false;
 
         if (pos.zoomLevel < mMinZoom) {
             if (mCurrentTiles.cnt > 0 && pos.zoomLevel < mMinZoom - 4) {
@@ -347,16 +408,36 @@ public class TileManager {
             mMap.render();
         }
 
+        if (mPrefetchBudget > 0)
+            prefetch(pos);
+
         /* Add tile jobs to queue */
-        if (mJobs.isEmpty())
+        if (mJobs.isEmpty() && mPrefetchJobs.isEmpty())
             return false;
 
-        MapTile[] jobs = new MapTile[mJobs.size()];
-        jobs = mJobs.toArray(jobs);
+        int numJobs = mJobs.size();
+        MapTile[] jobs = new MapTile[numJobs + mPrefetchJobs.size()];
+        for (int i = 0; i < numJobs; i++)
+            jobs[i] = mJobs.get(i);
+        for (int i = numJobs; i < jobs.length; i++)
+            jobs[i] = mPrefetchJobs.get(i - numJobs);
+
         updateDistances(jobs, jobs.length, pos);
 
+        if (numJobs < jobs.length) {
+            /* load prefetch tiles after all visible tiles */
+            float maxDistance = 0;
+            for (int i = 0; i < numJobs; i++)
+                maxDistance = Math.max(maxDistance, jobs[i].distance);
+            for (int i = numJobs; i < jobs.length; i++)
+                jobs[i].distance += maxDistance + 1;
+
+            mPrefetchPending = true;
+        }
+        mPrefetchJobs.clear();
+
         /* sets tiles to state == LOADING */
-        jobQueue.setJobs(jobs);
+        jobQueue.setJobs(jobs, jobs.length - numJobs);
         mJobs.clear();
 
         if (mCacheReduce < mCacheLimit / 2) {
@@ -384,6 +465,113 @@ public class TileManager {
         jobQueue.clear();
     }
 
+    /**
+     * Drop queued prefetch tiles, e.g. when the animation they were
+     * predicted for was interrupted.
+     *
+     * @return true when new jobs were queued for visible tiles.
+     */
+    public boolean cancelPrefetch(MapPosition pos) {
+        if (!mPrefetchPending)
+            return false;
+
+        /* rebuild queue without prefetch tiles */
+        return update(pos);
+    }
+
+    /**
+     * Add tiles on the predicted path of a running animation to
+     * mPrefetchJobs, at most mPrefetchBudget. The tiles are only
+     * selected again when the end position of the animation changes.
+     */
+    private void prefetch(MapPosition pos) {
+        if (!mMap.animator().getEndPosition(mPrefetchPos)) {
+            mPrefetchSelected = false;
+            return;
+        }
+        MapPosition end = mPrefetchPos;
+
+        if (!mPrefetchSelected
+                || end.x != mPrefetchEnd.x
+                || end.y != mPrefetchEnd.y
+                || end.scale != mPrefetchEnd.scale) {
+            selectPrefetchTiles(pos, end);
+            mPrefetchEnd.copy(end);
+            mPrefetchSelected = true;
+        }
+
+        /* queue selected tiles that are not loaded (anymore) */
+        int[] tiles = mPrefetchTiles;
+        for (int i = 0, n = mPrefetchCount * 3; i < n; i += 3)
+            addPrefetchTile(tiles[i], tiles[i + 1], tiles[i + 2]);
+    }
+
+    private void selectPrefetchTiles(MapPosition start, MapPosition end) {
+        if (mPrefetchTiles.length < mPrefetchBudget * 3)
+            mPrefetchTiles = new int[mPrefetchBudget * 3];
+
+        mPrefetchCount = 0;
+
+        for (int step = 1; step <= PREFETCH_STEPS; step++) {
+            double t = (double) step / PREFETCH_STEPS;
+            double x = start.x + (end.x - start.x) * t;
+            double y = start.y + (end.y - start.y) * t;
+            double scale = start.scale * Math.pow(end.scale / start.scale, t);
+
+            int zoom = clamp(FastMath.log2((int) scale), mMinZoom, mMaxZoom);
+            if (mZoomTable != null) {
+                int match = 0;
+                for (int z : mZoomTable) {
+                    if (z <= zoom && z > match)
+                        match = z;
+                }
+                if (match == 0)
+                    continue;
+                zoom = match;
+            }
+
+            /* mMapPlane still holds the extents of the current view */
+            mPrefetchScanBox.scan(x, y, scale, zoom, mMapPlane);
+
+            if (mPrefetchCount >= mPrefetchBudget)
+                break;
+        }
+    }
+
+    private void selectPrefetchTile(int x, int y, int zoomLevel) {
+        MapTile tile = mIndex.getTile(x, y, zoomLevel);
+
+        /* already loading or loaded */
+        if (tile != null && tile.isActive())
+            return;
+
+        int[] tiles = mPrefetchTiles;
+        for (int i = 0, n = mPrefetchCount * 3; i < n; i += 3) {
+            if (tiles[i] == x && tiles[i + 1] == y && tiles[i + 2] == zoomLevel)
+                return;
+        }
+        int i = mPrefetchCount * 3;
+        tiles[i] = x;
+        tiles[i + 1] = y;
+        tiles[i + 2] = zoomLevel;
+        mPrefetchCount++;
+    }
+
+    private void addPrefetchTile(int x, int y, int zoomLevel) {
+        MapTile tile = mIndex.getTile(x, y, zoomLevel);
+
+        if (tile == null) {
+            TileNode n = mIndex.add(x, y, zoomLevel);
+            tile = n.item = new MapTile(n, x, y, zoomLevel);
+            addToCache(tile);
+        } else if (tile.isActive()) {
+            /* already loading or loaded */
+            return;
+        }
+        tile.setState(LOADING);
+        mPrefetchJobs.add(tile);
+    }
+
     public boolean hasTileJobs() {
         return !jobQueue.isEmpty();
     }
@@ -392,6 +580,20 @@ public class TileManager {
         return jobQueue.poll();
     }
 
+    /**
+     * @return the next tile job without removing it from the queue.
+     */
+    public MapTile peekTileJob() {
+        return jobQueue.peek();
+    }
+
+    /**
+     * @return true if only tiles for prefetching are left to load.
+     */
+    public boolean isPrefetching() {
+        return jobQueue.isPrefetching();
+    }
+
     /**
      * Retrive a TileSet of current tiles. Tiles remain locked in cache until
      * the set is unlocked by either passing it again to this function or to
@@ -722,6 +924,32 @@ public class TileManager {
         }
     };
 
+    private final ScanBox mPrefetchScanBox = new ScanBox() {
+
+        @Override
+        protected void setVisible(int y, int x1, int x2) {
+            int xmax = 1 << mZoom;
+
+            for (int x = x1; x < x2; x++) {
+                if (mPrefetchCount >= mPrefetchBudget)
+                    return;
+
+                int xx = x;
+                if (x < 0 || x >= xmax) {
+                    /* flip-around date line */
+                    if (x < 0)
+                        xx = xmax + x;
+                    else
+                        xx = x - xmax;
+
+                    if (xx < 0 || xx >= xmax)
+                        continue;
+                }
+                selectPrefetchTile(xx, y, mZoom);
+            }
+        }
+    };
+
     public MapTile getTile(int tileX, int tileY, byte zoomLevel) {
         return mIndex.getTile(tileX, tileY, zoomLevel);
     }
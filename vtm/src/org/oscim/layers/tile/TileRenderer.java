@@ -46,9 +46,11 @@ public abstract class TileRenderer extends LayerRenderer {
 
     private int mOverdraw = 0;
     private float mAlpha = 1;
+    private boolean mFade;
 
     protected int mOverdrawColor;
     protected float mLayerAlpha;
+    protected boolean mCrossFade;
 
     private int mUploadSerial;
 
@@ -76,7 +78,15 @@ public abstract class TileRenderer extends LayerRenderer {
     }
 
     /**
-     * synced with clearTiles, setOverdrawColor and setBitmapAlpha
+     * Fade in new tiles over their parent or child tiles.
+     * Threadsafe
+     */
+    public synchronized void setCrossFade(boolean enable) {
+        mFade = enable;
+    }
+
+    /**
+     * synced with clearTiles, setOverdrawColor, setBitmapAlpha and setCrossFade
      */
     @Override
     public synchronized void update(GLViewport v) {
@@ -88,13 +98,20 @@ public abstract class TileRenderer extends LayerRenderer {
             return;
         }
 
+        if (mLayerAlpha != mAlpha || mOverdrawColor != mOverdraw
+                || mCrossFade != mFade)
+            setChanged();
+
         /* keep constant while rendering frame */
         mLayerAlpha = mAlpha;
         mOverdrawColor = mOverdraw;
+        mCrossFade = mFade;
 
         /* get current tiles to draw */
         synchronized (tilelock) {
             boolean tilesChanged = mTileManager.getActiveTiles(mDrawTiles);
+            if (tilesChanged)
+                setChanged();
 
             if (mDrawTiles.cnt == 0) {
                 setReady(false);
@@ -121,6 +138,7 @@ public abstract class TileRenderer extends LayerRenderer {
         /* prepare tiles for rendering */
         if (compileTileLayers(mDrawTiles.tiles, mDrawTiles.cnt + mProxyTileCnt) > 0) {
             mUploadSerial++;
+            setChanged();
             BufferObject.checkBufferUsage(false);
         }
         setReady(true);
@@ -60,6 +60,11 @@ public class VectorTileRenderer extends TileRenderer {
      */
     protected int mDrawSerial;
 
+    @Override
+    public boolean isStatic() {
+        return true;
+    }
+
     @Override
     public synchronized void render(GLViewport v) {
 
@@ -99,6 +104,16 @@ public class VectorTileRenderer extends TileRenderer {
             }
         }
 
+        /* draw proxies below tiles that fade in */
+        if (mCrossFade) {
+            for (int i = 0; i < tileCnt; i++) {
+                MapTile t = tiles[i];
+                if (t.isVisible && t.state(READY) && t.holder == null
+                        && MapRenderer.frametime - getFadeTime(t, 0) < FADE_TIME)
+                    drawFadeProxy(t, v);
+            }
+        }
+
         /* draw visible tiles */
         for (int i = 0; i < tileCnt; i++) {
             MapTile t = tiles[i];
@@ -165,6 +180,17 @@ public class VectorTileRenderer extends TileRenderer {
 
         tile.lastDraw = mDrawSerial;
 
+        drawTile(tile, v, proxyLevel, tile, -1);
+    }
+
+    /**
+     * @param clip       tile to clip to, the tile itself or the tile a
+     *                   proxy is drawn for.
+     * @param proxyAlpha alpha of a fade proxy, -1 otherwise.
+     */
+    private void drawTile(MapTile tile, GLViewport v, int proxyLevel,
+                          MapTile clip, float proxyAlpha) {
+
         /* use holder proxy when it is set */
         RenderBuckets buckets = (tile.holder == null)
                 ? tile.getBuckets()
@@ -186,11 +212,31 @@ public class VectorTileRenderer extends TileRenderer {
         v.mvp.setTransScale(x, y, scale / COORD_SCALE);
         v.mvp.multiplyLhs(v.viewproj);
 
-        mClipMVP.setTransScale(x, y, scale / COORD_SCALE);
+        if (clip != tile) {
+            /* the first quad of each tile covers the tile, drawn
+             * with the matrix of 'clip' it covers 'clip' */
+            x = (float) ((clip.x - v.pos.x) * tileScale);
+            y = (float) ((clip.y - v.pos.y) * tileScale);
+            mClipMVP.setTransScale(x, y,
+                    (float) (v.pos.scale / (1 << clip.zoomLevel)) / COORD_SCALE);
+        } else {
+            mClipMVP.setTransScale(x, y, scale / COORD_SCALE);
+        }
         mClipMVP.multiplyLhs(mClipProj);
 
         float zoomDiv = FastMath.pow(tile.zoomLevel - v.pos.zoomLevel);
 
+        long dTime = MapRenderer.frametime - getFadeTime(tile, proxyLevel);
+
+        float alpha = mLayerAlpha;
+        if (proxyAlpha >= 0) {
+            alpha = proxyAlpha;
+        } else if (mCrossFade && proxyLevel == 0 && dTime < FADE_TIME) {
+            alpha *= dTime / FADE_TIME;
+            MapRenderer.animate();
+            setChanged();
+        }
+
         buckets.bind();
 
         PolygonBucket.Renderer.clip(mClipMVP, mClipMode);
@@ -217,7 +263,7 @@ public class VectorTileRenderer extends TileRenderer {
                     b = HairLineBucket.Renderer.draw(b, v);
                     break;
                 case BITMAP:
-                    b = BitmapBucket.Renderer.draw(b, v, 1, mLayerAlpha);
+                    b = BitmapBucket.Renderer.draw(b, v, 1, alpha);
                     break;
                 default:
                     /* just in case */
@@ -241,10 +287,28 @@ public class VectorTileRenderer extends TileRenderer {
             return;
         }
 
+        if (mOverdrawColor == 0 || dTime > FADE_TIME) {
+            PolygonBucket.Renderer.drawOver(mClipMVP, 0, 1);
+            return;
+        }
+
+        float fade = 1 - dTime / FADE_TIME;
+        PolygonBucket.Renderer.drawOver(mClipMVP, mOverdrawColor, fade * fade);
+
+        MapRenderer.animate();
+        setChanged();
+    }
+
+    private long getFadeTime(MapTile tile, int proxyLevel) {
         long fadeTime = tile.fadeTime;
         if (fadeTime == 0) {
             if (tile.holder == null) {
-                fadeTime = getMinFade(tile, proxyLevel);
+                /* with cross-fade a tile fades in over its proxies
+                 * from the first time it is drawn */
+                if (mCrossFade && proxyLevel == 0)
+                    fadeTime = MapRenderer.frametime;
+                else
+                    fadeTime = getMinFade(tile, proxyLevel);
             } else {
                 /* need to use time from original tile */
                 fadeTime = tile.holder.fadeTime;
@@ -253,18 +317,51 @@ public class VectorTileRenderer extends TileRenderer {
             }
             tile.fadeTime = fadeTime;
         }
+        return fadeTime;
+    }
 
-        long dTime = MapRenderer.frametime - fadeTime;
+    /**
+     * Alpha of the proxy below a tile that fades in, so that both
+     * together are drawn with the layer alpha.
+     *
+     * @param fade alpha of the tile relative to the layer alpha, 0 to 1.
+     */
+    static float getProxyAlpha(float layerAlpha, float fade) {
+        if (fade >= 1)
+            return 0;
 
-        if (mOverdrawColor == 0 || dTime > FADE_TIME) {
-            PolygonBucket.Renderer.drawOver(mClipMVP, 0, 1);
-            return;
-        }
+        return layerAlpha * (1 - fade) / (1 - layerAlpha * fade);
+    }
 
-        float fade = 1 - dTime / FADE_TIME;
-        PolygonBucket.Renderer.drawOver(mClipMVP, mOverdrawColor, fade * fade);
+    /**
+     * Draw children, parent or grandparent of a tile that fades in,
+     * clipped to the tile. Proxies are not marked as drawn, so they
+     * are drawn for each tile and as proxy for tiles without data.
+     */
+    protected void drawFadeProxy(MapTile t, GLViewport v) {
+        float fade = (MapRenderer.frametime - getFadeTime(t, 0)) / FADE_TIME;
+        float alpha = getProxyAlpha(mLayerAlpha, fade);
 
-        MapRenderer.animate();
+        boolean drawn = false;
+        for (int i = 0; i < 4; i++) {
+            MapTile c = t.getProxyChild(i, READY);
+            if (c == null)
+                continue;
+
+            drawTile(c, v, 1, t, alpha);
+            drawn = true;
+        }
+        if (drawn)
+            return;
+
+        MapTile proxy = t.getProxy(PROXY_PARENT, READY);
+        if (proxy != null) {
+            drawTile(proxy, v, -1, t, alpha);
+            return;
+        }
+        proxy = t.getProxy(PROXY_GRAMPA, READY);
+        if (proxy != null)
+            drawTile(proxy, v, -2, t, alpha);
     }
 
     protected boolean drawChildren(MapTile t, GLViewport v) {
@@ -35,6 +35,11 @@ public class BitmapTileLayer extends TileLayer {
 
     private final static int CACHE_LIMIT = 40;
 
+    /**
+     * Bitmap size of sources that do not set a tile size
+     */
+    private final static int DEFAULT_TILE_SIZE = 256;
+
     protected final TileSource mTileSource;
 
     public static class FadeStep {
@@ -54,17 +59,68 @@ public class BitmapTileLayer extends TileLayer {
     }
 
     public BitmapTileLayer(Map map, TileSource tileSource, int cacheLimit) {
-        super(map,
-                new TileManager(map, cacheLimit),
-                new VectorTileRenderer());
+        this(map, tileSource, cacheLimit, false);
+    }
+
+    /**
+     * @param rgb565 convert tiles to RGB565 on the loader thread and
+     *               upload them from direct buffers. Halves texture memory,
+     *               for opaque imagery only. Bitmaps that provide no
+     *               pixels, as on desktop and GWT, are uploaded as RGBA.
+     */
+    public BitmapTileLayer(Map map, TileSource tileSource, int cacheLimit, boolean rgb565) {
+        this(map, tileSource, new TileManager(map, cacheLimit),
+                new VectorTileRenderer(), rgb565);
+    }
+
+    public BitmapTileLayer(Map map, TileSource tileSource, TileManager tileManager,
+                           VectorTileRenderer renderer, boolean rgb565) {
+        super(map, tileManager, renderer);
 
         mTileManager.setZoomLevel(tileSource.getZoomLevelMin(),
                 tileSource.getZoomLevelMax());
 
         mTileSource = tileSource;
+        mRGB565 = rgb565;
+        mCacheLimit = tileManager.getCacheLimit();
+
+        int bytes = textureBytes(tileSource, rgb565);
+        pool = new TexturePool(Math.max(1, POOL_BUDGET / bytes));
+
         initLoader(getNumLoaders());
     }
 
+    /**
+     * @return size in bytes of the texture of one tile. Tile.SIZE is
+     * the scaled size on screen, not the size of the bitmap.
+     */
+    static int textureBytes(TileSource tileSource, boolean rgb565) {
+        int size = tileSource.getTileSize();
+        if (size <= 0)
+            size = DEFAULT_TILE_SIZE;
+
+        return size * size * (rgb565 ? 2 : 4);
+    }
+
+    public boolean isRGB565() {
+        return mRGB565;
+    }
+
+    /**
+     * Keep the textures of neighbouring zoom-levels within CACHE_BUDGET
+     * and cross-fade tiles when switching zoom-levels. Tiles which are
+     * still cached are shown again without loading and decoding.
+     */
+    public void setPyramidMode(boolean enable) {
+        int limit = mCacheLimit;
+        if (enable) {
+            int bytes = textureBytes(mTileSource, mRGB565);
+            limit = Math.max(mCacheLimit, CACHE_BUDGET / bytes);
+        }
+        mTileManager.setCacheLimit(limit);
+        tileRenderer().setCrossFade(enable);
+    }
+
     @Override
     public void onMapEvent(Event event, MapPosition pos) {
         super.onMapEvent(event, pos);
@@ -110,37 +166,24 @@ public class BitmapTileLayer extends TileLayer {
         pool.clear();
     }
 
-    final static int POOL_FILL = 20;
+    /**
+     * Memory budget in bytes for unused textures kept by the pool of a
+     * layer, e.g. 20 RGBA or 40 RGB565 textures of 256x256 pixels.
+     */
+    public static int POOL_BUDGET = 5 << 20;
+
+    /**
+     * Memory budget in bytes for the textures of cached tiles in
+     * pyramid mode, see setPyramidMode().
+     */
+    public static int CACHE_BUDGET = 32 << 20;
+
+    private final boolean mRGB565;
+    private final int mCacheLimit;
 
     /**
-     * pool shared by TextLayers
+     * pool shared by the loaders of this layer
      */
-    final TexturePool pool = new TexturePool(POOL_FILL) {
-
-        //        int sum = 0;
-        //
-        //        public TextureItem release(TextureItem item) {
-        //            log.debug(getFill() + " " + sum + " release tex " + item.id);
-        //            return super.release(item);
-        //        };
-        //
-        //        public synchronized TextureItem get() {
-        //            log.debug(getFill() + " " + sum + " get tex ");
-        //
-        //            return super.get();
-        //        };
-        //
-        //        protected TextureItem createItem() {
-        //            log.debug(getFill() + " " + (sum++) + " create tex ");
-        //
-        //            return super.createItem();
-        //        };
-        //
-        //        protected void freeItem(TextureItem t) {
-        //            log.debug(getFill() + " " + (sum--) + " free tex ");
-        //            super.freeItem(t);
-        //
-        //        };
-    };
+    final TexturePool pool;
 
 }
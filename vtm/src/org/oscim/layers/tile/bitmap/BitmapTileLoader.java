@@ -60,6 +60,15 @@ public class BitmapTileLoader extends TileLoader {
             return;
         }
 
+        if (mLayer.isRGB565()) {
+            Bitmap rgb565 = RGB565Bitmap.convert(bitmap.getWidth(),
+                    bitmap.getHeight(), bitmap.getPixels());
+            if (rgb565 != null) {
+                bitmap.recycle();
+                bitmap = rgb565;
+            }
+        }
+
         BitmapBucket l = new BitmapBucket(false);
         l.setBitmap(bitmap, Tile.SIZE, Tile.SIZE, mLayer.pool);
 
@@ -0,0 +1,151 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile.bitmap;
+
+import org.oscim.backend.GL;
+import org.oscim.backend.canvas.Bitmap;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+
+import static org.oscim.backend.GLAdapter.gl;
+
+/**
+ * Opaque Bitmap with RGB565 pixels in a direct buffer, uploaded as is.
+ * Buffers are returned to a shared pool on recycle().
+ */
+class RGB565Bitmap implements Bitmap {
+
+    /**
+     * Maximum number of unused buffers kept in pool
+     */
+    static final int MAX_POOL = 8;
+
+    private static final ArrayList<ShortBuffer> pool = new ArrayList<ShortBuffer>(MAX_POOL);
+
+    private final int mWidth;
+    private final int mHeight;
+    private ShortBuffer mPixels;
+
+    RGB565Bitmap(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mPixels = obtainBuffer(width * height);
+    }
+
+    /**
+     * Convert ARGB pixels on the calling thread, alpha is discarded.
+     * Desktop and GWT bitmaps provide no pixels, their tiles keep the
+     * RGBA path.
+     *
+     * @param argb pixels from {@link Bitmap#getPixels()}, may be null.
+     * @return null when 'argb' does not hold width * height pixels.
+     */
+    static RGB565Bitmap convert(int width, int height, int[] argb) {
+        if (argb == null || argb.length < width * height)
+            return null;
+
+        RGB565Bitmap b = new RGB565Bitmap(width, height);
+        ShortBuffer pixels = b.mPixels;
+
+        for (int i = 0, n = b.mWidth * b.mHeight; i < n; i++)
+            pixels.put(i, toRGB565(argb[i]));
+
+        return b;
+    }
+
+    static short toRGB565(int argb) {
+        return (short) (((argb >> 8) & 0xf800)
+                | ((argb >> 5) & 0x07e0)
+                | ((argb >> 3) & 0x001f));
+    }
+
+    private static ShortBuffer obtainBuffer(int size) {
+        synchronized (pool) {
+            for (int i = pool.size() - 1; i >= 0; i--) {
+                if (pool.get(i).capacity() == size) {
+                    ShortBuffer buf = pool.remove(i);
+                    buf.clear();
+                    return buf;
+                }
+            }
+        }
+        return ByteBuffer.allocateDirect(size * 2)
+                .order(ByteOrder.nativeOrder())
+                .asShortBuffer();
+    }
+
+    private static void releaseBuffer(ShortBuffer buf) {
+        synchronized (pool) {
+            if (pool.size() < MAX_POOL)
+                pool.add(buf);
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public void recycle() {
+        if (mPixels == null)
+            return;
+
+        releaseBuffer(mPixels);
+        mPixels = null;
+    }
+
+    @Override
+    public int[] getPixels() {
+        return null;
+    }
+
+    @Override
+    public void eraseColor(int color) {
+        short c = toRGB565(color);
+        for (int i = 0, n = mPixels.capacity(); i < n; i++)
+            mPixels.put(i, c);
+    }
+
+    @Override
+    public void uploadToTexture(boolean replace) {
+        mPixels.position(0);
+
+        if (replace)
+            gl.texSubImage2D(GL.TEXTURE_2D, 0, 0, 0, mWidth, mHeight,
+                    GL.RGB, GL.UNSIGNED_SHORT_5_6_5, mPixels);
+        else
+            gl.texImage2D(GL.TEXTURE_2D, 0, GL.RGB, mWidth, mHeight, 0,
+                    GL.RGB, GL.UNSIGNED_SHORT_5_6_5, mPixels);
+    }
+
+    @Override
+    public boolean isValid() {
+        return mPixels != null;
+    }
+
+    @Override
+    public byte[] getPngEncodedData() {
+        return null;
+    }
+}
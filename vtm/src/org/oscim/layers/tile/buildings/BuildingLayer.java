@@ -39,12 +39,43 @@ import org.slf4j.LoggerFactory;
 public class BuildingLayer extends Layer implements TileLoaderThemeHook {
     static final Logger log = LoggerFactory.getLogger(BuildingLayer.class);
 
-    private final static int MIN_ZOOM = 17;
+    private final static int MIN_ZOOM = 15;
     private final static int MAX_ZOOM = 17;
 
     private final static boolean POST_AA = false;
     public static boolean TRANSLUCENT = true;
 
+    /**
+     * Tiles below this zoom level get simplified buildings, see
+     * LOD_* settings.
+     */
+    public static int LOD_ZOOM = 17;
+
+    /**
+     * Buildings lower than this height in pixels are added without walls.
+     */
+    public static float LOD_MIN_WALL_HEIGHT = 3;
+
+    /**
+     * Footprints smaller than this area in square pixels are dropped.
+     */
+    public static float LOD_MIN_AREA = 4;
+
+    /**
+     * Minimal distance of outline points in pixels.
+     */
+    public static float LOD_SIMPLIFY_DISTANCE = 1.5f;
+
+    /**
+     * Geometry buffer for simplified outlines, per loader thread
+     */
+    private static final ThreadLocal<MapElement> sLodElement = new ThreadLocal<MapElement>() {
+        @Override
+        protected MapElement initialValue() {
+            return new MapElement();
+        }
+    };
+
     private static final Object BUILDING_DATA = BuildingLayer.class.getName();
 
     public BuildingLayer(Map map, VectorTileLayer tileLayer) {
@@ -91,28 +122,71 @@ public class BuildingLayer extends Layer implements TileLoaderThemeHook {
         if (height == 0)
             height = 12 * 100;
 
+        double lat = MercatorProjection.toLatitude(tile.y);
+        float groundScale = (float) MercatorProjection
+                .groundResolution(lat, 1 << tile.zoomLevel);
+
+        boolean walls = true;
+        if (tile.zoomLevel < LOD_ZOOM) {
+            if (isTooSmall(element))
+                return true;
+
+            /* height is given in centimeters */
+            walls = (height - minHeight) / 100f / groundScale >= LOD_MIN_WALL_HEIGHT;
+
+            /* do not modify element, it is passed to other styles */
+            MapElement simplified = sLodElement.get();
+            simplified.set(element);
+            simplified.simplify(LOD_SIMPLIFY_DISTANCE * LOD_SIMPLIFY_DISTANCE, true);
+            element = simplified;
+        }
+
         ExtrusionBuckets ebs = get(tile);
 
         for (ExtrusionBucket b = ebs.buckets; b != null; b = b.next()) {
             if (b.colors == extrusion.colors) {
-                b.add(element, height, minHeight);
+                b.add(element, height, minHeight, walls);
                 return true;
             }
         }
 
-        double lat = MercatorProjection.toLatitude(tile.y);
-        float groundScale = (float) MercatorProjection
-                .groundResolution(lat, 1 << tile.zoomLevel);
-
         ebs.buckets = Inlist.push(ebs.buckets,
                 new ExtrusionBucket(0, groundScale,
                         extrusion.colors));
 
-        ebs.buckets.add(element, height, minHeight);
+        ebs.buckets.add(element, height, minHeight, walls);
 
         return true;
     }
 
+    /**
+     * @return true when the bounding box of the footprint is
+     * smaller than LOD_MIN_AREA.
+     */
+    static boolean isTooSmall(MapElement element) {
+        if (element.pointPos < 2)
+            return true;
+
+        /* points may lie in the tile buffer, outside of 0..Tile.SIZE */
+        double[] points = element.points;
+        double minX = points[0], minY = points[1];
+        double maxX = minX, maxY = minY;
+
+        for (int i = 2; i < element.pointPos; i += 2) {
+            double x = points[i];
+            double y = points[i + 1];
+            if (x < minX)
+                minX = x;
+            if (x > maxX)
+                maxX = x;
+            if (y < minY)
+                minY = y;
+            if (y > maxY)
+                maxY = y;
+        }
+        return (maxX - minX) * (maxY - minY) < LOD_MIN_AREA;
+    }
+
     public static ExtrusionBuckets get(MapTile tile) {
         ExtrusionBuckets eb = (ExtrusionBuckets) tile.getData(BUILDING_DATA);
         if (eb == null) {
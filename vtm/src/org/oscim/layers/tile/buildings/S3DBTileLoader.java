@@ -16,7 +16,9 @@ import org.oscim.tiling.TileSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static org.oscim.layers.tile.buildings.S3DBLayer.getMaterialColor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 
 class S3DBTileLoader extends TileLoader {
     static final Logger log = LoggerFactory.getLogger(S3DBTileLoader.class);
@@ -26,8 +28,20 @@ class S3DBTileLoader extends TileLoader {
      */
     private final ITileDataSource mTileDataSource;
 
+    private final static int ROOF_COLOR = Color.get(247, 249, 250);
+    private final static int PART_COLOR = Color.get(255, 254, 252);
+
+    /**
+     * Maximum number of parsed colors kept per cache
+     */
+    private final static int MAX_COLOR_CACHE = 1024;
+
+    /* mesh with vertex colors for all parts of a tile */
     private ExtrusionBucket mParts;
-    private ExtrusionBucket mRoofs;
+
+    /* parsed colors of 'c' and 'm' values, for walls and roofs */
+    private final List<HashMap<String, Integer>> mColorCache =
+            new ArrayList<HashMap<String, Integer>>(4);
 
     private float mGroundScale;
 
@@ -50,6 +64,8 @@ class S3DBTileLoader extends TileLoader {
         super(tileManager);
         mTileDataSource = tileSource.getDataSource();
 
+        for (int i = 0; i < 4; i++)
+            mColorCache.add(new HashMap<String, Integer>());
     }
 
     @Override
@@ -82,13 +98,9 @@ class S3DBTileLoader extends TileLoader {
         mGroundScale = (float) MercatorProjection
                 .groundResolution(lat, 1 << mTile.zoomLevel);
 
-        mRoofs = new ExtrusionBucket(0, mGroundScale, Color.get(247, 249, 250));
+        mParts = new ExtrusionBucket(0, mGroundScale, PART_COLOR);
 
-        mParts = new ExtrusionBucket(0, mGroundScale, Color.get(255, 254, 252));
-        //mRoofs = new ExtrusionLayer(0, mGroundScale, Color.get(207, 209, 210));
-        mRoofs.next = mParts;
-
-        BuildingLayer.get(tile).setBuckets(mRoofs);
+        BuildingLayer.get(tile).setBuckets(mParts);
 
         process(mTilePlane);
     }
@@ -114,43 +126,70 @@ class S3DBTileLoader extends TileLoader {
         //    log.debug(element.tags.toString());
 
         int c = 0;
-        if (element.tags.containsKey(COLOR_KEY)) {
-            c = S3DBLayer.getColor(element.tags.getValue(COLOR_KEY), isRoof);
-        }
+        String value = element.tags.getValue(COLOR_KEY);
+        if (value != null)
+            c = getColor(value, false, isRoof);
 
-        if (c == 0 && element.tags.containsKey(MATERIAL_KEY)) {
-            c = getMaterialColor(element.tags.getValue(MATERIAL_KEY), isRoof);
+        if (c == 0) {
+            value = element.tags.getValue(MATERIAL_KEY);
+            if (value != null)
+                c = getColor(value, true, isRoof);
         }
 
         if (c == 0) {
             String roofShape = element.tags.getValue(ROOF_SHAPE_KEY);
 
             if (isRoof && (roofShape == null || "flat".equals(roofShape)))
-                mRoofs.add(element);
+                c = ROOF_COLOR;
             else
-                mParts.add(element);
-            return;
+                c = PART_COLOR;
         }
 
-        for (ExtrusionBucket l = mParts; l != null; l = l.next()) {
-            if (l.color == c) {
-                l.add(element);
-                return;
-            }
+        /* continue with a new mesh before vertex indices overflow */
+        if (!mParts.hasCapacity(numIndices(element))) {
+            ExtrusionBucket b = new ExtrusionBucket(0, mGroundScale, PART_COLOR);
+            mParts.next = b;
+            mParts = b;
         }
-        ExtrusionBucket l = new ExtrusionBucket(0, mGroundScale, c);
 
-        l.next = mParts.next;
-        mParts.next = l;
+        mParts.add(element, c);
+    }
+
+    /**
+     * @return number of triangle indices, i.e. the maximum number of
+     * vertices the element adds to a mesh.
+     */
+    static int numIndices(MapElement element) {
+        int[] index = element.index;
+        int n = 0;
+        while (n < index.length && index[n] >= 0)
+            n++;
+        return n;
+    }
 
-        l.add(element);
+    /**
+     * @return color of 'c' or 'm' tag value, parsed once per loader.
+     */
+    private int getColor(String value, boolean material, boolean roof) {
+        HashMap<String, Integer> cache = mColorCache.get((material ? 2 : 0) + (roof ? 1 : 0));
+
+        Integer c = cache.get(value);
+        if (c == null) {
+            if (cache.size() >= MAX_COLOR_CACHE)
+                cache.clear();
+
+            c = Integer.valueOf(material
+                    ? S3DBLayer.getMaterialColor(value, roof)
+                    : S3DBLayer.getColor(value, roof));
+            cache.put(value, c);
+        }
+        return c.intValue();
     }
 
     @Override
     public void completed(QueryResult result) {
 
         mParts = null;
-        mRoofs = null;
 
         super.completed(result);
     }
@@ -0,0 +1,488 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile.vector;
+
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tag;
+import org.oscim.core.TagSet;
+import org.oscim.layers.tile.MapTile.TileData;
+import org.oscim.utils.PackedRTree;
+
+/**
+ * Spatial index of the rendered features of one tile for picking,
+ * built by {@link VectorTileLoader} when enabled by
+ * {@link VectorTileLayer#setIndexFeatures(boolean)}.
+ * <p/>
+ * Keeps the geometry of features in tile pixel coordinates and
+ * references to their tags. Bounding boxes are indexed by a
+ * {@link PackedRTree}, candidates are tested against the geometry.
+ */
+public class FeatureIndex extends TileData {
+
+    public final static String FEATURE_DATA = FeatureIndex.class.getName();
+
+    /**
+     * A feature found by {@link FeatureIndex#search}.
+     */
+    public static class Feature {
+        public final GeometryType type;
+        public final TagSet tags;
+        public final int layer;
+
+        /* bounding box area in tile pixels, smaller features are
+         * more specific, e.g. a building on a landuse area */
+        private final float area;
+
+        Feature(GeometryType type, Tag[] tags, int layer, float area) {
+            this.type = type;
+            this.tags = new TagSet(tags.length);
+            this.tags.set(tags);
+            this.layer = layer;
+            this.area = area;
+        }
+
+        /**
+         * @return bounding box area in tile pixels.
+         */
+        public float getArea() {
+            return area;
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + tags;
+        }
+    }
+
+    /**
+     * Precision of box coordinates, 1/SCALE tile pixel
+     */
+    private final static int SCALE = 8;
+
+    private final static int GROW_FEATURES = 64;
+    private final static int GROW_POINTS = 1024;
+    private final static int GROW_INDICES = 64;
+
+    private final static GeometryType[] TYPES = GeometryType.values();
+
+    /* per feature: type, layer, point offset, index offset, index count */
+    private final static int TYPE = 0;
+    private final static int LAYER = 1;
+    private final static int POINT_OFFSET = 2;
+    private final static int INDEX_OFFSET = 3;
+    private final static int INDEX_COUNT = 4;
+    private final static int STRIDE = 5;
+
+    private int[] mFeatures = new int[GROW_FEATURES * STRIDE];
+    private int[] mBoxes = new int[GROW_FEATURES * 4];
+    private Tag[][] mTags = new Tag[GROW_FEATURES][];
+    private float[] mPoints = new float[GROW_POINTS];
+    private int[] mIndex = new int[GROW_INDICES];
+
+    private int mNumFeatures;
+    private int mPointPos;
+    private int mIndexPos;
+
+    private PackedRTree mTree;
+
+    /**
+     * Add 'element' in tile pixel coordinates. Called by the loader.
+     */
+    void add(MapElement element) {
+        int numPoints = element.pointPos;
+        if (numPoints < 2)
+            return;
+
+        int numIndices = 0;
+        if (element.type == GeometryType.POINT) {
+            numIndices = 1;
+        } else {
+            int[] index = element.index;
+            for (int sum = 0, n = index.length; numIndices < n; numIndices++) {
+                int len = index[numIndices];
+                if (len < 0 || (sum >= numPoints && len != 0))
+                    break;
+                sum += len;
+            }
+        }
+        ensureCapacity(numPoints, numIndices);
+
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+
+        double[] points = element.points;
+        for (int i = 0; i < numPoints; i += 2) {
+            float x = (float) points[i];
+            float y = (float) points[i + 1];
+            if (x < minX)
+                minX = x;
+            if (x > maxX)
+                maxX = x;
+            if (y < minY)
+                minY = y;
+            if (y > maxY)
+                maxY = y;
+            mPoints[mPointPos + i] = x;
+            mPoints[mPointPos + i + 1] = y;
+        }
+
+        int f = mNumFeatures * STRIDE;
+        mFeatures[f + TYPE] = element.type.ordinal();
+        mFeatures[f + LAYER] = element.layer;
+        mFeatures[f + POINT_OFFSET] = mPointPos;
+        mFeatures[f + INDEX_OFFSET] = mIndexPos;
+        mFeatures[f + INDEX_COUNT] = numIndices;
+
+        if (element.type == GeometryType.POINT)
+            mIndex[mIndexPos] = numPoints;
+        else
+            System.arraycopy(element.index, 0, mIndex, mIndexPos, numIndices);
+
+        int b = mNumFeatures * 4;
+        mBoxes[b + 0] = (int) Math.floor(minX * SCALE);
+        mBoxes[b + 1] = (int) Math.floor(minY * SCALE);
+        mBoxes[b + 2] = (int) Math.ceil(maxX * SCALE);
+        mBoxes[b + 3] = (int) Math.ceil(maxY * SCALE);
+
+        mTags[mNumFeatures] = element.tags.asArray();
+
+        mPointPos += numPoints;
+        mIndexPos += numIndices;
+        mNumFeatures++;
+    }
+
+    /**
+     * Build the index. Called by the loader when all features were added.
+     */
+    void finish() {
+        if (mNumFeatures == 0)
+            return;
+
+        PackedRTree tree = new PackedRTree(mNumFeatures);
+        for (int i = 0, b = 0; i < mNumFeatures; i++, b += 4)
+            tree.add(mBoxes[b], mBoxes[b + 1], mBoxes[b + 2], mBoxes[b + 3]);
+        tree.finish();
+        mTree = tree;
+
+        /* boxes are kept by the tree */
+        mBoxes = null;
+
+        /* shrink arrays to their used size */
+        int[] features = new int[mNumFeatures * STRIDE];
+        System.arraycopy(mFeatures, 0, features, 0, features.length);
+        mFeatures = features;
+
+        Tag[][] tags = new Tag[mNumFeatures][];
+        System.arraycopy(mTags, 0, tags, 0, mNumFeatures);
+        mTags = tags;
+
+        float[] points = new float[mPointPos];
+        System.arraycopy(mPoints, 0, points, 0, mPointPos);
+        mPoints = points;
+
+        int[] index = new int[mIndexPos];
+        System.arraycopy(mIndex, 0, index, 0, mIndexPos);
+        mIndex = index;
+    }
+
+    /**
+     * @return number of indexed features.
+     */
+    public int size() {
+        return mNumFeatures;
+    }
+
+    /**
+     * Find features at 'x', 'y' in tile pixel coordinates. Points and lines
+     * match within 'radius', polygons when they contain the position or
+     * their outline is within 'radius'.
+     *
+     * @return number of features added to 'out'.
+     */
+    public int search(final float x, final float y, final float radius,
+                      final java.util.List<Feature> out) {
+        if (mTree == null)
+            return 0;
+
+        final int size = out.size();
+        final float r2 = radius * radius;
+
+        mTree.search((int) Math.floor((x - radius) * SCALE),
+                (int) Math.floor((y - radius) * SCALE),
+                (int) Math.ceil((x + radius) * SCALE),
+                (int) Math.ceil((y + radius) * SCALE),
+                new PackedRTree.Visitor() {
+                    @Override
+                    public boolean visit(int item) {
+                        if (hit(item, x, y, r2))
+                            out.add(getFeature(item));
+                        return true;
+                    }
+                });
+
+        return out.size() - size;
+    }
+
+    /**
+     * Find features intersecting the box 'minX', 'minY', 'maxX', 'maxY'
+     * in tile pixel coordinates. Polygons also match when they contain
+     * the box.
+     *
+     * @return number of features added to 'out'.
+     */
+    public int search(final float minX, final float minY, final float maxX, final float maxY,
+                      final java.util.List<Feature> out) {
+        if (mTree == null)
+            return 0;
+
+        final int size = out.size();
+
+        mTree.search((int) Math.floor(minX * SCALE),
+                (int) Math.floor(minY * SCALE),
+                (int) Math.ceil(maxX * SCALE),
+                (int) Math.ceil(maxY * SCALE),
+                new PackedRTree.Visitor() {
+                    @Override
+                    public boolean visit(int item) {
+                        if (hit(item, minX, minY, maxX, maxY))
+                            out.add(getFeature(item));
+                        return true;
+                    }
+                });
+
+        return out.size() - size;
+    }
+
+    private Feature getFeature(int item) {
+        int f = item * STRIDE;
+        int pos = mFeatures[f + POINT_OFFSET];
+        int end = pos + pointCount(item);
+
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (int i = pos; i < end; i += 2) {
+            minX = Math.min(minX, mPoints[i]);
+            maxX = Math.max(maxX, mPoints[i]);
+            minY = Math.min(minY, mPoints[i + 1]);
+            maxY = Math.max(maxY, mPoints[i + 1]);
+        }
+
+        return new Feature(TYPES[mFeatures[f + TYPE]], mTags[item],
+                mFeatures[f + LAYER], (maxX - minX) * (maxY - minY));
+    }
+
+    private int pointCount(int item) {
+        int f = item * STRIDE;
+        int count = 0;
+        for (int i = 0, n = mFeatures[f + INDEX_COUNT]; i < n; i++)
+            count += mIndex[mFeatures[f + INDEX_OFFSET] + i];
+        return count;
+    }
+
+    private boolean hit(int item, float x, float y, float r2) {
+        int f = item * STRIDE;
+        GeometryType type = TYPES[mFeatures[f + TYPE]];
+        int pos = mFeatures[f + POINT_OFFSET];
+        int indexOffset = mFeatures[f + INDEX_OFFSET];
+        int numIndices = mFeatures[f + INDEX_COUNT];
+        float[] p = mPoints;
+
+        if (type == GeometryType.POINT) {
+            int end = pos + mIndex[indexOffset];
+            for (int i = pos; i < end; i += 2) {
+                float dx = p[i] - x;
+                float dy = p[i + 1] - y;
+                if (dx * dx + dy * dy <= r2)
+                    return true;
+            }
+            return false;
+        }
+
+        boolean closed = (type == GeometryType.POLY);
+        boolean inside = false;
+
+        for (int k = 0; k < numIndices; k++) {
+            int len = mIndex[indexOffset + k];
+            if (len < 2) {
+                pos += Math.max(len, 0);
+                continue;
+            }
+            int end = pos + len;
+            int start = closed ? end - 2 : pos;
+            int i = closed ? pos : pos + 2;
+
+            for (float px = p[start], py = p[start + 1]; i < end; i += 2) {
+                float cx = p[i], cy = p[i + 1];
+
+                if (segmentDistance2(x, y, px, py, cx, cy) <= r2)
+                    return true;
+
+                /* even-odd rule over all rings */
+                if (closed && ((cy > y) != (py > y))
+                        && (x < (px - cx) * (y - cy) / (py - cy) + cx))
+                    inside = !inside;
+
+                px = cx;
+                py = cy;
+            }
+            pos = end;
+        }
+        return inside;
+    }
+
+    private boolean hit(int item, float minX, float minY, float maxX, float maxY) {
+        int f = item * STRIDE;
+        GeometryType type = TYPES[mFeatures[f + TYPE]];
+        int pos = mFeatures[f + POINT_OFFSET];
+        int indexOffset = mFeatures[f + INDEX_OFFSET];
+        int numIndices = mFeatures[f + INDEX_COUNT];
+        float[] p = mPoints;
+
+        if (type == GeometryType.POINT) {
+            int end = pos + mIndex[indexOffset];
+            for (int i = pos; i < end; i += 2) {
+                if (p[i] >= minX && p[i] <= maxX
+                        && p[i + 1] >= minY && p[i + 1] <= maxY)
+                    return true;
+            }
+            return false;
+        }
+
+        boolean closed = (type == GeometryType.POLY);
+
+        for (int k = 0, start = pos; k < numIndices; k++) {
+            int len = mIndex[indexOffset + k];
+            if (len < 2) {
+                start += Math.max(len, 0);
+                continue;
+            }
+            int end = start + len;
+            int i = closed ? end - 2 : start;
+
+            for (int j = closed ? start : start + 2; j < end; i = j, j += 2) {
+                if (segmentInBox(p[i], p[i + 1], p[j], p[j + 1], minX, minY, maxX, maxY))
+                    return true;
+            }
+            start = end;
+        }
+
+        /* box inside of the polygon */
+        return closed && hit(item, minX, minY, 0);
+    }
+
+    /**
+     * Liang-Barsky test whether the segment a-b intersects the box.
+     */
+    private static boolean segmentInBox(float ax, float ay, float bx, float by,
+                                        float minX, float minY, float maxX, float maxY) {
+        float dx = bx - ax;
+        float dy = by - ay;
+        float t0 = 0;
+        float t1 = 1;
+
+        for (int edge = 0; edge < 4; edge++) {
+            float p, q;
+            switch (edge) {
+                case 0:
+                    p = -dx;
+                    q = ax - minX;
+                    break;
+                case 1:
+                    p = dx;
+                    q = maxX - ax;
+                    break;
+                case 2:
+                    p = -dy;
+                    q = ay - minY;
+                    break;
+                default:
+                    p = dy;
+                    q = maxY - ay;
+                    break;
+            }
+            if (p == 0) {
+                /* parallel to the edge and outside */
+                if (q < 0)
+                    return false;
+                continue;
+            }
+            float r = q / p;
+            if (p < 0) {
+                if (r > t1)
+                    return false;
+                if (r > t0)
+                    t0 = r;
+            } else {
+                if (r < t0)
+                    return false;
+                if (r < t1)
+                    t1 = r;
+            }
+        }
+        return true;
+    }
+
+    private static float segmentDistance2(float x, float y,
+                                          float ax, float ay, float bx, float by) {
+        float dx = bx - ax;
+        float dy = by - ay;
+        float len2 = dx * dx + dy * dy;
+
+        float t = 0;
+        if (len2 > 0) {
+            t = ((x - ax) * dx + (y - ay) * dy) / len2;
+            if (t < 0)
+                t = 0;
+            else if (t > 1)
+                t = 1;
+        }
+        float ex = ax + t * dx - x;
+        float ey = ay + t * dy - y;
+        return ex * ex + ey * ey;
+    }
+
+    private void ensureCapacity(int numPoints, int numIndices) {
+        if ((mNumFeatures + 1) * STRIDE > mFeatures.length) {
+            int n = mNumFeatures + GROW_FEATURES;
+
+            int[] features = new int[n * STRIDE];
+            System.arraycopy(mFeatures, 0, features, 0, mNumFeatures * STRIDE);
+            mFeatures = features;
+
+            int[] boxes = new int[n * 4];
+            System.arraycopy(mBoxes, 0, boxes, 0, mNumFeatures * 4);
+            mBoxes = boxes;
+
+            Tag[][] tags = new Tag[n][];
+            System.arraycopy(mTags, 0, tags, 0, mNumFeatures);
+            mTags = tags;
+        }
+        if (mPointPos + numPoints > mPoints.length) {
+            float[] tmp = new float[mPointPos + numPoints + GROW_POINTS];
+            System.arraycopy(mPoints, 0, tmp, 0, mPointPos);
+            mPoints = tmp;
+        }
+        if (mIndexPos + numIndices > mIndex.length) {
+            int[] tmp = new int[mIndexPos + numIndices + GROW_INDICES];
+            System.arraycopy(mIndex, 0, tmp, 0, mIndexPos);
+            mIndex = tmp;
+        }
+    }
+
+    @Override
+    protected void dispose() {
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile.vector;
+
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.QueryResult;
+import org.oscim.utils.geom.TileClipper;
+
+import java.util.Map;
+
+import static org.oscim.tiling.QueryResult.FAILED;
+import static org.oscim.tiling.QueryResult.SUCCESS;
+
+/**
+ * Provides tiles above the maximum zoom-level of a TileSource by clipping
+ * the features of their parent tile at the maximum zoom-level. Parent
+ * features are shared by all loaders of a layer through 'cache'. While
+ * one loader queries a parent, loaders of its other child tiles wait for
+ * the result.
+ * <p/>
+ * Requires a data source that completes queries synchronously.
+ */
+class OverzoomTileDataSource implements ITileDataSource {
+
+    /**
+     * Buffer around tiles in pixel, see MapDatabase
+     */
+    static final int CLIP_BUFFER = 16;
+
+    private final ITileDataSource mDataSource;
+    private final int mZoomMax;
+    private final Map<Tile, Parent> mCache;
+
+    private final TileClipper mClipper;
+    private final MapElement mElement = new MapElement();
+
+    /* parent queried by another loader the current query waits for */
+    private volatile Parent mAwaiting;
+    private volatile boolean mCanceled;
+
+    /**
+     * Features of a parent tile, pending until the loader which added
+     * it to the cache completed its query.
+     */
+    static final class Parent {
+        private TileFeatures mFeatures;
+        private boolean mDone;
+
+        /**
+         * @return the features or null when the query failed or 'waiter'
+         * was canceled.
+         */
+        synchronized TileFeatures await(OverzoomTileDataSource waiter) {
+            while (!mDone && !waiter.mCanceled) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            return mFeatures;
+        }
+
+        synchronized void setResult(TileFeatures features) {
+            mFeatures = features;
+            mDone = true;
+            notifyAll();
+        }
+
+        synchronized void wake() {
+            notifyAll();
+        }
+    }
+
+    OverzoomTileDataSource(ITileDataSource dataSource, int zoomMax,
+                           Map<Tile, Parent> cache) {
+        mDataSource = dataSource;
+        mZoomMax = zoomMax;
+        mCache = cache;
+
+        mClipper = new TileClipper(-CLIP_BUFFER, -CLIP_BUFFER,
+                Tile.SIZE + CLIP_BUFFER, Tile.SIZE + CLIP_BUFFER);
+    }
+
+    @Override
+    public void query(MapTile tile, ITileDataSink sink) {
+        mCanceled = false;
+
+        int dz = tile.zoomLevel - mZoomMax;
+        if (dz <= 0) {
+            mDataSource.query(tile, sink);
+            return;
+        }
+
+        int parentX = tile.tileX >> dz;
+        int parentY = tile.tileY >> dz;
+        TileFeatures features = getParent(new Tile(parentX, parentY, (byte) mZoomMax));
+        if (features == null) {
+            sink.completed(FAILED);
+            return;
+        }
+
+        /* parent pixel to tile pixel coordinates */
+        int scale = 1 << dz;
+        double dx = (tile.tileX - (parentX << dz)) * Tile.SIZE;
+        double dy = (tile.tileY - (parentY << dz)) * Tile.SIZE;
+
+        MapElement e = mElement;
+        for (int i = 0, n = features.size(); i < n; i++) {
+            features.get(i, e);
+
+            double[] points = e.points;
+            for (int j = 0; j < e.pointPos; j += 2) {
+                points[j] = points[j] * scale - dx;
+                points[j + 1] = points[j + 1] * scale - dy;
+            }
+
+            if (e.type == GeometryType.POINT) {
+                /* add points only to the tile containing them */
+                if (points[0] < 0 || points[0] >= Tile.SIZE
+                        || points[1] < 0 || points[1] >= Tile.SIZE)
+                    continue;
+            } else if (!mClipper.clip(e)) {
+                continue;
+            }
+            sink.process(e);
+        }
+        sink.completed(SUCCESS);
+    }
+
+    /**
+     * @return features of the parent tile, from the cache, the query of
+     * another loader or queried by the current thread. Null on failure.
+     */
+    private TileFeatures getParent(Tile key) {
+        while (!mCanceled) {
+            Parent parent;
+            boolean leader = false;
+            synchronized (mCache) {
+                parent = mCache.get(key);
+                if (parent == null) {
+                    parent = new Parent();
+                    mCache.put(key, parent);
+                    leader = true;
+                }
+            }
+
+            if (leader) {
+                TileFeatures features = null;
+                try {
+                    features = queryParent(key);
+                } finally {
+                    if (features == null) {
+                        synchronized (mCache) {
+                            if (mCache.get(key) == parent)
+                                mCache.remove(key);
+                        }
+                    }
+                    parent.setResult(features);
+                }
+                return features;
+            }
+
+            mAwaiting = parent;
+            TileFeatures features;
+            try {
+                features = parent.await(this);
+            } finally {
+                mAwaiting = null;
+            }
+            if (features != null)
+                return features;
+
+            /* query of the other loader failed, e.g. it was canceled,
+             * try on our own */
+        }
+        return null;
+    }
+
+    private TileFeatures queryParent(Tile key) {
+        Collector c = new Collector();
+        mDataSource.query(new MapTile(null, key.tileX, key.tileY, key.zoomLevel), c);
+
+        if (c.result != SUCCESS)
+            return null;
+
+        c.features.compact();
+        return c.features;
+    }
+
+    static class Collector implements ITileDataSink {
+        final TileFeatures features = new TileFeatures();
+        QueryResult result;
+
+        @Override
+        public void process(MapElement element) {
+            features.add(element);
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+            this.result = result;
+        }
+    }
+
+    @Override
+    public void dispose() {
+        mDataSource.dispose();
+    }
+
+    @Override
+    public void cancel() {
+        mCanceled = true;
+
+        /* stop waiting for the query of another loader */
+        Parent parent = mAwaiting;
+        if (parent != null)
+            parent.wake();
+
+        mDataSource.cancel();
+    }
+}
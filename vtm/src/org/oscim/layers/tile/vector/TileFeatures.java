@@ -0,0 +1,203 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile.vector;
+
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tag;
+
+/**
+ * Compact copy of the decoded {@link MapElement}s of one tile.
+ * <p/>
+ * Coordinates of all elements are packed into a single float array,
+ * geometry indices and tags into shared int and Tag arrays. The
+ * elements can be replayed through {@link #get(int, MapElement)} to
+ * re-run theme matching without querying the TileDataSource again.
+ */
+public class TileFeatures {
+
+    private final static int GROW_ELEMENTS = 64;
+    private final static int GROW_POINTS = 1024;
+    private final static int GROW_INDICES = 128;
+    private final static int GROW_TAGS = 256;
+
+    /* per element: type, layer, point offset, point count,
+     * index offset, index count, tag offset, tag count */
+    private final static int TYPE = 0;
+    private final static int LAYER = 1;
+    private final static int POINT_OFFSET = 2;
+    private final static int POINT_COUNT = 3;
+    private final static int INDEX_OFFSET = 4;
+    private final static int INDEX_COUNT = 5;
+    private final static int TAG_OFFSET = 6;
+    private final static int TAG_COUNT = 7;
+    private final static int STRIDE = 8;
+
+    private final static GeometryType[] TYPES = GeometryType.values();
+
+    private int[] mElements = new int[GROW_ELEMENTS * STRIDE];
+    private float[] mPoints = new float[GROW_POINTS];
+    private int[] mIndex = new int[GROW_INDICES];
+    private Tag[] mTags = new Tag[GROW_TAGS];
+
+    private int mNumElements;
+    private int mPointPos;
+    private int mIndexPos;
+    private int mTagPos;
+
+    /**
+     * Append a copy of 'element'.
+     */
+    public void add(MapElement element) {
+        int numPoints = element.pointPos;
+        int numIndices = 0;
+
+        if (element.type == GeometryType.POINT) {
+            numIndices = 1;
+        } else {
+            /* copy index entries until end marker or all points are covered */
+            int[] index = element.index;
+            for (int sum = 0, n = index.length; numIndices < n; numIndices++) {
+                int len = index[numIndices];
+                if (len < 0 || (sum >= numPoints && len != 0))
+                    break;
+                sum += len;
+            }
+        }
+        int numTags = element.tags.numTags;
+
+        ensureCapacity(numPoints, numIndices, numTags);
+
+        int e = mNumElements * STRIDE;
+        mElements[e + TYPE] = element.type.ordinal();
+        mElements[e + LAYER] = element.layer;
+        mElements[e + POINT_OFFSET] = mPointPos;
+        mElements[e + POINT_COUNT] = numPoints;
+        mElements[e + INDEX_OFFSET] = mIndexPos;
+        mElements[e + INDEX_COUNT] = numIndices;
+        mElements[e + TAG_OFFSET] = mTagPos;
+        mElements[e + TAG_COUNT] = numTags;
+
+        double[] points = element.points;
+        for (int i = 0; i < numPoints; i++)
+            mPoints[mPointPos++] = (float) points[i];
+
+        if (element.type == GeometryType.POINT)
+            mIndex[mIndexPos] = numPoints;
+        else
+            System.arraycopy(element.index, 0, mIndex, mIndexPos, numIndices);
+        mIndexPos += numIndices;
+
+        System.arraycopy(element.tags.tags, 0, mTags, mTagPos, numTags);
+        mTagPos += numTags;
+
+        mNumElements++;
+    }
+
+    /**
+     * Restore element 'i' into 'out'.
+     *
+     * @return out
+     */
+    public MapElement get(int i, MapElement out) {
+        int e = i * STRIDE;
+        int pointOffset = mElements[e + POINT_OFFSET];
+        int numPoints = mElements[e + POINT_COUNT];
+        int indexOffset = mElements[e + INDEX_OFFSET];
+        int numIndices = mElements[e + INDEX_COUNT];
+        int tagOffset = mElements[e + TAG_OFFSET];
+        int numTags = mElements[e + TAG_COUNT];
+
+        out.clear();
+        out.type = TYPES[mElements[e + TYPE]];
+        out.layer = mElements[e + LAYER];
+
+        double[] points = out.ensurePointSize(numPoints >> 1, false);
+        for (int p = 0; p < numPoints; p++)
+            points[p] = mPoints[pointOffset + p];
+        out.pointPos = numPoints;
+
+        int[] index = out.ensureIndexSize(numIndices + 1, false);
+        System.arraycopy(mIndex, indexOffset, index, 0, numIndices);
+        index[numIndices] = -1;
+        out.indexPos = numIndices > 0 ? numIndices - 1 : 0;
+
+        out.tags.clear();
+        for (int t = 0; t < numTags; t++)
+            out.tags.add(mTags[tagOffset + t]);
+
+        return out;
+    }
+
+    /**
+     * @return number of retained elements.
+     */
+    public int size() {
+        return mNumElements;
+    }
+
+    /**
+     * @return approximate number of bytes held by this instance.
+     */
+    public int getMemoryUsage() {
+        return mElements.length * 4 + mPoints.length * 4
+                + mIndex.length * 4 + mTags.length * 4;
+    }
+
+    /**
+     * Shrink internal arrays to their used size. Call when
+     * all elements were added.
+     */
+    public void compact() {
+        int[] elements = new int[mNumElements * STRIDE];
+        System.arraycopy(mElements, 0, elements, 0, elements.length);
+        mElements = elements;
+
+        float[] points = new float[mPointPos];
+        System.arraycopy(mPoints, 0, points, 0, mPointPos);
+        mPoints = points;
+
+        int[] index = new int[mIndexPos];
+        System.arraycopy(mIndex, 0, index, 0, mIndexPos);
+        mIndex = index;
+
+        Tag[] tags = new Tag[mTagPos];
+        System.arraycopy(mTags, 0, tags, 0, mTagPos);
+        mTags = tags;
+    }
+
+    private void ensureCapacity(int numPoints, int numIndices, int numTags) {
+        if ((mNumElements + 1) * STRIDE > mElements.length) {
+            int[] tmp = new int[mElements.length + GROW_ELEMENTS * STRIDE];
+            System.arraycopy(mElements, 0, tmp, 0, mNumElements * STRIDE);
+            mElements = tmp;
+        }
+        if (mPointPos + numPoints > mPoints.length) {
+            float[] tmp = new float[mPointPos + numPoints + GROW_POINTS];
+            System.arraycopy(mPoints, 0, tmp, 0, mPointPos);
+            mPoints = tmp;
+        }
+        if (mIndexPos + numIndices > mIndex.length) {
+            int[] tmp = new int[mIndexPos + numIndices + GROW_INDICES];
+            System.arraycopy(mIndex, 0, tmp, 0, mIndexPos);
+            mIndex = tmp;
+        }
+        if (mTagPos + numTags > mTags.length) {
+            Tag[] tmp = new Tag[mTagPos + numTags + GROW_TAGS];
+            System.arraycopy(mTags, 0, tmp, 0, mTagPos);
+            mTags = tmp;
+        }
+    }
+}
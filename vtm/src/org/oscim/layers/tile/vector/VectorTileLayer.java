@@ -18,22 +18,31 @@
 package org.oscim.layers.tile.vector;
 
 import org.oscim.core.MapElement;
+import org.oscim.core.MapPosition;
+import org.oscim.core.Point;
+import org.oscim.core.Tile;
 import org.oscim.layers.tile.MapTile;
 import org.oscim.layers.tile.TileLayer;
 import org.oscim.layers.tile.TileLoader;
 import org.oscim.layers.tile.TileManager;
+import org.oscim.layers.tile.TileSet;
+import org.oscim.layers.tile.vector.FeatureIndex.Feature;
 import org.oscim.layers.tile.VectorTileRenderer;
 import org.oscim.map.Map;
 import org.oscim.renderer.bucket.RenderBuckets;
 import org.oscim.theme.IRenderTheme;
 import org.oscim.theme.styles.RenderStyle;
+import org.oscim.tiling.ITileDataSource;
 import org.oscim.tiling.TileSource;
 import org.oscim.tiling.TileSource.OpenResult;
+import org.oscim.utils.LRUCache;
 import org.oscim.utils.pool.Inlist.List;
 import org.oscim.utils.pool.LList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+
 /**
  * The vector-tile-map layer. This class manages instances of
  * {@link VectorTileLoader} that load and assemble vector tiles
@@ -44,6 +53,29 @@ public class VectorTileLayer extends TileLayer {
 
     protected TileSource mTileSource;
 
+    /**
+     * Decoded tile features kept for re-styling, null when disabled
+     */
+    private java.util.Map<Tile, TileFeatures> mRetainedFeatures;
+
+    /**
+     * Number of parent tiles kept in memory for overzooming
+     */
+    public static int OVERZOOM_CACHE = 16;
+
+    /**
+     * Maximum zoom-level of tiles derived from the TileSource by
+     * overzooming, 0 when disabled
+     */
+    private int mOverzoom;
+
+    /**
+     * Features of parent tiles shared by loaders for overzooming
+     */
+    private final java.util.Map<Tile, OverzoomTileDataSource.Parent> mOverzoomFeatures =
+            Collections.synchronizedMap(
+                    new LRUCache<Tile, OverzoomTileDataSource.Parent>(OVERZOOM_CACHE));
+
     public VectorTileLayer(Map map, TileSource tileSource) {
         this(map, new TileManager(map,
                         100),
@@ -92,11 +124,10 @@ public class VectorTileLayer extends TileLayer {
 
         mTileSource = tileSource;
 
-        mTileManager.setZoomLevel(tileSource.getZoomLevelMin(),
-                tileSource.getZoomLevelMax());
+        initDataSources();
 
-        for (TileLoader l : mTileLoader)
-            ((VectorTileLoader) l).setDataSource(tileSource.getDataSource());
+        if (mRetainedFeatures != null)
+            mRetainedFeatures.clear();
 
         mMap.clearMap();
         resumeLoaders();
@@ -104,6 +135,58 @@ public class VectorTileLayer extends TileLayer {
         return true;
     }
 
+    private void initDataSources() {
+        int zoomMax = mTileSource.getZoomLevelMax();
+        boolean overzoom = mOverzoom > zoomMax;
+
+        mTileManager.setZoomLevel(mTileSource.getZoomLevelMin(),
+                overzoom ? mOverzoom : zoomMax);
+
+        mOverzoomFeatures.clear();
+
+        for (TileLoader l : mTileLoader) {
+            ITileDataSource dataSource = mTileSource.getDataSource();
+            if (overzoom)
+                dataSource = new OverzoomTileDataSource(dataSource, zoomMax,
+                        mOverzoomFeatures);
+
+            ((VectorTileLoader) l).setDataSource(dataSource);
+        }
+    }
+
+    /**
+     * Show tiles up to 'zoomLevel' when the TileSource provides less
+     * detailed tiles. Tiles above the maximum zoom-level of the TileSource
+     * are derived by clipping the features of their parent tile, which are
+     * then styled for the actual zoom-level.
+     * <p/>
+     * Requires a TileSource which loads tiles synchronously.
+     *
+     * @param zoomLevel maximum zoom-level, 0 to disable.
+     */
+    public void setOverzoom(int zoomLevel) {
+        if (zoomLevel == mOverzoom)
+            return;
+
+        pauseLoaders(true);
+        mTileManager.clearJobs();
+
+        mOverzoom = zoomLevel;
+
+        if (mTileSource != null) {
+            initDataSources();
+            mMap.clearMap();
+        }
+        resumeLoaders();
+    }
+
+    /**
+     * @return maximum zoom-level for overzooming, 0 when disabled.
+     */
+    public int getOverzoom() {
+        return mOverzoom;
+    }
+
     /**
      * Set {@link IRenderTheme} used by {@link TileLoader}
      */
@@ -129,6 +212,240 @@ public class VectorTileLayer extends TileLayer {
         return mTheme;
     }
 
+    /**
+     * Keep decoded features of up to 'maxTiles' tiles in memory. When the
+     * theme changes, e.g. by {@link Map#setTheme(IRenderTheme)} or a style
+     * menu toggle, these tiles are restyled from memory instead of being
+     * fetched and decoded again from the {@link TileSource}.
+     *
+     * @param maxTiles number of tiles to retain, 0 to disable.
+     */
+    public void setRetainFeatures(int maxTiles) {
+        pauseLoaders(true);
+
+        if (maxTiles <= 0)
+            mRetainedFeatures = null;
+        else
+            mRetainedFeatures = Collections.synchronizedMap(
+                    new LRUCache<Tile, TileFeatures>(maxTiles));
+
+        resumeLoaders();
+    }
+
+    /**
+     * @return true when decoded features are retained for re-styling.
+     */
+    public boolean isRetainingFeatures() {
+        return mRetainedFeatures != null;
+    }
+
+    /**
+     * Called by {@link VectorTileLoader}.
+     *
+     * @return retained features of 'tile' or null.
+     */
+    TileFeatures getRetainedFeatures(Tile tile) {
+        java.util.Map<Tile, TileFeatures> features = mRetainedFeatures;
+        if (features == null)
+            return null;
+
+        return features.get(tile);
+    }
+
+    /**
+     * Called by {@link VectorTileLoader} when all features
+     * of 'tile' were decoded.
+     */
+    void retainFeatures(Tile tile, TileFeatures tileFeatures) {
+        java.util.Map<Tile, TileFeatures> features = mRetainedFeatures;
+        if (features == null)
+            return;
+
+        tileFeatures.compact();
+        /* do not keep a reference to the MapTile */
+        features.put(new Tile(tile.tileX, tile.tileY, tile.zoomLevel), tileFeatures);
+    }
+
+    /**
+     * Simplification tolerance in pixel per zoom-level, null when disabled
+     */
+    private float[] mSimplifyTolerance;
+
+    /**
+     * Simplify lines and polygons before they are added to render buckets.
+     * Only affects tiles loaded afterwards.
+     *
+     * @param tolerance Douglas-Peucker tolerance in tile pixel per
+     *                  zoom-level: tolerance[z] for zoom-level z, the last
+     *                  value for all higher zoom-levels. Null to disable.
+     */
+    public void setSimplification(float... tolerance) {
+        pauseLoaders(true);
+        if (tolerance == null || tolerance.length == 0)
+            mSimplifyTolerance = null;
+        else
+            mSimplifyTolerance = tolerance.clone();
+        resumeLoaders();
+    }
+
+    /**
+     * @return simplification tolerance in pixel at 'zoomLevel',
+     * 0 when disabled.
+     */
+    public float getSimplifyTolerance(int zoomLevel) {
+        float[] tolerance = mSimplifyTolerance;
+        if (tolerance == null)
+            return 0;
+
+        return tolerance[Math.min(zoomLevel, tolerance.length - 1)];
+    }
+
+    private boolean mIndexFeatures;
+
+    /* state for picking features, used on main thread */
+    private final TileSet mPickTiles = new TileSet();
+    private final MapPosition mPickPosition = new MapPosition();
+    private final Point mPickPoint = new Point();
+
+    /**
+     * Build a {@link FeatureIndex} of the rendered features of each tile
+     * to find features by screen position with {@link #getFeatures}.
+     * Only affects tiles loaded afterwards.
+     */
+    public void setIndexFeatures(boolean enable) {
+        pauseLoaders(true);
+        mIndexFeatures = enable;
+        resumeLoaders();
+    }
+
+    /**
+     * @return true when features are indexed for picking.
+     */
+    public boolean isIndexingFeatures() {
+        return mIndexFeatures;
+    }
+
+    /**
+     * Find the rendered features at a screen position in the most detailed
+     * visible tile. See also {@link Map#getFeatures}.
+     *
+     * @param x      screen coordinate
+     * @param y      screen coordinate
+     * @param radius search radius in screen pixel
+     * @param out    list to add found features
+     * @return number of features added to 'out'.
+     */
+    public synchronized int getFeatures(float x, float y, float radius, java.util.List<Feature> out) {
+        if (!mIndexFeatures)
+            return 0;
+
+        mMap.viewport().getMapPosition(mPickPosition);
+        mMap.viewport().fromScreenPoint(x, y, mPickPoint);
+
+        tileRenderer().getVisibleTiles(mPickTiles);
+
+        /* tile containing the position with highest zoom-level */
+        MapTile tile = null;
+        for (int i = 0; i < mPickTiles.cnt; i++) {
+            MapTile t = mPickTiles.tiles[i];
+            if (tile != null && tile.zoomLevel >= t.zoomLevel)
+                continue;
+
+            double size = 1.0 / (1 << t.zoomLevel);
+            if (mPickPoint.x >= t.x && mPickPoint.x < t.x + size
+                    && mPickPoint.y >= t.y && mPickPoint.y < t.y + size
+                    && t.getData(FeatureIndex.FEATURE_DATA) != null)
+                tile = t;
+        }
+
+        int found = 0;
+        if (tile != null) {
+            FeatureIndex index = (FeatureIndex) tile.getData(FeatureIndex.FEATURE_DATA);
+            double scale = (double) Tile.SIZE * (1 << tile.zoomLevel);
+
+            found = index.search((float) ((mPickPoint.x - tile.x) * scale),
+                    (float) ((mPickPoint.y - tile.y) * scale),
+                    (float) (radius * (1 << tile.zoomLevel) / mPickPosition.scale),
+                    out);
+        }
+        tileRenderer().releaseTiles(mPickTiles);
+
+        return found;
+    }
+
+    /**
+     * Find the rendered features in a screen box in the most detailed
+     * visible tiles. With a rotated or tilted map the bounding box of
+     * the map area within the screen box is searched. A feature that
+     * crosses tile borders is found once per tile. See also
+     * {@link Map#getFeatures}.
+     *
+     * @param x1  screen coordinate of a box corner
+     * @param y1  screen coordinate of a box corner
+     * @param x2  screen coordinate of the opposite corner
+     * @param y2  screen coordinate of the opposite corner
+     * @param out list to add found features
+     * @return number of features added to 'out'.
+     */
+    public synchronized int getFeatures(float x1, float y1, float x2, float y2,
+                                        java.util.List<Feature> out) {
+        if (!mIndexFeatures)
+            return 0;
+
+        mMap.viewport().getMapPosition(mPickPosition);
+
+        /* bounding box of the box corners in map coordinates */
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            mMap.viewport().fromScreenPoint(i < 2 ? x1 : x2,
+                    (i & 1) == 0 ? y1 : y2, mPickPoint);
+            minX = Math.min(minX, mPickPoint.x);
+            minY = Math.min(minY, mPickPoint.y);
+            maxX = Math.max(maxX, mPickPoint.x);
+            maxY = Math.max(maxY, mPickPoint.y);
+        }
+
+        tileRenderer().getVisibleTiles(mPickTiles);
+
+        /* highest zoom-level of indexed tiles within the box */
+        int zoom = -1;
+        for (int i = 0; i < mPickTiles.cnt; i++) {
+            MapTile t = mPickTiles.tiles[i];
+            if (t.zoomLevel > zoom && intersects(t, minX, minY, maxX, maxY)
+                    && t.getData(FeatureIndex.FEATURE_DATA) != null)
+                zoom = t.zoomLevel;
+        }
+
+        int found = 0;
+        for (int i = 0; i < mPickTiles.cnt; i++) {
+            MapTile t = mPickTiles.tiles[i];
+            if (t.zoomLevel != zoom || !intersects(t, minX, minY, maxX, maxY))
+                continue;
+
+            FeatureIndex index = (FeatureIndex) t.getData(FeatureIndex.FEATURE_DATA);
+            if (index == null)
+                continue;
+
+            double scale = (double) Tile.SIZE * (1 << t.zoomLevel);
+            found += index.search((float) ((minX - t.x) * scale),
+                    (float) ((minY - t.y) * scale),
+                    (float) ((maxX - t.x) * scale),
+                    (float) ((maxY - t.y) * scale),
+                    out);
+        }
+        tileRenderer().releaseTiles(mPickTiles);
+
+        return found;
+    }
+
+    private static boolean intersects(MapTile t, double minX, double minY,
+                                      double maxX, double maxY) {
+        double size = 1.0 / (1 << t.zoomLevel);
+        return minX < t.x + size && maxX >= t.x
+                && minY < t.y + size && maxY >= t.y;
+    }
+
     /**
      * Hook to intercept tile data processing. Called concurently by tile
      * loader threads, so dont keep tile specific state.
@@ -179,6 +496,11 @@ public class VectorTileLayer extends TileLayer {
         super.onDetach();
         if (mTileSource != null)
             mTileSource.close();
+
+        if (mRetainedFeatures != null)
+            mRetainedFeatures.clear();
+
+        mOverzoomFeatures.clear();
     }
 
     public void callThemeHooks(MapTile tile, RenderBuckets layers, MapElement element,
@@ -17,6 +17,7 @@
  */
 package org.oscim.layers.tile.vector;
 
+import org.oscim.core.GeometryBuffer;
 import org.oscim.core.GeometryBuffer.GeometryType;
 import org.oscim.core.MapElement;
 import org.oscim.core.MercatorProjection;
@@ -41,6 +42,9 @@ import org.oscim.theme.styles.SymbolStyle;
 import org.oscim.theme.styles.TextStyle;
 import org.oscim.tiling.ITileDataSource;
 import org.oscim.tiling.QueryResult;
+import org.oscim.utils.geom.GeometryUtils;
+import org.oscim.utils.geom.SimplifyDP;
+import org.oscim.utils.metrics.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -85,6 +89,46 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
 
     protected RenderBuckets mBuckets;
 
+    /**
+     * Features of the current tile to be retained by the layer
+     */
+    private TileFeatures mTileFeatures;
+
+    /**
+     * Index of the rendered features of the current tile for picking
+     */
+    private FeatureIndex mFeatureIndex;
+
+    /**
+     * Squared simplification tolerance for the current tile, 0 to disable
+     */
+    private float mSimplifyTolerance;
+    private final SimplifyDP mSimplify = new SimplifyDP();
+    private final GeometryBuffer mSimplified = new GeometryBuffer(1024, 16);
+
+    /**
+     * Geometry of the current element for line and polygon buckets: the
+     * element or its simplified copy, null when nothing remained. Theme
+     * hooks get the unsimplified element.
+     */
+    private GeometryBuffer mGeometry;
+
+    /**
+     * Points removed by simplification from the current tile
+     */
+    private int mSimplifiedPoints;
+
+    /**
+     * Polygons of the current tile drawn by stencil and by mesh
+     */
+    private int mStencilPolygons;
+    private int mMeshPolygons;
+
+    /**
+     * Reusable element for replaying retained features
+     */
+    private final MapElement mRetainedElement = new MapElement();
+
     private final VectorTileLayer mTileLayer;
 
     public VectorTileLoader(VectorTileLayer tileLayer) {
@@ -130,6 +174,28 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
         mBuckets = new RenderBuckets();
         tile.data = mBuckets;
 
+        mFeatureIndex = mTileLayer.isIndexingFeatures() ? new FeatureIndex() : null;
+
+        float tolerance = mTileLayer.getSimplifyTolerance(tile.zoomLevel);
+        mSimplifyTolerance = tolerance * tolerance;
+        mSimplifiedPoints = 0;
+        mStencilPolygons = 0;
+        mMeshPolygons = 0;
+
+        mTileFeatures = null;
+        if (mTileLayer.isRetainingFeatures()) {
+            TileFeatures features = mTileLayer.getRetainedFeatures(tile);
+            if (features != null) {
+                /* restyle from memory, no need to query data source */
+                for (int i = 0, n = features.size(); i < n; i++)
+                    process(features.get(i, mRetainedElement));
+
+                completed(QueryResult.SUCCESS);
+                return true;
+            }
+            mTileFeatures = new TileFeatures();
+        }
+
         try {
             /* query data source, which calls process() callback */
             mTileDataSource.query(tile, this);
@@ -148,6 +214,28 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
     public void completed(QueryResult result) {
         boolean ok = (result == QueryResult.SUCCESS);
 
+        if (mTileFeatures != null) {
+            if (ok && !isCanceled())
+                mTileLayer.retainFeatures(mTile, mTileFeatures);
+            mTileFeatures = null;
+        }
+
+        if (mFeatureIndex != null) {
+            if (ok) {
+                mFeatureIndex.finish();
+                mTile.addData(FeatureIndex.FEATURE_DATA, mFeatureIndex);
+            }
+            mFeatureIndex = null;
+        }
+
+        if (mSimplifyTolerance > 0 && ok)
+            Metrics.record(Metrics.SIMPLIFY, mSimplifiedPoints);
+
+        if (ok) {
+            Metrics.record(Metrics.STENCIL_POLYGONS, mStencilPolygons);
+            Metrics.record(Metrics.MESH_POLYGONS, mMeshPolygons);
+        }
+
         mTileLayer.callHooksComplete(mTile, ok);
 
         /* finish buckets- tessellate and cleanup on worker-thread */
@@ -196,6 +284,9 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
         if (isCanceled() || !mTile.state(LOADING))
             return;
 
+        if (mTileFeatures != null)
+            mTileFeatures.add(element);
+
         if (mTileLayer.callProcessHooks(mTile, mBuckets, element))
             return;
 
@@ -206,15 +297,41 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
         mElement = element;
 
         /* get and apply render instructions */
+        RenderStyle<?>[] style = renderTheme.matchElement(element.type, tags, mTile.zoomLevel);
+
+        /* index only features that are rendered */
+        if (style != null && mFeatureIndex != null)
+            mFeatureIndex.add(element);
+
         if (element.type == GeometryType.POINT) {
-            renderNode(renderTheme.matchElement(element.type, tags, mTile.zoomLevel));
+            renderNode(style);
         } else {
+            mGeometry = element;
+            if (style != null && mSimplifyTolerance > 0)
+                mGeometry = simplify(element);
+
             mCurBucket = getValidLayer(element.layer) * renderTheme.getLevels();
-            renderWay(renderTheme.matchElement(element.type, tags, mTile.zoomLevel));
+            renderWay(style);
         }
         clearState();
     }
 
+    /**
+     * Simplify a copy of lines and polygons of the current tile.
+     *
+     * @return the simplified geometry, null when the element collapsed.
+     */
+    private GeometryBuffer simplify(MapElement element) {
+        if (!element.isLine() && !element.isPoly())
+            return element;
+
+        GeometryBuffer geom = mSimplified.set(element);
+        boolean ok = mSimplify.simplify(geom, mSimplifyTolerance);
+        mSimplifiedPoints += (element.pointPos - geom.pointPos) >> 1;
+
+        return ok ? geom : null;
+    }
+
     protected void renderWay(RenderStyle[] style) {
         if (style == null)
             return;
@@ -234,6 +351,8 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
     protected void clearState() {
         mCurLineBucket = null;
         mElement = null;
+        mGeometry = null;
+        mElementArea = -1;
     }
 
     /***
@@ -241,6 +360,10 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
      ***/
     @Override
     public void renderWay(LineStyle line, int level) {
+        /* collapsed by simplification */
+        if (mGeometry == null)
+            return;
+
         int nLevel = mCurBucket + level;
 
         if (line.outline && mCurLineBucket == null) {
@@ -269,7 +392,7 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
                 return;
             }
 
-            lb.addLine(mElement);
+            lb.addLine(mGeometry);
 
             /* keep reference for outline layer(s) */
             //if (!(lb instanceof LineTexBucket))
@@ -291,7 +414,7 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
             //    lb.scale = w;
             //}
 
-            lb.addLine(mElement);
+            lb.addLine(mGeometry);
         }
     }
 
@@ -299,25 +422,123 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
      * more memory but should be faster to render */
     public static boolean USE_MESH_POLY = false;
 
+    /**
+     * Decide per polygon whether to tessellate it into a MeshBucket on the
+     * loader thread or to draw it by the stencil method, see
+     * {@link #preferMesh(double[], int[], int, double)}. USE_MESH_POLY
+     * and AreaStyle.mesh take precedence.
+     * <p/>
+     * Disabled by default as the thresholds are estimates that were not
+     * measured yet, the PolygonModeTest in vtm-playground compares the
+     * modes on a map file.
+     */
+    public static boolean ADAPTIVE_MESH_POLY = false;
+
+    /**
+     * Maximum number of points of polygons to be tessellated in adaptive
+     * mode. Twice as many for convex polygons.
+     */
+    public static int MESH_MAX_POINTS = 64;
+
+    /**
+     * Minimum ratio of stencil fan area to polygon area for polygons to
+     * be tessellated in adaptive mode.
+     */
+    public static float MESH_MIN_OVERDRAW = 4;
+
+    /**
+     * Up to this zoom-level polygons smaller than {@link #MIN_POLYGON_AREA}
+     * are dropped and adjacent polygons of a bucket are merged, see
+     * {@link PolygonBucket#mergePolygon(double[], int[])}. -1 to disable.
+     */
+    public static int GENERALIZE_MAX_ZOOM = 13;
+
+    /**
+     * Minimum area of polygons in tile pixel
+     */
+    public static float MIN_POLYGON_AREA = 1;
+
+    /**
+     * Area of the current element, -1 when not yet calculated
+     */
+    private double mElementArea = -1;
+
     @Override
     public void renderArea(AreaStyle area, int level) {
         /* dont add faded out polygon layers */
-        if (mTile.zoomLevel < area.fadeScale)
+        if (mGeometry == null || mTile.zoomLevel < area.fadeScale)
+            return;
+
+        boolean generalize = mTile.zoomLevel <= GENERALIZE_MAX_ZOOM;
+
+        /* not visible at this zoom-level */
+        if (generalize && getElementArea() < MIN_POLYGON_AREA)
             return;
 
         int nLevel = mCurBucket + level;
 
-        if (USE_MESH_POLY || area.mesh) {
+        if (USE_MESH_POLY || area.mesh || (ADAPTIVE_MESH_POLY && canMesh(area)
+                && preferMesh(mGeometry.points, mGeometry.index,
+                mGeometry.pointPos >> 1, getElementArea()))) {
             MeshBucket mb = mBuckets.getMeshBucket(nLevel);
             mb.area = area;
-            mb.addMesh(mElement);
+            mb.addMesh(mGeometry);
+            mMeshPolygons++;
         } else {
             PolygonBucket pb = mBuckets.getPolygonBucket(nLevel);
             pb.area = area;
-            pb.addPolygon(mElement.points, mElement.index);
+            if (generalize)
+                pb.mergePolygon(mGeometry.points, mGeometry.index);
+            else
+                pb.addPolygon(mGeometry.points, mGeometry.index);
+            mStencilPolygons++;
         }
     }
 
+    private double getElementArea() {
+        if (mElementArea < 0)
+            mElementArea = GeometryUtils.area(mGeometry.points, mGeometry.index);
+        return mElementArea;
+    }
+
+    /**
+     * @return false for textured, stroked or blending areas, which are
+     * drawn by the stencil method in adaptive mode. MeshBucket draws no
+     * textures and no outlines.
+     */
+    static boolean canMesh(AreaStyle area) {
+        return area.texture == null && area.blendScale <= 0
+                && area.strokeWidth <= 0;
+    }
+
+    /**
+     * Tessellation costs load time once, the stencil method costs fill
+     * rate on every frame for the fan between tile center and outline.
+     * Prefer a mesh for polygons with few points whose fan is large
+     * compared to their area, e.g. small polygons far from the center.
+     *
+     * @return true when the polygon should be tessellated.
+     */
+    static boolean preferMesh(double[] points, int[] index, int numPoints, double area) {
+        if (area <= 0)
+            return false;
+
+        int maxPoints = MESH_MAX_POINTS;
+
+        /* single convex ring is cheap to tessellate */
+        if ((index.length == 1 || index[1] < 0)
+                && GeometryUtils.isConvex(points, 0, index[0]))
+            maxPoints *= 2;
+
+        if (numPoints > maxPoints)
+            return false;
+
+        double center = Tile.SIZE >> 1;
+        double fan = GeometryUtils.fanArea(points, index, center, center);
+
+        return fan >= area * MESH_MIN_OVERDRAW;
+    }
+
     @Override
     public void renderSymbol(SymbolStyle symbol) {
         mTileLayer.callThemeHooks(mTile, mBuckets, mElement, symbol, 0);
@@ -48,6 +48,7 @@ public class Animator {
     private final MapPosition mCurPos = new MapPosition();
     private final MapPosition mStartPos = new MapPosition();
     private final MapPosition mDeltaPos = new MapPosition();
+    private final MapPosition mEndPos = new MapPosition();
 
     private final Point mScroll = new Point();
     private final Point mPivot = new Point();
@@ -200,9 +201,67 @@ public class Animator {
         mState = state;
         mDuration = duration;
         mAnimEnd = System.currentTimeMillis() + (long) duration;
+        updateEndPosition();
         mMap.render();
     }
 
+    /**
+     * Predict the position at the end of the animation.
+     * The pivot of animateZoom is not taken into account.
+     */
+    private void updateEndPosition() {
+        MapPosition end = mEndPos;
+        end.copy(mStartPos);
+
+        if ((mState & ANIM_FLING) != 0) {
+            /* see ViewController.moveMap */
+            double mx = mVelocity.x;
+            double my = mVelocity.y;
+            if (end.bearing != 0) {
+                double rad = Math.toRadians(end.bearing);
+                double rcos = Math.cos(rad);
+                double rsin = Math.sin(rad);
+                mx = mVelocity.x * rcos + mVelocity.y * rsin;
+                my = mVelocity.x * -rsin + mVelocity.y * rcos;
+            }
+            double tileScale = end.scale * Tile.SIZE;
+            end.x -= mx / tileScale;
+            end.y -= my / tileScale;
+        }
+        if ((mState & ANIM_MOVE) != 0) {
+            end.x += mDeltaPos.x;
+            end.y += mDeltaPos.y;
+        }
+        if ((mState & ANIM_SCALE) != 0)
+            end.setScale(mStartPos.scale + mDeltaPos.scale);
+
+        if ((mState & ANIM_ROTATE) != 0)
+            end.bearing += mDeltaPos.bearing;
+
+        if ((mState & ANIM_TILT) != 0)
+            end.tilt += mDeltaPos.tilt;
+
+        end.y = clamp(end.y, 0, 1);
+        while (end.x > 1)
+            end.x -= 1;
+        while (end.x < 0)
+            end.x += 1;
+    }
+
+    /**
+     * Get the predicted position at the end of the running animation,
+     * e.g. to prefetch tiles.
+     *
+     * @return false when no animation is active.
+     */
+    public synchronized boolean getEndPosition(MapPosition out) {
+        if (mState == ANIM_NONE)
+            return false;
+
+        out.copy(mEndPos);
+        return true;
+    }
+
     /**
      * called by MapRenderer at begin of each frame.
      */
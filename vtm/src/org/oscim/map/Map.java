@@ -30,6 +30,7 @@ import org.oscim.event.MotionEvent;
 import org.oscim.layers.Layer;
 import org.oscim.layers.MapEventLayer;
 import org.oscim.layers.tile.TileLayer;
+import org.oscim.layers.tile.vector.FeatureIndex;
 import org.oscim.layers.tile.vector.OsmTileLayer;
 import org.oscim.layers.tile.vector.VectorTileLayer;
 import org.oscim.renderer.MapRenderer;
@@ -43,6 +44,10 @@ import org.oscim.utils.async.TaskQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
 public abstract class Map implements TaskQueue {
 
     static final Logger log = LoggerFactory.getLogger(Map.class);
@@ -318,6 +323,62 @@ public abstract class Map implements TaskQueue {
         return new BoundingBox(box.ymin, box.xmin, box.ymax, box.xmax);
     }
 
+    /**
+     * Find the features rendered at a screen position by all
+     * {@link VectorTileLayer}s with enabled feature index, see
+     * {@link VectorTileLayer#setIndexFeatures(boolean)}. Features
+     * are sorted by extent, the most specific first.
+     *
+     * @param x      screen coordinate
+     * @param y      screen coordinate
+     * @param radius search radius in screen pixel
+     * @param out    list to add found features
+     * @return number of features added to 'out'.
+     */
+    public int getFeatures(float x, float y, float radius, List<FeatureIndex.Feature> out) {
+        int size = out.size();
+        for (Layer l : mLayers) {
+            if (l instanceof VectorTileLayer && l.isEnabled())
+                ((VectorTileLayer) l).getFeatures(x, y, radius, out);
+        }
+        Collections.sort(out.subList(size, out.size()), FEATURE_COMPARATOR);
+
+        return out.size() - size;
+    }
+
+    /**
+     * Find the features rendered within a screen box by all
+     * {@link VectorTileLayer}s with enabled feature index. Features
+     * are sorted by extent, the most specific first.
+     *
+     * @param x1  screen coordinate of a box corner
+     * @param y1  screen coordinate of a box corner
+     * @param x2  screen coordinate of the opposite corner
+     * @param y2  screen coordinate of the opposite corner
+     * @param out list to add found features
+     * @return number of features added to 'out'.
+     * @see VectorTileLayer#getFeatures(float, float, float, float, List)
+     */
+    public int getFeatures(float x1, float y1, float x2, float y2,
+                           List<FeatureIndex.Feature> out) {
+        int size = out.size();
+        for (Layer l : mLayers) {
+            if (l instanceof VectorTileLayer && l.isEnabled())
+                ((VectorTileLayer) l).getFeatures(x1, y1, x2, y2, out);
+        }
+        Collections.sort(out.subList(size, out.size()), FEATURE_COMPARATOR);
+
+        return out.size() - size;
+    }
+
+    private static final Comparator<FeatureIndex.Feature> FEATURE_COMPARATOR =
+            new Comparator<FeatureIndex.Feature>() {
+                @Override
+                public int compare(FeatureIndex.Feature a, FeatureIndex.Feature b) {
+                    return Float.compare(a.getArea(), b.getArea());
+                }
+            };
+
     /**
      * @return Viewport instance
      */
@@ -43,18 +43,30 @@ public abstract class ExtrusionRenderer extends LayerRenderer {
     }
 
     public static class Shader extends GLShader {
-        int uMVP, uColor, uAlpha, uMode, aPos, aLight;
+        int uMVP, uColor, uAlpha, uMode, aPos, aLight, aColor;
 
         public Shader(String shader) {
+            this(shader, false);
+        }
+
+        /**
+         * @param vertexColors true when colors are passed as attribute
+         *                     'a_color' instead of uniform 'u_color'.
+         */
+        public Shader(String shader, boolean vertexColors) {
             if (!create(shader))
                 return;
 
             uMVP = getUniform("u_mvp");
-            uColor = getUniform("u_color");
             uAlpha = getUniform("u_alpha");
             uMode = getUniform("u_mode");
             aPos = getAttrib("a_pos");
             aLight = getAttrib("a_light");
+
+            if (vertexColors)
+                aColor = getAttrib("a_color");
+            else
+                uColor = getUniform("u_color");
         }
     }
 
@@ -63,7 +75,7 @@ public abstract class ExtrusionRenderer extends LayerRenderer {
         if (mMode == 0)
             mShader = new Shader("extrusion_layer_ext");
         else
-            mShader = new Shader("extrusion_layer_mesh");
+            mShader = new Shader("extrusion_layer_mesh", true);
 
         return true;
     }
@@ -73,7 +85,7 @@ public abstract class ExtrusionRenderer extends LayerRenderer {
         for (ExtrusionBucket eb = ebs.buckets(); eb != null; eb = eb.next()) {
 
             gl.vertexAttribPointer(vertexPointer, 3,
-                    GL.SHORT, false, 8,
+                    GL.SHORT, false, eb.vertexSize * 2,
                     eb.getVertexOffset());
 
             int sumIndices = eb.idx[0] + eb.idx[1] + eb.idx[2];
@@ -150,6 +162,10 @@ public abstract class ExtrusionRenderer extends LayerRenderer {
 
         GLState.enableVertexArrays(s.aPos, s.aLight);
 
+        /* meshes have colors per vertex */
+        if (mMode == 1)
+            gl.enableVertexAttribArray(s.aColor);
+
         for (int i = 0; i < mBucketsCnt; i++) {
             if (ebs[i].ibo == null)
                 continue;
@@ -170,18 +186,21 @@ public abstract class ExtrusionRenderer extends LayerRenderer {
 
             for (; eb != null; eb = eb.next()) {
 
-                if (eb.colors != currentColor) {
+                int stride = eb.vertexSize * 2;
+
+                if (mMode == 1) {
+                    gl.vertexAttribPointer(s.aColor, 4, GL.UNSIGNED_BYTE,
+                            true, stride, eb.getVertexOffset() + 8);
+                } else if (eb.colors != currentColor) {
                     currentColor = eb.colors;
-                    GLUtils.glUniform4fv(s.uColor,
-                            mMode == 0 ? 4 : 1,
-                            eb.colors);
+                    GLUtils.glUniform4fv(s.uColor, 4, eb.colors);
                 }
 
                 gl.vertexAttribPointer(s.aPos, 3, GL.SHORT,
-                        false, 8, eb.getVertexOffset());
+                        false, stride, eb.getVertexOffset());
 
                 gl.vertexAttribPointer(s.aLight, 2, GL.UNSIGNED_BYTE,
-                        false, 8, eb.getVertexOffset() + 6);
+                        false, stride, eb.getVertexOffset() + 6);
 
                 /* draw extruded outlines */
                 if (eb.idx[0] > 0) {
@@ -231,6 +250,9 @@ public abstract class ExtrusionRenderer extends LayerRenderer {
             ebs[i] = null;
         }
 
+        if (mMode == 1)
+            gl.disableVertexAttribArray(s.aColor);
+
         if (!mTranslucent)
             gl.depthMask(false);
 
@@ -0,0 +1,126 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.renderer;
+
+import org.oscim.backend.GL;
+
+import static org.oscim.backend.GLAdapter.gl;
+
+/**
+ * Frame of static layers drawn into a texture, which is drawn instead of
+ * the layers while they and the viewport do not change.
+ * See {@link MapRenderer#CACHE_FRAME}.
+ */
+class FrameCache extends OffscreenRenderer {
+
+    private LayerRenderer[] mLayers = new LayerRenderer[0];
+    private boolean[] mReady = new boolean[0];
+    private float[] mClearColor;
+    private boolean mValid;
+
+    private CopyShader mShader;
+
+    static class CopyShader extends GLShader {
+        int aPos, uTexColor;
+
+        CopyShader() {
+            if (!create("frame_copy"))
+                return;
+            aPos = getAttrib("a_pos");
+            uTexColor = getUniform("u_texColor");
+        }
+    }
+
+    FrameCache() {
+        super(Mode.BYPASS, null);
+        useStencil = true;
+    }
+
+    /**
+     * Check whether the frame of layers[0 ... n] must be drawn anew and
+     * remember their state.
+     */
+    boolean isChanged(LayerRenderer[] layers, int n, GLViewport v, float[] clearColor) {
+        boolean changed = !mValid || v.changed()
+                || texW != v.getWidth() || texH != v.getHeight()
+                || mClearColor != clearColor
+                || mLayers.length != n;
+
+        if (mLayers.length != n) {
+            mLayers = new LayerRenderer[n];
+            mReady = new boolean[n];
+        }
+
+        for (int i = 0; i < n; i++) {
+            LayerRenderer r = layers[i];
+            if (r.isChanged || mLayers[i] != r || mReady[i] != r.isReady)
+                changed = true;
+
+            r.isChanged = false;
+            mLayers[i] = r;
+            mReady[i] = r.isReady;
+        }
+        mClearColor = clearColor;
+
+        return changed;
+    }
+
+    /**
+     * Bind the framebuffer to draw the frame.
+     *
+     * @return false when the framebuffer could not be created.
+     */
+    boolean begin(GLViewport v) {
+        if (texW != v.getWidth() || texH != v.getHeight()) {
+            mValid = false;
+            boolean ok = setupFBO(v);
+
+            /* setupFBO binds textures directly */
+            GLState.bindTex2D(-1);
+
+            if (!ok) {
+                deleteFBO();
+                return false;
+            }
+
+            if (mShader == null)
+                mShader = new CopyShader();
+        }
+
+        gl.bindFramebuffer(GL.FRAMEBUFFER, fb);
+        return true;
+    }
+
+    void end() {
+        gl.bindFramebuffer(GL.FRAMEBUFFER, 0);
+        mValid = true;
+    }
+
+    /**
+     * Draw the cached frame.
+     */
+    void draw() {
+        mShader.useProgram();
+
+        GLState.bindTex2D(renderTex);
+        gl.uniform1i(mShader.uTexColor, 0);
+
+        MapRenderer.bindQuadVertexVBO(mShader.aPos);
+
+        GLState.test(false, false);
+        GLState.blend(false);
+        gl.drawArrays(GL.TRIANGLE_STRIP, 0, 4);
+    }
+}
@@ -28,6 +28,11 @@ public abstract class LayerRenderer {
      */
     boolean isInitialized;
 
+    /**
+     * set by static renderers when their content changed
+     */
+    boolean isChanged;
+
     /**
      * Set 'ready for render' state when layer data is ready for rendering.
      *
@@ -41,6 +46,23 @@ public abstract class LayerRenderer {
         return isReady;
     }
 
+    /**
+     * Static renderers draw the same frame as before unless the viewport
+     * changed or they called {@link #setChanged()}. MapRenderer may then
+     * draw them from a cached frame, see {@link MapRenderer#CACHE_FRAME}.
+     */
+    public boolean isStatic() {
+        return false;
+    }
+
+    /**
+     * Set by static renderers in update() or render() when their
+     * content changed and the next frame must be drawn anew.
+     */
+    protected void setChanged() {
+        isChanged = true;
+    }
+
     /**
      * 0. Called on GL Thread before first update().
      */
@@ -23,6 +23,7 @@ import org.oscim.backend.canvas.Color;
 import org.oscim.map.Map;
 import org.oscim.renderer.bucket.RenderBuckets;
 import org.oscim.renderer.bucket.TextureItem;
+import org.oscim.utils.metrics.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,6 +61,16 @@ public class MapRenderer {
     public static long frametime;
     private static boolean rerender;
 
+    /**
+     * Draw the leading static layers, see {@link LayerRenderer#isStatic()},
+     * into a cached frame which is only drawn anew when the viewport or
+     * their content changes. Saves drawing the map while only animated
+     * layers on top, e.g. the location indicator, request frames.
+     */
+    public static boolean CACHE_FRAME = false;
+
+    private FrameCache mFrameCache;
+
     private static NativeBufferPool mBufferPool;
 
     private float viewPortScale = 1;
@@ -92,7 +103,9 @@ public class MapRenderer {
 
         mMap.beginFrame();
 
+        long t = Metrics.start();
         draw();
+        Metrics.stop(Metrics.FRAME, t);
 
         mMap.doneFrame(rerender);
 
@@ -104,15 +117,7 @@ public class MapRenderer {
 
         GLState.setClearColor(mClearColor);
 
-        gl.depthMask(true);
-        gl.stencilMask(0xFF);
-
-        gl.clear(GL.COLOR_BUFFER_BIT
-                | GL.DEPTH_BUFFER_BIT
-                | GL.STENCIL_BUFFER_BIT);
-
-        gl.depthMask(false);
-        gl.stencilMask(0);
+        clearBuffers();
 
         GLState.test(false, false);
         GLState.blend(false);
@@ -140,7 +145,11 @@ public class MapRenderer {
         /* update layers */
         LayerRenderer[] layers = mMap.layers().getLayerRenderer();
 
-        for (int i = 0, n = layers.length; i < n; i++) {
+        int start = 0;
+        if (CACHE_FRAME)
+            start = drawCachedFrame(layers);
+
+        for (int i = start, n = layers.length; i < n; i++) {
             LayerRenderer renderer = layers[i];
 
             if (!renderer.isInitialized) {
@@ -148,11 +157,15 @@ public class MapRenderer {
                 renderer.isInitialized = true;
             }
 
+            long t = Metrics.start();
+
             renderer.update(mViewport);
 
             if (renderer.isReady)
                 renderer.render(mViewport);
 
+            Metrics.stop(renderer, t);
+
             if (GLAdapter.debug)
                 GLUtils.checkGlError(renderer.getClass().getName());
         }
@@ -163,6 +176,82 @@ public class MapRenderer {
         }
     }
 
+    private static void clearBuffers() {
+        gl.depthMask(true);
+        gl.stencilMask(0xFF);
+
+        gl.clear(GL.COLOR_BUFFER_BIT
+                | GL.DEPTH_BUFFER_BIT
+                | GL.STENCIL_BUFFER_BIT);
+
+        gl.depthMask(false);
+        gl.stencilMask(0);
+    }
+
+    /**
+     * Update the leading static layers and draw them from the cached
+     * frame. The frame is drawn anew when they or the viewport changed.
+     *
+     * @return number of layers drawn.
+     */
+    private int drawCachedFrame(LayerRenderer[] layers) {
+        int n = 0;
+        while (n < layers.length && layers[n].isStatic())
+            n++;
+
+        if (n == 0)
+            return 0;
+
+        for (int i = 0; i < n; i++) {
+            LayerRenderer renderer = layers[i];
+
+            if (!renderer.isInitialized) {
+                renderer.setup();
+                renderer.isInitialized = true;
+            }
+
+            /* only updates are measured, render() is not called
+             * for every frame */
+            long t = Metrics.start();
+            renderer.update(mViewport);
+            Metrics.stop(renderer, t);
+        }
+
+        if (mFrameCache == null)
+            mFrameCache = new FrameCache();
+
+        if (!mFrameCache.isChanged(layers, n, mViewport, mClearColor)) {
+            mFrameCache.draw();
+            return n;
+        }
+
+        boolean cached = mFrameCache.begin(mViewport);
+        if (cached) {
+            clearBuffers();
+            GLState.test(false, false);
+            GLState.blend(false);
+        } else {
+            log.error("cannot create framebuffer, disable CACHE_FRAME");
+            CACHE_FRAME = false;
+            mFrameCache = null;
+        }
+
+        for (int i = 0; i < n; i++) {
+            LayerRenderer renderer = layers[i];
+            if (renderer.isReady)
+                renderer.render(mViewport);
+
+            if (GLAdapter.debug)
+                GLUtils.checkGlError(renderer.getClass().getName());
+        }
+
+        if (cached) {
+            mFrameCache.end();
+            mFrameCache.draw();
+        }
+        return n;
+    }
+
     public void onSurfaceChanged(int width, int height) {
         //log.debug("onSurfaceChanged: new={}, {}x{}", mNewSurface, width, height);
 
@@ -245,6 +334,11 @@ public class MapRenderer {
             GLAdapter.NO_BUFFER_SUB_DATA = true;
         }
 
+        /* GL_OES_packed_depth_stencil or GL_EXT_packed_depth_stencil */
+        String extensions = gl.getString(GL.EXTENSIONS);
+        GLAdapter.PACKED_DEPTH_STENCIL = extensions != null
+                && extensions.contains("_packed_depth_stencil");
+
         GLState.init();
 
         // Set up some vertex buffer objects
@@ -253,6 +347,9 @@ public class MapRenderer {
         // classes that require GL context for initialization
         RenderBuckets.initRenderer();
 
+        /* framebuffer of previous context is gone */
+        mFrameCache = null;
+
         mNewSurface = true;
     }
 
@@ -1,6 +1,7 @@
 package org.oscim.renderer;
 
 import org.oscim.backend.GL;
+import org.oscim.backend.GLAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,6 +22,8 @@ public class OffscreenRenderer extends LayerRenderer {
     int fb;
     int renderTex;
     int renderDepth;
+    int depthRenderbuffer;
+    int stencilRenderbuffer;
 
     int texW = -1;
     int texH = -1;
@@ -29,6 +32,11 @@ public class OffscreenRenderer extends LayerRenderer {
     private float[] mClearColor = {0, 0, 0, 0};
 
     private boolean useDepthTexture = false;
+
+    /**
+     * Attach a stencil buffer, required to draw tile polygons
+     */
+    protected boolean useStencil = false;
     private Shader mShader;
 
     static class Shader extends GLShader {
@@ -54,6 +62,9 @@ public class OffscreenRenderer extends LayerRenderer {
     }
 
     protected boolean setupFBO(GLViewport viewport) {
+        /* release the buffers of the previous size */
+        deleteFBO();
+
         IntBuffer buf = MapRenderer.getIntBuffer(1);
 
         texW = (int) viewport.getWidth();
@@ -111,10 +122,30 @@ public class OffscreenRenderer extends LayerRenderer {
                     GL.DEPTH_ATTACHMENT,
                     GL.TEXTURE_2D,
                     renderDepth, 0);
+        } else if (useStencil && GLAdapter.PACKED_DEPTH_STENCIL) {
+            buf.clear();
+            gl.genRenderbuffers(1, buf);
+            depthRenderbuffer = buf.get(0);
+
+            gl.bindRenderbuffer(GL.RENDERBUFFER, depthRenderbuffer);
+
+            gl.renderbufferStorage(GL.RENDERBUFFER,
+                    GL.DEPTH24_STENCIL8,
+                    texW, texH);
+
+            gl.framebufferRenderbuffer(GL.FRAMEBUFFER,
+                    GL.DEPTH_ATTACHMENT,
+                    GL.RENDERBUFFER,
+                    depthRenderbuffer);
+
+            gl.framebufferRenderbuffer(GL.FRAMEBUFFER,
+                    GL.STENCIL_ATTACHMENT,
+                    GL.RENDERBUFFER,
+                    depthRenderbuffer);
         } else {
             buf.clear();
             gl.genRenderbuffers(1, buf);
-            int depthRenderbuffer = buf.get(0);
+            depthRenderbuffer = buf.get(0);
 
             gl.bindRenderbuffer(GL.RENDERBUFFER, depthRenderbuffer);
 
@@ -126,6 +157,24 @@ public class OffscreenRenderer extends LayerRenderer {
                     GL.DEPTH_ATTACHMENT,
                     GL.RENDERBUFFER,
                     depthRenderbuffer);
+
+            /* separate buffers are not supported by all drivers */
+            if (useStencil) {
+                buf.clear();
+                gl.genRenderbuffers(1, buf);
+                stencilRenderbuffer = buf.get(0);
+
+                gl.bindRenderbuffer(GL.RENDERBUFFER, stencilRenderbuffer);
+
+                gl.renderbufferStorage(GL.RENDERBUFFER,
+                        GL.STENCIL_INDEX8,
+                        texW, texH);
+
+                gl.framebufferRenderbuffer(GL.FRAMEBUFFER,
+                        GL.STENCIL_ATTACHMENT,
+                        GL.RENDERBUFFER,
+                        stencilRenderbuffer);
+            }
         }
 
         GLUtils.checkGlError("2");
@@ -133,6 +182,7 @@ public class OffscreenRenderer extends LayerRenderer {
         int status = gl.checkFramebufferStatus(GL.FRAMEBUFFER);
         gl.bindFramebuffer(GL.FRAMEBUFFER, 0);
         gl.bindTexture(GL.TEXTURE_2D, 0);
+        gl.bindRenderbuffer(GL.RENDERBUFFER, 0);
 
         if (status != GL.FRAMEBUFFER_COMPLETE) {
             log.debug("invalid framebuffer! " + status);
@@ -141,6 +191,37 @@ public class OffscreenRenderer extends LayerRenderer {
         return true;
     }
 
+    /**
+     * Delete the framebuffer and its attachments.
+     */
+    protected void deleteFBO() {
+        if (fb == 0)
+            return;
+
+        IntBuffer buf = MapRenderer.getIntBuffer(1);
+        buf.put(0, fb);
+        gl.deleteFramebuffers(1, buf);
+
+        buf.put(0, renderTex);
+        gl.deleteTextures(1, buf);
+
+        if (renderDepth != 0) {
+            buf.put(0, renderDepth);
+            gl.deleteTextures(1, buf);
+        }
+        if (depthRenderbuffer != 0) {
+            buf.put(0, depthRenderbuffer);
+            gl.deleteRenderbuffers(1, buf);
+        }
+        if (stencilRenderbuffer != 0) {
+            buf.put(0, stencilRenderbuffer);
+            gl.deleteRenderbuffers(1, buf);
+        }
+        fb = renderTex = renderDepth = 0;
+        depthRenderbuffer = stencilRenderbuffer = 0;
+        texW = texH = -1;
+    }
+
     public void enable(boolean on) {
         if (on)
             gl.bindFramebuffer(GL.FRAMEBUFFER, fb);
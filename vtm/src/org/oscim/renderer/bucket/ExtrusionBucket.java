@@ -47,6 +47,15 @@ public class ExtrusionBucket extends RenderBucket {
     public final float[] colors;
     public final int color;
 
+    /**
+     * Number of shorts per vertex: x, y, z, light. Triangle meshes
+     * add a premultiplied rgba color.
+     */
+    public final int vertexSize;
+
+    private final static int VERTEX_SIZE = 4;
+    private final static int MESH_VERTEX_SIZE = 6;
+
     /**
      * indices for: 0. even sides, 1. odd sides, 2. roof, 3. roof outline
      */
@@ -79,6 +88,7 @@ public class ExtrusionBucket extends RenderBucket {
         this.level = level;
         this.colors = colors;
         this.color = 0;
+        this.vertexSize = VERTEX_SIZE;
 
         mGroundResolution = groundResolution;
 
@@ -91,12 +101,16 @@ public class ExtrusionBucket extends RenderBucket {
     }
 
     /**
-     * ExtrusionLayer for triangle geometries.
+     * ExtrusionLayer for triangle geometries. Vertices are colored
+     * individually, see {@link #add(MapElement, int)}.
+     *
+     * @param color used by {@link #add(MapElement)}.
      */
     public ExtrusionBucket(int level, float groundResolution, int color) {
         super(RenderBucket.EXTRUSION, true, false);
         this.level = level;
         this.color = color;
+        this.vertexSize = MESH_VERTEX_SIZE;
 
         float a = Color.aToFloat(color);
         colors = new float[4];
@@ -131,35 +145,54 @@ public class ExtrusionBucket extends RenderBucket {
 
     static class Vertex extends HashItem {
         short x, y, z, n;
+        int rgba;
         int id;
 
         @Override
         public boolean equals(Object obj) {
             Vertex o = (Vertex) obj;
-            return x == o.x && y == o.y && z == o.z && n == o.n;
+            return x == o.x && y == o.y && z == o.z && n == o.n && rgba == o.rgba;
         }
 
         @Override
         public int hashCode() {
-            return 7 + ((x << 16 | y) ^ (n << 16 | z)) * 31;
+            return 7 + ((x << 16 | y) ^ (n << 16 | z) ^ rgba) * 31;
         }
 
-        public Vertex set(short x, short y, short z, short n) {
+        public Vertex set(short x, short y, short z, short n, int rgba) {
             this.x = x;
             this.y = y;
             this.z = z;
             this.n = n;
+            this.rgba = rgba;
             return this;
         }
     }
 
+    /**
+     * Add triangle mesh with the color of this bucket.
+     */
     public void add(MapElement element) {
+        add(element, color);
+    }
+
+    /**
+     * Add triangle mesh with 'color'.
+     */
+    public void add(MapElement element, int color) {
         if (element.type != GeometryType.TRIS)
             return;
 
         int[] index = element.index;
         double[] points = element.points;
 
+        /* premultiplied color, bytes in memory order r, g, b, a */
+        float a = Color.aToFloat(color);
+        int rgba = (int) (a * Color.r(color))
+                | (int) (a * Color.g(color)) << 8
+                | (int) (a * Color.b(color)) << 16
+                | Color.a(color) << 24;
+
         int vertexCnt = numVertices;
         synchronized (vertexPool) {
 
@@ -220,7 +253,7 @@ public class ExtrusionBucket extends RenderBucket {
                 key.set((short) (vx1 * scale),
                         (short) (vy1 * scale),
                         (short) (vz1 * scale),
-                        normal);
+                        normal, rgba);
 
                 Vertex vertex = mVertexMap.put(key, false);
 
@@ -236,7 +269,7 @@ public class ExtrusionBucket extends RenderBucket {
                 key.set((short) (vx2 * scale),
                         (short) (vy2 * scale),
                         (short) (vz2 * scale),
-                        normal);
+                        normal, rgba);
 
                 vertex = mVertexMap.put(key, false);
 
@@ -252,7 +285,7 @@ public class ExtrusionBucket extends RenderBucket {
                 key.set((short) (vx3 * scale),
                         (short) (vy3 * scale),
                         (short) (vz3 * scale),
-                        (short) normal);
+                        normal, rgba);
 
                 vertex = mVertexMap.put(key, false);
                 if (vertex == null) {
@@ -270,9 +303,18 @@ public class ExtrusionBucket extends RenderBucket {
         numVertices = vertexCnt;
     }
 
+    /**
+     * @return true when 'vertices' can be added without exceeding
+     * the range of vertex indices.
+     */
+    public boolean hasCapacity(int vertices) {
+        return numVertices + vertices <= 1 << 16;
+    }
+
     private void addIndex(Vertex v, boolean addVertex) {
         if (addVertex)
-            vertexItems.add(v.x, v.y, v.z, v.n);
+            vertexItems.add(v.x, v.y, v.z, v.n,
+                    (short) v.rgba, (short) (v.rgba >>> 16));
 
         mIndices[IND_MESH].add((short) v.id);
         numIndices++;
@@ -341,6 +383,17 @@ public class ExtrusionBucket extends RenderBucket {
     //}
 
     public void add(MapElement element, float height, float minHeight) {
+        add(element, height, minHeight, true);
+    }
+
+    /**
+     * Add polygon extrusion.
+     *
+     * @param walls false to only add roof and roof outline, e.g. for
+     *              buildings which are too low to see their walls at
+     *              the current zoom level.
+     */
+    public void add(MapElement element, float height, float minHeight, boolean walls) {
 
         int[] index = element.index;
         double[] points = element.points;
@@ -393,7 +446,7 @@ public class ExtrusionBucket extends RenderBucket {
                 simpleOutline = false;
 
             boolean convex = extrudeOutline(points, ppos, len, minHeight,
-                    height, simpleOutline);
+                    height, simpleOutline, walls);
 
             if (simpleOutline && (convex || len <= 8)) {
                 addRoofSimple(startVertex, len);
@@ -442,7 +495,8 @@ public class ExtrusionBucket extends RenderBucket {
     }
 
     private boolean extrudeOutline(double[] points, int pos, int len,
-                                   float minHeight, float height, boolean convex) {
+                                   float minHeight, float height, boolean convex,
+                                   boolean walls) {
 
         /* add two vertices for last face to make zigzag indices work */
         boolean addFace = (len % 4 != 0);
@@ -561,9 +615,11 @@ public class ExtrusionBucket extends RenderBucket {
                 s3 -= len;
             }
 
-            mIndices[even].add(s0, s2, s1);
-            mIndices[even].add(s1, s2, s3);
-            numIndices += 6;
+            if (walls) {
+                mIndices[even].add(s0, s2, s1);
+                mIndices[even].add(s1, s2, s3);
+                numIndices += 6;
+            }
 
             /* flipp even-odd */
             even = ++even % 2;
@@ -70,14 +70,18 @@ public class ExtrusionBuckets extends TileData {
         int sumIndices = 0;
         int sumVertices = 0;
 
+        /* in shorts */
+        int vboSize = 0;
+
         for (ExtrusionBucket b = buckets; b != null; b = b.next()) {
             sumIndices += b.numIndices;
             sumVertices += b.numVertices;
+            vboSize += b.numVertices * b.vertexSize;
         }
         if (sumIndices == 0)
             return false;
 
-        ShortBuffer vboData = MapRenderer.getShortBuffer(sumVertices * 4);
+        ShortBuffer vboData = MapRenderer.getShortBuffer(vboSize);
         ShortBuffer iboData = MapRenderer.getShortBuffer(sumIndices);
 
         for (ExtrusionBucket b = buckets; b != null; b = b.next())
@@ -92,8 +96,8 @@ public class ExtrusionBuckets extends TileData {
         ibo = BufferObject.get(GL.ELEMENT_ARRAY_BUFFER, size);
         ibo.loadBufferData(iboData.flip(), size);
 
-        size = sumVertices * 4 * 2;
-        if (vboData.position() != sumVertices * 4) {
+        size = vboSize * 2;
+        if (vboData.position() != vboSize) {
             int pos = vboData.position();
             log.error("invalid vertex size: {} {}", sumVertices, pos);
             size = pos * 2;
@@ -30,6 +30,7 @@ import org.oscim.renderer.bucket.VertexData.Chunk;
 import org.oscim.theme.styles.AreaStyle;
 import org.oscim.utils.ColorUtil;
 import org.oscim.utils.TessJNI;
+import org.oscim.utils.Tessellator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,6 +44,8 @@ public class MeshBucket extends RenderBucket {
     public AreaStyle area;
     public float heightOffset;
 
+    private static final int TESS_BUCKETS = 8;
+
     private TessJNI tess;
 
     private int numPoints;
@@ -55,7 +58,7 @@ public class MeshBucket extends RenderBucket {
     public void addMesh(GeometryBuffer geom) {
         numPoints += geom.pointPos;
         if (tess == null)
-            tess = new TessJNI(8);
+            tess = Tessellator.obtainContext(TESS_BUCKETS);
 
         tess.addContour2D(geom.index, geom.points);
     }
@@ -96,11 +99,13 @@ public class MeshBucket extends RenderBucket {
             return;
 
         if (numPoints == 0) {
-            tess.dispose();
+            Tessellator.releaseContext(tess, TESS_BUCKETS);
+            tess = null;
             return;
         }
         if (!tess.tesselate()) {
             tess.dispose();
+            tess = null;
             log.error("error in tessellation {}", numPoints);
             return;
         }
@@ -144,7 +149,8 @@ public class MeshBucket extends RenderBucket {
         this.numIndices += nelems;
         this.numVertices += nverts >> 1;
 
-        tess.dispose();
+        Tessellator.releaseContext(tess, TESS_BUCKETS);
+        tess = null;
     }
 
     public static class Renderer {
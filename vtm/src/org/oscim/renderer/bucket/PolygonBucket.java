@@ -58,6 +58,11 @@ public final class PolygonBucket extends RenderBucket {
 
     public AreaStyle area;
 
+    /**
+     * Edges of polygons added by {@link #mergePolygon}, joined in prepare()
+     */
+    private PolygonMerger mMerger;
+
     PolygonBucket(int layer) {
         super(RenderBucket.POLYGON, true, false);
         level = layer;
@@ -125,8 +130,78 @@ public final class PolygonBucket extends RenderBucket {
         }
     }
 
+    /**
+     * Add polygon to be merged with the other merged polygons of this
+     * bucket: Common edges of adjacent polygons are removed and the
+     * remaining outlines are added as fewer, larger rings on prepare().
+     * Only for areas without outline.
+     */
+    public void mergePolygon(double[] points, int[] index) {
+        if (area.strokeWidth > 0) {
+            addPolygon(points, index);
+            return;
+        }
+
+        if (mMerger == null)
+            mMerger = new PolygonMerger();
+
+        for (int i = 0, pos = 0, n = index.length; i < n; i++) {
+            int length = index[i];
+            if (length < 0)
+                break;
+
+            /* need at least three points */
+            if (length < 6) {
+                pos += length;
+                continue;
+            }
+
+            int first = PolygonMerger.pack((short) (points[pos] * S),
+                    (short) (points[pos + 1] * S));
+            int prev = first;
+
+            for (int j = pos + 2, end = pos + length; j < end; j += 2) {
+                int v = PolygonMerger.pack((short) (points[j] * S),
+                        (short) (points[j + 1] * S));
+                mMerger.addEdge(prev, v);
+                prev = v;
+            }
+            mMerger.addEdge(prev, first);
+
+            pos += length;
+        }
+    }
+
+    private final PolygonMerger.RingSink mRingSink = new PolygonMerger.RingSink() {
+        @Override
+        public void addRing(int[] ring, int length) {
+            short center = (short) ((Tile.SIZE >> 1) * S);
+            vertexItems.add(center, center);
+            numVertices++;
+
+            for (int i = 0; i < length; i++) {
+                short x = PolygonMerger.getX(ring[i]);
+                short y = PolygonMerger.getY(ring[i]);
+                xmax = Math.max(xmax, x);
+                xmin = Math.min(xmin, x);
+                ymax = Math.max(ymax, y);
+                ymin = Math.min(ymin, y);
+
+                vertexItems.add(x, y);
+                numVertices++;
+            }
+            vertexItems.add(PolygonMerger.getX(ring[0]),
+                    PolygonMerger.getY(ring[0]));
+            numVertices++;
+        }
+    };
+
     @Override
     protected void prepare() {
+        if (mMerger != null) {
+            mMerger.merge(mRingSink);
+            mMerger = null;
+        }
         ArrayUtils.setBox2D(bbox, xmin, ymin, xmax, ymax);
     }
 
@@ -163,6 +238,12 @@ public final class PolygonBucket extends RenderBucket {
 
         private static PolygonBucket[] mAreaLayer;
 
+        /**
+         * MeshBucket to fill after the polygons of a layer, so that meshes
+         * between polygon buckets do not split the stencil batch
+         */
+        private static RenderBucket[] mMeshLayer;
+
         private static Shader polyShader;
         private static Shader texShader;
 
@@ -171,6 +252,7 @@ public final class PolygonBucket extends RenderBucket {
             texShader = new Shader("polygon_layer_tex");
 
             mAreaLayer = new PolygonBucket[STENCIL_BITS];
+            mMeshLayer = new RenderBucket[STENCIL_BITS];
 
             return true;
         }
@@ -186,6 +268,9 @@ public final class PolygonBucket extends RenderBucket {
             Shader s;
 
             for (int i = start; i < end; i++) {
+                if (i > start)
+                    fillMesh(v, i - 1);
+
                 PolygonBucket l = mAreaLayer[i];
                 AreaStyle a = l.area.current();
 
@@ -262,6 +347,19 @@ public final class PolygonBucket extends RenderBucket {
                 //if (s != polyShader)
                 //    s = setShader(polyShader, v.mvp, false);
             }
+            fillMesh(v, end - 1);
+        }
+
+        private static void fillMesh(GLViewport v, int layer) {
+            RenderBucket mesh = mMeshLayer[layer];
+            if (mesh == null)
+                return;
+
+            mMeshLayer[layer] = null;
+
+            /* clip to tile region */
+            gl.stencilFunc(GL.EQUAL, CLIP_BIT, CLIP_BIT);
+            MeshBucket.Renderer.draw(mesh, v);
         }
 
         /**
@@ -290,7 +388,8 @@ public final class PolygonBucket extends RenderBucket {
 
         /**
          * draw polygon buckets (until bucket.next is not polygon bucket)
-         * using stencil buffer method
+         * using stencil buffer method. A mesh bucket between polygon buckets
+         * is filled in order with them.
          *
          * @param buckets layer to draw (referencing vertices in current vbo)
          * @param v       GLViewport
@@ -323,7 +422,17 @@ public final class PolygonBucket extends RenderBucket {
             double[] box = mBBox;
 
             RenderBucket b = buckets;
-            for (; b != null && b.type == POLYGON; b = b.next) {
+            for (; b != null && (b.type == POLYGON || b.type == MESH); b = b.next) {
+                if (b.type == MESH) {
+                    /* fill a mesh between polygons after the polygon
+                     * below it, otherwise draw it separately */
+                    if (cur == start || mMeshLayer[cur - 1] != null
+                            || b.next == null || b.next.type != POLYGON)
+                        break;
+
+                    mMeshLayer[cur - 1] = b;
+                    continue;
+                }
                 PolygonBucket pb = (PolygonBucket) b;
                 AreaStyle area = pb.area.current();
 
@@ -375,6 +484,7 @@ public final class PolygonBucket extends RenderBucket {
                 }
 
                 mAreaLayer[cur] = pb;
+                mMeshLayer[cur] = null;
 
                 /* set stencil mask to draw to */
                 int stencil = 1 << cur++;
@@ -0,0 +1,160 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.renderer.bucket;
+
+import java.util.Arrays;
+
+/**
+ * Merges the outlines of polygons drawn by the stencil method.
+ * <p/>
+ * Each edge contributes one triangle to the fan of a PolygonBucket and
+ * the stencil buffer is inverted for every triangle. An edge that occurs
+ * twice, e.g. the common edge of two adjacent polygons, therefore does
+ * not change the result and can be removed. The remaining edges are
+ * joined into closed rings again.
+ * <p/>
+ * Vertices are packed as two shorts in an int, as stored in the VBO.
+ */
+final class PolygonMerger {
+
+    /* undirected edges: smaller vertex in upper 32 bits */
+    private long[] mEdges = new long[256];
+    private int mNumEdges;
+
+    static int pack(short x, short y) {
+        return (x << 16) | (y & 0xffff);
+    }
+
+    static short getX(int v) {
+        return (short) (v >> 16);
+    }
+
+    static short getY(int v) {
+        return (short) v;
+    }
+
+    void addEdge(int a, int b) {
+        if (a == b)
+            return;
+
+        if (mNumEdges == mEdges.length)
+            mEdges = Arrays.copyOf(mEdges, mNumEdges * 2);
+
+        if (a < b)
+            mEdges[mNumEdges++] = ((long) a << 32) | (b & 0xffffffffL);
+        else
+            mEdges[mNumEdges++] = ((long) b << 32) | (a & 0xffffffffL);
+    }
+
+    int getNumEdges() {
+        return mNumEdges;
+    }
+
+    /**
+     * Receives merged rings.
+     */
+    interface RingSink {
+        /**
+         * @param ring packed vertices, the ring is implicitly closed.
+         */
+        void addRing(int[] ring, int length);
+    }
+
+    /**
+     * Remove edges which occur an even number of times and pass the
+     * remaining edges as closed rings to 'sink'.
+     */
+    void merge(RingSink sink) {
+        long[] edges = mEdges;
+        Arrays.sort(edges, 0, mNumEdges);
+
+        /* keep one of each odd number of equal edges */
+        int n = 0;
+        for (int i = 0; i < mNumEdges; ) {
+            int j = i + 1;
+            while (j < mNumEdges && edges[j] == edges[i])
+                j++;
+            if (((j - i) & 1) == 1)
+                edges[n++] = edges[i];
+            i = j;
+        }
+        mNumEdges = 0;
+
+        if (n == 0)
+            return;
+
+        /* every vertex has an even number of remaining edges. sort
+         * both ends of each edge by vertex to find adjacent edges */
+        long[] ends = new long[n * 2];
+        for (int i = 0; i < n; i++) {
+            ends[i * 2] = (edges[i] & 0xffffffff00000000L) | i;
+            ends[i * 2 + 1] = (edges[i] << 32) | i;
+        }
+        Arrays.sort(ends);
+
+        boolean[] used = new boolean[n];
+        int[] ring = new int[16];
+
+        for (int e = 0; e < n; e++) {
+            if (used[e])
+                continue;
+
+            int start = (int) (edges[e] >> 32);
+            int cur = (int) edges[e];
+            used[e] = true;
+
+            int length = 0;
+            ring[length++] = start;
+
+            /* walk unused edges until back at start */
+            while (cur != start) {
+                if (length == ring.length)
+                    ring = Arrays.copyOf(ring, length * 2);
+                ring[length++] = cur;
+
+                int next = nextEdge(ends, edges, used, cur);
+                if (next < 0)
+                    break;
+
+                used[next] = true;
+                int a = (int) (edges[next] >> 32);
+                cur = (a == cur) ? (int) edges[next] : a;
+            }
+
+            if (length >= 3)
+                sink.addRing(ring, length);
+        }
+    }
+
+    private static int nextEdge(long[] ends, long[] edges, boolean[] used, int vertex) {
+        /* first end of 'vertex' */
+        long key = (long) vertex << 32;
+        int lo = 0, hi = ends.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ends[mid] < key)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+
+        for (int i = lo; i < ends.length && (int) (ends[i] >> 32) == vertex; i++) {
+            int e = (int) ends[i];
+            if (!used[e])
+                return e;
+        }
+        return -1;
+    }
+}
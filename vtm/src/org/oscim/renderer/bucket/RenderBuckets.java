@@ -23,6 +23,7 @@ import org.oscim.renderer.BufferObject;
 import org.oscim.renderer.MapRenderer;
 import org.oscim.theme.styles.AreaStyle;
 import org.oscim.theme.styles.LineStyle;
+import org.oscim.utils.metrics.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -175,38 +176,38 @@ public class RenderBuckets extends TileData {
         return buckets;
     }
 
+    /**
+     * Buckets are ordered by level and by type within a level, e.g.
+     * polygons of an AreaStyle may be drawn by PolygonBucket and
+     * MeshBucket on the same level.
+     */
+    private static boolean isBefore(int level, int type, RenderBucket b) {
+        return level < b.level || (level == b.level && type < b.type);
+    }
+
     private RenderBucket getBucket(int level, int type) {
         RenderBucket bucket = null;
 
-        if (mCurBucket != null && mCurBucket.level == level) {
-            bucket = mCurBucket;
-            if (bucket.type != type) {
-                log.error("BUG wrong bucket {} {} on level {}",
-                        Integer.valueOf(bucket.type),
-                        Integer.valueOf(type),
-                        Integer.valueOf(level));
-
-                throw new IllegalArgumentException();
-            }
-            return bucket;
-        }
+        if (mCurBucket != null && mCurBucket.level == level
+                && mCurBucket.type == type)
+            return mCurBucket;
 
         RenderBucket b = buckets;
-        if (b == null || b.level > level) {
+        if (b == null || isBefore(level, type, b)) {
             /* insert new bucket at start */
             b = null;
         } else {
-            if (mCurBucket != null && level > mCurBucket.level)
+            if (mCurBucket != null && !isBefore(level, type, mCurBucket))
                 b = mCurBucket;
 
             while (true) {
                 /* found bucket */
-                if (b.level == level) {
+                if (b.level == level && b.type == type) {
                     bucket = b;
                     break;
                 }
                 /* insert bucket between current and next bucket */
-                if (b.next == null || b.next.level > level)
+                if (b.next == null || isBefore(level, type, b.next))
                     break;
 
                 b = b.next;
@@ -239,16 +240,6 @@ public class RenderBuckets extends TileData {
             }
         }
 
-        /* check if found buckets matches requested type */
-        if (bucket.type != type) {
-            log.error("BUG wrong bucket {} {} on level {}",
-                    Integer.valueOf(bucket.type),
-                    Integer.valueOf(type),
-                    Integer.valueOf(level));
-
-            throw new IllegalArgumentException();
-        }
-
         mCurBucket = bucket;
 
         return bucket;
@@ -312,8 +303,10 @@ public class RenderBuckets extends TileData {
     }
 
     public void prepare() {
+        long t = Metrics.start();
         for (RenderBucket l = buckets; l != null; l = l.next)
             l.prepare();
+        Metrics.stop(Metrics.BUCKETS_PREPARE, t);
     }
 
     public void bind() {
@@ -326,6 +319,7 @@ public class RenderBuckets extends TileData {
     }
 
     public boolean compile(boolean addFill) {
+        long t = Metrics.start();
 
         int vboSize = countVboSize();
 
@@ -407,6 +401,9 @@ public class RenderBuckets extends TileData {
             ibo.loadBufferData(iboData.flip(), iboSize * 2);
         }
 
+        Metrics.stop(Metrics.BUCKETS_COMPILE, t);
+        Metrics.record(Metrics.UPLOAD_BYTES, (vboSize + Math.max(iboSize, 0)) * 2);
+
         return true;
     }
 
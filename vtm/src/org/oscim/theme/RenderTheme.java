@@ -23,6 +23,7 @@ import org.oscim.theme.rule.Rule.Element;
 import org.oscim.theme.rule.Rule.RuleVisitor;
 import org.oscim.theme.styles.RenderStyle;
 import org.oscim.utils.LRUCache;
+import org.oscim.utils.metrics.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,6 +36,11 @@ public class RenderTheme implements IRenderTheme {
 
     private static final int MATCHING_CACHE_SIZE = 512;
 
+    /**
+     * Number of cache hits to sum up before recording them
+     */
+    private static final int HIT_BATCH = 256;
+
     private final float mBaseTextSize;
     private final int mMapBackground;
 
@@ -51,6 +57,9 @@ public class RenderTheme implements IRenderTheme {
 
         RenderStyleItem prevItem;
 
+        /* cache hits not yet recorded as Metrics.THEME_HIT */
+        int hits;
+
         public RenderStyleCache(int type) {
             cache = new LRUCache<MatchingCacheKey, RenderStyleItem>(MATCHING_CACHE_SIZE);
             instructionList = new ArrayList<RenderStyle>(4);
@@ -131,6 +140,9 @@ public class RenderTheme implements IRenderTheme {
         /* NOTE: maximum zoom level supported is 32 */
         int zoomMask = 1 << zoomLevel;
 
+        /* hits to record outside of the lock */
+        int hits = 0;
+
         synchronized (cache) {
 
             if ((cache.prevItem == null) || (cache.prevItem.zoom & zoomMask) == 0) {
@@ -161,9 +173,15 @@ public class RenderTheme implements IRenderTheme {
                 }
             }
 
-            if (ri == null) {
+            if (ri != null) {
+                if (++cache.hits == HIT_BATCH) {
+                    hits = cache.hits;
+                    cache.hits = 0;
+                }
+            } else {
                 /* cache miss */
                 //missCount.incrementAndGet();
+                long t = Metrics.start();
 
                 List<RenderStyle> matches = cache.instructionList;
                 matches.clear();
@@ -243,9 +261,16 @@ public class RenderTheme implements IRenderTheme {
                         cache.cache.put(ri.key, ri);
                     }
                 }
+                Metrics.stop(Metrics.THEME_MISS, t);
+
+                hits = cache.hits;
+                cache.hits = 0;
             }
             cache.prevItem = ri;
         }
+        if (hits > 0)
+            Metrics.record(Metrics.THEME_HIT, hits);
+
         return ri.list;
     }
 
@@ -22,7 +22,9 @@ import org.oscim.theme.rule.RuleBuilder.RuleType;
 import org.oscim.theme.styles.RenderStyle;
 import org.oscim.utils.Utils;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class Rule {
     public final class Element {
@@ -72,6 +74,12 @@ public class Rule {
         return true;
     }
 
+    /**
+     * Add keys of tags and values matched with any key by this rule.
+     */
+    protected void collectTags(Set<String> keys, Set<String> values) {
+    }
+
     public boolean matchElement(int type, Tag[] tags, int zoomLevel, List<RenderStyle> result) {
         if (((element & type) == 0) || ((zoom & zoomLevel) == 0) || !matchesTags(tags))
             return false;
@@ -174,6 +182,51 @@ public class Rule {
         }
     }
 
+    /**
+     * Collects the tags rules can match at a zoom-level. Elements without
+     * any of these tags can only match when {@link #matchesUntagged} is set.
+     */
+    public static class TagVisitor extends RuleVisitor {
+        private final static Tag[] EMPTY_TAGS = new Tag[0];
+
+        public final Set<String> keys = new HashSet<String>();
+
+        /**
+         * Values matched with any key
+         */
+        public final Set<String> values = new HashSet<String>();
+
+        /**
+         * True when elements without tags get styles
+         */
+        public boolean matchesUntagged;
+
+        private final int mZoomMask;
+
+        /* all parent rules match elements without tags */
+        private boolean mUntagged = true;
+
+        public TagVisitor(int zoomLevel) {
+            mZoomMask = 1 << zoomLevel;
+        }
+
+        @Override
+        public void apply(Rule r) {
+            if ((r.zoom & mZoomMask) == 0)
+                return;
+
+            r.collectTags(keys, values);
+
+            boolean untagged = mUntagged;
+            mUntagged = untagged && r.matchesTags(EMPTY_TAGS);
+            if (mUntagged && r.styles != EMPTY_STYLE)
+                matchesUntagged = true;
+
+            super.apply(r);
+            mUntagged = untagged;
+        }
+    }
+
     public void apply(RuleVisitor v) {
         v.apply(this);
     }
@@ -196,6 +249,11 @@ public class Rule {
 
             return false;
         }
+
+        @Override
+        protected void collectTags(Set<String> keys, Set<String> values) {
+            keys.add(mKey);
+        }
     }
 
     static class PositiveRuleV extends Rule {
@@ -215,6 +273,11 @@ public class Rule {
 
             return false;
         }
+
+        @Override
+        protected void collectTags(Set<String> keys, Set<String> values) {
+            values.add(mValue);
+        }
     }
 
     static class PositiveRuleKV extends Rule {
@@ -237,6 +300,11 @@ public class Rule {
 
             return false;
         }
+
+        @Override
+        protected void collectTags(Set<String> keys, Set<String> values) {
+            keys.add(mKey);
+        }
     }
 
     static class PositiveRuleMultiKV extends Rule {
@@ -285,6 +353,18 @@ public class Rule {
                 }
             return false;
         }
+
+        @Override
+        protected void collectTags(Set<String> keys, Set<String> values) {
+            if (mKeys == null) {
+                if (mValues != null)
+                    for (String value : mValues)
+                        values.add(value);
+            } else {
+                for (String key : mKeys)
+                    keys.add(key);
+            }
+        }
     }
 
     static class NegativeRule extends Rule {
@@ -334,6 +414,15 @@ public class Rule {
 
             return false;
         }
+
+        @Override
+        protected void collectTags(Set<String> keys, Set<String> values) {
+            /* values are matched with any key */
+            for (String key : this.keys)
+                keys.add(key);
+            for (String value : this.values)
+                values.add(value);
+        }
     }
 
     public static RuleBuilder builder() {
@@ -0,0 +1,153 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Registry of running tile downloads by URL. The first thread requesting
+ * a URL downloads it, concurrent requests of the same URL, e.g. from
+ * TileLoaders of other layers, wait for its result instead of loading
+ * the tile again.
+ */
+class InFlightRequests {
+
+    /**
+     * Maximum time to wait for the download of another thread
+     */
+    static final long WAIT_TIMEOUT = 20000;
+
+    static final class Request {
+        final String url;
+
+        /* downloading thread */
+        final Thread leader;
+
+        private boolean mDone;
+        private byte[] mData;
+
+        /* number of threads waiting, guarded by InFlightRequests */
+        private int mWaiters;
+
+        /* waiting threads that stopped waiting */
+        private final ArrayList<Thread> mCanceled = new ArrayList<Thread>();
+
+        Request(String url) {
+            this.url = url;
+            leader = Thread.currentThread();
+        }
+
+        /**
+         * @return true when the current thread must download the URL
+         * and pass the result to {@link InFlightRequests#complete}.
+         */
+        boolean isLeader() {
+            return leader == Thread.currentThread();
+        }
+
+        /**
+         * Wait for the download of the leading thread.
+         *
+         * @return the downloaded data or null when the download failed,
+         * did not finish in time or waiting was canceled.
+         */
+        synchronized byte[] await() {
+            Thread thread = Thread.currentThread();
+            long end = System.currentTimeMillis() + WAIT_TIMEOUT;
+            while (!mDone) {
+                if (mCanceled.remove(thread))
+                    return null;
+
+                long wait = end - System.currentTimeMillis();
+                if (wait <= 0)
+                    return null;
+                try {
+                    wait(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            return mData;
+        }
+
+        /**
+         * Stop waiting of a thread in {@link #await()}.
+         */
+        synchronized void cancel(Thread waiter) {
+            if (mDone)
+                return;
+
+            mCanceled.add(waiter);
+            notifyAll();
+        }
+
+        synchronized void setResult(byte[] data) {
+            mData = data;
+            mDone = true;
+            notifyAll();
+        }
+    }
+
+    private final HashMap<String, Request> mRequests = new HashMap<String, Request>();
+
+    /**
+     * @return a new Request led by the current thread or the running
+     * Request for the URL.
+     */
+    synchronized Request acquire(String url) {
+        Request r = mRequests.get(url);
+        if (r == null) {
+            r = new Request(url);
+            mRequests.put(url, r);
+            return r;
+        }
+
+        r.mWaiters++;
+        return r;
+    }
+
+    /**
+     * Called by the leading thread when the response is received to
+     * check whether it needs to be copied for waiting threads. When no
+     * thread waits the URL is released, later requests download it
+     * again.
+     *
+     * @return true when threads wait for the data.
+     */
+    synchronized boolean share(Request r) {
+        if (r.mWaiters > 0)
+            return true;
+
+        if (mRequests.get(r.url) == r)
+            mRequests.remove(r.url);
+
+        return false;
+    }
+
+    /**
+     * Called by the leading thread when the download finished.
+     *
+     * @param data the downloaded data or null on failure.
+     */
+    void complete(Request r, byte[] data) {
+        synchronized (this) {
+            if (mRequests.get(r.url) == r)
+                mRequests.remove(r.url);
+        }
+        r.setResult(data);
+    }
+}
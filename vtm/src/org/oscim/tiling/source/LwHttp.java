@@ -25,17 +25,26 @@ import org.slf4j.LoggerFactory;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Map.Entry;
 import java.util.zip.GZIPInputStream;
 
 /**
  * Lightweight HTTP connection for tile loading. Does not do redirects,
  * https, full header parsing or other stuff.
+ * <p/>
+ * By default every instance keeps its own keep-alive connection. Engines
+ * created by a {@link LwHttpFactory#LwHttpFactory(int, int)} share a small
+ * pool of connections per server and pipeline their requests: the GETs of all
+ * TileLoaders are written back-to-back and the responses are read in
+ * the order of the requests.
  */
 public class LwHttp implements HttpEngine {
     static final Logger log = LoggerFactory.getLogger(LwHttp.class);
@@ -58,17 +67,31 @@ public class LwHttp implements HttpEngine {
     private final String mHost;
     private final int mPort;
 
-    private int mMaxRequests = 0;
-    private Socket mSocket;
-    private OutputStream mCommandStream;
-    private Buffer mResponseStream;
-    private long mLastRequest = 0;
     private InetSocketAddress mSockAddr;
 
     /**
-     * Server requested to close the connection
+     * Shared connections, null when this instance uses its own connection
      */
-    private boolean mMustCloseConnection;
+    private final ConnectionPool mPool;
+
+    /**
+     * Connection of the current request
+     */
+    private volatile Connection mConnection;
+
+    /* position of the current request in the connection's pipeline */
+    private int mRequestId;
+
+    /* whether the response of the current request was not read yet */
+    private boolean mResponsePending;
+
+    /* whether the response header of the current request was read */
+    private boolean mHeaderRead;
+
+    /* set by close() to cancel the current request of a pooled engine */
+    private volatile boolean mCancelled;
+
+    private Tile mTile;
 
     private final byte[] REQUEST_GET_START;
     private final byte[] REQUEST_GET_END;
@@ -79,9 +102,10 @@ public class LwHttp implements HttpEngine {
 
     //private boolean mUseGZIP;
 
-    private LwHttp(UrlTileSource tileSource, byte[][] tilePath) {
+    private LwHttp(UrlTileSource tileSource, byte[][] tilePath, ConnectionPool pool) {
         mTilePath = tilePath;
         mTileSource = tileSource;
+        mPool = pool;
 
         URL url = tileSource.getUrl();
         int port = url.getPort();
@@ -97,19 +121,19 @@ public class LwHttp implements HttpEngine {
 
         StringBuilder sb = new StringBuilder()
                 .append(" HTTP/1.1")
-                .append("\nUser-Agent: vtm/0.5.9")
-                .append("\nHost: ")
+                .append("\r\nUser-Agent: vtm/0.5.9")
+                .append("\r\nHost: ")
                 .append(mHost)
-                .append("\nConnection: Keep-Alive");
+                .append("\r\nConnection: Keep-Alive");
 
         for (Entry<String, String> l : tileSource.getRequestHeader().entrySet()) {
             String key = l.getKey();
             String val = l.getValue();
             //if ("Accept-Encoding".equals(key) && "gzip".equals(val))
             //    mUseGZIP = true;
-            sb.append('\n').append(key).append(": ").append(val);
+            sb.append("\r\n").append(key).append(": ").append(val);
         }
-        sb.append("\n\n");
+        sb.append("\r\n\r\n");
 
         REQUEST_GET_END = sb.toString().getBytes();
 
@@ -229,6 +253,9 @@ public class LwHttp implements HttpEngine {
             if (bytesRead >= contentLength)
                 return -1;
 
+            /* do not read into the next (pipelined) response */
+            byteCount = Math.min(byteCount, contentLength - bytesRead);
+
             int len = super.read(buffer, offset, byteCount);
 
             if (dbg)
@@ -249,15 +276,209 @@ public class LwHttp implements HttpEngine {
         }
     }
 
-    private void checkSocket() throws IOException {
-        if (mSocket == null)
-            throw new IOException("No Socket");
+    /**
+     * Keep-alive connection to the tile server. Responses arrive in the
+     * order of the requests, so with pipelining the engines take turns
+     * reading from the response stream.
+     */
+    static final class Connection {
+        final Socket socket;
+        final OutputStream commandStream;
+        final Buffer responseStream;
+
+        /* remaining requests before the connection is renewed */
+        int lives = RESPONSE_EXPECTED_LIVES;
+        long lastRequest;
+
+        /* number of requests sent and of responses read */
+        int sent;
+        int received;
+
+        /* no further requests, e.g. server requested to close the connection */
+        boolean retired;
+        boolean closed;
+
+        Connection(InetSocketAddress sockAddr) throws IOException {
+            socket = new Socket();
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(SOCKET_TIMEOUT);
+                socket.connect(sockAddr, CONNECT_TIMEOUT);
+                commandStream = socket.getOutputStream();
+                responseStream = new Buffer(socket.getInputStream());
+            } catch (IOException e) {
+                IOUtils.closeQuietly(socket);
+                throw e;
+            }
+            lastRequest = System.nanoTime();
+        }
+
+        int pending() {
+            return sent - received;
+        }
+
+        synchronized void close() {
+            retired = true;
+            closed = true;
+            IOUtils.closeQuietly(socket);
+            /* wake up engines waiting for their response */
+            notifyAll();
+        }
+    }
+
+    /**
+     * Connections to one server shared by the engines of a factory.
+     * Idle connections are preferred, then new connections, then
+     * pipelining on the connection with the fewest pending requests.
+     */
+    static final class ConnectionPool {
+        private final String mHost;
+        private final int mPort;
+        private final int mMaxConnections;
+        private final int mDepth;
+
+        private final ArrayList<Connection> mConnections = new ArrayList<Connection>();
+        private volatile InetSocketAddress mSockAddr;
+
+        /* number of connections being opened outside of the lock */
+        private int mConnecting;
+
+        ConnectionPool(String host, int port, int maxConnections, int depth) {
+            mHost = host;
+            mPort = port;
+            mMaxConnections = Math.max(1, maxConnections);
+            mDepth = Math.max(1, depth);
+        }
+
+        Connection acquire() throws IOException {
+            synchronized (this) {
+                Connection c = select();
+                if (c != null)
+                    return c;
+
+                /* reserve a slot for the new connection */
+                mConnecting++;
+            }
+
+            /* resolve and connect outside of the lock, a slow server
+             * must not block engines using the other connections */
+            Connection c = null;
+            try {
+                InetSocketAddress sockAddr = mSockAddr;
+                if (sockAddr == null || sockAddr.isUnresolved())
+                    sockAddr = mSockAddr = resolve(mHost, mPort);
+
+                c = new Connection(sockAddr);
+                return c;
+            } finally {
+                synchronized (this) {
+                    mConnecting--;
+                    if (c != null)
+                        mConnections.add(c);
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * @return a connection to use or null when a new connection
+         * should be opened.
+         */
+        private Connection select() throws IOException {
+            while (true) {
+                Connection best = null;
+                long now = System.nanoTime();
+
+                for (int i = mConnections.size() - 1; i >= 0; i--) {
+                    Connection c = mConnections.get(i);
+                    synchronized (c) {
+                        if (c.pending() == 0 && now - c.lastRequest > RESPONSE_TIMEOUT)
+                            c.close();
+
+                        if (c.closed) {
+                            mConnections.remove(i);
+                            continue;
+                        }
+                        if (c.retired || c.pending() >= mDepth)
+                            continue;
+
+                        if (best == null || c.pending() < best.pending())
+                            best = c;
+                    }
+                }
+                if (best != null && best.pending() == 0)
+                    return best;
+
+                if (mConnections.size() + mConnecting < mMaxConnections)
+                    return null;
+
+                if (best != null)
+                    return best;
+
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+
+        /**
+         * Called when a response was read or a connection closed.
+         */
+        synchronized void release(Connection c) {
+            if (c.closed)
+                mConnections.remove(c);
+
+            notifyAll();
+        }
+    }
+
+    private static InetSocketAddress resolve(String host, int port)
+            throws UnknownHostException {
+        InetSocketAddress sockAddr = new InetSocketAddress(host, port);
+        if (sockAddr.isUnresolved())
+            throw new UnknownHostException(host);
+
+        return sockAddr;
     }
 
     public synchronized InputStream read() throws IOException {
-        checkSocket();
+        Connection c = mConnection;
+        if (c == null)
+            throw new IOException("No Socket");
+
+        if (mPool != null)
+            c = awaitResponse(c);
+
+        mResponsePending = false;
+
+        boolean gzip;
+        try {
+            gzip = readHeader(c);
+        } catch (HttpStatusException e) {
+            /* the error body can be skipped in requestCompleted() */
+            mHeaderRead = true;
+            throw e;
+        }
+        mHeaderRead = true;
+
+        if (gzip) {
+            return new GZIPInputStream(c.responseStream);
+        }
+        return c.responseStream;
+    }
 
-        Buffer is = mResponseStream;
+    /**
+     * Read the response header and prepare the response stream to
+     * read the content.
+     *
+     * @return true when the content is gzip encoded.
+     * @throws HttpStatusException when the status is not OK, after
+     *             the header was read completely.
+     */
+    private boolean readHeader(Connection c) throws IOException {
+        Buffer is = c.responseStream;
         is.mark(BUFFER_SIZE);
         is.start(BUFFER_SIZE);
 
@@ -271,6 +492,7 @@ public class LwHttp implements HttpEngine {
         int len = 0;
 
         int contentLength = -1;
+        String error = null;
 
         /* header may not be larger than BUFFER_SIZE for this to work */
         for (; (pos < read) || ((read < BUFFER_SIZE) &&
@@ -298,8 +520,8 @@ public class LwHttp implements HttpEngine {
                 first = false;
                 /* check only for OK ("HTTP/1.? ".length == 9) */
                 if (!check(HEADER_HTTP_OK, buf, pos + 9, end)) {
-                    throw new IOException("HTTP Error: "
-                            + new String(buf, pos, end - pos - 1));
+                    /* read the rest of the header to skip the content */
+                    error = "HTTP Error: " + new String(buf, pos, end - pos - 1);
                 }
             } else if (check(HEADER_CONTENT_LENGTH, buf, pos, end)) {
                 /* parse Content-Length */
@@ -308,7 +530,10 @@ public class LwHttp implements HttpEngine {
             } else if (check(HEADER_ENCODING_GZIP, buf, pos, end)) {
                 gzip = true;
             } else if (check(HEADER_CONNECTION_CLOSE, buf, pos, end)) {
-                mMustCloseConnection = true;
+                /* server requested to close the connection */
+                synchronized (c) {
+                    c.retired = true;
+                }
             }
 
             if (dbg) {
@@ -326,23 +551,124 @@ public class LwHttp implements HttpEngine {
         is.skip(end);
         is.start(contentLength);
 
-        if (gzip) {
-            return new GZIPInputStream(is);
+        if (error != null)
+            throw new HttpStatusException(error);
+
+        return gzip;
+    }
+
+    /**
+     * Response with an error status. The connection can still be used
+     * when the content is skipped.
+     */
+    static final class HttpStatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        HttpStatusException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Wait until the responses of all requests sent before on the
+     * connection were read. Sends the request again when the connection
+     * was closed in the meantime.
+     *
+     * @throws InterruptedIOException when the request was canceled.
+     */
+    private Connection awaitResponse(Connection c) throws IOException {
+        for (int retry = 0; ; retry++) {
+            if (awaitTurn(c, true))
+                return c;
+
+            if (retry == 1)
+                throw new IOException("Connection closed");
+
+            log.debug("{} resend request", mTile);
+            sendRequest(mTile);
+            c = mConnection;
+        }
+    }
+
+    /**
+     * Wait until it is the turn of the current request to read its
+     * response from the connection.
+     *
+     * @param cancelable stop waiting when the request was canceled.
+     * @return false when the connection was closed.
+     */
+    private boolean awaitTurn(Connection c, boolean cancelable)
+            throws InterruptedIOException {
+        synchronized (c) {
+            while (true) {
+                if (cancelable && mCancelled)
+                    throw new InterruptedIOException("Request canceled");
+                if (c.closed)
+                    return false;
+                if (c.received == mRequestId)
+                    return true;
+                try {
+                    c.wait();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+    }
+
+    /**
+     * Read and drop the response of a canceled request, the following
+     * requests on the connection need their responses.
+     *
+     * @return false when the connection cannot be used anymore.
+     */
+    private boolean skipResponse(Connection c) {
+        try {
+            if (!awaitTurn(c, false))
+                return false;
+
+            readHeader(c);
+            return c.responseStream.finishedReading();
+        } catch (HttpStatusException e) {
+            log.debug("{} skip response: {}", mTile, e.getMessage());
+            return c.responseStream.finishedReading();
+        } catch (IOException e) {
+            log.debug("{} skip response: {}", mTile, e.getMessage());
+            return false;
         }
-        return is;
     }
 
     @Override
     public synchronized void sendRequest(Tile tile) throws IOException {
+        mTile = tile;
+        mHeaderRead = false;
+        mResponsePending = false;
+        mCancelled = false;
+
+        int pos = REQUEST_GET_START.length;
+        int len = REQUEST_GET_END.length;
 
-        if (mSocket != null) {
-            if (--mMaxRequests < 0)
+        pos = formatTilePath(tile, mRequestBuffer, pos);
+        System.arraycopy(REQUEST_GET_END, 0, mRequestBuffer, pos, len);
+        len += pos;
+
+        if (dbg)
+            log.debug("request: {}", new String(mRequestBuffer, 0, len));
+
+        if (mPool != null) {
+            sendPipelined(len);
+            return;
+        }
+
+        Connection c = mConnection;
+        if (c != null) {
+            if (--c.lives < 0)
                 close();
-            else if (System.nanoTime() - mLastRequest > RESPONSE_TIMEOUT)
+            else if (System.nanoTime() - c.lastRequest > RESPONSE_TIMEOUT)
                 close();
             else {
                 try {
-                    int n = mResponseStream.available();
+                    int n = c.responseStream.available();
                     if (n > 0) {
                         log.debug("left over bytes {} ", n);
                         close();
@@ -354,90 +680,147 @@ public class LwHttp implements HttpEngine {
             }
         }
 
-        if (mSocket == null) {
+        if (mConnection == null) {
             /* might throw IOException */
             lwHttpConnect();
-
-            /* TODO parse from header */
-            mMaxRequests = RESPONSE_EXPECTED_LIVES;
         }
 
-        int pos = REQUEST_GET_START.length;
-        int len = REQUEST_GET_END.length;
-
-        pos = formatTilePath(tile, mRequestBuffer, pos);
-        System.arraycopy(REQUEST_GET_END, 0, mRequestBuffer, pos, len);
-        len += pos;
-
-        if (dbg)
-            log.debug("request: {}", new String(mRequestBuffer, 0, len));
-
         try {
-            writeRequest(len);
+            writeRequest(mConnection, len);
         } catch (IOException e) {
             log.debug("recreate connection");
             close();
 
             lwHttpConnect();
-            writeRequest(len);
+            writeRequest(mConnection, len);
         }
     }
 
-    private void writeRequest(int length) throws IOException {
-        mCommandStream.write(mRequestBuffer, 0, length);
-        //mCommandStream.flush();
+    private void sendPipelined(int length) throws IOException {
+        mConnection = null;
+
+        for (int retry = 0; ; retry++) {
+            Connection c = mPool.acquire();
+
+            if (mCancelled) {
+                mPool.release(c);
+                throw new InterruptedIOException("Request canceled");
+            }
+            try {
+                synchronized (c) {
+                    if (c.closed)
+                        throw new IOException("Connection closed");
+
+                    /* write under lock: requests ids follow the order on the wire */
+                    writeRequest(c, length);
+                    mRequestId = c.sent++;
+
+                    /* TODO parse from header */
+                    if (--c.lives <= 0)
+                        c.retired = true;
+                }
+                mConnection = c;
+                mResponsePending = true;
+                return;
+            } catch (IOException e) {
+                log.debug("recreate connection");
+                c.close();
+                mPool.release(c);
+                if (retry == 1)
+                    throw e;
+            }
+        }
+    }
+
+    private void writeRequest(Connection c, int length) throws IOException {
+        c.commandStream.write(mRequestBuffer, 0, length);
+        //c.commandStream.flush();
     }
 
     private synchronized void lwHttpConnect() throws IOException {
-        if (mSockAddr == null || mSockAddr.isUnresolved()) {
-            mSockAddr = new InetSocketAddress(mHost, mPort);
-            if (mSockAddr.isUnresolved())
-                throw new UnknownHostException(mHost);
-        }
+        if (mSockAddr == null || mSockAddr.isUnresolved())
+            mSockAddr = resolve(mHost, mPort);
 
-        try {
-            mSocket = new Socket();
-            mSocket.setTcpNoDelay(true);
-            mSocket.setSoTimeout(SOCKET_TIMEOUT);
-            mSocket.connect(mSockAddr, CONNECT_TIMEOUT);
-            mCommandStream = mSocket.getOutputStream();
-            mResponseStream = new Buffer(mSocket.getInputStream());
-
-            mMustCloseConnection = false;
-        } catch (IOException e) {
-            close();
-            throw e;
-        }
+        mConnection = new Connection(mSockAddr);
     }
 
+    /**
+     * Closes the connection. With a shared connection only the current
+     * request is canceled: an engine waiting for its response stops
+     * waiting and requestCompleted() skips the response.
+     */
     @Override
     public void close() {
-        IOUtils.closeQuietly(mSocket);
+        if (mPool != null) {
+            mCancelled = true;
+            Connection c = mConnection;
+            if (c != null) {
+                synchronized (c) {
+                    c.notifyAll();
+                }
+            }
+            return;
+        }
+
+        Connection c = mConnection;
+        if (c == null)
+            return;
+
+        c.close();
+
         synchronized (this) {
-            mSocket = null;
-            mCommandStream = null;
-            mResponseStream = null;
+            if (mConnection == c)
+                mConnection = null;
         }
     }
 
     @Override
     public synchronized void setCache(OutputStream os) {
-        if (mSocket == null)
+        if (mConnection == null)
             return;
 
-        mResponseStream.setCache(os);
+        mConnection.responseStream.setCache(os);
     }
 
     @Override
     public synchronized boolean requestCompleted(boolean ok) {
-        if (mSocket == null)
+        Connection c = mConnection;
+        if (c == null)
             return false;
 
-        mLastRequest = System.nanoTime();
-        mResponseStream.setCache(null);
+        c.responseStream.setCache(null);
 
-        if (!ok || mMustCloseConnection || !mResponseStream.finishedReading())
-            close();
+        if (mPool == null) {
+            c.lastRequest = System.nanoTime();
+
+            if (!ok || c.retired || !c.responseStream.finishedReading())
+                close();
+
+            return ok;
+        }
+
+        /* let the next engine read its response. the response must be
+         * read completely, even when the tile could not be decoded or
+         * the server returned an error status */
+        mConnection = null;
+        boolean keep;
+        if (mResponsePending) {
+            mResponsePending = false;
+            keep = skipResponse(c);
+        } else {
+            keep = mHeaderRead && c.responseStream.finishedReading();
+        }
+
+        synchronized (c) {
+            c.lastRequest = System.nanoTime();
+            c.received++;
+
+            if (!keep || (c.retired && c.pending() == 0))
+                c.close();
+            else
+                c.notifyAll();
+        }
+        mPool.release(c);
 
         return ok;
     }
@@ -527,10 +910,52 @@ public class LwHttp implements HttpEngine {
     public static class LwHttpFactory implements HttpEngine.Factory {
         private byte[][] mTilePath;
 
+        private final int mConnections;
+        private final int mPipelineDepth;
+
+        /* connection pools by host:port */
+        private final HashMap<String, ConnectionPool> mPools =
+                new HashMap<String, ConnectionPool>();
+
+        /**
+         * Create engines with one connection each.
+         */
+        public LwHttpFactory() {
+            this(0, 0);
+        }
+
+        /**
+         * Create engines that share a pool of keep-alive connections and
+         * pipeline their requests.
+         *
+         * @param connections   maximum number of connections to the server.
+         * @param pipelineDepth maximum number of pending requests per connection.
+         */
+        public LwHttpFactory(int connections, int pipelineDepth) {
+            mConnections = connections;
+            mPipelineDepth = pipelineDepth;
+        }
+
         @Override
-        public HttpEngine create(UrlTileSource tileSource) {
+        public synchronized HttpEngine create(UrlTileSource tileSource) {
+            ConnectionPool pool = null;
+            if (mConnections > 0) {
+                URL url = tileSource.getUrl();
+                int port = url.getPort();
+                if (port < 0)
+                    port = 80;
+
+                String key = url.getHost() + ":" + port;
+                pool = mPools.get(key);
+                if (pool == null) {
+                    pool = new ConnectionPool(url.getHost(), port,
+                            mConnections, mPipelineDepth);
+                    mPools.put(key, pool);
+                }
+            }
+
             if (tileSource.getUrlFormatter() != UrlTileSource.URL_FORMATTER)
-                return new LwHttp(tileSource, null);
+                return new LwHttp(tileSource, null, pool);
 
             /* use optimized formatter replacing the default */
             if (mTilePath == null) {
@@ -539,7 +964,7 @@ public class LwHttp implements HttpEngine {
                 for (int i = 0; i < path.length; i++)
                     mTilePath[i] = path[i].getBytes();
             }
-            return new LwHttp(tileSource, mTilePath);
+            return new LwHttp(tileSource, mTilePath, pool);
         }
     }
 }
@@ -0,0 +1,447 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source;
+
+import org.oscim.core.BoundingBox;
+import org.oscim.core.MercatorProjection;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileCache;
+import org.oscim.tiling.ITileCache.TileReader;
+import org.oscim.tiling.ITileCache.TileWriter;
+import org.oscim.utils.FastMath;
+import org.oscim.utils.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.BitSet;
+import java.util.Properties;
+
+/**
+ * Downloads all tiles of a region and zoom range into the ITileCache of
+ * an {@link UrlTileSource}, e.g. for offline use.
+ * <p/>
+ * Tiles are fetched by a fixed number of threads, each with its own
+ * HttpEngine from the tile source's factory. Tiles that are already
+ * cached are skipped. With a progress file a canceled or failed download
+ * continues after the last tile up to which all tiles were stored.
+ */
+public class TileSeeder {
+    static final Logger log = LoggerFactory.getLogger(TileSeeder.class);
+
+    public interface Listener {
+        /**
+         * Called from a download thread after each tile.
+         */
+        void onProgress(TileSeeder seeder);
+
+        /**
+         * Called once when all tiles were processed or the download
+         * was canceled.
+         */
+        void onFinished(TileSeeder seeder, boolean canceled);
+    }
+
+    private static final String KEY_REGION = "region";
+    private static final String KEY_DONE = "done";
+
+    /**
+     * Write progress file every n tiles
+     */
+    private static final int SAVE_INTERVAL = 64;
+
+    private final UrlTileSource mTileSource;
+    private final ITileCache mTileCache;
+    private final int mZoomMin;
+
+    /* per zoom-level: first tile x, y and number of tiles in x, y */
+    private final int[] mMinX, mMinY, mCols, mRows;
+    private final int mTotal;
+
+    private File mProgressFile;
+    private Listener mListener;
+    private int mNumThreads = 4;
+
+    private Thread[] mThreads;
+    private volatile boolean mCanceled;
+    private int mRunning;
+
+    /* tiles below this index are all stored */
+    private int mDone;
+    private int mNext;
+    private final BitSet mCompleted = new BitSet();
+
+    private int mLoaded;
+    private int mSkipped;
+    private int mFailed;
+    private long mBytes;
+    private int mSinceSave;
+
+    private long mStartTime;
+    private int mStartCount;
+
+    /**
+     * @param tileSource with ITileCache set.
+     */
+    public TileSeeder(UrlTileSource tileSource, BoundingBox bbox, int zoomMin, int zoomMax) {
+        if (tileSource.tileCache == null)
+            throw new IllegalArgumentException("tile source has no cache");
+        if (zoomMin > zoomMax)
+            throw new IllegalArgumentException("zoomMin > zoomMax");
+
+        mTileSource = tileSource;
+        mTileCache = tileSource.tileCache;
+        mZoomMin = zoomMin;
+
+        int levels = zoomMax - zoomMin + 1;
+        mMinX = new int[levels];
+        mMinY = new int[levels];
+        mCols = new int[levels];
+        mRows = new int[levels];
+
+        double x1 = MercatorProjection.longitudeToX(bbox.getMinLongitude());
+        double x2 = MercatorProjection.longitudeToX(bbox.getMaxLongitude());
+        double y1 = MercatorProjection.latitudeToY(bbox.getMaxLatitude());
+        double y2 = MercatorProjection.latitudeToY(bbox.getMinLatitude());
+
+        long total = 0;
+        for (int i = 0; i < levels; i++) {
+            int max = (1 << (zoomMin + i)) - 1;
+            mMinX[i] = FastMath.clamp((int) (x1 * (max + 1)), 0, max);
+            mMinY[i] = FastMath.clamp((int) (y1 * (max + 1)), 0, max);
+            mCols[i] = FastMath.clamp((int) (x2 * (max + 1)), 0, max) - mMinX[i] + 1;
+            mRows[i] = FastMath.clamp((int) (y2 * (max + 1)), 0, max) - mMinY[i] + 1;
+            total += (long) mCols[i] * mRows[i];
+        }
+        if (total > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("too many tiles: " + total);
+
+        mTotal = (int) total;
+    }
+
+    /**
+     * File to store progress, a download with the same file, tile url,
+     * region and zoom range resumes from the stored position.
+     */
+    public void setProgressFile(File file) {
+        mProgressFile = file;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Number of concurrent downloads, default 4.
+     */
+    public void setThreads(int numThreads) {
+        mNumThreads = Math.max(1, numThreads);
+    }
+
+    public synchronized void start() {
+        if (mThreads != null)
+            throw new IllegalStateException("already started");
+
+        mDone = loadProgress();
+        mNext = mDone;
+        mStartCount = mDone;
+        mStartTime = System.currentTimeMillis();
+        mCanceled = false;
+
+        mThreads = new Thread[mNumThreads];
+        mRunning = mNumThreads;
+        for (int i = 0; i < mNumThreads; i++) {
+            mThreads[i] = new Thread(new Worker(), "TileSeeder" + i);
+            mThreads[i].start();
+        }
+    }
+
+    /**
+     * Stop downloading. Progress is saved when the running requests
+     * are finished.
+     */
+    public void cancel() {
+        mCanceled = true;
+        Thread[] threads;
+        synchronized (this) {
+            threads = mThreads;
+        }
+        if (threads == null)
+            return;
+
+        for (Thread t : threads)
+            t.interrupt();
+    }
+
+    /**
+     * Wait until all tiles were processed or the download was canceled.
+     */
+    public void join() throws InterruptedException {
+        Thread[] threads;
+        synchronized (this) {
+            threads = mThreads;
+        }
+        if (threads == null)
+            return;
+
+        for (Thread t : threads)
+            t.join();
+    }
+
+    public int getTotalTiles() {
+        return mTotal;
+    }
+
+    /**
+     * @return number of processed tiles, including those of a previous
+     * run and skipped tiles.
+     */
+    public synchronized int getCompletedTiles() {
+        return mStartCount + mLoaded + mSkipped;
+    }
+
+    public synchronized int getLoadedTiles() {
+        return mLoaded;
+    }
+
+    public synchronized int getSkippedTiles() {
+        return mSkipped;
+    }
+
+    public synchronized int getFailedTiles() {
+        return mFailed;
+    }
+
+    /**
+     * @return tiles per second since start.
+     */
+    public synchronized float getTilesPerSecond() {
+        long time = System.currentTimeMillis() - mStartTime;
+        if (time <= 0)
+            return 0;
+
+        return (mLoaded + mSkipped + mFailed) * 1000f / time;
+    }
+
+    /**
+     * @return downloaded bytes per second since start.
+     */
+    public synchronized float getBytesPerSecond() {
+        long time = System.currentTimeMillis() - mStartTime;
+        if (time <= 0)
+            return 0;
+
+        return mBytes * 1000f / time;
+    }
+
+    /**
+     * @return estimated time to finish in milliseconds or -1 if unknown.
+     */
+    public synchronized long getRemainingTime() {
+        float rate = getTilesPerSecond();
+        if (rate <= 0)
+            return -1;
+
+        int remaining = mTotal - getCompletedTiles() - mFailed;
+        return (long) (Math.max(0, remaining) / rate * 1000);
+    }
+
+    /**
+     * Get tile for index, tiles are ordered by zoom-level, row and column.
+     */
+    Tile getTile(int index) {
+        for (int i = 0; i < mCols.length; i++) {
+            int n = mCols[i] * mRows[i];
+            if (index < n) {
+                return new Tile(mMinX[i] + index % mCols[i],
+                        mMinY[i] + index / mCols[i],
+                        (byte) (mZoomMin + i));
+            }
+            index -= n;
+        }
+        return null;
+    }
+
+    private synchronized int nextIndex() {
+        if (mCanceled || mNext >= mTotal)
+            return -1;
+
+        return mNext++;
+    }
+
+    private void completed(int index, boolean loaded, boolean skipped, long bytes) {
+        boolean save = false;
+
+        synchronized (this) {
+            if (loaded) {
+                mLoaded++;
+                mBytes += bytes;
+            } else if (skipped) {
+                mSkipped++;
+            } else {
+                mFailed++;
+            }
+
+            /* failed tiles stay unset and are retried on resume */
+            if (loaded || skipped) {
+                mCompleted.set(index);
+                if (index == mDone)
+                    mDone = mCompleted.nextClearBit(mDone);
+            }
+
+            if (++mSinceSave >= SAVE_INTERVAL) {
+                mSinceSave = 0;
+                save = true;
+            }
+        }
+        if (save)
+            saveProgress();
+
+        if (mListener != null)
+            mListener.onProgress(this);
+    }
+
+    private void finished() {
+        boolean last;
+        synchronized (this) {
+            last = (--mRunning == 0);
+        }
+        if (!last)
+            return;
+
+        saveProgress();
+
+        log.debug("loaded {}, skipped {}, failed {} tiles",
+                mLoaded, mSkipped, mFailed);
+
+        if (mListener != null)
+            mListener.onFinished(this, mCanceled);
+    }
+
+    private String getRegionKey() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(mTileSource.getTileUrl(new Tile(0, 0, (byte) 0)));
+        for (int i = 0; i < mCols.length; i++) {
+            sb.append(' ').append(mZoomMin + i)
+                    .append(':').append(mMinX[i]).append(',').append(mMinY[i])
+                    .append(',').append(mCols[i]).append(',').append(mRows[i]);
+        }
+        return sb.toString();
+    }
+
+    private int loadProgress() {
+        if (mProgressFile == null || !mProgressFile.exists())
+            return 0;
+
+        Properties p = new Properties();
+        InputStream is = null;
+        try {
+            is = new FileInputStream(mProgressFile);
+            p.load(is);
+            if (!getRegionKey().equals(p.getProperty(KEY_REGION)))
+                return 0;
+
+            int done = Integer.parseInt(p.getProperty(KEY_DONE, "0"));
+            return FastMath.clamp(done, 0, mTotal);
+        } catch (IOException e) {
+            log.debug("load progress: {}", e.getMessage());
+        } catch (NumberFormatException e) {
+            log.debug("load progress: {}", e.getMessage());
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+        return 0;
+    }
+
+    private synchronized void saveProgress() {
+        if (mProgressFile == null)
+            return;
+
+        Properties p = new Properties();
+        p.setProperty(KEY_REGION, getRegionKey());
+        p.setProperty(KEY_DONE, String.valueOf(mDone));
+
+        OutputStream os = null;
+        try {
+            os = new FileOutputStream(mProgressFile);
+            p.store(os, null);
+        } catch (IOException e) {
+            log.debug("save progress: {}", e.getMessage());
+        } finally {
+            IOUtils.closeQuietly(os);
+        }
+    }
+
+    class Worker implements Runnable {
+        private final byte[] mBuffer = new byte[8192];
+
+        @Override
+        public void run() {
+            HttpEngine conn = mTileSource.getHttpEngine();
+            try {
+                for (int index; (index = nextIndex()) >= 0; ) {
+                    Tile tile = getTile(index);
+
+                    TileReader reader = mTileCache.getTile(tile);
+                    if (reader != null) {
+                        IOUtils.closeQuietly(reader.getInputStream());
+                        completed(index, false, true, 0);
+                        continue;
+                    }
+                    long bytes = load(conn, tile);
+                    completed(index, bytes >= 0, false, bytes);
+                }
+            } finally {
+                conn.close();
+                finished();
+            }
+        }
+
+        /**
+         * @return number of bytes or -1 on failure.
+         */
+        private long load(HttpEngine conn, Tile tile) {
+            TileWriter writer = null;
+            long bytes = -1;
+            try {
+                conn.sendRequest(tile);
+                InputStream is = conn.read();
+                writer = mTileCache.writeTile(tile);
+                conn.setCache(writer.getOutputStream());
+
+                /* the engine writes what is read to the cache */
+                long n = 0;
+                for (int len; (len = is.read(mBuffer)) >= 0; )
+                    n += len;
+                bytes = n;
+            } catch (IOException e) {
+                log.debug("{} {}", tile, e.getMessage());
+            } finally {
+                boolean ok = bytes >= 0;
+                if (!conn.requestCompleted(ok))
+                    bytes = -1;
+
+                if (writer != null)
+                    writer.complete(bytes >= 0);
+            }
+            return bytes;
+        }
+    }
+}
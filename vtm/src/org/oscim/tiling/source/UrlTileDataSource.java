@@ -24,9 +24,13 @@ import org.oscim.tiling.ITileDataSink;
 import org.oscim.tiling.ITileDataSource;
 import org.oscim.tiling.QueryResult;
 import org.oscim.utils.IOUtils;
+import org.oscim.utils.metrics.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.SocketException;
@@ -40,11 +44,26 @@ import static org.oscim.tiling.QueryResult.SUCCESS;
 public class UrlTileDataSource implements ITileDataSource {
     static final Logger log = LoggerFactory.getLogger(UrlTileDataSource.class);
 
+    /**
+     * Concurrent queries of the same tile URL, e.g. from layers sharing
+     * a tile server, wait for one download.
+     */
+    public static boolean COALESCE_REQUESTS = true;
+
+    private static final InFlightRequests sRequests = new InFlightRequests();
+
+    private static final int BUFFER_SIZE = 4096;
+
     protected final HttpEngine mConn;
     protected final ITileDecoder mTileDecoder;
     protected final UrlTileSource mTileSource;
     protected final boolean mUseCache;
 
+    /* shared download the current query waits for, and the waiting thread */
+    private volatile InFlightRequests.Request mAwaiting;
+    private volatile Thread mWaiter;
+    private volatile boolean mCanceled;
+
     public UrlTileDataSource(UrlTileSource tileSource, ITileDecoder tileDecoder, HttpEngine conn) {
         mTileDecoder = tileDecoder;
         mTileSource = tileSource;
@@ -55,13 +74,14 @@ public class UrlTileDataSource implements ITileDataSource {
     @Override
     public void query(MapTile tile, ITileDataSink sink) {
         ITileCache cache = mTileSource.tileCache;
+        mCanceled = false;
 
         if (mUseCache) {
             TileReader c = cache.getTile(tile);
             if (c != null) {
                 InputStream is = c.getInputStream();
                 try {
-                    if (mTileDecoder.decode(tile, sink, is)) {
+                    if (decode(tile, sink, is)) {
                         sink.completed(SUCCESS);
                         return;
                     }
@@ -73,18 +93,77 @@ public class UrlTileDataSource implements ITileDataSource {
             }
         }
 
+        if (!COALESCE_REQUESTS) {
+            sink.completed(download(tile, sink, null));
+            return;
+        }
+
+        InFlightRequests.Request request = sRequests.acquire(mTileSource.getTileUrl(tile));
+
+        if (!request.isLeader()) {
+            mWaiter = Thread.currentThread();
+            mAwaiting = request;
+            byte[] data;
+            try {
+                data = request.await();
+            } finally {
+                mAwaiting = null;
+            }
+            if (mCanceled) {
+                sink.completed(FAILED);
+                return;
+            }
+            if (data != null) {
+                try {
+                    if (decode(tile, sink, new ByteArrayInputStream(data))) {
+                        sink.completed(SUCCESS);
+                        return;
+                    }
+                } catch (IOException e) {
+                    log.debug("{} Decode: {}", tile, e.getMessage());
+                }
+            }
+            /* shared download failed, load on our own */
+            sink.completed(download(tile, sink, null));
+            return;
+        }
+
+        sink.completed(download(tile, sink, request));
+    }
+
+    /**
+     * @param request shared download led by the current thread or null.
+     *                The response is passed to threads waiting for it.
+     */
+    private QueryResult download(MapTile tile, ITileDataSink sink,
+                                 InFlightRequests.Request request) {
+        ITileCache cache = mTileSource.tileCache;
         QueryResult res = FAILED;
 
         TileWriter cacheWriter = null;
+        ByteArrayOutputStream copy = null;
         try {
+            long t = Metrics.start();
             mConn.sendRequest(tile);
             InputStream is = mConn.read();
+            Metrics.stop(Metrics.TILE_REQUEST, t);
+
             if (mUseCache) {
                 cacheWriter = cache.writeTile(tile);
                 mConn.setCache(cacheWriter.getOutputStream());
             }
-            if (mTileDecoder.decode(tile, sink, is))
+            /* copy the response only when other threads wait for it */
+            if (request != null && sRequests.share(request)) {
+                copy = new ByteArrayOutputStream();
+                is = new CopyInputStream(is, copy);
+            }
+
+            if (decode(tile, sink, is)) {
                 res = SUCCESS;
+                /* the copy needs the complete response */
+                if (copy != null)
+                    while (is.skip(BUFFER_SIZE) > 0) ;
+            }
         } catch (SocketException e) {
             log.debug("{} Socket Error: {}", tile, e.getMessage());
         } catch (SocketTimeoutException e) {
@@ -103,7 +182,65 @@ public class UrlTileDataSource implements ITileDataSource {
             if (cacheWriter != null)
                 cacheWriter.complete(ok);
 
-            sink.completed(res);
+            if (request != null)
+                sRequests.complete(request,
+                        (res == SUCCESS && copy != null) ? copy.toByteArray() : null);
+        }
+        return res;
+    }
+
+    private boolean decode(MapTile tile, ITileDataSink sink, InputStream is)
+            throws IOException {
+        long t = Metrics.start();
+        boolean ok = mTileDecoder.decode(tile, sink, is);
+        Metrics.stop(Metrics.TILE_PROCESS, t);
+        return ok;
+    }
+
+    /**
+     * Copies all data read from the response.
+     */
+    static final class CopyInputStream extends FilterInputStream {
+        private final ByteArrayOutputStream mCopy;
+
+        CopyInputStream(InputStream is, ByteArrayOutputStream copy) {
+            super(is);
+            mCopy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+                mCopy.write(b);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int len = super.read(buffer, offset, count);
+            if (len > 0)
+                mCopy.write(buffer, offset, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            /* read skipped data into the copy */
+            byte[] buf = new byte[(int) Math.min(n, BUFFER_SIZE)];
+            long skipped = 0;
+            while (skipped < n) {
+                int len = read(buf, 0, (int) Math.min(n - skipped, buf.length));
+                if (len < 0)
+                    break;
+                skipped += len;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
         }
     }
 
@@ -114,6 +251,13 @@ public class UrlTileDataSource implements ITileDataSource {
 
     @Override
     public void cancel() {
+        mCanceled = true;
+
+        /* stop waiting for the download of another thread */
+        InFlightRequests.Request request = mAwaiting;
+        if (request != null)
+            request.cancel(mWaiter);
+
         mConn.close();
     }
 }
@@ -0,0 +1,147 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mapfile;
+
+import org.oscim.core.MapElement;
+import org.oscim.layers.tile.vector.TileFeatures;
+import org.oscim.tiling.source.mapfile.header.SubFileParameter;
+import org.oscim.utils.LRUCache;
+
+/**
+ * A cache of decoded map file blocks with a fixed size and LRU policy,
+ * shared by all {@link MapDatabase} instances of one or more map files.
+ * <p/>
+ * Used for tiles above the base zoom-level of a sub-file: all child tiles
+ * of a base tile read the same block, so it is decoded once and child
+ * tiles only transform and clip the cached elements.
+ */
+class BlockCache {
+
+    /**
+     * Decoded contents of one block. Coordinates are projected relative to
+     * the block's base tile at zoom-level baseZoomLevel + {@link #zoomShift(int)}.
+     */
+    static class Block {
+        final TileFeatures pois = new TileFeatures();
+        final TileFeatures ways = new TileFeatures();
+
+        /* sub-tile bitmask of each way */
+        private short[] mWayBitmask = new short[64];
+
+        void addPoi(MapElement e) {
+            pois.add(e);
+        }
+
+        void addWay(MapElement e, int bitmask) {
+            int n = ways.size();
+            if (n == mWayBitmask.length) {
+                short[] tmp = new short[n * 2];
+                System.arraycopy(mWayBitmask, 0, tmp, 0, n);
+                mWayBitmask = tmp;
+            }
+            mWayBitmask[n] = (short) bitmask;
+            ways.add(e);
+        }
+
+        int getWayBitmask(int i) {
+            return mWayBitmask[i] & 0xffff;
+        }
+
+        void compact() {
+            pois.compact();
+            ways.compact();
+
+            short[] tmp = new short[ways.size()];
+            System.arraycopy(mWayBitmask, 0, tmp, 0, tmp.length);
+            mWayBitmask = tmp;
+        }
+    }
+
+    /**
+     * Zoom-levels above the base zoom-level at which the cached coordinates
+     * are rounded.
+     */
+    static final int ZOOM_SHIFT = 6;
+
+    /* pixel coordinates of TileProjection must fit into int */
+    private static final int MAX_ZOOM = 21;
+
+    static int zoomShift(int baseZoomLevel) {
+        return Math.max(0, Math.min(ZOOM_SHIFT, MAX_ZOOM - baseZoomLevel));
+    }
+
+    /**
+     * Sub-file, query zoom-level (determines the zoom table row)
+     * and number of a block.
+     */
+    private static class Key {
+        final SubFileParameter subFileParameter;
+        final int queryZoomLevel;
+        final long blockNumber;
+
+        Key(SubFileParameter subFileParameter, int queryZoomLevel, long blockNumber) {
+            this.subFileParameter = subFileParameter;
+            this.queryZoomLevel = queryZoomLevel;
+            this.blockNumber = blockNumber;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return subFileParameter == other.subFileParameter
+                    && queryZoomLevel == other.queryZoomLevel
+                    && blockNumber == other.blockNumber;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 7;
+            result = 31 * result + System.identityHashCode(subFileParameter);
+            result = 31 * result + queryZoomLevel;
+            result = 31 * result + (int) (blockNumber ^ (blockNumber >>> 32));
+            return result;
+        }
+    }
+
+    private final LRUCache<Key, Block> mBlocks;
+
+    /**
+     * @param capacity the maximum number of blocks in the cache.
+     */
+    BlockCache(int capacity) {
+        mBlocks = new LRUCache<Key, Block>(capacity);
+    }
+
+    synchronized Block get(SubFileParameter subFileParameter, int queryZoomLevel,
+                           long blockNumber) {
+        return mBlocks.get(new Key(subFileParameter, queryZoomLevel, blockNumber));
+    }
+
+    synchronized void put(SubFileParameter subFileParameter, int queryZoomLevel,
+                          long blockNumber, Block block) {
+        mBlocks.put(new Key(subFileParameter, queryZoomLevel, blockNumber), block);
+    }
+
+    /**
+     * Destroy the cache at the end of its lifetime.
+     */
+    synchronized void destroy() {
+        mBlocks.clear();
+    }
+}
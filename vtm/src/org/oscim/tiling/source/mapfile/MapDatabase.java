@@ -28,6 +28,7 @@ import org.oscim.tiling.ITileDataSink;
 import org.oscim.tiling.ITileDataSource;
 import org.oscim.tiling.source.mapfile.header.SubFileParameter;
 import org.oscim.utils.geom.TileClipper;
+import org.oscim.utils.metrics.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -194,9 +195,13 @@ public class MapDatabase implements ITileDataSource {
 
     private final TileProjection mTileProjection;
     private final TileClipper mTileClipper;
+    private boolean mClipWays = true;
 
     private final MapFileTileSource mTileSource;
 
+    /* target while decoding a block for the block cache */
+    private BlockCache.Block mBlock;
+
     public MapDatabase(MapFileTileSource tileSource) throws IOException {
         mTileSource = tileSource;
         try {
@@ -216,6 +221,21 @@ public class MapDatabase implements ITileDataSource {
         mTileClipper = new TileClipper(0, 0, 0, 0);
     }
 
+    /**
+     * Share the way node buffer with other instances used by the same thread.
+     */
+    void setIntBuffer(int[] intBuffer) {
+        mIntBuffer = intBuffer;
+    }
+
+    /**
+     * Pass ways unclipped to the sink, e.g. to get their full extent.
+     * By default ways are clipped to the tile.
+     */
+    void setClipWays(boolean clipWays) {
+        mClipWays = clipWays;
+    }
+
     @Override
     public void query(MapTile tile, ITileDataSink sink) {
 
@@ -225,8 +245,9 @@ public class MapDatabase implements ITileDataSource {
         }
 
         if (mIntBuffer == null)
-            mIntBuffer = new int[MAXIMUM_WAY_NODES_SEQUENCE_LENGTH * 2];
+            mIntBuffer = newIntBuffer();
 
+        long t = Metrics.start();
         try {
             mTileProjection.setTile(tile);
             //mTile = tile;
@@ -264,16 +285,30 @@ public class MapDatabase implements ITileDataSource {
 
             QueryCalculations.calculateBaseTiles(queryParameters, tile, subFileParameter);
             QueryCalculations.calculateBlocks(queryParameters, subFileParameter);
-            processBlocks(sink, queryParameters, subFileParameter);
+
+            /* above the base zoom-level all child tiles read the same block */
+            if (queryParameters.useTileBitmask && mTileSource.blockCache != null) {
+                if (!processCachedBlock(sink, queryParameters, subFileParameter, tile)) {
+                    sink.completed(FAILED);
+                    return;
+                }
+            } else {
+                processBlocks(sink, queryParameters, subFileParameter);
+            }
         } catch (IOException e) {
             log.error(e.getMessage());
             sink.completed(FAILED);
             return;
         }
+        Metrics.stop(Metrics.TILE_PROCESS, t);
 
         sink.completed(SUCCESS);
     }
 
+    static int[] newIntBuffer() {
+        return new int[MAXIMUM_WAY_NODES_SEQUENCE_LENGTH * 2];
+    }
+
     @Override
     public void dispose() {
         mReadBuffer = null;
@@ -309,17 +344,18 @@ public class MapDatabase implements ITileDataSource {
      * @param queryParameters  the parameters of the current query.
      * @param subFileParameter the parameters of the current map file.
      * @param mapDataSink      the callback which handles the extracted map elements.
+     * @return true if the block was processed completely.
      */
-    private void processBlock(QueryParameters queryParameters,
-                              SubFileParameter subFileParameter, ITileDataSink mapDataSink) {
+    private boolean processBlock(QueryParameters queryParameters,
+                                 SubFileParameter subFileParameter, ITileDataSink mapDataSink) {
 
         if (!processBlockSignature()) {
-            return;
+            return false;
         }
 
         int[][] zoomTable = readZoomTable(subFileParameter);
         if (zoomTable == null) {
-            return;
+            return false;
         }
         int zoomTableRow = queryParameters.queryZoomLevel - subFileParameter.zoomLevelMin;
         int poisOnQueryZoomLevel = zoomTable[zoomTableRow][0];
@@ -332,7 +368,7 @@ public class MapDatabase implements ITileDataSource {
             if (mDebugFile) {
                 log.warn(DEBUG_SIGNATURE_BLOCK + mSignatureBlock);
             }
-            return;
+            return false;
         }
 
         /* add the current buffer position to the relative first way offset */
@@ -342,11 +378,11 @@ public class MapDatabase implements ITileDataSource {
             if (mDebugFile) {
                 log.warn(DEBUG_SIGNATURE_BLOCK + mSignatureBlock);
             }
-            return;
+            return false;
         }
 
         if (!processPOIs(mapDataSink, poisOnQueryZoomLevel)) {
-            return;
+            return false;
         }
 
         /* finished reading POIs, check if the current buffer position is valid */
@@ -355,16 +391,13 @@ public class MapDatabase implements ITileDataSource {
             if (mDebugFile) {
                 log.warn(DEBUG_SIGNATURE_BLOCK + mSignatureBlock);
             }
-            return;
+            return false;
         }
 
         /* move the pointer to the first way */
         mReadBuffer.setBufferPosition(firstWayOffset);
 
-        if (!processWays(queryParameters, mapDataSink, waysOnQueryZoomLevel)) {
-            return;
-        }
-
+        return processWays(queryParameters, mapDataSink, waysOnQueryZoomLevel);
     }
 
     //    private long mCurrentRow;
@@ -403,8 +436,13 @@ public class MapDatabase implements ITileDataSource {
 
     //private final static Tag mWaterTag = new Tag("natural", "water");
 
-    private void processBlocks(ITileDataSink mapDataSink, QueryParameters queryParams,
-                               SubFileParameter subFileParameter) throws IOException {
+    /**
+     * @return false when a block could not be read or decoded.
+     */
+    private boolean processBlocks(ITileDataSink mapDataSink, QueryParameters queryParams,
+                                  SubFileParameter subFileParameter) throws IOException {
+
+        boolean complete = true;
 
         /* read and process all blocks from top to bottom and from left to right */
         for (long row = queryParams.fromBlockY; row <= queryParams.toBlockY; row++) {
@@ -444,7 +482,7 @@ public class MapDatabase implements ITileDataSource {
                 if (blockPointer < 1 || blockPointer > subFileParameter.subFileSize) {
                     log.warn("invalid current block pointer: " + blockPointer);
                     log.warn("subFileSize: " + subFileParameter.subFileSize);
-                    return;
+                    return false;
                 }
 
                 long nextBlockPointer;
@@ -461,7 +499,7 @@ public class MapDatabase implements ITileDataSource {
                     if (nextBlockPointer < 1 || nextBlockPointer > subFileParameter.subFileSize) {
                         log.warn("invalid next block pointer: " + nextBlockPointer);
                         log.warn("sub-file size: " + subFileParameter.subFileSize);
-                        return;
+                        return false;
                     }
                 }
 
@@ -470,7 +508,7 @@ public class MapDatabase implements ITileDataSource {
                 if (blockSize < 0) {
                     log.warn("current block size must not be negative: "
                             + blockSize);
-                    return;
+                    return false;
                 } else if (blockSize == 0) {
                     /* the current block is empty, continue with the next block */
                     continue;
@@ -482,18 +520,20 @@ public class MapDatabase implements ITileDataSource {
                 } else if (blockPointer + blockSize > mFileSize) {
                     log.warn("current block larger than file size: "
                             + blockSize);
-                    return;
+                    return false;
                 }
 
                 /* seek to the current block in the map file */
+                long t = Metrics.start();
                 mInputFile.seek(subFileParameter.startAddress + blockPointer);
 
                 /* read the current block into the buffer */
                 if (!mReadBuffer.readFromFile(blockSize)) {
                     /* skip the current block */
                     log.warn("reading current block has failed: " + blockSize);
-                    return;
+                    return false;
                 }
+                Metrics.stop(Metrics.TILE_REQUEST, t);
 
                 /* calculate the top-left coordinates of the underlying tile */
                 double tileLatitudeDeg =
@@ -506,9 +546,102 @@ public class MapDatabase implements ITileDataSource {
                 mTileLatitude = (int) (tileLatitudeDeg * 1E6);
                 mTileLongitude = (int) (tileLongitudeDeg * 1E6);
 
-                processBlock(queryParams, subFileParameter, mapDataSink);
+                if (!processBlock(queryParams, subFileParameter, mapDataSink))
+                    complete = false;
             }
         }
+        return complete;
+    }
+
+    /**
+     * Processes the block of a tile above the base zoom-level of the
+     * sub-file. The block is decoded once into the shared BlockCache,
+     * afterwards its elements are only transformed and clipped.
+     *
+     * @return false when the block could not be decoded completely,
+     * incomplete blocks are not cached.
+     */
+    private boolean processCachedBlock(ITileDataSink mapDataSink, QueryParameters queryParams,
+                                       SubFileParameter subFileParameter, Tile tile)
+            throws IOException {
+
+        long row = queryParams.fromBlockY;
+        long column = queryParams.fromBlockX;
+        long blockNumber = row * subFileParameter.blocksWidth + column;
+        int queryZoomLevel = queryParams.queryZoomLevel;
+
+        long baseTileX = subFileParameter.boundaryTileLeft + column;
+        long baseTileY = subFileParameter.boundaryTileTop + row;
+
+        int shift = BlockCache.zoomShift(subFileParameter.baseZoomLevel);
+
+        BlockCache blockCache = mTileSource.blockCache;
+        BlockCache.Block block = blockCache.get(subFileParameter, queryZoomLevel, blockNumber);
+
+        if (block == null) {
+            /* decode all elements of the block, independent of sub-tile */
+            QueryParameters blockParams = new QueryParameters();
+            blockParams.queryZoomLevel = queryZoomLevel;
+            blockParams.fromBlockX = blockParams.toBlockX = column;
+            blockParams.fromBlockY = blockParams.toBlockY = row;
+            blockParams.useTileBitmask = false;
+
+            mTileProjection.setTile(new Tile((int) (baseTileX << shift),
+                    (int) (baseTileY << shift),
+                    (byte) (subFileParameter.baseZoomLevel + shift)));
+
+            block = new BlockCache.Block();
+            mBlock = block;
+            boolean complete;
+            try {
+                complete = processBlocks(null, blockParams, subFileParameter);
+            } finally {
+                mBlock = null;
+                mTileProjection.setTile(tile);
+            }
+            if (!complete)
+                return false;
+
+            block.compact();
+            blockCache.put(subFileParameter, queryZoomLevel, blockNumber, block);
+        }
+
+        /* transform from block to tile coordinates */
+        int zoomDiff = tile.zoomLevel - subFileParameter.baseZoomLevel;
+        double scale = (double) (1 << zoomDiff) / (1 << shift);
+        double dx = ((baseTileX << zoomDiff) - tile.tileX) * Tile.SIZE;
+        double dy = ((baseTileY << zoomDiff) - tile.tileY) * Tile.SIZE;
+
+        setTileClipping(queryParams, 0, 0);
+
+        MapElement e = mElem;
+
+        for (int i = 0, n = block.pois.size(); i < n; i++) {
+            block.pois.get(i, e);
+            e.points[0] = e.points[0] * scale + dx;
+            e.points[1] = e.points[1] * scale + dy;
+            mapDataSink.process(e);
+        }
+
+        int queryTileBitmask = queryParams.queryTileBitmask;
+
+        for (int i = 0, n = block.ways.size(); i < n; i++) {
+            if ((block.getWayBitmask(i) & queryTileBitmask) == 0)
+                continue;
+
+            block.ways.get(i, e);
+            mTileProjection.transform(e, scale, dx, dy);
+
+            if (mClipWays && !e.tags.containsKey("building"))
+                if (!mTileClipper.clip(e)) {
+                    continue;
+                }
+
+            e.simplify(0, true);
+
+            mapDataSink.process(e);
+        }
+        return true;
     }
 
     /**
@@ -603,7 +736,10 @@ public class MapDatabase implements ITileDataSource {
 
             e.setLayer(layer);
 
-            mapDataSink.process(e);
+            if (mBlock != null)
+                mBlock.addPoi(e);
+            else
+                mapDataSink.process(e);
         }
 
         return true;
@@ -829,6 +965,8 @@ public class MapDatabase implements ITileDataSource {
         //setTileClipping(queryParameters);
 
         for (int elementCounter = numberOfWays; elementCounter != 0; --elementCounter) {
+            int wayTileBitmask = 0xffff;
+
             if (mDebugFile) {
                 // get and check the way signature
                 mSignatureWay = mReadBuffer.readUTF8EncodedString(SIGNATURE_LENGTH_WAY);
@@ -873,8 +1011,13 @@ public class MapDatabase implements ITileDataSource {
                     return false;
                 }
 
-                /* ignore the way tile bitmask (2 bytes) */
-                mReadBuffer.skipBytes(2);
+                if (mBlock != null) {
+                    /* keep the way tile bitmask for cached block */
+                    wayTileBitmask = mReadBuffer.readShort();
+                } else {
+                    /* ignore the way tile bitmask (2 bytes) */
+                    mReadBuffer.skipBytes(2);
+                }
             }
 
             /* get the special byte which encodes multiple flags */
@@ -968,7 +1111,13 @@ public class MapDatabase implements ITileDataSource {
 
                 mTileProjection.project(e);
 
-                if (!e.tags.containsKey("building"))
+                if (mBlock != null) {
+                    e.setLayer(layer);
+                    mBlock.addWay(e, wayTileBitmask);
+                    continue;
+                }
+
+                if (mClipWays && !e.tags.containsKey("building"))
                     if (!mTileClipper.clip(e)) {
                         continue;
                     }
@@ -1121,5 +1270,55 @@ public class MapDatabase implements ITileDataSource {
                 }
             }
         }
+
+        /**
+         * Scale and translate already projected coordinates, e.g. of a
+         * cached block, with the same rounding as {@link #project(MapElement)}.
+         */
+        void transform(MapElement e, double scale, double dx, double dy) {
+
+            double[] coords = e.points;
+            int[] indices = e.index;
+
+            int inPos = 0;
+            int outPos = 0;
+
+            boolean isPoly = e.isPoly();
+
+            for (int idx = 0, m = indices.length; idx < m; idx++) {
+                int len = indices[idx];
+                if (len == 0)
+                    continue;
+                if (len < 0)
+                    break;
+
+                int x, y, pX = 0, pY = 0;
+                int cnt = 0, first = outPos;
+
+                for (int end = inPos + len; inPos < end; inPos += 2) {
+                    x = (int) (coords[inPos] * scale + dx);
+                    y = (int) (coords[inPos + 1] * scale + dy);
+
+                    /* drop nodes that collapse at this zoom-level */
+                    if (cnt != 0 && x == pX && y == pY)
+                        continue;
+
+                    pX = x;
+                    pY = y;
+                    coords[outPos++] = x;
+                    coords[outPos++] = y;
+                    cnt += 2;
+                }
+
+                if (isPoly && cnt > 2 && coords[first] == pX && coords[first + 1] == pY) {
+                    /* remove identical start/end point */
+                    indices[idx] = cnt - 2;
+                    outPos -= 2;
+                } else {
+                    indices[idx] = cnt;
+                }
+            }
+            e.pointPos = outPos;
+        }
     }
 }
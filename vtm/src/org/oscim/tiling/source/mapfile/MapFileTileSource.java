@@ -37,11 +37,18 @@ public class MapFileTileSource extends TileSource {
      * Amount of cache blocks that the index cache should store.
      */
     private static final int INDEX_CACHE_SIZE = 64;
+
+    /**
+     * Amount of decoded blocks that the block cache should store.
+     */
+    private static final int BLOCK_CACHE_SIZE = 16;
     private static final String READ_ONLY_MODE = "r";
 
     MapFileHeader fileHeader;
     MapFileInfo fileInfo;
     IndexCache databaseIndexCache;
+    BlockCache blockCache;
+    private BlockCache sharedBlockCache;
     boolean experimental;
     File mapFile;
     RandomAccessFile mInputFile;
@@ -90,6 +97,14 @@ public class MapFileTileSource extends TileSource {
         this.preferredLanguage = preferredLanguage;
     }
 
+    /**
+     * Use a block cache owned by the caller, e.g. one cache for all files
+     * of a {@link MultiMapFileTileSource}. Must be set before open().
+     */
+    void setSharedBlockCache(BlockCache blockCache) {
+        this.sharedBlockCache = blockCache;
+    }
+
     @Override
     public OpenResult open() {
         if (!options.containsKey("file"))
@@ -125,6 +140,10 @@ public class MapFileTileSource extends TileSource {
             fileInfo = fileHeader.getMapFileInfo();
             mapFile = file;
             databaseIndexCache = new IndexCache(mInputFile, INDEX_CACHE_SIZE);
+            if (sharedBlockCache != null)
+                blockCache = sharedBlockCache;
+            else
+                blockCache = new BlockCache(BLOCK_CACHE_SIZE);
 
             // Experimental?
             //experimental = fileInfo.fileVersion == 4;
@@ -161,6 +180,11 @@ public class MapFileTileSource extends TileSource {
             databaseIndexCache.destroy();
             databaseIndexCache = null;
         }
+        if (blockCache != null) {
+            if (blockCache != sharedBlockCache)
+                blockCache.destroy();
+            blockCache = null;
+        }
     }
 
     public MapInfo getMapInfo() {
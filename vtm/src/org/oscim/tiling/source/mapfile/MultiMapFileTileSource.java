@@ -0,0 +1,262 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mapfile;
+
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.BoundingBox;
+import org.oscim.core.Box;
+import org.oscim.core.MapElement;
+import org.oscim.core.MercatorProjection;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.QueryResult;
+import org.oscim.tiling.TileSource;
+import org.oscim.utils.RTree;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.oscim.tiling.QueryResult.FAILED;
+import static org.oscim.tiling.QueryResult.SUCCESS;
+
+/**
+ * TileSource for a set of map files, e.g. one file per region.
+ * <p/>
+ * Tiles are only queried from files whose bounding box overlaps the
+ * tile and the elements of all these files are passed to one sink.
+ * Decoded blocks of all files share one {@link BlockCache}.
+ */
+public class MultiMapFileTileSource extends TileSource {
+    static final Logger log = LoggerFactory.getLogger(MultiMapFileTileSource.class);
+
+    /**
+     * Amount of decoded blocks that the shared block cache should store.
+     */
+    private static final int BLOCK_CACHE_SIZE = 32;
+
+    private final List<MapFileTileSource> mMapFileTileSources =
+            new ArrayList<MapFileTileSource>();
+
+    /* opened tile sources and index by their extents */
+    private MapFileTileSource[] mOpened;
+    private RTree<Integer> mIndex;
+
+    private BlockCache mBlockCache;
+
+    public MultiMapFileTileSource() {
+        super(0, 22);
+    }
+
+    public void add(MapFileTileSource tileSource) {
+        mMapFileTileSources.add(tileSource);
+    }
+
+    public boolean add(String filename) {
+        MapFileTileSource tileSource = new MapFileTileSource();
+        if (!tileSource.setMapFile(filename))
+            return false;
+
+        add(tileSource);
+        return true;
+    }
+
+    public void setCallback(MapFileTileSource.Callback callback) {
+        for (MapFileTileSource tileSource : mMapFileTileSources)
+            tileSource.setCallback(callback);
+    }
+
+    public void setPreferredLanguage(String preferredLanguage) {
+        for (MapFileTileSource tileSource : mMapFileTileSources)
+            tileSource.setPreferredLanguage(preferredLanguage);
+    }
+
+    @Override
+    public OpenResult open() {
+        if (mMapFileTileSources.isEmpty())
+            return new OpenResult("no map files added");
+
+        mBlockCache = new BlockCache(BLOCK_CACHE_SIZE);
+
+        List<MapFileTileSource> opened = new ArrayList<MapFileTileSource>();
+        RTree<Integer> index = new RTree<Integer>();
+        OpenResult result = null;
+
+        for (MapFileTileSource tileSource : mMapFileTileSources) {
+            tileSource.setSharedBlockCache(mBlockCache);
+
+            OpenResult r = tileSource.open();
+            if (!r.isSuccess()) {
+                log.debug("skip {}: {}", tileSource.getOption("file"), r.getErrorMessage());
+                result = r;
+                continue;
+            }
+            index.insert(getExtents(tileSource.fileInfo.boundingBox),
+                    Integer.valueOf(opened.size()));
+            opened.add(tileSource);
+        }
+
+        if (opened.isEmpty()) {
+            mBlockCache = null;
+            return result;
+        }
+
+        mOpened = opened.toArray(new MapFileTileSource[opened.size()]);
+        mIndex = index;
+
+        return OpenResult.SUCCESS;
+    }
+
+    @Override
+    public ITileDataSource getDataSource() {
+        if (mOpened == null)
+            return null;
+
+        return new MultiMapDatabase(mOpened, mIndex);
+    }
+
+    @Override
+    public void close() {
+        for (MapFileTileSource tileSource : mMapFileTileSources)
+            tileSource.close();
+
+        mOpened = null;
+        mIndex = null;
+
+        if (mBlockCache != null) {
+            mBlockCache.destroy();
+            mBlockCache = null;
+        }
+    }
+
+    /**
+     * @return extents in map coordinates, see {@link MercatorProjection}.
+     */
+    static Box getExtents(BoundingBox bbox) {
+        return new Box(MercatorProjection.longitudeToX(bbox.getMinLongitude()),
+                MercatorProjection.latitudeToY(bbox.getMaxLatitude()),
+                MercatorProjection.longitudeToX(bbox.getMaxLongitude()),
+                MercatorProjection.latitudeToY(bbox.getMinLatitude()));
+    }
+
+    /**
+     * Queries all map files overlapping a tile. MapDatabases are opened
+     * on first use, one per file and TileLoader.
+     */
+    static class MultiMapDatabase implements ITileDataSource, ITileDataSink {
+        private final MapFileTileSource[] mTileSources;
+        private final RTree<Integer> mIndex;
+        private final MapDatabase[] mDatabases;
+
+        /* way node buffer shared by all MapDatabases */
+        private int[] mIntBuffer;
+
+        private final Box mTileBox = new Box();
+        private final List<Integer> mResults = new ArrayList<Integer>();
+
+        /* state of the current query */
+        private ITileDataSink mSink;
+        private QueryResult mResult;
+
+        MultiMapDatabase(MapFileTileSource[] tileSources, RTree<Integer> index) {
+            mTileSources = tileSources;
+            mIndex = index;
+            mDatabases = new MapDatabase[tileSources.length];
+        }
+
+        @Override
+        public void query(MapTile tile, ITileDataSink sink) {
+            double size = 1.0 / (1 << tile.zoomLevel);
+            mTileBox.xmin = tile.x;
+            mTileBox.ymin = tile.y;
+            mTileBox.xmax = tile.x + size;
+            mTileBox.ymax = tile.y + size;
+
+            mResults.clear();
+            /* RTree search is not thread-safe */
+            synchronized (mIndex) {
+                mIndex.search(mTileBox, mResults);
+            }
+
+            /* empty tile when no file overlaps */
+            boolean ok = mResults.isEmpty();
+
+            mSink = sink;
+            for (int i = 0, n = mResults.size(); i < n; i++) {
+                MapDatabase db = getDatabase(mResults.get(i).intValue());
+                if (db == null)
+                    continue;
+
+                mResult = null;
+                db.query(tile, this);
+                ok |= (mResult == SUCCESS);
+            }
+            mSink = null;
+
+            sink.completed(ok ? SUCCESS : FAILED);
+        }
+
+        private MapDatabase getDatabase(int id) {
+            if (mDatabases[id] == null) {
+                try {
+                    if (mIntBuffer == null)
+                        mIntBuffer = MapDatabase.newIntBuffer();
+
+                    mDatabases[id] = new MapDatabase(mTileSources[id]);
+                    mDatabases[id].setIntBuffer(mIntBuffer);
+                } catch (IOException e) {
+                    log.debug(e.getMessage());
+                }
+            }
+            return mDatabases[id];
+        }
+
+        @Override
+        public void process(MapElement element) {
+            mSink.process(element);
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+            mSink.setTileImage(bitmap);
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+            mResult = result;
+        }
+
+        @Override
+        public void dispose() {
+            for (int i = 0; i < mDatabases.length; i++) {
+                if (mDatabases[i] != null) {
+                    mDatabases[i].dispose();
+                    mDatabases[i] = null;
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            for (MapDatabase db : mDatabases) {
+                if (db != null)
+                    db.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,438 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mapfile;
+
+import org.oscim.core.BoundingBox;
+import org.oscim.core.GeoPoint;
+import org.oscim.core.MercatorProjection;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.regex.Pattern;
+
+/**
+ * Offline search of named features in an index file written by
+ * {@link PoiIndexWriter}. The file is memory-mapped, only the entries
+ * matching a query are decoded.
+ * <p/>
+ * Names are split into normalized tokens, a query matches entries that
+ * contain a token starting with each token of the query. Entries are
+ * stored ordered by a grid of cells at {@link #CELL_ZOOM} for spatial
+ * queries.
+ */
+public class PoiIndex implements Closeable {
+
+    static final int MAGIC = 0x56504f49;
+    static final int VERSION = 1;
+
+    /**
+     * Zoom-level of the spatial grid
+     */
+    static final int CELL_ZOOM = 12;
+
+    static final int HEADER_SIZE = 40;
+    static final int ENTRY_SIZE = 16;
+    static final int CELL_SIZE = 8;
+    static final int TOKEN_SIZE = 12;
+
+    /**
+     * Maximum number of rings of cells searched around a position
+     * when no query is given
+     */
+    public static int MAX_RINGS = 8;
+
+    private final static Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    /**
+     * A search result.
+     */
+    public static class Entry {
+        public final String name;
+        public final String key;
+        public final String value;
+        public final double latitude;
+        public final double longitude;
+
+        /**
+         * Distance to the position of the query in meters
+         */
+        public final double distance;
+
+        Entry(String name, String type, double latitude, double longitude, double distance) {
+            this.name = name;
+            int pos = type.indexOf('=');
+            this.key = pos < 0 ? null : type.substring(0, pos);
+            this.value = pos < 0 ? null : type.substring(pos + 1);
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.distance = distance;
+        }
+
+        public GeoPoint getGeoPoint() {
+            return new GeoPoint(latitude, longitude);
+        }
+
+        @Override
+        public String toString() {
+            return name + " [" + key + '=' + value + "] " + (int) distance + "m";
+        }
+    }
+
+    private final RandomAccessFile mFile;
+    private final ByteBuffer mData;
+
+    private final int mNumEntries;
+    private final int mNumCells;
+    private final int mNumTokens;
+    private final int mEntries;
+    private final int mCells;
+    private final int mTokens;
+    private final int mPostings;
+    private final int mStrings;
+
+    public PoiIndex(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = mFile.getChannel();
+            mData = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (mData.limit() < HEADER_SIZE || mData.getInt(0) != MAGIC)
+                throw new IOException("not a poi index: " + file);
+            if (mData.getInt(4) != VERSION)
+                throw new IOException("unsupported version " + mData.getInt(4));
+
+            mNumEntries = mData.getInt(8);
+            mNumCells = mData.getInt(12);
+            mNumTokens = mData.getInt(16);
+            mEntries = mData.getInt(20);
+            mCells = mData.getInt(24);
+            mTokens = mData.getInt(28);
+            mPostings = mData.getInt(32);
+            mStrings = mData.getInt(36);
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+
+    /**
+     * @return number of indexed features.
+     */
+    public int size() {
+        return mNumEntries;
+    }
+
+    /**
+     * Find up to 'max' features matching 'query' closest to a position.
+     *
+     * @param query words to search for, all features when null or empty.
+     * @return results ordered by distance.
+     */
+    public List<Entry> search(String query, double latitude, double longitude, int max) {
+        GeoPoint center = new GeoPoint(latitude, longitude);
+        Results results = new Results(max);
+
+        BitSet matches = match(query);
+        if (matches != null) {
+            for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1))
+                results.add(i, center);
+            return results.get();
+        }
+
+        /* search rings of cells around the position until the closest
+         * possible feature of the next ring is farther than the results */
+        int n = 1 << CELL_ZOOM;
+        int cx = cellCoord(MercatorProjection.longitudeToX(longitude));
+        int cy = cellCoord(MercatorProjection.latitudeToY(latitude));
+        double cellSize = MercatorProjection.EARTH_CIRCUMFERENCE
+                * Math.cos(Math.toRadians(latitude)) / n;
+
+        for (int r = 0; r <= MAX_RINGS; r++) {
+            for (int y = cy - r; y <= cy + r; y++) {
+                if (y < 0 || y >= n)
+                    continue;
+                boolean edge = (y == cy - r || y == cy + r);
+                for (int x = cx - r; x <= cx + r; x += edge ? 1 : 2 * r) {
+                    if (x >= 0 && x < n)
+                        addCell((y << CELL_ZOOM) | x, center, null, results);
+                    if (r == 0)
+                        break;
+                }
+            }
+            if (results.isFull() && results.maxDistance() < r * cellSize)
+                break;
+        }
+        return results.get();
+    }
+
+    /**
+     * Find up to 'max' features matching 'query' within 'bbox'.
+     *
+     * @param query words to search for, all features when null or empty.
+     * @return results ordered by distance to the center of 'bbox'.
+     */
+    public List<Entry> search(String query, BoundingBox bbox, int max) {
+        GeoPoint center = bbox.getCenterPoint();
+        Results results = new Results(max);
+
+        BitSet matches = match(query);
+        if (matches != null) {
+            for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+                int e = mEntries + i * ENTRY_SIZE;
+                if (contains(bbox, mData.getInt(e), mData.getInt(e + 4)))
+                    results.add(i, center);
+            }
+            return results.get();
+        }
+
+        int minX = cellCoord(MercatorProjection.longitudeToX(bbox.getMinLongitude()));
+        int maxX = cellCoord(MercatorProjection.longitudeToX(bbox.getMaxLongitude()));
+        int minY = cellCoord(MercatorProjection.latitudeToY(bbox.getMaxLatitude()));
+        int maxY = cellCoord(MercatorProjection.latitudeToY(bbox.getMinLatitude()));
+
+        /* cells of a row are stored contiguous */
+        for (int y = minY; y <= maxY; y++) {
+            int c = findCell((y << CELL_ZOOM) | minX);
+            int end = (y << CELL_ZOOM) | maxX;
+            for (; c < mNumCells; c++) {
+                int key = mData.getInt(mCells + c * CELL_SIZE);
+                if (key > end)
+                    break;
+                addEntries(c, center, bbox, results);
+            }
+        }
+        return results.get();
+    }
+
+    private void addCell(int key, GeoPoint center, BoundingBox bbox, Results results) {
+        int c = findCell(key);
+        if (c < mNumCells && mData.getInt(mCells + c * CELL_SIZE) == key)
+            addEntries(c, center, bbox, results);
+    }
+
+    private void addEntries(int c, GeoPoint center, BoundingBox bbox, Results results) {
+        int start = mData.getInt(mCells + c * CELL_SIZE + 4);
+        int end = (c + 1 < mNumCells)
+                ? mData.getInt(mCells + (c + 1) * CELL_SIZE + 4)
+                : mNumEntries;
+
+        for (int i = start; i < end; i++) {
+            if (bbox != null) {
+                int e = mEntries + i * ENTRY_SIZE;
+                if (!contains(bbox, mData.getInt(e), mData.getInt(e + 4)))
+                    continue;
+            }
+            results.add(i, center);
+        }
+    }
+
+    private static boolean contains(BoundingBox bbox, int latitudeE6, int longitudeE6) {
+        double lat = latitudeE6 / 1E6;
+        double lon = longitudeE6 / 1E6;
+        return lat >= bbox.getMinLatitude() && lat <= bbox.getMaxLatitude()
+                && lon >= bbox.getMinLongitude() && lon <= bbox.getMaxLongitude();
+    }
+
+    /**
+     * @return index of the first cell with key >= 'key'.
+     */
+    private int findCell(int key) {
+        int lo = 0, hi = mNumCells;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (mData.getInt(mCells + mid * CELL_SIZE) < key)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @return entries matching all tokens of 'query' or null when
+     * the query has no tokens.
+     */
+    private BitSet match(String query) {
+        if (query == null)
+            return null;
+
+        List<String> tokens = new ArrayList<String>();
+        tokenize(query, tokens);
+        if (tokens.isEmpty())
+            return null;
+
+        BitSet result = null;
+        for (String prefix : tokens) {
+            BitSet matches = new BitSet(mNumEntries);
+
+            for (int t = findToken(prefix); t < mNumTokens; t++) {
+                int pos = mTokens + t * TOKEN_SIZE;
+                if (!readString(mData.getInt(pos)).startsWith(prefix))
+                    break;
+
+                int posting = mPostings + mData.getInt(pos + 4) * 4;
+                for (int i = 0, n = mData.getInt(pos + 8); i < n; i++)
+                    matches.set(mData.getInt(posting + i * 4));
+            }
+
+            if (result == null)
+                result = matches;
+            else
+                result.and(matches);
+
+            if (result.isEmpty())
+                break;
+        }
+        return result;
+    }
+
+    /**
+     * @return index of the first token >= 'token'.
+     */
+    private int findToken(String token) {
+        int lo = 0, hi = mNumTokens;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (readString(mData.getInt(mTokens + mid * TOKEN_SIZE)).compareTo(token) < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    private String readString(int offset) {
+        int pos = mStrings + offset;
+        int len = (mData.get(pos) & 0xff) << 8 | (mData.get(pos + 1) & 0xff);
+        byte[] b = new byte[len];
+        for (int i = 0; i < len; i++)
+            b[i] = mData.get(pos + 2 + i);
+        try {
+            return new String(b, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Entry readEntry(int i, double distance) {
+        int e = mEntries + i * ENTRY_SIZE;
+        return new Entry(readString(mData.getInt(e + 8)),
+                readString(mData.getInt(e + 12)),
+                mData.getInt(e) / 1E6,
+                mData.getInt(e + 4) / 1E6,
+                distance);
+    }
+
+    /**
+     * Collects the 'max' closest entries, decoded when the search is done.
+     */
+    private class Results {
+        private final int mMax;
+
+        /* farthest entry on top */
+        private final PriorityQueue<double[]> mQueue;
+
+        Results(int max) {
+            mMax = Math.max(max, 1);
+            mQueue = new PriorityQueue<double[]>(mMax, new Comparator<double[]>() {
+                @Override
+                public int compare(double[] a, double[] b) {
+                    return Double.compare(b[1], a[1]);
+                }
+            });
+        }
+
+        void add(int i, GeoPoint center) {
+            int e = mEntries + i * ENTRY_SIZE;
+            double d = center.sphericalDistance(new GeoPoint(mData.getInt(e), mData.getInt(e + 4)));
+
+            if (mQueue.size() < mMax) {
+                mQueue.add(new double[]{i, d});
+            } else if (d < mQueue.peek()[1]) {
+                mQueue.poll();
+                mQueue.add(new double[]{i, d});
+            }
+        }
+
+        boolean isFull() {
+            return mQueue.size() == mMax;
+        }
+
+        double maxDistance() {
+            return mQueue.isEmpty() ? 0 : mQueue.peek()[1];
+        }
+
+        List<Entry> get() {
+            ArrayList<Entry> entries = new ArrayList<Entry>(mQueue.size());
+            while (!mQueue.isEmpty()) {
+                double[] r = mQueue.poll();
+                entries.add(readEntry((int) r[0], r[1]));
+            }
+            Collections.reverse(entries);
+            return entries;
+        }
+    }
+
+    static int cell(double latitude, double longitude) {
+        int x = cellCoord(MercatorProjection.longitudeToX(longitude));
+        int y = cellCoord(MercatorProjection.latitudeToY(latitude));
+        return (y << CELL_ZOOM) | x;
+    }
+
+    private static int cellCoord(double v) {
+        int n = 1 << CELL_ZOOM;
+        return Math.max(0, Math.min(n - 1, (int) (v * n)));
+    }
+
+    /**
+     * Split 's' into lower-case tokens of letters and digits without
+     * accents, e.g. "Café Zürich" into "cafe", "zurich".
+     */
+    static void tokenize(String s, Collection<String> out) {
+        s = Normalizer.normalize(s, Normalizer.Form.NFD);
+        s = COMBINING_MARKS.matcher(s).replaceAll("");
+        s = s.toLowerCase(Locale.ROOT);
+
+        int start = -1;
+        for (int i = 0, n = s.length(); i <= n; i++) {
+            boolean word = i < n && Character.isLetterOrDigit(s.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                out.add(s.substring(start, i));
+                start = -1;
+            }
+        }
+    }
+}
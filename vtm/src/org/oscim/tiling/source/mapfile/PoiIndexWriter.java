@@ -0,0 +1,401 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mapfile;
+
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.BoundingBox;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.MercatorProjection;
+import org.oscim.core.Tag;
+import org.oscim.core.TagSet;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.QueryResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds a {@link PoiIndex} file of named POIs and ways, e.g. from
+ * map files by {@link #addMapFile(MapFileTileSource)}.
+ */
+public class PoiIndexWriter implements ITileDataSink {
+    static final Logger log = LoggerFactory.getLogger(PoiIndexWriter.class);
+
+    /**
+     * Zoom-level at which map files are queried
+     */
+    public static int QUERY_ZOOM = 14;
+
+    /**
+     * Keys of tags describing the type of a feature, in order of preference
+     */
+    static final String[] TYPE_KEYS = {
+            "amenity", "shop", "tourism", "leisure", "historic", "place",
+            "railway", "aeroway", "highway", "natural", "waterway",
+            "landuse", "building"
+    };
+
+    static class Item {
+        final String name;
+        final String type;
+        final int latitudeE6;
+        final int longitudeE6;
+        final int cell;
+
+        Item(String name, String type, double latitude, double longitude) {
+            this.name = name;
+            this.type = type;
+            this.latitudeE6 = (int) Math.round(latitude * 1E6);
+            this.longitudeE6 = (int) Math.round(longitude * 1E6);
+            this.cell = PoiIndex.cell(latitude, longitude);
+        }
+    }
+
+    private final ArrayList<Item> mItems = new ArrayList<Item>();
+
+    /* extent of a way in pixels at the query zoom-level */
+    static class Way {
+        final String type;
+        double minX, minY, maxX, maxY;
+
+        Way(String type, double minX, double minY, double maxX, double maxY) {
+            this.type = type;
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+
+        boolean touches(Way w) {
+            /* coordinates are rounded to pixels per tile */
+            return minX <= w.maxX + 1 && maxX >= w.minX - 1
+                    && minY <= w.maxY + 1 && maxY >= w.minY - 1;
+        }
+    }
+
+    /* ways are returned for each tile they cross and map files may store
+     * them clipped to base tiles. pieces of ways by name, merged while
+     * their extents touch or overlap */
+    private final HashMap<String, ArrayList<Way>> mWays =
+            new HashMap<String, ArrayList<Way>>();
+
+    /* tile of the current query */
+    private MapTile mTile;
+
+    /**
+     * Add a named feature.
+     *
+     * @param type tag describing the feature as key=value, may be null.
+     */
+    public void add(String name, String type, double latitude, double longitude) {
+        if (name == null || name.length() == 0)
+            return;
+
+        mItems.add(new Item(name, type == null ? "" : type, latitude, longitude));
+    }
+
+    /**
+     * @return number of added features.
+     */
+    public int size() {
+        return mItems.size();
+    }
+
+    /**
+     * Add the named features of an opened map file.
+     */
+    public void addMapFile(MapFileTileSource tileSource) throws IOException {
+        MapDatabase db = new MapDatabase(tileSource);
+        /* pieces of ways are merged by their extent */
+        db.setClipWays(false);
+        BoundingBox bbox = tileSource.getMapInfo().boundingBox;
+
+        int z = QUERY_ZOOM;
+        int scale = 1 << z;
+        int minX = tileCoord(MercatorProjection.longitudeToX(bbox.getMinLongitude()), scale);
+        int maxX = tileCoord(MercatorProjection.longitudeToX(bbox.getMaxLongitude()), scale);
+        int minY = tileCoord(MercatorProjection.latitudeToY(bbox.getMaxLatitude()), scale);
+        int maxY = tileCoord(MercatorProjection.latitudeToY(bbox.getMinLatitude()), scale);
+
+        log.debug("index {} tiles", (maxX - minX + 1) * (maxY - minY + 1));
+
+        try {
+            for (int y = minY; y <= maxY; y++) {
+                for (int x = minX; x <= maxX; x++) {
+                    mTile = new MapTile(null, x, y, z);
+                    db.query(mTile, this);
+                }
+            }
+            addWays(z);
+        } finally {
+            mTile = null;
+            mWays.clear();
+            db.dispose();
+        }
+    }
+
+    private static int tileCoord(double v, int scale) {
+        return Math.max(0, Math.min(scale - 1, (int) (v * scale)));
+    }
+
+    @Override
+    public void process(MapElement element) {
+        String name = element.tags.getValue(Tag.KEY_NAME);
+        if (name == null || name.length() == 0 || element.pointPos < 2)
+            return;
+
+        double scale = (double) Tile.SIZE * (1 << mTile.zoomLevel);
+        double[] points = element.points;
+
+        if (element.type == GeometryType.POINT) {
+            add(name, getType(element.tags),
+                    MercatorProjection.toLatitude(mTile.y + points[1] / scale),
+                    MercatorProjection.toLongitude(mTile.x + points[0] / scale));
+            return;
+        }
+
+        /* bounding box of the way piece */
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < element.pointPos; i += 2) {
+            minX = Math.min(minX, points[i]);
+            maxX = Math.max(maxX, points[i]);
+            minY = Math.min(minY, points[i + 1]);
+            maxY = Math.max(maxY, points[i + 1]);
+        }
+        double x = mTile.x * scale;
+        double y = mTile.y * scale;
+        addWay(name, new Way(getType(element.tags),
+                x + minX, y + minY, x + maxX, y + maxY));
+    }
+
+    /**
+     * Merge the piece of a way with all pieces of the same name which
+     * it touches.
+     */
+    private void addWay(String name, Way way) {
+        ArrayList<Way> ways = mWays.get(name);
+        if (ways == null) {
+            ways = new ArrayList<Way>();
+            mWays.put(name, ways);
+        }
+        /* repeat as the grown extent may touch pieces seen before */
+        for (boolean merged = true; merged; ) {
+            merged = false;
+            for (int i = ways.size() - 1; i >= 0; i--) {
+                Way w = ways.get(i);
+                if (!w.touches(way))
+                    continue;
+                way.minX = Math.min(way.minX, w.minX);
+                way.minY = Math.min(way.minY, w.minY);
+                way.maxX = Math.max(way.maxX, w.maxX);
+                way.maxY = Math.max(way.maxY, w.maxY);
+                ways.remove(i);
+                merged = true;
+            }
+        }
+        ways.add(way);
+    }
+
+    /**
+     * Add the merged ways at the center of their bounding box.
+     */
+    private void addWays(int zoomLevel) {
+        double scale = (double) Tile.SIZE * (1 << zoomLevel);
+        for (Map.Entry<String, ArrayList<Way>> e : mWays.entrySet()) {
+            for (Way w : e.getValue()) {
+                add(e.getKey(), w.type,
+                        MercatorProjection.toLatitude((w.minY + w.maxY) / 2 / scale),
+                        MercatorProjection.toLongitude((w.minX + w.maxX) / 2 / scale));
+            }
+        }
+    }
+
+    static String getType(TagSet tags) {
+        for (String key : TYPE_KEYS) {
+            String value = tags.getValue(key);
+            if (value != null)
+                return key + '=' + value;
+        }
+        return null;
+    }
+
+    @Override
+    public void setTileImage(Bitmap bitmap) {
+    }
+
+    @Override
+    public void completed(QueryResult result) {
+        if (result != QueryResult.SUCCESS)
+            log.debug("{} {}", mTile, result);
+    }
+
+    /**
+     * Write the index of all added features.
+     */
+    public void write(File file) throws IOException {
+        /* sort spatially, entries of a cell are stored contiguous */
+        Collections.sort(mItems, new Comparator<Item>() {
+            @Override
+            public int compare(Item a, Item b) {
+                if (a.cell != b.cell)
+                    return a.cell < b.cell ? -1 : 1;
+                return a.name.compareTo(b.name);
+            }
+        });
+
+        int numItems = mItems.size();
+
+        /* strings, shared by equal names and types */
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        Map<String, Integer> stringOffsets = new HashMap<String, Integer>();
+
+        int[] nameOffsets = new int[numItems];
+        int[] typeOffsets = new int[numItems];
+
+        /* token -> entries */
+        TreeMap<String, List<Integer>> tokens = new TreeMap<String, List<Integer>>();
+
+        /* cell -> first entry */
+        ArrayList<int[]> cells = new ArrayList<int[]>();
+
+        for (int i = 0; i < numItems; i++) {
+            Item item = mItems.get(i);
+            nameOffsets[i] = addString(item.name, strings, stringOffsets);
+            typeOffsets[i] = addString(item.type, strings, stringOffsets);
+
+            if (cells.isEmpty() || cells.get(cells.size() - 1)[0] != item.cell)
+                cells.add(new int[]{item.cell, i});
+
+            HashSet<String> itemTokens = new HashSet<String>();
+            PoiIndex.tokenize(item.name, itemTokens);
+            int pos = item.type.indexOf('=');
+            if (pos >= 0)
+                PoiIndex.tokenize(item.type.substring(pos + 1), itemTokens);
+
+            for (String token : itemTokens) {
+                List<Integer> postings = tokens.get(token);
+                if (postings == null) {
+                    postings = new ArrayList<Integer>();
+                    tokens.put(token, postings);
+                }
+                postings.add(Integer.valueOf(i));
+            }
+        }
+
+        int[] tokenOffsets = new int[tokens.size()];
+        int t = 0;
+        for (String token : tokens.keySet())
+            tokenOffsets[t++] = addString(token, strings, stringOffsets);
+
+        int numPostings = 0;
+        for (List<Integer> postings : tokens.values())
+            numPostings += postings.size();
+
+        int entriesOffset = PoiIndex.HEADER_SIZE;
+        int cellsOffset = entriesOffset + numItems * PoiIndex.ENTRY_SIZE;
+        int tokensOffset = cellsOffset + cells.size() * PoiIndex.CELL_SIZE;
+        int postingsOffset = tokensOffset + tokens.size() * PoiIndex.TOKEN_SIZE;
+        int stringsOffset = postingsOffset + numPostings * 4;
+
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(PoiIndex.MAGIC);
+            out.writeInt(PoiIndex.VERSION);
+            out.writeInt(numItems);
+            out.writeInt(cells.size());
+            out.writeInt(tokens.size());
+            out.writeInt(entriesOffset);
+            out.writeInt(cellsOffset);
+            out.writeInt(tokensOffset);
+            out.writeInt(postingsOffset);
+            out.writeInt(stringsOffset);
+
+            for (int i = 0; i < numItems; i++) {
+                Item item = mItems.get(i);
+                out.writeInt(item.latitudeE6);
+                out.writeInt(item.longitudeE6);
+                out.writeInt(nameOffsets[i]);
+                out.writeInt(typeOffsets[i]);
+            }
+
+            for (int[] cell : cells) {
+                out.writeInt(cell[0]);
+                out.writeInt(cell[1]);
+            }
+
+            int posting = 0;
+            t = 0;
+            for (List<Integer> postings : tokens.values()) {
+                out.writeInt(tokenOffsets[t++]);
+                out.writeInt(posting);
+                out.writeInt(postings.size());
+                posting += postings.size();
+            }
+
+            for (List<Integer> postings : tokens.values())
+                for (Integer id : postings)
+                    out.writeInt(id.intValue());
+
+            strings.writeTo(out);
+        } finally {
+            out.close();
+        }
+
+        log.debug("wrote {} entries, {} tokens", numItems, tokens.size());
+    }
+
+    private static int addString(String s, ByteArrayOutputStream strings,
+                                 Map<String, Integer> offsets) throws IOException {
+        Integer offset = offsets.get(s);
+        if (offset != null)
+            return offset.intValue();
+
+        byte[] b = s.getBytes("UTF-8");
+        int len = b.length;
+        if (len > 0xffff) {
+            /* truncate before a UTF-8 continuation byte (10xxxxxx) */
+            len = 0xffff;
+            while (len > 0 && (b[len] & 0xc0) == 0x80)
+                len--;
+        }
+
+        int pos = strings.size();
+        strings.write(len >> 8);
+        strings.write(len);
+        strings.write(b, 0, len);
+
+        offsets.put(s, Integer.valueOf(pos));
+        return pos;
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.utils;
+
+/**
+ * Static, packed Hilbert R-tree of integer boxes. Items are identified
+ * by the order in which they were added.
+ * <p/>
+ * All boxes and node bounds are held in one int array, so the index for
+ * a million items needs about 20MB and no object per item. The tree
+ * cannot be modified after {@link #finish()}.
+ * <p/>
+ * based on https://github.com/mourner/flatbush
+ */
+public class PackedRTree {
+
+    public interface Visitor {
+        /**
+         * @param item id of item, i.e. the position in insertion order.
+         * @return false to stop search
+         */
+        boolean visit(int item);
+    }
+
+    private static final int DEFAULT_NODE_SIZE = 16;
+
+    private final int mNodeSize;
+
+    /* minX, minY, maxX, maxY of items and nodes */
+    private int[] mBoxes;
+
+    /* item ids of leaves, first child offset of nodes */
+    private int[] mIndices;
+
+    private int[] mLevelBounds;
+
+    private int mNumItems;
+    private int mPos;
+
+    private int mMinX = Integer.MAX_VALUE;
+    private int mMinY = Integer.MAX_VALUE;
+    private int mMaxX = Integer.MIN_VALUE;
+    private int mMaxY = Integer.MIN_VALUE;
+
+    public PackedRTree(int numItems) {
+        this(numItems, DEFAULT_NODE_SIZE);
+    }
+
+    /**
+     * @param numItems exact number of items that will be added.
+     * @param nodeSize max number of children per node.
+     */
+    public PackedRTree(int numItems, int nodeSize) {
+        if (numItems <= 0)
+            throw new IllegalArgumentException("numItems must be > 0");
+
+        mNumItems = numItems;
+        mNodeSize = FastMath.clamp(nodeSize, 2, 0xffff);
+
+        /* calculate total number of nodes and end of each level */
+        int n = numItems;
+        int numNodes = n;
+        int numLevels = 1;
+        do {
+            n = (n + mNodeSize - 1) / mNodeSize;
+            numNodes += n;
+            numLevels++;
+        } while (n != 1);
+
+        mLevelBounds = new int[numLevels];
+        n = numItems;
+        numNodes = n;
+        mLevelBounds[0] = n * 4;
+        for (int level = 1; level < numLevels; level++) {
+            n = (n + mNodeSize - 1) / mNodeSize;
+            numNodes += n;
+            mLevelBounds[level] = numNodes * 4;
+        }
+
+        mBoxes = new int[numNodes * 4];
+        mIndices = new int[numNodes];
+    }
+
+    /**
+     * Add item box, the item id is the number of previously added items.
+     */
+    public int add(int minX, int minY, int maxX, int maxY) {
+        int id = mPos >> 2;
+        if (id >= mNumItems)
+            throw new IllegalStateException("added more than " + mNumItems + " items");
+
+        mIndices[id] = id;
+        mBoxes[mPos++] = minX;
+        mBoxes[mPos++] = minY;
+        mBoxes[mPos++] = maxX;
+        mBoxes[mPos++] = maxY;
+
+        if (minX < mMinX)
+            mMinX = minX;
+        if (minY < mMinY)
+            mMinY = minY;
+        if (maxX > mMaxX)
+            mMaxX = maxX;
+        if (maxY > mMaxY)
+            mMaxY = maxY;
+
+        return id;
+    }
+
+    /**
+     * Sort items and build the tree. Must be called after all items
+     * were added and before searching.
+     */
+    public void finish() {
+        if ((mPos >> 2) != mNumItems)
+            throw new IllegalStateException("added " + (mPos >> 2)
+                    + " items, expected " + mNumItems);
+
+        int[] boxes = mBoxes;
+
+        if (mNumItems > mNodeSize) {
+            /* sort items by hilbert value of their box centers */
+            double w = (double) mMaxX - mMinX;
+            double h = (double) mMaxY - mMinY;
+            double sx = w > 0 ? 0xffff / w : 0;
+            double sy = h > 0 ? 0xffff / h : 0;
+
+            int[] values = new int[mNumItems];
+            for (int i = 0, pos = 0; i < mNumItems; i++, pos += 4) {
+                double cx = ((double) boxes[pos] + boxes[pos + 2]) / 2 - mMinX;
+                double cy = ((double) boxes[pos + 1] + boxes[pos + 3]) / 2 - mMinY;
+                /* drop lowest bit to compare as positive int */
+                values[i] = hilbert((int) (cx * sx), (int) (cy * sy)) >>> 1;
+            }
+            sort(values, boxes, mIndices, 0, mNumItems - 1);
+        }
+
+        /* generate nodes at each tree level, bottom-up */
+        int pos = 0;
+        for (int level = 0; level < mLevelBounds.length - 1; level++) {
+            int end = mLevelBounds[level];
+
+            while (pos < end) {
+                int nodeIndex = pos;
+                int nodeMinX = Integer.MAX_VALUE;
+                int nodeMinY = Integer.MAX_VALUE;
+                int nodeMaxX = Integer.MIN_VALUE;
+                int nodeMaxY = Integer.MIN_VALUE;
+
+                for (int i = 0; i < mNodeSize && pos < end; i++, pos += 4) {
+                    nodeMinX = Math.min(nodeMinX, boxes[pos]);
+                    nodeMinY = Math.min(nodeMinY, boxes[pos + 1]);
+                    nodeMaxX = Math.max(nodeMaxX, boxes[pos + 2]);
+                    nodeMaxY = Math.max(nodeMaxY, boxes[pos + 3]);
+                }
+
+                mIndices[mPos >> 2] = nodeIndex;
+                boxes[mPos++] = nodeMinX;
+                boxes[mPos++] = nodeMinY;
+                boxes[mPos++] = nodeMaxX;
+                boxes[mPos++] = nodeMaxY;
+            }
+        }
+    }
+
+    /**
+     * Visit all items intersecting the box. Can be called concurrently
+     * after {@link #finish()}.
+     *
+     * @return false when search was stopped by visitor.
+     */
+    public boolean search(int minX, int minY, int maxX, int maxY, Visitor visitor) {
+        int[] boxes = mBoxes;
+        int[] stack = new int[32];
+        int sp = 0;
+
+        /* start at root node */
+        int nodeIndex = mPos - 4;
+        int level = mLevelBounds.length - 1;
+
+        while (true) {
+            /* find the end index of the node */
+            int end = Math.min(nodeIndex + mNodeSize * 4, mLevelBounds[level]);
+
+            for (int pos = nodeIndex; pos < end; pos += 4) {
+                if (maxX < boxes[pos] || maxY < boxes[pos + 1]
+                        || minX > boxes[pos + 2] || minY > boxes[pos + 3])
+                    continue;
+
+                int index = mIndices[pos >> 2];
+
+                if (nodeIndex < mNumItems * 4) {
+                    if (!visitor.visit(index))
+                        return false;
+                } else {
+                    if (sp + 2 > stack.length) {
+                        int[] tmp = new int[stack.length * 2];
+                        System.arraycopy(stack, 0, tmp, 0, sp);
+                        stack = tmp;
+                    }
+                    stack[sp++] = index;
+                    stack[sp++] = level - 1;
+                }
+            }
+            if (sp == 0)
+                break;
+
+            level = stack[--sp];
+            nodeIndex = stack[--sp];
+        }
+        return true;
+    }
+
+    public int size() {
+        return mNumItems;
+    }
+
+    /**
+     * @return approximate number of bytes held by this tree.
+     */
+    public int getMemoryUsage() {
+        return (mBoxes.length + mIndices.length) * 4;
+    }
+
+    /* quicksort of items by hilbert values, swapping boxes and ids along */
+    private static void sort(int[] values, int[] boxes, int[] indices, int left, int right) {
+        while (left < right) {
+            int pivot = values[(left + right) >>> 1];
+            int i = left - 1;
+            int j = right + 1;
+
+            while (true) {
+                do
+                    i++;
+                while (values[i] < pivot);
+                do
+                    j--;
+                while (values[j] > pivot);
+                if (i >= j)
+                    break;
+                swap(values, boxes, indices, i, j);
+            }
+            /* recurse into smaller part */
+            if (j - left < right - j) {
+                sort(values, boxes, indices, left, j);
+                left = j + 1;
+            } else {
+                sort(values, boxes, indices, j + 1, right);
+                right = j;
+            }
+        }
+    }
+
+    private static void swap(int[] values, int[] boxes, int[] indices, int i, int j) {
+        int tmp = values[i];
+        values[i] = values[j];
+        values[j] = tmp;
+
+        tmp = indices[i];
+        indices[i] = indices[j];
+        indices[j] = tmp;
+
+        int k = i * 4;
+        int m = j * 4;
+        for (int n = 0; n < 4; n++) {
+            tmp = boxes[k + n];
+            boxes[k + n] = boxes[m + n];
+            boxes[m + n] = tmp;
+        }
+    }
+
+    /**
+     * Hilbert curve value of x, y in [0, 0xffff].
+     * <p/>
+     * based on http://threadlocalmutex.com/?p=126
+     */
+    private static int hilbert(int x, int y) {
+        int a = x ^ y;
+        int b = 0xffff ^ a;
+        int c = 0xffff ^ (x | y);
+        int d = x & (y ^ 0xffff);
+
+        int A = a | (b >>> 1);
+        int B = (a >>> 1) ^ a;
+        int C = ((c >>> 1) ^ (b & (d >>> 1))) ^ c;
+        int D = ((a & (c >>> 1)) ^ (d >>> 1)) ^ d;
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        A = ((a & (a >>> 2)) ^ (b & (b >>> 2)));
+        B = ((a & (b >>> 2)) ^ (b & ((a ^ b) >>> 2)));
+        C ^= ((a & (c >>> 2)) ^ (b & (d >>> 2)));
+        D ^= ((b & (c >>> 2)) ^ ((a ^ b) & (d >>> 2)));
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        A = ((a & (a >>> 4)) ^ (b & (b >>> 4)));
+        B = ((a & (b >>> 4)) ^ (b & ((a ^ b) >>> 4)));
+        C ^= ((a & (c >>> 4)) ^ (b & (d >>> 4)));
+        D ^= ((b & (c >>> 4)) ^ ((a ^ b) & (d >>> 4)));
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        C ^= ((a & (c >>> 8)) ^ (b & (d >>> 8)));
+        D ^= ((b & (c >>> 8)) ^ ((a ^ b) & (d >>> 8)));
+
+        a = C ^ (C >>> 1);
+        b = D ^ (D >>> 1);
+
+        int i0 = x ^ y;
+        int i1 = b | (0xffff ^ (i0 | a));
+
+        i0 = (i0 | (i0 << 8)) & 0x00ff00ff;
+        i0 = (i0 | (i0 << 4)) & 0x0f0f0f0f;
+        i0 = (i0 | (i0 << 2)) & 0x33333333;
+        i0 = (i0 | (i0 << 1)) & 0x55555555;
+
+        i1 = (i1 | (i1 << 8)) & 0x00ff00ff;
+        i1 = (i1 | (i1 << 4)) & 0x0f0f0f0f;
+        i1 = (i1 | (i1 << 2)) & 0x33333333;
+        i1 = (i1 | (i1 << 1)) & 0x55555555;
+
+        return (i1 << 1) | i0;
+    }
+}
@@ -26,6 +26,78 @@ import java.util.Arrays;
 public class Tessellator {
     static final Logger log = LoggerFactory.getLogger(Tessellator.class);
 
+    /**
+     * Simple rings with up to this number of points are triangulated
+     * by ear-clipping without the JNI round trip. Set to 0 to always
+     * use libtess2.
+     */
+    public static int EAR_CLIP_MAX_POINTS = 64;
+
+    /**
+     * TessJNI bucket sizes are clamped to this value in native code
+     */
+    private static final int MAX_BUCKETS = 10;
+
+    /**
+     * TessJNI contexts of the current thread, by bucket size. TessJNI
+     * can be reused after tesselate() which avoids to allocate the
+     * native tesselator and its bucket allocators for each polygon.
+     */
+    private static final ThreadLocal<TessJNI[]> sContexts = new ThreadLocal<TessJNI[]>() {
+        @Override
+        protected TessJNI[] initialValue() {
+            return new TessJNI[MAX_BUCKETS + 1];
+        }
+    };
+
+    /**
+     * Get a TessJNI context of the current thread. Call
+     * {@link #releaseContext(TessJNI, int)} when done.
+     *
+     * @param buckets bucket size passed to {@link TessJNI#TessJNI(int)}
+     */
+    public static TessJNI obtainContext(int buckets) {
+        buckets = FastMath.clamp(buckets, 0, MAX_BUCKETS);
+
+        TessJNI[] contexts = sContexts.get();
+        TessJNI tess = contexts[buckets];
+        if (tess == null)
+            return new TessJNI(buckets);
+
+        contexts[buckets] = null;
+        return tess;
+    }
+
+    /**
+     * Return context obtained by {@link #obtainContext(int)} to the
+     * pool of the current thread. Contexts of failed tessellation
+     * must be disposed instead.
+     */
+    public static void releaseContext(TessJNI tess, int buckets) {
+        buckets = FastMath.clamp(buckets, 0, MAX_BUCKETS);
+
+        TessJNI[] contexts = sContexts.get();
+        if (contexts[buckets] == null)
+            contexts[buckets] = tess;
+        else
+            tess.dispose();
+    }
+
+    /**
+     * Dispose TessJNI contexts of the current thread. Should be called
+     * before a worker thread terminates.
+     */
+    public static void disposeContexts() {
+        TessJNI[] contexts = sContexts.get();
+        for (int i = 0; i < contexts.length; i++) {
+            if (contexts[i] != null) {
+                contexts[i].dispose();
+                contexts[i] = null;
+            }
+        }
+        sContexts.remove();
+    }
+
     /**
      * Special version for ExtrusionLayer to match indices with vertex
      * positions.
@@ -33,17 +105,26 @@ public class Tessellator {
     public static int tessellate(double[] points, int ppos, int numPoints, int[] index,
                                  int ipos, int numRings, int vertexOffset, VertexData outTris) {
 
+        if (numRings == 1 && numPoints <= EAR_CLIP_MAX_POINTS * 2) {
+            int n = earClip(points, ppos, numPoints, vertexOffset, outTris);
+            if (n >= 0)
+                return n;
+            /* not simple, use libtess2 */
+        }
+
         int buckets = FastMath.log2(MathUtils.nextPowerOfTwo(numPoints));
         buckets -= 2;
         //log.debug("tess use {}", buckets);
 
-        TessJNI tess = new TessJNI(buckets);
+        TessJNI tess = obtainContext(buckets);
 
         tess.addContour2D(index, points, ipos, numRings);
         //log.debug("tess ipos:{} rings:{}", ipos, numRings);
 
-        if (!tess.tesselate())
+        if (!tess.tesselate()) {
+            tess.dispose();
             return 0;
+        }
 
         int nverts = tess.getVertexCount() * 2;
         int nelems = tess.getElementCount() * 3;
@@ -52,7 +133,7 @@ public class Tessellator {
 
         if (numPoints != nverts) {
             log.debug("tess ----- skip poly: " + nverts + " " + numPoints);
-            tess.dispose();
+            releaseContext(tess, buckets);
             return 0;
         }
 
@@ -115,10 +196,141 @@ public class Tessellator {
             offset += size;
         }
 
-        tess.dispose();
+        releaseContext(tess, buckets);
 
         return sumIndices;
     }
+
+    /**
+     * Triangulate a simple ring by ear-clipping. Triangles keep the
+     * orientation of the ring. Indices are set like in
+     * {@link #tessellate(double[], int, int, int[], int, int, int, VertexData)}.
+     *
+     * @return number of added indices or -1 when the ring could not
+     * be triangulated, i.e. is self-intersecting.
+     */
+    static int earClip(double[] points, int ppos, int numPoints,
+                       int vertexOffset, VertexData outTris) {
+
+        int n = numPoints >> 1;
+        if (n < 3)
+            return 0;
+
+        /* signed area to get ring orientation */
+        double area = 0;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            area += points[ppos + j * 2] * points[ppos + i * 2 + 1]
+                    - points[ppos + i * 2] * points[ppos + j * 2 + 1];
+        }
+        if (area == 0)
+            return 0;
+
+        if (!isSimple(points, ppos, n))
+            return -1;
+
+        double sign = area > 0 ? 1 : -1;
+
+        int[] prev = new int[n];
+        int[] next = new int[n];
+        for (int i = 0; i < n; i++) {
+            prev[i] = (i == 0) ? n - 1 : i - 1;
+            next[i] = (i == n - 1) ? 0 : i + 1;
+        }
+
+        /* collect triangles first to not leave partial
+         * results in outTris on failure */
+        short[] tris = new short[(n - 2) * 3];
+        int numTris = 0;
+
+        int cur = 0;
+        int remaining = n;
+        int skipped = 0;
+
+        while (remaining > 3) {
+            int a = prev[cur];
+            int c = next[cur];
+
+            if (isEar(points, ppos, a, cur, c, next, sign)) {
+                tris[numTris++] = (short) (vertexOffset + a * 2);
+                tris[numTris++] = (short) (vertexOffset + cur * 2);
+                tris[numTris++] = (short) (vertexOffset + c * 2);
+
+                next[a] = c;
+                prev[c] = a;
+                remaining--;
+                skipped = 0;
+                cur = c;
+            } else {
+                if (++skipped > remaining)
+                    return -1;
+                cur = c;
+            }
+        }
+        tris[numTris++] = (short) (vertexOffset + prev[cur] * 2);
+        tris[numTris++] = (short) (vertexOffset + cur * 2);
+        tris[numTris++] = (short) (vertexOffset + next[cur] * 2);
+
+        for (int i = 0; i < numTris; i += 3)
+            outTris.add(tris[i], tris[i + 1], tris[i + 2]);
+
+        return numTris;
+    }
+
+    /**
+     * Check that no two non-adjacent edges of the ring cross.
+     */
+    private static boolean isSimple(double[] points, int ppos, int n) {
+        for (int i = 0; i < n; i++) {
+            int i2 = (i + 1) % n;
+            double ax = points[ppos + i * 2], ay = points[ppos + i * 2 + 1];
+            double bx = points[ppos + i2 * 2], by = points[ppos + i2 * 2 + 1];
+
+            for (int j = i + 2; j < n; j++) {
+                int j2 = (j + 1) % n;
+                if (j2 == i)
+                    continue;
+
+                double cx = points[ppos + j * 2], cy = points[ppos + j * 2 + 1];
+                double dx = points[ppos + j2 * 2], dy = points[ppos + j2 * 2 + 1];
+
+                double d1 = (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+                double d2 = (bx - ax) * (dy - ay) - (by - ay) * (dx - ax);
+                double d3 = (dx - cx) * (ay - cy) - (dy - cy) * (ax - cx);
+                double d4 = (dx - cx) * (by - cy) - (dy - cy) * (bx - cx);
+
+                if (((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0))
+                        && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0)))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isEar(double[] points, int ppos, int a, int b, int c,
+                                 int[] next, double sign) {
+        double ax = points[ppos + a * 2], ay = points[ppos + a * 2 + 1];
+        double bx = points[ppos + b * 2], by = points[ppos + b * 2 + 1];
+        double cx = points[ppos + c * 2], cy = points[ppos + c * 2 + 1];
+
+        /* reflex or degenerate corner */
+        if (((bx - ax) * (cy - by) - (by - ay) * (cx - bx)) * sign <= 0)
+            return false;
+
+        /* no other vertex may lie within the triangle */
+        for (int p = next[c]; p != a; p = next[p]) {
+            double px = points[ppos + p * 2];
+            double py = points[ppos + p * 2 + 1];
+
+            if ((px == ax && py == ay) || (px == bx && py == by) || (px == cx && py == cy))
+                continue;
+
+            if (((bx - ax) * (py - ay) - (by - ay) * (px - ax)) * sign >= 0
+                    && ((cx - bx) * (py - by) - (cy - by) * (px - bx)) * sign >= 0
+                    && ((ax - cx) * (py - cy) - (ay - cy) * (px - cx)) * sign >= 0)
+                return false;
+        }
+        return true;
+    }
     //    private static final int RESULT_VERTICES = 0;
     //    private static final int RESULT_TRIANGLES = 1;
     //
@@ -77,6 +77,87 @@ public final class GeometryUtils {
         return (area < 0 ? -area : area) * 0.5f;
     }
 
+    /**
+     * Area of polygons in GeometryBuffer layout: For each polygon the
+     * area of the outer ring minus the area of its holes.
+     */
+    public static double area(double[] points, int[] index) {
+        double sum = 0;
+        boolean outer = true;
+
+        for (int i = 0, pos = 0, n = index.length; i < n; i++) {
+            int length = index[i];
+            if (length < 0)
+                break;
+
+            /* start of next polygon */
+            if (length == 0) {
+                outer = true;
+                continue;
+            }
+
+            double a = 0;
+            for (int j = pos, end = pos + length, k = end - 2; j < end; k = j, j += 2)
+                a += (points[k] + points[j]) * (points[k + 1] - points[j + 1]);
+
+            a = Math.abs(a) * 0.5;
+            sum += outer ? a : -a;
+            outer = false;
+
+            pos += length;
+        }
+        return sum;
+    }
+
+    /**
+     * Sum of the areas of triangles between x/y and each edge of the
+     * polygons, i.e. the area filled by a triangle fan around x/y.
+     */
+    public static double fanArea(double[] points, int[] index, double x, double y) {
+        double sum = 0;
+
+        for (int i = 0, pos = 0, n = index.length; i < n; i++) {
+            int length = index[i];
+            if (length < 0)
+                break;
+
+            for (int j = pos, end = pos + length, k = end - 2; j < end; k = j, j += 2)
+                sum += area(x, y, points[k], points[k + 1], points[j], points[j + 1]);
+
+            pos += length;
+        }
+        return sum;
+    }
+
+    /**
+     * Test if the ring at points[offset ... offset+length] is convex.
+     */
+    public static boolean isConvex(double[] points, int offset, int length) {
+        if (length < 6)
+            return false;
+
+        int end = offset + length;
+        int sign = 0;
+
+        for (int i = offset; i < end; i += 2) {
+            int j = (i + 2 < end) ? i + 2 : offset;
+            int k = (j + 2 < end) ? j + 2 : offset;
+
+            double cross = (points[j] - points[i]) * (points[k + 1] - points[j + 1])
+                    - (points[j + 1] - points[i + 1]) * (points[k] - points[j]);
+
+            if (cross == 0)
+                continue;
+
+            int s = cross > 0 ? 1 : -1;
+            if (sign == 0)
+                sign = s;
+            else if (sign != s)
+                return false;
+        }
+        return true;
+    }
+
     public static float squaredDistance(float[] p, int a, int b) {
         return (p[a] - p[b]) * (p[a] - p[b]) + (p[a + 1] - p[b + 1]) * (p[a + 1] - p[b + 1]);
     }
@@ -35,30 +35,165 @@ public class SimplifyDP {
     boolean[] markers = new boolean[128];
     int[] stack = new int[32];
 
-    public void simplify(GeometryBuffer geom, float sqTolerance) {
+    /* original polygon, restored when the simplified rings intersect */
+    double[] backup = new double[256];
+    int[] backupIndex = new int[8];
+
+    /**
+     * Simplify lines and polygon rings of 'geom' in place. Polygon rings
+     * which would collapse to less than three points are removed, together
+     * with their holes when the outer ring collapses.
+     * <p/>
+     * Rings are simplified independently. When the rings of a simplified
+     * polygon intersect themselves or each other the polygon is kept
+     * unsimplified.
+     *
+     * @return false when no geometry remains.
+     */
+    public boolean simplify(GeometryBuffer geom, float sqTolerance) {
         int[] idx = geom.index;
+        double[] points = geom.points;
+        boolean poly = geom.isPoly();
 
         int inPos = 0;
         int outPos = 0;
+        int outIdx = 0;
 
-        for (int i = 0, n = idx.length; i < n; i++) {
-            int len = idx[i];
-            if (len < 0)
-                break;
-            if (len < 6) {
+        for (int i = 0, n = idx.length; i < n && idx[i] >= 0; ) {
+            if (idx[i] == 0) {
+                /* start of next polygon */
+                i++;
+                continue;
+            }
+
+            if (!poly) {
+                int len = idx[i++];
+                int end = simplifyRing(points, inPos, len, outPos, sqTolerance);
+                idx[outIdx++] = end - outPos;
                 inPos += len;
-                outPos += len;
+                outPos = end;
                 continue;
             }
 
-            int end = simplify(geom.points, inPos, len, outPos, sqTolerance);
-            if (end > inPos + len)
-                log.error("out larger than cur: {} > {}", end, inPos + len);
+            /* rings of the next polygon */
+            int rings = 0;
+            int len = 0;
+            while (i + rings < n && idx[i + rings] > 0)
+                len += idx[i + rings++];
+
+            if (outIdx > 0)
+                idx[outIdx++] = 0;
+
+            int polyIn = inPos;
+            int polyOut = outPos;
+            int polyIdx = outIdx;
+
+            if (backup.length < len)
+                backup = new double[len];
+            if (backupIndex.length < rings)
+                backupIndex = new int[rings];
+
+            System.arraycopy(points, inPos, backup, 0, len);
+            System.arraycopy(idx, i, backupIndex, 0, rings);
+
+            for (int r = 0; r < rings; r++) {
+                int ringLen = backupIndex[r];
+                int end = simplifyRing(points, inPos, ringLen, outPos, sqTolerance);
+                inPos += ringLen;
 
-            idx[i] = (short) (end - outPos);
-            outPos = end;
-            inPos += len;
+                if (end - outPos < 6) {
+                    /* skip holes of a removed outer ring */
+                    if (r == 0)
+                        break;
+                    continue;
+                }
+                idx[outIdx++] = end - outPos;
+                outPos = end;
+            }
+
+            if (outIdx > polyIdx && outPos - polyOut < len
+                    && intersects(points, idx, polyOut, polyIdx, outIdx)) {
+                /* keep the original polygon */
+                System.arraycopy(backup, 0, points, polyOut, len);
+                System.arraycopy(backupIndex, 0, idx, polyIdx, rings);
+                outIdx = polyIdx + rings;
+                outPos = polyOut + len;
+            }
+
+            /* remove separator of a removed polygon */
+            if (outIdx == polyIdx && polyIdx > 0)
+                outIdx--;
+
+            inPos = polyIn + len;
+            i += rings;
         }
+
+        if (outIdx < idx.length)
+            idx[outIdx] = -1;
+
+        geom.pointPos = outPos;
+        geom.indexPos = outIdx > 0 ? outIdx - 1 : 0;
+
+        return outIdx > 0;
+    }
+
+    private int simplifyRing(double[] points, int inPos, int length, int out,
+                             float sqTolerance) {
+        if (length < 6) {
+            System.arraycopy(points, inPos, points, out, length);
+            return out + length;
+        }
+        return simplify(points, inPos, length, out, sqTolerance);
+    }
+
+    /**
+     * @return true when edges of the rings idx[from] to idx[to - 1],
+     * starting at points[pos], cross each other.
+     */
+    static boolean intersects(double[] points, int[] idx, int pos, int from, int to) {
+        for (int r = from, ra = pos; r < to; ra += idx[r++]) {
+            int ea = ra + idx[r];
+
+            for (int a = ra; a < ea; a += 2) {
+                int a2 = (a + 2 < ea) ? a + 2 : ra;
+
+                for (int s = r, rb = ra; s < to; rb += idx[s++]) {
+                    int eb = rb + idx[s];
+
+                    /* skip the edge itself and the following edge */
+                    for (int b = (s == r) ? a + 4 : rb; b < eb; b += 2) {
+                        int b2 = (b + 2 < eb) ? b + 2 : rb;
+
+                        /* closing edge of the ring is adjacent to 'a' */
+                        if (b2 == a)
+                            continue;
+
+                        if (crosses(points, a, a2, b, b2))
+                            return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true when the segments a-b and c-d cross.
+     */
+    private static boolean crosses(double[] p, int a, int b, int c, int d) {
+        double d1 = side(p, c, d, a);
+        double d2 = side(p, c, d, b);
+        if (!((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)))
+            return false;
+
+        double d3 = side(p, a, b, c);
+        double d4 = side(p, a, b, d);
+        return (d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0);
+    }
+
+    private static double side(double[] p, int a, int b, int c) {
+        return (p[b] - p[a]) * (p[c + 1] - p[a + 1])
+                - (p[b + 1] - p[a + 1]) * (p[c] - p[a]);
     }
 
     public int simplify(double[] points, int inPos, int length, int out, float sqTolerance) {
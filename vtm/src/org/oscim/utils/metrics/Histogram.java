@@ -0,0 +1,94 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.utils.metrics;
+
+/**
+ * Histogram of positive values in power of two buckets.
+ * Adding values does not allocate. Methods are synchronized, values
+ * should be recorded per tile or frame, not per element.
+ */
+public class Histogram {
+
+    /* bucket i counts values in [2^(i-1), 2^i) */
+    private final long[] mBuckets = new long[64];
+
+    private long mCount;
+    private long mSum;
+    private long mMin = Long.MAX_VALUE;
+    private long mMax;
+
+    public synchronized void add(long value) {
+        if (value < 0)
+            value = 0;
+
+        mBuckets[64 - Long.numberOfLeadingZeros(value)]++;
+        mCount++;
+        mSum += value;
+        if (value < mMin)
+            mMin = value;
+        if (value > mMax)
+            mMax = value;
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    public synchronized long getSum() {
+        return mSum;
+    }
+
+    public synchronized long getMin() {
+        return mCount == 0 ? 0 : mMin;
+    }
+
+    public synchronized long getMax() {
+        return mMax;
+    }
+
+    public synchronized double getMean() {
+        return mCount == 0 ? 0 : (double) mSum / mCount;
+    }
+
+    /**
+     * @param p percentile in [0, 1].
+     * @return upper bound of the bucket containing the percentile,
+     * at most the maximum value.
+     */
+    public synchronized long getPercentile(double p) {
+        if (mCount == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(p * mCount);
+        long sum = 0;
+        for (int i = 0; i < 64; i++) {
+            sum += mBuckets[i];
+            if (sum >= rank && sum > 0) {
+                long bound = (i == 0) ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+                return Math.min(bound, mMax);
+            }
+        }
+        return mMax;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < 64; i++)
+            mBuckets[i] = 0;
+        mCount = 0;
+        mSum = 0;
+        mMin = Long.MAX_VALUE;
+        mMax = 0;
+    }
+}
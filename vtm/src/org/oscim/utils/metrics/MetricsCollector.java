@@ -0,0 +1,138 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.utils.metrics;
+
+import org.oscim.renderer.LayerRenderer;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * MetricsSink collecting measurements in a {@link Histogram} per metric
+ * and per LayerRenderer.
+ */
+public class MetricsCollector implements MetricsSink {
+
+    private final Histogram[] mMetrics = new Histogram[Metrics.NUM_METRICS];
+
+    private final IdentityHashMap<LayerRenderer, Histogram> mLayers =
+            new IdentityHashMap<LayerRenderer, Histogram>();
+
+    public MetricsCollector() {
+        for (int i = 0; i < Metrics.NUM_METRICS; i++)
+            mMetrics[i] = new Histogram();
+    }
+
+    @Override
+    public void record(int metric, long value) {
+        mMetrics[metric].add(value);
+    }
+
+    @Override
+    public void recordLayer(LayerRenderer renderer, long nanos) {
+        Histogram h;
+        synchronized (mLayers) {
+            h = mLayers.get(renderer);
+            if (h == null) {
+                h = new Histogram();
+                mLayers.put(renderer, h);
+            }
+        }
+        h.add(nanos);
+    }
+
+    public Histogram get(int metric) {
+        return mMetrics[metric];
+    }
+
+    /**
+     * @return histogram of render times of 'renderer' or null.
+     */
+    public Histogram getLayer(LayerRenderer renderer) {
+        synchronized (mLayers) {
+            return mLayers.get(renderer);
+        }
+    }
+
+    public void reset() {
+        for (Histogram h : mMetrics)
+            h.reset();
+
+        synchronized (mLayers) {
+            mLayers.clear();
+        }
+    }
+
+    /**
+     * Append one line per metric with count, mean, 95th percentile
+     * and max, times in milliseconds.
+     */
+    public void format(StringBuilder sb) {
+        for (int i = 0; i < Metrics.NUM_METRICS; i++) {
+            Histogram h = mMetrics[i];
+            if (h.getCount() == 0)
+                continue;
+
+            sb.append(Metrics.getName(i)).append(": ");
+            if (i == Metrics.THEME_HIT) {
+                sb.append(h.getSum());
+            } else if (i == Metrics.UPLOAD_BYTES) {
+                sb.append(h.getSum() / 1024).append("kb");
+            } else if (i == Metrics.SIMPLIFY) {
+                sb.append(h.getSum()).append(" points in ")
+                        .append(h.getCount()).append(" tiles");
+            } else if (i == Metrics.STENCIL_POLYGONS || i == Metrics.MESH_POLYGONS) {
+                sb.append(h.getSum()).append(" polygons in ")
+                        .append(h.getCount()).append(" tiles");
+            } else {
+                formatTimes(sb, h);
+            }
+            sb.append('\n');
+        }
+
+        ArrayList<LayerRenderer> renderers;
+        synchronized (mLayers) {
+            renderers = new ArrayList<LayerRenderer>(mLayers.keySet());
+        }
+        for (LayerRenderer r : renderers) {
+            String name = r.getClass().getName();
+            sb.append(name.substring(name.lastIndexOf('.') + 1)).append(": ");
+            formatTimes(sb, getLayer(r));
+            sb.append('\n');
+        }
+    }
+
+    private static void formatTimes(StringBuilder sb, Histogram h) {
+        sb.append(h.getCount()).append(" avg ");
+        formatMillis(sb, (long) h.getMean());
+        sb.append(" p95 ");
+        formatMillis(sb, h.getPercentile(0.95));
+        sb.append(" max ");
+        formatMillis(sb, h.getMax());
+        sb.append("ms");
+    }
+
+    private static void formatMillis(StringBuilder sb, long nanos) {
+        long tenths = nanos / 100000;
+        sb.append(tenths / 10).append('.').append(tenths % 10);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        format(sb);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.utils.metrics;
+
+import org.oscim.renderer.LayerRenderer;
+
+/**
+ * Receives measurements of the tile loading and rendering pipeline, see
+ * {@link Metrics}. Called from loader threads and the GL thread, must be
+ * thread-safe and should not allocate.
+ */
+public interface MetricsSink {
+
+    /**
+     * @param metric one of the Metrics constants.
+     * @param value  duration in nanoseconds, byte count or 1 for counters.
+     */
+    void record(int metric, long value);
+
+    /**
+     * @param nanos time to update and render 'renderer' in one frame.
+     */
+    void recordLayer(LayerRenderer renderer, long nanos);
+}